@@ -0,0 +1,90 @@
+package com.battleship.bench;
+
+import com.battleship.common.Bitboard;
+import com.battleship.common.FleetConfigParser;
+import com.battleship.common.FleetGenerator;
+import com.battleship.common.FleetRules;
+import com.battleship.common.Ship;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// Загрузка файла с множеством флотов: прежний DOM против потокового разбора StAX
+// (с проверкой геометрии) и повторная загрузка неизмененного файла из кэша.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FleetConfigBenchmark {
+    private static final int SIZE = FleetRules.STANDARD_GRID_SIZE;
+
+    @Param({"1", "100", "1000"})
+    public int fleets;
+
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("fleets", ".xml");
+        FleetGenerator generator = new FleetGenerator(SIZE, SIZE, FleetRules.STANDARD_FLEET, new SplittableRandom(1));
+        try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("<fleets>\n");
+            for (int i = 0; i < fleets; i++) {
+                out.write("  <fleet name=\"fleet-" + i + "\">\n");
+                for (Bitboard ship : FleetRules.splitShips(generator.next(), FleetRules.STANDARD_FLEET)) {
+                    int cell = ship.nextSetBit(0);
+                    int x = cell % SIZE;
+                    int y = cell / SIZE;
+                    boolean horizontal = x + 1 < SIZE && ship.get(x + 1, y);
+                    out.write("    <ship type=\"" + ship.cardinality() + "\" x=\"" + x + "\" y=\"" + y
+                            + "\" orientation=\"" + (horizontal ? "horizontal" : "vertical") + "\"/>\n");
+                }
+                out.write("  </fleet>\n");
+            }
+            out.write("</fleets>\n");
+        }
+        FleetConfigParser.invalidate(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        FleetConfigParser.invalidate(file);
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public List<Ship> dom() throws Exception {
+        return FleetConfigParser.parseFleetConfigDom(file.toString());
+    }
+
+    @Benchmark
+    public List<List<Ship>> stax() throws IOException {
+        FleetConfigParser.invalidate(file);
+        return FleetConfigParser.loadFleets(file);
+    }
+
+    @Benchmark
+    public List<List<Ship>> cached() throws IOException {
+        return FleetConfigParser.loadFleets(file);
+    }
+}
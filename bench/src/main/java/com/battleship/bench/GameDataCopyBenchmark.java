@@ -0,0 +1,83 @@
+package com.battleship.bench;
+
+import com.battleship.common.PackedBoard;
+import com.battleship.server.GameData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Стоимость создания и копирования GameData. Методы legacy* воспроизводят прежнее
+// хранение полей в int[10][10] с построчным копированием - для сравнения "до/после"
+// (запускать с -prof gc, чтобы увидеть выделение памяти на операцию).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameDataCopyBenchmark {
+    private GameData shot;
+    private GameData withBoards;
+    private int[][] legacyPlayerBoard;
+    private int[][] legacyOpponentBoard;
+
+    @Setup
+    public void setUp() {
+        shot = new GameData();
+        shot.setGameState(GameData.GameState.PLAYER_TURN);
+        shot.setX(4);
+        shot.setY(5);
+
+        withBoards = new GameData();
+        PackedBoard board = new PackedBoard();
+        legacyPlayerBoard = new int[10][10];
+        legacyOpponentBoard = new int[10][10];
+        for (int i = 0; i < 10; i++) {
+            board.set(i, i, PackedBoard.SHIP);
+            legacyPlayerBoard[i][i] = 1;
+        }
+        withBoards.setPlayerBoard(board);
+        withBoards.setOpponentBoard(board);
+    }
+
+    @Benchmark
+    public GameData newMessage() {
+        return new GameData();
+    }
+
+    @Benchmark
+    public GameData copyShot() {
+        return shot.copy();
+    }
+
+    @Benchmark
+    public GameData copyWithBoards() {
+        return withBoards.copy();
+    }
+
+    @Benchmark
+    public int[][][] legacyNewMessage() {
+        return new int[][][]{new int[10][10], new int[10][10]};
+    }
+
+    @Benchmark
+    public int[][][] legacyCopyBoards() {
+        int[][] player = new int[10][10];
+        int[][] opponent = new int[10][10];
+        for (int i = 0; i < 10; i++) {
+            player[i] = Arrays.copyOf(legacyPlayerBoard[i], 10);
+            opponent[i] = Arrays.copyOf(legacyOpponentBoard[i], 10);
+        }
+        return new int[][][]{player, opponent};
+    }
+}
@@ -0,0 +1,89 @@
+package com.battleship.bench;
+
+import com.battleship.server.MatchmakingQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Подбор пары при N подключенных клиентах, из которых ждут игры двое.
+// legacyScan повторяет прежний matchPlayers(): обход всех клиентов в новый ArrayList;
+// queue - очередь подбора, стоимость которой не зависит от N.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchmakingBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int connectedClients;
+
+    private Map<Integer, FakeClient> clients;
+    private FakeClient first;
+    private FakeClient second;
+    private MatchmakingQueue<FakeClient> queue;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        clients = new ConcurrentHashMap<>();
+        for (int i = 0; i < connectedClients; i++) {
+            clients.put(i, new FakeClient());
+        }
+        first = clients.get(connectedClients / 3);
+        second = clients.get(2 * connectedClients / 3 + 1);
+        queue = new MatchmakingQueue<>(client -> client.connected);
+    }
+
+    @Benchmark
+    public int legacyScan() {
+        first.waiting = true;
+        second.waiting = true;
+
+        List<FakeClient> waitingClients = new ArrayList<>();
+        for (FakeClient client : clients.values()) {
+            if (client.waiting && client.connected) {
+                waitingClients.add(client);
+            }
+        }
+        for (int i = 0; i < waitingClients.size() / 2; i++) {
+            pair(waitingClients.get(i * 2), waitingClients.get(i * 2 + 1));
+        }
+        return waitingClients.size();
+    }
+
+    @Benchmark
+    public int queue() {
+        queue.enqueue(first, this::pair);
+        queue.enqueue(second, this::pair);
+        return queue.getWaitingCount();
+    }
+
+    private void pair(FakeClient player1, FakeClient player2) {
+        player1.waiting = false;
+        player2.waiting = false;
+        blackhole.consume(player1);
+        blackhole.consume(player2);
+    }
+
+    private static final class FakeClient {
+        volatile boolean connected = true;
+        volatile boolean waiting;
+    }
+}
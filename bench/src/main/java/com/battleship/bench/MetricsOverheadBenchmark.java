@@ -0,0 +1,90 @@
+package com.battleship.bench;
+
+import com.battleship.server.GameData;
+import com.battleship.server.MessageFrames;
+import com.battleship.server.ServerMetrics;
+import com.battleship.server.WireCodec;
+import com.battleship.server.WireCodecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Цена метрик на один выстрел. Выстрел здесь - только то, что сервер делает с байтами:
+// разбор кадра игрока и кодирование двух кадров-результатов (стрелявшему и сопернику),
+// без сокетов, очередей и потока партии. instrumented добавляет ровно то, что добавляет
+// сервер: счетчики сообщений и байт, выборочное время разбора и кодирования и время хода.
+// Разность instrumented и bare - абсолютная цена метрик на ход; долю в пропускной
+// способности дает сравнение с ценой хода целиком, с сокетами и потоком партии
+// (MatchStressCheck печатает выстрелы в секунду). Четыре потока обновляют одни и те же
+// счетчики - проверка LongAdder и гистограмм на конкуренцию.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class MetricsOverheadBenchmark {
+    private final WireCodec codec = WireCodecs.BINARY;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private byte[] shotFrame;
+
+    @Setup
+    public void setUp() throws IOException {
+        GameData shot = new GameData();
+        shot.setGameState(GameData.GameState.PLAYER_TURN);
+        shot.setX(3);
+        shot.setY(7);
+        shotFrame = MessageFrames.encodeFrame(shot, codec).array();
+    }
+
+    @Benchmark
+    public long bare() throws IOException {
+        GameData shot = codec.decode(shotFrame, MessageFrames.HEADER_SIZE, shotFrame.length - MessageFrames.HEADER_SIZE);
+        long bytes = 0;
+        for (int recipient = 0; recipient < 2; recipient++) {
+            bytes += MessageFrames.encodeFrame(result(shot, recipient == 0), codec).limit();
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public long instrumented() throws IOException {
+        long received = System.nanoTime();
+        metrics.bytesRead(shotFrame.length);
+        long start = metrics.startSerialization();
+        GameData shot = codec.decode(shotFrame, MessageFrames.HEADER_SIZE, shotFrame.length - MessageFrames.HEADER_SIZE);
+        metrics.decoded(start);
+        metrics.messageReceived();
+        long bytes = 0;
+        for (int recipient = 0; recipient < 2; recipient++) {
+            start = metrics.startSerialization();
+            ByteBuffer frame = MessageFrames.encodeFrame(result(shot, recipient == 0), codec);
+            metrics.encoded(start);
+            bytes += frame.limit();
+        }
+        metrics.moveHandled(System.nanoTime() - received);
+        return bytes;
+    }
+
+    private static GameData result(GameData shot, boolean own) {
+        GameData data = new GameData();
+        data.setGameState(GameData.GameState.MISS);
+        data.setX(shot.getX());
+        data.setY(shot.getY());
+        data.setPlayerTurn(own);
+        return data;
+    }
+}
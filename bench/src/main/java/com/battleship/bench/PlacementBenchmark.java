@@ -0,0 +1,86 @@
+package com.battleship.bench;
+
+import com.battleship.common.Bitboard;
+import com.battleship.common.FleetRules;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Проверка допустимости расстановки: все позиции и ориентации корабля длины 3
+// на поле с частично расставленным флотом. legacyScan повторяет BoardPanel.canPlaceShip
+// с обходом окрестности по int[][].
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlacementBenchmark {
+    private static final int GRID_SIZE = 10;
+    private static final int SHIP_SIZE = 3;
+
+    private Bitboard occupied;
+    private int[][] board;
+
+    @Setup
+    public void setUp() {
+        occupied = new Bitboard(GRID_SIZE, GRID_SIZE);
+        board = new int[GRID_SIZE][GRID_SIZE];
+        int[][] cells = {{0, 0}, {1, 0}, {2, 0}, {3, 0}, {5, 2}, {5, 3}, {5, 4}, {8, 7}, {9, 7}, {2, 8}};
+        for (int[] cell : cells) {
+            occupied.set(cell[0], cell[1]);
+            board[cell[1]][cell[0]] = 1;
+        }
+    }
+
+    @Benchmark
+    public int fleetRules() {
+        int legal = 0;
+        for (int y = 0; y < GRID_SIZE; y++) {
+            for (int x = 0; x < GRID_SIZE; x++) {
+                if (FleetRules.canPlaceShip(occupied, x, y, SHIP_SIZE, true)) legal++;
+                if (FleetRules.canPlaceShip(occupied, x, y, SHIP_SIZE, false)) legal++;
+            }
+        }
+        return legal;
+    }
+
+    @Benchmark
+    public int legacyScan() {
+        int legal = 0;
+        for (int y = 0; y < GRID_SIZE; y++) {
+            for (int x = 0; x < GRID_SIZE; x++) {
+                if (legacyCanPlaceShip(x, y, SHIP_SIZE, true)) legal++;
+                if (legacyCanPlaceShip(x, y, SHIP_SIZE, false)) legal++;
+            }
+        }
+        return legal;
+    }
+
+    private boolean legacyCanPlaceShip(int startX, int startY, int shipSize, boolean horizontal) {
+        if (horizontal) {
+            if (startX + shipSize > GRID_SIZE) return false;
+        } else {
+            if (startY + shipSize > GRID_SIZE) return false;
+        }
+        for (int i = -1; i <= shipSize; i++) {
+            for (int j = -1; j <= 1; j++) {
+                int x = horizontal ? startX + i : startX + j;
+                int y = horizontal ? startY + j : startY + i;
+                if (x >= 0 && x < GRID_SIZE && y >= 0 && y < GRID_SIZE) {
+                    if (board[y][x] == 1) return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+package com.battleship.bench;
+
+import com.battleship.common.Bitboard;
+import com.battleship.common.FleetRules;
+import com.battleship.common.Ruleset;
+import com.battleship.server.GameData;
+import com.battleship.server.Replay;
+import com.battleship.server.ReplayReader;
+import com.battleship.server.ReplayWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Разбор файла повторов: время на одну партию при чтении сегмента из GAMES партий,
+// с проверкой CRC32C и без. Партии - случайные выстрелы по случайным флотам до победы,
+// так что разности клеток и попадания непредсказуемы, как в худшем для разбора случае.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayReaderBenchmark {
+    private static final int GAMES = 100_000;
+
+    @Param({"true", "false"})
+    public boolean verify;
+
+    private Path directory;
+    private Path segment;
+    private final Replay replay = new Replay();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("replay-bench");
+        Ruleset rules = Ruleset.STANDARD;
+        int size = rules.getWidth() * rules.getHeight();
+        SplittableRandom random = new SplittableRandom(42);
+        Bitboard[] fleets = new Bitboard[2];
+        int[][] order = new int[2][size];
+        int[] moves = new int[2 * size];
+        try (ReplayWriter writer = ReplayWriter.open(directory)) {
+            for (int game = 0; game < GAMES; game++) {
+                for (int seat = 0; seat < 2; seat++) {
+                    fleets[seat] = FleetRules.randomFleet(rules.getWidth(), rules.getHeight(), rules.getFleet(), random);
+                    shuffle(order[seat], random);
+                }
+                int[] next = new int[2];
+                int[] hits = new int[2];
+                int shooter = 0;
+                int moveCount = 0;
+                while (hits[0] < rules.getFleetCells() && hits[1] < rules.getFleetCells()) {
+                    int cell = order[shooter][next[shooter]++];
+                    boolean hit = fleets[1 - shooter].get(cell);
+                    moves[moveCount++] = GameData.packMove(cell % rules.getWidth(), cell / rules.getWidth(),
+                            shooter == 1, hit, false);
+                    if (hit) {
+                        hits[shooter]++;
+                    } else {
+                        shooter = 1 - shooter;
+                    }
+                }
+                writer.append(game + 1, rules, fleets, new boolean[2], moves, moveCount);
+            }
+        }
+        segment = ReplayReader.listSegments(directory).get(0);
+    }
+
+    private static void shuffle(int[] cells, SplittableRandom random) {
+        for (int i = 0; i < cells.length; i++) {
+            int j = random.nextInt(i + 1);
+            cells[i] = cells[j];
+            cells[j] = i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public long readSegment() throws IOException {
+        long shots = 0;
+        try (ReplayReader reader = ReplayReader.open(segment, verify)) {
+            while (reader.next(replay)) {
+                shots += replay.getMoveCount();
+            }
+        }
+        return shots;
+    }
+}
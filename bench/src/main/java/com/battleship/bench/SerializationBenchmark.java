@@ -0,0 +1,82 @@
+package com.battleship.bench;
+
+import com.battleship.common.PackedBoard;
+import com.battleship.server.GameData;
+import com.battleship.server.WireCodec;
+import com.battleship.server.WireCodecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+// Круговое кодирование GameData: старый поток объектов (writeObject + reset),
+// кадр сериализации Java и кадр двоичного кодека
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"SHOT", "PLACEMENT"})
+    public String message;
+
+    private GameData data;
+    private WireCodec javaCodec;
+    private WireCodec binaryCodec;
+
+    @Setup
+    public void setUp() {
+        data = new GameData();
+        if (message.equals("SHOT")) {
+            data.setGameState(GameData.GameState.PLAYER_TURN);
+            data.setX(3);
+            data.setY(7);
+        } else {
+            data.setGameState(GameData.GameState.PLACING_SHIPS);
+            PackedBoard board = new PackedBoard();
+            for (int x = 0; x < 4; x++) board.set(x, 0, PackedBoard.SHIP);
+            for (int y = 2; y < 5; y++) board.set(5, y, PackedBoard.SHIP);
+            data.setPlayerBoard(board);
+        }
+        javaCodec = WireCodecs.JAVA_SERIALIZATION;
+        binaryCodec = WireCodecs.BINARY;
+    }
+
+    @Benchmark
+    public Object objectStream() throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(data);
+        out.reset();
+        out.flush();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        return in.readObject();
+    }
+
+    @Benchmark
+    public GameData javaFrame() throws IOException {
+        byte[] encoded = javaCodec.encode(data);
+        return javaCodec.decode(encoded, 0, encoded.length);
+    }
+
+    @Benchmark
+    public GameData binaryFrame() throws IOException {
+        byte[] encoded = binaryCodec.encode(data);
+        return binaryCodec.decode(encoded, 0, encoded.length);
+    }
+}
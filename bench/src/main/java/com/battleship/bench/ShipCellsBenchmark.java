@@ -0,0 +1,91 @@
+package com.battleship.bench;
+
+import com.battleship.common.Bitboard;
+import com.battleship.common.Cell;
+import com.battleship.common.Ship;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Обход клеток корабля: Ship.getCells() против индексов палуб и маски занятости.
+// С -prof gc у cellIndices, occupies и sunkByMask должно быть 0 байт на операцию.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShipCellsBenchmark {
+    @Param({"horizontal", "vertical"})
+    public String orientation;
+
+    private static final int SIZE = 10;
+
+    private Ship ship;
+    private Bitboard shots;
+    private int shotX, shotY;
+
+    @Setup
+    public void setUp() {
+        ship = new Ship(4, 2, 3, orientation);
+        shots = new Bitboard(SIZE, SIZE);
+        for (int i = 0; i < ship.getType() - 1; i++) {
+            shots.set(ship.getCellX(i), ship.getCellY(i));
+        }
+        shotX = ship.getCellX(ship.getType() - 1);
+        shotY = ship.getCellY(ship.getType() - 1);
+        ship.occupancyMask(SIZE, SIZE);
+    }
+
+    @Benchmark
+    public int getCells() {
+        int sum = 0;
+        for (Cell cell : ship.getCells()) {
+            sum += cell.getY() * 10 + cell.getX();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int cellIndices() {
+        int sum = 0;
+        for (int i = 0; i < ship.getType(); i++) {
+            sum += ship.getCellIndex(i, SIZE);
+        }
+        return sum;
+    }
+
+    // Проверка попадания, как ее делал бы сервер через getCells()
+    @Benchmark
+    public boolean hitByCells() {
+        for (Cell cell : ship.getCells()) {
+            if (cell.getX() == shotX && cell.getY() == shotY) return true;
+        }
+        return false;
+    }
+
+    @Benchmark
+    public boolean occupies() {
+        return ship.occupies(shotX, shotY);
+    }
+
+    // Потоплен ли корабль, если добавить выстрел в последнюю палубу
+    @Benchmark
+    public boolean sunkByMask() {
+        int cell = shots.index(shotX, shotY);
+        shots.set(cell);
+        boolean sunk = ship.isSunk(shots);
+        shots.clear(cell);
+        return sunk;
+    }
+}
@@ -0,0 +1,109 @@
+package com.battleship.bench;
+
+import com.battleship.server.GameData;
+import com.battleship.server.MessageFrames;
+import com.battleship.server.SharedFrame;
+import com.battleship.server.SpectatorChannel;
+import com.battleship.server.WireCodec;
+import com.battleship.server.WireCodecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Цена одного выстрела для партии с N зрителями: публикация в SpectatorChannel и
+// доставка каждому зрителю (задачи доставки выполняются сразу, в потоке публикации, а
+// "сокет" зрителя только складывает байты кадра). Разность соседних значений N, деленная
+// на разность N, - цена лишнего зрителя. perViewerEncode - прежний путь sendData,
+// кодирующий сообщение для каждого соединения заново, для сравнения.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpectatorFanoutBenchmark {
+    @Param({"0", "1", "10", "100", "1000"})
+    public int spectators;
+
+    private SpectatorChannel channel;
+    private CountingViewer[] viewers;
+    private final WireCodec codec = WireCodecs.BINARY;
+    private int shot;
+
+    // Зритель, чье соединение записывает кадр мгновенно
+    private static final class CountingViewer implements SpectatorChannel.Viewer {
+        private final WireCodec codec;
+        long bytes;
+
+        CountingViewer(WireCodec codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        public void sendFrame(SharedFrame frame) throws IOException {
+            bytes += frame.bytes(codec).length;
+        }
+
+        @Override
+        public int getBacklog() {
+            return 0;
+        }
+
+        @Override
+        public void drop() {
+            throw new IllegalStateException("Зритель без отставания не отключается");
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        channel = new SpectatorChannel(Runnable::run, SpectatorChannel.DEFAULT_CAPACITY, () -> {
+            GameData snapshot = new GameData();
+            snapshot.setGameState(GameData.GameState.SPECTATE);
+            return snapshot;
+        });
+        viewers = new CountingViewer[spectators];
+        for (int i = 0; i < spectators; i++) {
+            viewers[i] = new CountingViewer(codec);
+            channel.subscribe(viewers[i]);
+        }
+    }
+
+    private GameData nextShot() {
+        int cell = shot++ % 100;
+        GameData data = new GameData();
+        data.setGameState((cell & 1) == 0 ? GameData.GameState.MISS : GameData.GameState.HIT);
+        data.setX(cell % 10);
+        data.setY(cell / 10);
+        data.setPlayerTurn((cell & 2) == 0);
+        data.setPlayerScore(cell % 7);
+        data.setOpponentScore(cell % 5);
+        return data;
+    }
+
+    @Benchmark
+    public void sharedFrame() {
+        channel.publish(nextShot());
+    }
+
+    @Benchmark
+    public long perViewerEncode() throws IOException {
+        GameData data = nextShot();
+        long bytes = 0;
+        for (int i = 0; i < spectators; i++) {
+            bytes += MessageFrames.encodeFrame(data, codec).remaining();
+        }
+        return bytes;
+    }
+}
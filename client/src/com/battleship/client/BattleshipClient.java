@@ -1,34 +1,92 @@
 package com.battleship.client;
 
 import com.battleship.server.GameData;
+import com.battleship.server.MessageFrames;
+import com.battleship.server.WireCodec;
+import com.battleship.server.WireCodecs;
 
 import java.io.*;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 public class BattleshipClient {
+    private static final GameData CLOSED = new GameData(); // Метка закрытия соединения в inbox
+
+    // Получатель сообщений от потока чтения. Вызывается в потоке чтения, а не в EDT.
+    public interface Listener {
+        void onMessage(GameData data);
+
+        // Соединение потеряно не по нашей инициативе
+        void onDisconnected();
+
+        // Соединение потеряно посреди партии, клиент пробует вернуться в нее.
+        // Удалось - придет RESUME, нет - onDisconnected.
+        default void onReconnecting() {
+        }
+    }
+
     private Socket clientSocket;
     private ObjectOutputStream out;
     private ObjectInputStream in;
+    private DataOutputStream frameOut;
+    private DataInputStream frameIn;
     private String serverAddress;
     private int serverPort;
-    private boolean connected = false;
+    private final WireCodec preferredCodec; // null - старый поток объектов без согласования
+    private WireCodec codec; // Согласованный кодек, null - поток объектов
+    private volatile boolean connected = false;
+    // Пока поток чтения не запущен, receiveData читает сокет напрямую. После первого
+    // receiveDataWithTimeout сообщения читает фоновый поток и складывает сюда.
+    private final BlockingQueue<GameData> inbox = new LinkedBlockingQueue<>();
+    private final Object sendLock = new Object();
+    private boolean readerStarted = false;
     private final int CONNECTION_TIMEOUT = 10000; // 10 секунд
     private final int READ_TIMEOUT = 30000; // 30 секунд
+    // Переподключение после обрыва: пауза растет от первой до наибольшей, попытки
+    // прекращаются, когда сервер уже не держит место (по умолчанию 30 секунд)
+    private static final long RECONNECT_FIRST_DELAY = 500;
+    private static final long RECONNECT_MAX_DELAY = 5000;
+    private static final long RECONNECT_TIMEOUT = 30000;
+
+    // Текущая партия по GAME_STARTED: номер, ключ возврата и сколько выстрелов клиент
+    // уже видел. Пишутся только потоком чтения; sessionId == 0 - возвращаться некуда.
+    private volatile long sessionId;
+    private volatile long resumeToken;
+    private volatile int movesSeen;
+    private volatile boolean resumePending;
 
     public BattleshipClient(String serverAddress, int serverPort) {
+        this(serverAddress, serverPort, WireCodecs.BINARY);
+    }
+
+    public BattleshipClient(String serverAddress, int serverPort, WireCodec preferredCodec) {
         this.serverAddress = serverAddress;
         this.serverPort = serverPort;
+        this.preferredCodec = preferredCodec;
     }
 
     public boolean connect() {
-        try {
-            clientSocket = new Socket();
-            clientSocket.connect(new InetSocketAddress(serverAddress, serverPort), CONNECTION_TIMEOUT);
-            clientSocket.setSoTimeout(READ_TIMEOUT);
+        if (preferredCodec != null) {
+            try {
+                openSocket();
+                negotiateCodec();
+                connected = true;
+                System.out.println("Подключено к серверу: " + serverAddress + ":" + serverPort +
+                        " (кодек " + codec.name() + ")");
+                return true;
+            } catch (IOException e) {
+                // Сервер без поддержки согласования закрывает соединение на приветствии
+                System.err.println("Не удалось согласовать кодек, используем сериализацию Java: " + e.getMessage());
+                cleanupConnection();
+            }
+        }
 
+        try {
+            openSocket();
             out = new ObjectOutputStream(clientSocket.getOutputStream());
             out.flush();
             in = new ObjectInputStream(clientSocket.getInputStream());
@@ -43,34 +101,110 @@ public class BattleshipClient {
         }
     }
 
+    private void openSocket() throws IOException {
+        inbox.clear();
+        readerStarted = false;
+        clientSocket = new Socket();
+        clientSocket.connect(new InetSocketAddress(serverAddress, serverPort), CONNECTION_TIMEOUT);
+        clientSocket.setSoTimeout(READ_TIMEOUT);
+    }
+
+    // Предлагаем серверу желаемый кодек и сериализацию Java как запасной вариант
+    private void negotiateCodec() throws IOException {
+        frameOut = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream()));
+        frameIn = new DataInputStream(new BufferedInputStream(clientSocket.getInputStream()));
+
+        if (preferredCodec == WireCodecs.JAVA_SERIALIZATION) {
+            frameOut.write(WireCodecs.hello(preferredCodec));
+        } else {
+            frameOut.write(WireCodecs.hello(preferredCodec, WireCodecs.JAVA_SERIALIZATION));
+        }
+        frameOut.flush();
+
+        byte[] reply = new byte[WireCodecs.REPLY_SIZE];
+        frameIn.readFully(reply);
+        if (reply[0] != WireCodecs.MAGIC_0 || reply[1] != WireCodecs.MAGIC_1) {
+            throw new StreamCorruptedException("Некорректный ответ сервера на приветствие");
+        }
+        codec = WireCodecs.forId(reply[3]);
+        if (codec == null) {
+            throw new StreamCorruptedException("Сервер не поддерживает предложенные кодеки");
+        }
+    }
+
+    public WireCodec getCodec() {
+        return codec;
+    }
+
     public boolean isConnected() {
         return connected && clientSocket != null && !clientSocket.isClosed();
     }
 
     public void sendData(GameData data) {
-        if (!isConnected()) {
-            System.err.println("Не удалось отправить данные: соединение отсутствует");
-            return;
-        }
+        // Пишут и EDT, и поток чтения (RESUME после переподключения): сообщения не должны
+        // перемешаться в потоке. Сама запись идет без монитора клиента, чтобы
+        // cleanupConnection мог закрыть сокет и прервать зависшую отправку.
+        synchronized (sendLock) {
+            WireCodec codec;
+            DataOutputStream frameOut;
+            ObjectOutputStream out;
+            // Потоки и кодек берем под тем же монитором, под которым их меняют
+            // connect и cleanupConnection
+            synchronized (this) {
+                if (!isConnected()) {
+                    System.err.println("Не удалось отправить данные: соединение отсутствует");
+                    return;
+                }
+                codec = this.codec;
+                frameOut = this.frameOut;
+                out = this.out;
+            }
 
-        try {
-            out.writeObject(data);
-            out.flush();
-            out.reset(); // Сбрасываем кеш объектов для предотвращения проблем с сериализацией
-        } catch (IOException e) {
-            System.err.println("Ошибка при отправке данных: " + e.getMessage());
-            cleanupConnection();
+            try {
+                if (codec != null) {
+                    MessageFrames.writeFrame(frameOut, data, codec);
+                    return;
+                }
+                out.writeObject(data);
+                out.flush();
+                out.reset(); // Сбрасываем кеш объектов для предотвращения проблем с сериализацией
+            } catch (IOException e) {
+                System.err.println("Ошибка при отправке данных: " + e.getMessage());
+                synchronized (this) {
+                    // Соединение могли уже закрыть и открыть заново - новое не трогаем
+                    if (this.frameOut == frameOut && this.out == out) {
+                        cleanupConnection();
+                    }
+                }
+            }
         }
     }
 
+    // Смотреть партию как зритель; 0 - самую смотримую из идущих. Сервер ответит
+    // снимком SPECTATE и дальше будет присылать выстрелы обоих игроков
+    public void spectate(long sessionId) {
+        GameData request = new GameData();
+        request.setGameState(GameData.GameState.SPECTATE);
+        request.setSessionId(sessionId);
+        sendData(request);
+    }
+
     public GameData receiveData() {
         if (!isConnected()) {
             System.err.println("Не удалось получить данные: соединение отсутствует");
             return null;
         }
+        if (isReaderStarted()) {
+            // Сокет уже читает фоновый поток
+            GameData data = receiveDataWithTimeout(READ_TIMEOUT);
+            if (data == null && isConnected()) {
+                System.err.println("Таймаут при ожидании данных от сервера");
+            }
+            return data;
+        }
 
         try {
-            return (GameData) in.readObject();
+            return readMessage();
         } catch (SocketTimeoutException e) {
             System.err.println("Таймаут при ожидании данных от сервера");
             return null;
@@ -81,43 +215,188 @@ public class BattleshipClient {
         }
     }
 
-    public GameData receiveDataWithTimeout(long timeout) {
-        long startTime = System.currentTimeMillis();
-        long endTime = startTime + timeout;
+    private GameData readMessage() throws IOException, ClassNotFoundException {
+        if (codec != null) {
+            return MessageFrames.readFrame(frameIn, codec);
+        }
+        return (GameData) in.readObject();
+    }
 
-        while (System.currentTimeMillis() < endTime) {
-            if (!isConnected()) return null;
+    // Запускает поток, который блокирующе читает сообщения и сразу передает их listener.
+    // Таймаут чтения снимается: простой соединения без ходов - нормальное состояние.
+    public synchronized void startReader(Listener listener) {
+        if (readerStarted) {
+            throw new IllegalStateException("Поток чтения уже запущен");
+        }
+        if (!isConnected()) {
+            listener.onDisconnected();
+            return;
+        }
+        readerStarted = true;
+        try {
+            clientSocket.setSoTimeout(0);
+        } catch (IOException e) {
+            System.err.println("Не удалось снять таймаут чтения: " + e.getMessage());
+        }
+        // Потоки берем сейчас: cleanupConnection обнуляет поля, пока поток чтения заблокирован
+        WireCodec readCodec = codec;
+        DataInputStream frames = frameIn;
+        ObjectInputStream objects = in;
+        Thread.ofVirtual().name("battleship-reader")
+                .start(() -> readLoop(listener, readCodec, frames, objects));
+    }
 
-            try {
-                if (in.available() > 0) {
-                    return (GameData) in.readObject();
+    private void readLoop(Listener listener, WireCodec readCodec, DataInputStream frames, ObjectInputStream objects) {
+        try {
+            while (connected) {
+                GameData data = readCodec != null
+                        ? MessageFrames.readFrame(frames, readCodec)
+                        : (GameData) objects.readObject();
+                trackSession(data);
+                listener.onMessage(data);
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            // Если соединение закрыли мы сами, connected уже сброшен
+            if (connected) {
+                System.err.println("Соединение с сервером потеряно: " + e);
+                cleanupConnection();
+                if (sessionId != 0 && reconnect(listener)) return;
+                listener.onDisconnected();
+            }
+        }
+    }
+
+    private void trackSession(GameData data) {
+        if (data == null || data.getGameState() == null) return;
+        switch (data.getGameState()) {
+            case GAME_STARTED:
+                sessionId = data.getSessionId();
+                resumeToken = data.getResumeToken();
+                movesSeen = 0;
+                break;
+            case RESUME:
+                resumePending = false;
+                movesSeen = data.getMoveCount();
+                break;
+            case HIT:
+            case MISS:
+                movesSeen++;
+                break;
+            case ERROR:
+                // Сервер не нашел партию, в которую мы возвращались
+                if (resumePending) {
+                    resumePending = false;
+                    sessionId = 0;
                 }
-                TimeUnit.MILLISECONDS.sleep(100);
-            } catch (Exception e) {
-                System.err.println("Ошибка при получении данных с таймаутом: " + e.getMessage());
+                break;
+            case GAME_OVER:
+            case OPPONENT_DISCONNECTED:
+                sessionId = 0;
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Вызывается потоком чтения после обрыва: подключается заново, просит сервер вернуть
+    // в партию и запускает новый поток чтения с тем же listener. Сервер ответит снимком
+    // партии и выстрелами, сделанными после movesSeen.
+    private boolean reconnect(Listener listener) {
+        listener.onReconnecting();
+        long deadline = System.currentTimeMillis() + RECONNECT_TIMEOUT;
+        long delay = RECONNECT_FIRST_DELAY;
+        while (sessionId != 0 && System.currentTimeMillis() < deadline) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            delay = Math.min(delay * 2, RECONNECT_MAX_DELAY);
+            long id = sessionId;
+            if (id == 0 || !connect()) continue;
+            if (sessionId == 0) {
+                // Пока подключались, клиента отключили
                 cleanupConnection();
+                return false;
+            }
+
+            resumePending = true;
+            GameData resume = new GameData();
+            resume.setGameState(GameData.GameState.RESUME);
+            resume.setSessionId(id);
+            resume.setResumeToken(resumeToken);
+            resume.setMoveCount(movesSeen);
+            sendData(resume);
+            if (isConnected()) {
+                System.out.println("Переподключились, возвращаемся в партию #" + id);
+                startReader(listener);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Ждет следующее сообщение не дольше timeout миллисекунд. Сообщение возвращается,
+    // как только пришли его байты; null - таймаут или соединение закрыто.
+    public GameData receiveDataWithTimeout(long timeout) {
+        synchronized (this) {
+            if (!readerStarted) {
+                if (!isConnected()) return null;
+                startReader(new Listener() {
+                    @Override
+                    public void onMessage(GameData data) {
+                        inbox.add(data);
+                    }
+
+                    @Override
+                    public void onDisconnected() {
+                        // Метку CLOSED кладет cleanupConnection
+                    }
+                });
+            }
+        }
+
+        try {
+            GameData data = inbox.poll(timeout, TimeUnit.MILLISECONDS);
+            if (data == CLOSED) {
+                inbox.add(CLOSED); // Оставляем метку для следующих вызовов
                 return null;
             }
+            return data;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         }
-        return null; // Таймаут истек
+    }
+
+    private synchronized boolean isReaderStarted() {
+        return readerStarted;
     }
 
     public void disconnect() {
+        sessionId = 0; // Сами ушли - переподключаться не нужно
         cleanupConnection();
         System.out.println("Отключено от сервера");
     }
 
-    private void cleanupConnection() {
+    private synchronized void cleanupConnection() {
         connected = false;
+        inbox.add(CLOSED); // Будим ожидающих receiveDataWithTimeout
         try {
             if (in != null) in.close();
             if (out != null) out.close();
+            if (frameIn != null) frameIn.close();
+            if (frameOut != null) frameOut.close();
             if (clientSocket != null) clientSocket.close();
         } catch (IOException e) {
             System.err.println("Ошибка при закрытии соединения: " + e.getMessage());
         } finally {
             in = null;
             out = null;
+            frameIn = null;
+            frameOut = null;
+            codec = null;
             clientSocket = null;
         }
     }
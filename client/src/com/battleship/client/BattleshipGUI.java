@@ -6,7 +6,9 @@ import com.battleship.server.GameData;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class BattleshipGUI extends JFrame {
     private static final String TITLE = "Морской Бой";
@@ -16,7 +18,9 @@ public class BattleshipGUI extends JFrame {
     private BattleshipServer server;
     private BoardPanel gamePanel;
     private ExecutorService networkExecutor;
-    private ScheduledExecutorService gameUpdateExecutor;
+    // Сообщения из потока чтения копятся здесь и применяются в EDT пачкой
+    private final Queue<GameData> pendingUpdates = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
     private volatile boolean connected = false;
     private volatile boolean isHost = false;
 
@@ -24,7 +28,6 @@ public class BattleshipGUI extends JFrame {
         super(TITLE);
 
         networkExecutor = Executors.newSingleThreadExecutor();
-        gameUpdateExecutor = Executors.newSingleThreadScheduledExecutor();
 
         initUI();
     }
@@ -226,24 +229,46 @@ public class BattleshipGUI extends JFrame {
     }
 
     private void startGameUpdates() {
-        // Останавливаем предыдущий исполнитель, если он существует
-        if (gameUpdateExecutor != null && !gameUpdateExecutor.isShutdown()) {
-            gameUpdateExecutor.shutdownNow();
-        }
+        pendingUpdates.clear();
+        BattleshipClient current = client;
+        current.startReader(new BattleshipClient.Listener() {
+            @Override
+            public void onMessage(GameData data) {
+                pendingUpdates.add(data);
+                // Один invokeLater на пачку: пока EDT не разобрал очередь, новые задачи не ставим
+                if (drainScheduled.compareAndSet(false, true)) {
+                    SwingUtilities.invokeLater(BattleshipGUI.this::drainUpdates);
+                }
+            }
 
-        gameUpdateExecutor = Executors.newSingleThreadScheduledExecutor();
+            @Override
+            public void onReconnecting() {
+                SwingUtilities.invokeLater(() -> {
+                    if (client != current) return;
+                    gamePanel.showStatus("Связь с сервером потеряна, переподключаемся...");
+                });
+            }
 
-        // Запускаем периодическое обновление игры каждые 100 мс
-        gameUpdateExecutor.scheduleAtFixedRate(() -> {
-            if (connected && client != null) {
-                GameData data = client.receiveData();
-                if (data != null) {
-                    SwingUtilities.invokeLater(() -> {
-                        gamePanel.updateGame(data);
-                    });
-                }
+            @Override
+            public void onDisconnected() {
+                SwingUtilities.invokeLater(() -> {
+                    if (client != current) return; // Уже подключились заново
+                    connected = false;
+                    setTitle(TITLE);
+                    JOptionPane.showMessageDialog(BattleshipGUI.this, "Соединение с сервером потеряно",
+                            "Ошибка", JOptionPane.ERROR_MESSAGE);
+                });
             }
-        }, 0, 100, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    // Выполняется в EDT: применяет все накопившиеся сообщения по порядку
+    private void drainUpdates() {
+        drainScheduled.set(false);
+        GameData data;
+        while ((data = pendingUpdates.poll()) != null) {
+            gamePanel.updateGame(data);
+        }
     }
 
     public void sendMove(GameData moveData) {
@@ -254,6 +279,11 @@ public class BattleshipGUI extends JFrame {
         }
     }
 
+    // Панель сменила размер под правила партии
+    public void boardResized() {
+        pack();
+    }
+
     public void resetGame() {
         if (connected) {
             // Отправляем сигнал о сбросе игры
@@ -279,12 +309,7 @@ public class BattleshipGUI extends JFrame {
     }
 
     private void shutdown() {
-        // Останавливаем игровые обновления
-        if (gameUpdateExecutor != null) {
-            gameUpdateExecutor.shutdownNow();
-        }
-
-        // Отключаемся от сервера
+        // Отключаемся от сервера, поток чтения завершится вместе с сокетом
         if (client != null) {
             client.disconnect();
         }
@@ -307,7 +332,8 @@ public class BattleshipGUI extends JFrame {
                         "   - 1 корабль длиной 4 клетки\n" +
                         "   - 2 корабля длиной 3 клетки\n" +
                         "   - 3 корабля длиной 2 клетки\n" +
-                        "   - 4 корабля длиной 1 клетка\n\n" +
+                        "   - 4 корабля длиной 1 клетка\n" +
+                        "   Сервер может назначить другое поле и флот - они объявляются в начале партии.\n\n" +
                         "2. Корабли не могут соприкасаться друг с другом даже углами.\n\n" +
                         "3. Игроки ходят по очереди, выбирая клетку на поле противника.\n\n" +
                         "4. Если игрок попадает в корабль противника, он получает право на дополнительный ход.\n\n" +
@@ -1,6 +1,8 @@
 package com.battleship.client;
 
 import com.battleship.common.Cell;
+import com.battleship.common.PackedBoard;
+import com.battleship.common.Ruleset;
 import com.battleship.common.Ship;
 import com.battleship.server.GameData;
 
@@ -16,13 +18,21 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 public class BoardPanel extends JPanel {
-    private static final int CELL_SIZE = 40;
-    private static final int GRID_SIZE = 10;
-    private static final int BOARD_SIZE = CELL_SIZE * GRID_SIZE;
+    private static final int MAX_CELL_SIZE = 40;
+    private static final int MIN_CELL_SIZE = 14;
+    private static final int TARGET_BOARD_SIZE = 400; // Поле 10x10 и меньше рисуется клетками 40 пикселей
     private static final int MARGIN = 50;
 
-    private int[][] playerBoard;
-    private int[][] opponentBoard;
+    // Размеры зависят от правил партии и меняются в applyRuleset
+    private Ruleset ruleset = Ruleset.STANDARD;
+    private int gridWidth;
+    private int gridHeight;
+    private int cellSize;
+    private int boardWidth; // В пикселях
+    private int boardHeight;
+
+    private PackedBoard playerBoard;
+    private PackedBoard opponentBoard;
     private GameButton[][] playerButtons;
     private GameButton[][] opponentButtons;
 
@@ -36,61 +46,89 @@ public class BoardPanel extends JPanel {
     private boolean placingShips = true;
     private boolean gameActive = false;
 
-    private int[] shipSizes = {4, 3, 3, 2, 2, 2, 1, 1, 1, 1}; // Размеры кораблей
+    private int[] shipSizes; // Размеры кораблей по правилам партии
     private int currentShipIndex = 0;
     private boolean isHorizontal = true; // Ориентация корабля при размещении
 
     public BoardPanel(BattleshipGUI game) {
         this.game = game;
-        this.playerBoard = new int[GRID_SIZE][GRID_SIZE];
-        this.opponentBoard = new int[GRID_SIZE][GRID_SIZE];
-        this.playerButtons = new GameButton[GRID_SIZE][GRID_SIZE];
-        this.opponentButtons = new GameButton[GRID_SIZE][GRID_SIZE];
-
         setLayout(null); // Используем абсолютное позиционирование
-        setPreferredSize(new Dimension(2 * BOARD_SIZE + 3 * MARGIN, BOARD_SIZE + 3 * MARGIN));
+        buildBoards();
+        addKeyListener();
+    }
 
+    // Поля, кнопки и метки под размеры текущих правил
+    private void buildBoards() {
+        gridWidth = ruleset.getWidth();
+        gridHeight = ruleset.getHeight();
+        cellSize = Math.max(MIN_CELL_SIZE,
+                Math.min(MAX_CELL_SIZE, TARGET_BOARD_SIZE / Math.max(gridWidth, gridHeight)));
+        boardWidth = cellSize * gridWidth;
+        boardHeight = cellSize * gridHeight;
+        shipSizes = ruleset.getFleet();
+
+        playerBoard = ruleset.newBoard();
+        opponentBoard = ruleset.newBoard();
+        playerButtons = new GameButton[gridHeight][gridWidth];
+        opponentButtons = new GameButton[gridHeight][gridWidth];
+
+        removeAll();
+        setPreferredSize(new Dimension(2 * boardWidth + 3 * MARGIN, boardHeight + 3 * MARGIN));
         initializeComponents();
         createBoards();
-        addKeyListener();
+    }
+
+    // Правила приходят в GAME_STARTED. Если они отличаются от текущих, поля пересоздаются
+    // и корабли нужно расставить заново; возвращает true в этом случае.
+    private boolean applyRuleset(Ruleset rules) {
+        if (rules == null || rules.equals(ruleset)) {
+            return false;
+        }
+        ruleset = rules;
+        buildBoards();
+        currentShipIndex = 0;
+        placingShips = true;
+        revalidate();
+        game.boardResized();
+        return true;
     }
 
     private void initializeComponents() {
         // Метки для досок
         JLabel playerBoardLabel = new JLabel("Ваше поле", SwingConstants.CENTER);
-        playerBoardLabel.setBounds(MARGIN, 10, BOARD_SIZE, 30);
+        playerBoardLabel.setBounds(MARGIN, 10, boardWidth, 30);
         add(playerBoardLabel);
 
         JLabel opponentBoardLabel = new JLabel("Поле противника", SwingConstants.CENTER);
-        opponentBoardLabel.setBounds(BOARD_SIZE + 2 * MARGIN, 10, BOARD_SIZE, 30);
+        opponentBoardLabel.setBounds(boardWidth + 2 * MARGIN, 10, boardWidth, 30);
         add(opponentBoardLabel);
 
         // Информационные метки
         statusLabel = new JLabel("Разместите корабли. [R] для поворота", SwingConstants.CENTER);
-        statusLabel.setBounds(MARGIN, BOARD_SIZE + MARGIN + 10, 2 * BOARD_SIZE + MARGIN, 30);
+        statusLabel.setBounds(MARGIN, boardHeight + MARGIN + 10, 2 * boardWidth + MARGIN, 30);
         add(statusLabel);
 
         playerScoreLabel = new JLabel("Ваш счет: 0", SwingConstants.LEFT);
-        playerScoreLabel.setBounds(MARGIN, BOARD_SIZE + MARGIN + 40, BOARD_SIZE, 30);
+        playerScoreLabel.setBounds(MARGIN, boardHeight + MARGIN + 40, boardWidth, 30);
         add(playerScoreLabel);
 
         opponentScoreLabel = new JLabel("Счет противника: 0", SwingConstants.RIGHT);
-        opponentScoreLabel.setBounds(BOARD_SIZE + MARGIN, BOARD_SIZE + MARGIN + 40, BOARD_SIZE, 30);
+        opponentScoreLabel.setBounds(boardWidth + MARGIN, boardHeight + MARGIN + 40, boardWidth, 30);
         add(opponentScoreLabel);
 
         // Кнопка сброса
         resetButton = new JButton("Начать заново");
-        resetButton.setBounds((2 * BOARD_SIZE + 3 * MARGIN) / 2 - 75, BOARD_SIZE + MARGIN + 70, 150, 30);
+        resetButton.setBounds((2 * boardWidth + 3 * MARGIN) / 2 - 75, boardHeight + MARGIN + 70, 150, 30);
         resetButton.addActionListener(e -> resetGame());
         add(resetButton);
     }
 
     private void createBoards() {
         // Создаем поле игрока
-        for (int y = 0; y < GRID_SIZE; y++) {
-            for (int x = 0; x < GRID_SIZE; x++) {
+        for (int y = 0; y < gridHeight; y++) {
+            for (int x = 0; x < gridWidth; x++) {
                 GameButton button = new GameButton(x, y);
-                button.setBounds(MARGIN + x * CELL_SIZE, MARGIN + y * CELL_SIZE, CELL_SIZE, CELL_SIZE);
+                button.setBounds(MARGIN + x * cellSize, MARGIN + y * cellSize, cellSize, cellSize);
                 button.addActionListener(e -> handlePlayerBoardClick(button.getXPos(), button.getYPos()));
                 button.addMouseListener(new MouseAdapter() {
                     @Override
@@ -113,10 +151,10 @@ public class BoardPanel extends JPanel {
         }
 
         // Создаем поле противника
-        for (int y = 0; y < GRID_SIZE; y++) {
-            for (int x = 0; x < GRID_SIZE; x++) {
+        for (int y = 0; y < gridHeight; y++) {
+            for (int x = 0; x < gridWidth; x++) {
                 GameButton button = new GameButton(x, y);
-                button.setBounds(BOARD_SIZE + 2 * MARGIN + x * CELL_SIZE, MARGIN + y * CELL_SIZE, CELL_SIZE, CELL_SIZE);
+                button.setBounds(boardWidth + 2 * MARGIN + x * cellSize, MARGIN + y * cellSize, cellSize, cellSize);
                 button.setEnabled(false); // Изначально поле противника неактивно
                 button.addActionListener(e -> handleOpponentBoardClick(button.getXPos(), button.getYPos()));
                 opponentButtons[y][x] = button;
@@ -148,7 +186,7 @@ public class BoardPanel extends JPanel {
     }
 
     private void handleOpponentBoardClick(int x, int y) {
-        if (gameActive && playerTurn.get() && opponentBoard[y][x] == 0) {
+        if (gameActive && playerTurn.get() && opponentBoard.get(x, y) == PackedBoard.EMPTY) {
             // Отправляем ход на сервер
             GameData moveData = new GameData();
             moveData.setGameState(GameData.GameState.PLAYER_TURN);
@@ -181,7 +219,7 @@ public class BoardPanel extends JPanel {
             int x = isHorizontal ? startX + i : startX;
             int y = isHorizontal ? startY : startY + i;
 
-            playerBoard[y][x] = 1; // 1 означает корабль
+            playerBoard.set(x, y, PackedBoard.SHIP);
             playerButtons[y][x].setState(1);
         }
 
@@ -200,9 +238,9 @@ public class BoardPanel extends JPanel {
     private boolean canPlaceShip(int startX, int startY, int shipSize, boolean horizontal) {
         // Проверяем, не выходит ли корабль за границы
         if (horizontal) {
-            if (startX + shipSize > GRID_SIZE) return false;
+            if (startX + shipSize > gridWidth) return false;
         } else {
-            if (startY + shipSize > GRID_SIZE) return false;
+            if (startY + shipSize > gridHeight) return false;
         }
 
         // Проверяем, не пересекается ли корабль с другими кораблями и соблюдается ли дистанция
@@ -211,8 +249,8 @@ public class BoardPanel extends JPanel {
                 int x = horizontal ? startX + i : startX + j;
                 int y = horizontal ? startY + j : startY + i;
 
-                if (x >= 0 && x < GRID_SIZE && y >= 0 && y < GRID_SIZE) {
-                    if (playerBoard[y][x] == 1) return false;
+                if (x >= 0 && x < gridWidth && y >= 0 && y < gridHeight) {
+                    if (playerBoard.get(x, y) == PackedBoard.SHIP) return false;
                 }
             }
         }
@@ -233,7 +271,7 @@ public class BoardPanel extends JPanel {
             int x = isHorizontal ? startX + i : startX;
             int y = isHorizontal ? startY : startY + i;
 
-            if (x < GRID_SIZE && y < GRID_SIZE) {
+            if (x < gridWidth && y < gridHeight) {
                 if (canPlace) {
                     playerButtons[y][x].setBackground(new Color(100, 200, 100)); // Зеленый - можно разместить
                 } else {
@@ -244,9 +282,9 @@ public class BoardPanel extends JPanel {
     }
 
     private void clearShipPlacementPreview() {
-        for (int y = 0; y < GRID_SIZE; y++) {
-            for (int x = 0; x < GRID_SIZE; x++) {
-                if (playerBoard[y][x] == 0) {
+        for (int y = 0; y < gridHeight; y++) {
+            for (int x = 0; x < gridWidth; x++) {
+                if (playerBoard.get(x, y) == PackedBoard.EMPTY) {
                     playerButtons[y][x].setBackground(null); // Восстанавливаем исходный цвет
                 }
             }
@@ -255,9 +293,19 @@ public class BoardPanel extends JPanel {
 
     private void finishShipPlacement() {
         placingShips = false;
-        statusLabel.setText("Все корабли размещены. Ожидание противника...");
+        if (gameActive) {
+            // Расстановка после GAME_STARTED: игра уже идет
+            updateStatusMessage();
+            setOpponentBoardEnabled(playerTurn.get());
+        } else {
+            statusLabel.setText("Все корабли размещены. Ожидание противника...");
+        }
 
-        // Подготавливаем и отправляем данные о размещении кораблей
+        sendPlacement();
+    }
+
+    // Подготавливаем и отправляем данные о размещении кораблей
+    private void sendPlacement() {
         GameData shipData = new GameData();
         shipData.setGameState(GameData.GameState.PLACING_SHIPS);
         shipData.setPlayerBoard(playerBoard);
@@ -265,6 +313,10 @@ public class BoardPanel extends JPanel {
         game.sendMove(shipData);
     }
 
+    public void showStatus(String text) {
+        statusLabel.setText(text);
+    }
+
     public void updateGame(GameData data) {
         if (data == null) return;
 
@@ -272,50 +324,61 @@ public class BoardPanel extends JPanel {
             case GAME_STARTED:
                 gameActive = true;
                 playerTurn.set(data.isPlayerTurn());
-                updateStatusMessage();
+                if (applyRuleset(data.getRuleset())) {
+                    statusLabel.setText("Правила партии: поле " + gridWidth + "x" + gridHeight
+                            + ". Разместите корабли. [R] для поворота");
+                } else if (placingShips) {
+                    statusLabel.setText("Соперник найден. Разместите корабли. [R] для поворота");
+                } else {
+                    updateStatusMessage();
+                }
                 setOpponentBoardEnabled(data.isPlayerTurn());
                 break;
 
             case PLAYER_TURN:
-                processMove(data.getX(), data.getY(), data.isPlayerTurn());
                 playerTurn.set(true);
                 updateStatusMessage();
                 setOpponentBoardEnabled(true);
                 break;
 
             case OPPONENT_TURN:
-                processMove(data.getX(), data.getY(), !data.isPlayerTurn());
                 playerTurn.set(false);
                 updateStatusMessage();
                 setOpponentBoardEnabled(false);
                 break;
 
+            // Результаты выстрелов приходят от сервера, isPlayerTurn означает "это ваш выстрел".
+            // После попадания ход остается у стрелявшего, после промаха переходит к другому игроку.
             case HIT:
                 if (data.isPlayerTurn()) {
                     // Игрок попал в корабль противника
-                    opponentBoard[data.getY()][data.getX()] = 2; // 2 - попадание
+                    opponentBoard.set(data.getX(), data.getY(), PackedBoard.HIT);
                     opponentButtons[data.getY()][data.getX()].setState(2);
                     statusLabel.setText("Вы попали! Ваш ход.");
                 } else {
                     // Противник попал в корабль игрока
-                    playerBoard[data.getY()][data.getX()] = 2; // 2 - попадание
+                    playerBoard.set(data.getX(), data.getY(), PackedBoard.HIT);
                     playerButtons[data.getY()][data.getX()].setState(2);
                     statusLabel.setText("Противник попал в ваш корабль!");
                 }
+                playerTurn.set(data.isPlayerTurn());
+                setOpponentBoardEnabled(data.isPlayerTurn());
                 break;
 
             case MISS:
                 if (data.isPlayerTurn()) {
                     // Игрок промахнулся
-                    opponentBoard[data.getY()][data.getX()] = 3; // 3 - промах
+                    opponentBoard.set(data.getX(), data.getY(), PackedBoard.MISS);
                     opponentButtons[data.getY()][data.getX()].setState(3);
                     statusLabel.setText("Вы промахнулись. Ход противника.");
                 } else {
                     // Противник промахнулся
-                    playerBoard[data.getY()][data.getX()] = 3; // 3 - промах
+                    playerBoard.set(data.getX(), data.getY(), PackedBoard.MISS);
                     playerButtons[data.getY()][data.getX()].setState(3);
                     statusLabel.setText("Противник промахнулся! Ваш ход.");
                 }
+                playerTurn.set(!data.isPlayerTurn());
+                setOpponentBoardEnabled(!data.isPlayerTurn());
                 break;
 
             case SHIP_SUNK:
@@ -342,33 +405,70 @@ public class BoardPanel extends JPanel {
                 setOpponentBoardEnabled(false);
                 break;
 
+            case RESUME:
+                // Возврат в партию после обрыва связи: поля, очередь хода и счет - из снимка сервера
+                applyRuleset(data.getRuleset());
+                gameActive = true;
+                playerTurn.set(data.isPlayerTurn());
+                // Поля нет в снимке, если сервер еще не получил расстановку (свое) или
+                // соперник еще не расставил корабли (чужое)
+                if (data.hasPlayerBoard()) {
+                    playerBoard.copyFrom(data.getPlayerBoard());
+                    placingShips = false;
+                } else if (!placingShips) {
+                    // Расстановка не дошла до сервера - отправляем ее снова
+                    sendPlacement();
+                }
+                if (data.hasOpponentBoard()) {
+                    opponentBoard.copyFrom(data.getOpponentBoard());
+                }
+                refreshButtons();
+                int missed = data.getMissedMoves().length;
+                if (placingShips) {
+                    statusLabel.setText("Связь восстановлена. Разместите корабли. [R] для поворота");
+                } else if (missed > 0) {
+                    statusLabel.setText("Связь восстановлена, пропущено выстрелов: " + missed + ". "
+                            + (playerTurn.get() ? "Ваш ход!" : "Ход противника."));
+                } else {
+                    updateStatusMessage();
+                }
+                setOpponentBoardEnabled(playerTurn.get());
+                break;
+
             case ERROR:
                 statusLabel.setText("Ошибка: " + data.getErrorMessage());
+                // Сервер отклонил выстрел - возвращаем возможность сходить
+                setOpponentBoardEnabled(gameActive && playerTurn.get());
                 break;
         }
 
-        // Обновляем счет
-        playerScoreLabel.setText("Ваш счет: " + data.getPlayerScore());
-        opponentScoreLabel.setText("Счет противника: " + data.getOpponentScore());
+        // Счет несут только результаты выстрелов и снимок партии, в остальных сообщениях там нули
+        switch (data.getGameState()) {
+            case HIT:
+            case MISS:
+            case SHIP_SUNK:
+            case GAME_OVER:
+            case RESUME:
+                playerScoreLabel.setText("Ваш счет: " + data.getPlayerScore());
+                opponentScoreLabel.setText("Счет противника: " + data.getOpponentScore());
+                break;
+            default:
+                break;
+        }
 
         repaint();
     }
 
-    private void processMove(int x, int y, boolean isPlayerMove) {
-        if (isPlayerMove) {
-            // Обновляем поле противника
-            if (opponentBoard[y][x] == 0) {
-                opponentBoard[y][x] = 3; // Предполагаем промах, сервер скорректирует если попадание
-                opponentButtons[y][x].setState(3);
-            }
-        } else {
-            // Обновляем поле игрока
-            if (playerBoard[y][x] == 1) {
-                playerBoard[y][x] = 2; // Попадание
-                playerButtons[y][x].setState(2);
-            } else if (playerBoard[y][x] == 0) {
-                playerBoard[y][x] = 3; // Промах
-                playerButtons[y][x].setState(3);
+    // Кнопки по содержимому полей; обстрелянные клетки противника больше не нажимаются
+    private void refreshButtons() {
+        for (int y = 0; y < gridHeight; y++) {
+            for (int x = 0; x < gridWidth; x++) {
+                playerButtons[y][x].setState(playerBoard.get(x, y));
+                int state = opponentBoard.get(x, y);
+                opponentButtons[y][x].setState(state);
+                if (state != PackedBoard.EMPTY) {
+                    opponentButtons[y][x].setEnabled(false);
+                }
             }
         }
     }
@@ -382,9 +482,11 @@ public class BoardPanel extends JPanel {
     }
 
     private void setOpponentBoardEnabled(boolean enabled) {
-        for (int y = 0; y < GRID_SIZE; y++) {
-            for (int x = 0; x < GRID_SIZE; x++) {
-                if (opponentBoard[y][x] == 0) { // Только неатакованные клетки
+        // Стрелять можно только после расстановки своих кораблей
+        enabled = enabled && !placingShips;
+        for (int y = 0; y < gridHeight; y++) {
+            for (int x = 0; x < gridWidth; x++) {
+                if (opponentBoard.get(x, y) == PackedBoard.EMPTY) { // Только неатакованные клетки
                     opponentButtons[y][x].setEnabled(enabled);
                 }
             }
@@ -393,11 +495,10 @@ public class BoardPanel extends JPanel {
 
     private void resetGame() {
         // Очищаем доски
-        for (int y = 0; y < GRID_SIZE; y++) {
-            for (int x = 0; x < GRID_SIZE; x++) {
-                playerBoard[y][x] = 0;
-                opponentBoard[y][x] = 0;
-
+        playerBoard.clear();
+        opponentBoard.clear();
+        for (int y = 0; y < gridHeight; y++) {
+            for (int x = 0; x < gridWidth; x++) {
                 playerButtons[y][x].setState(0);
                 playerButtons[y][x].setEnabled(true);
 
@@ -427,38 +528,45 @@ public class BoardPanel extends JPanel {
 
         // Рисуем сетку для доски игрока
         g.setColor(Color.DARK_GRAY);
-        for (int i = 0; i <= GRID_SIZE; i++) {
+        for (int i = 0; i <= gridHeight; i++) {
             // Горизонтальные линии
-            g.drawLine(MARGIN, MARGIN + i * CELL_SIZE, MARGIN + BOARD_SIZE, MARGIN + i * CELL_SIZE);
-            // Вертикальные линии
-            g.drawLine(MARGIN + i * CELL_SIZE, MARGIN, MARGIN + i * CELL_SIZE, MARGIN + BOARD_SIZE);
+            g.drawLine(MARGIN, MARGIN + i * cellSize, MARGIN + boardWidth, MARGIN + i * cellSize);
+            g.drawLine(boardWidth + 2 * MARGIN, MARGIN + i * cellSize,
+                    boardWidth + 2 * MARGIN + boardWidth, MARGIN + i * cellSize);
         }
-
-        // Рисуем сетку для доски противника
-        for (int i = 0; i <= GRID_SIZE; i++) {
-            // Горизонтальные линии
-            g.drawLine(BOARD_SIZE + 2 * MARGIN, MARGIN + i * CELL_SIZE,
-                    BOARD_SIZE + 2 * MARGIN + BOARD_SIZE, MARGIN + i * CELL_SIZE);
+        for (int i = 0; i <= gridWidth; i++) {
             // Вертикальные линии
-            g.drawLine(BOARD_SIZE + 2 * MARGIN + i * CELL_SIZE, MARGIN,
-                    BOARD_SIZE + 2 * MARGIN + i * CELL_SIZE, MARGIN + BOARD_SIZE);
+            g.drawLine(MARGIN + i * cellSize, MARGIN, MARGIN + i * cellSize, MARGIN + boardHeight);
+            g.drawLine(boardWidth + 2 * MARGIN + i * cellSize, MARGIN,
+                    boardWidth + 2 * MARGIN + i * cellSize, MARGIN + boardHeight);
         }
 
         // Добавляем буквы и цифры для координат
-        g.setFont(new Font("Arial", Font.BOLD, 14));
-
-        String[] letters = {"A", "B", "C", "D", "E", "F", "G", "H", "I", "J"};
-
-        for (int i = 0; i < GRID_SIZE; i++) {
-            // Буквы для доски игрока
-            g.drawString(letters[i], MARGIN + i * CELL_SIZE + CELL_SIZE/2 - 5, MARGIN - 10);
-            // Цифры для доски игрока
-            g.drawString(Integer.toString(i+1), MARGIN - 20, MARGIN + i * CELL_SIZE + CELL_SIZE/2 + 5);
+        g.setFont(new Font("Arial", Font.BOLD, cellSize >= 30 ? 14 : 10));
+        FontMetrics metrics = g.getFontMetrics();
+
+        for (int i = 0; i < gridWidth; i++) {
+            String letter = columnName(i);
+            int offset = (cellSize - metrics.stringWidth(letter)) / 2;
+            // Буквы для доски игрока и доски противника
+            g.drawString(letter, MARGIN + i * cellSize + offset, MARGIN - 10);
+            g.drawString(letter, boardWidth + 2 * MARGIN + i * cellSize + offset, MARGIN - 10);
+        }
+        for (int i = 0; i < gridHeight; i++) {
+            String number = Integer.toString(i + 1);
+            int baseline = MARGIN + i * cellSize + (cellSize + metrics.getAscent()) / 2 - 1;
+            // Цифры для доски игрока и доски противника
+            g.drawString(number, MARGIN - 8 - metrics.stringWidth(number), baseline);
+            g.drawString(number, boardWidth + 2 * MARGIN - 8 - metrics.stringWidth(number), baseline);
+        }
+    }
 
-            // Буквы для доски противника
-            g.drawString(letters[i], BOARD_SIZE + 2 * MARGIN + i * CELL_SIZE + CELL_SIZE/2 - 5, MARGIN - 10);
-            // Цифры для доски противника
-            g.drawString(Integer.toString(i+1), BOARD_SIZE + 2 * MARGIN - 20, MARGIN + i * CELL_SIZE + CELL_SIZE/2 + 5);
+    // Обозначение столбца: A..Z, затем AA, AB, ...
+    private static String columnName(int column) {
+        StringBuilder name = new StringBuilder();
+        for (int i = column + 1; i > 0; i = (i - 1) / 26) {
+            name.insert(0, (char) ('A' + (i - 1) % 26));
         }
+        return name.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+package com.battleship.common;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+// Множество клеток поля в виде битовой маски: клетка (x, y) - бит y * width + x.
+// Поле 10x10 занимает два long.
+public class Bitboard implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int width;
+    private final int height;
+    private final long[] words;
+
+    public Bitboard(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.words = new long[(width * height + 63) >>> 6];
+    }
+
+    public Bitboard(Bitboard other) {
+        this.width = other.width;
+        this.height = other.height;
+        this.words = other.words.clone();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int size() {
+        return width * height;
+    }
+
+    public int index(int x, int y) {
+        return y * width + x;
+    }
+
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    public boolean get(int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public boolean get(int x, int y) {
+        return get(index(x, y));
+    }
+
+    public void set(int index) {
+        words[index >>> 6] |= 1L << index;
+    }
+
+    public void set(int x, int y) {
+        set(index(x, y));
+    }
+
+    public void clear(int index) {
+        words[index >>> 6] &= ~(1L << index);
+    }
+
+    public void clearAll() {
+        Arrays.fill(words, 0);
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) return false;
+        }
+        return true;
+    }
+
+    public int cardinality() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public boolean intersects(Bitboard other) {
+        for (int i = 0; i < words.length; i++) {
+            if ((words[i] & other.words[i]) != 0) return true;
+        }
+        return false;
+    }
+
+    public boolean containsAll(Bitboard other) {
+        for (int i = 0; i < words.length; i++) {
+            if ((other.words[i] & ~words[i]) != 0) return false;
+        }
+        return true;
+    }
+
+    public void or(Bitboard other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= other.words[i];
+        }
+    }
+
+    public void andNot(Bitboard other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= ~other.words[i];
+        }
+    }
+
+    // Индекс следующей занятой клетки начиная с from или -1
+    public int nextSetBit(int from) {
+        int wordIndex = from >>> 6;
+        if (wordIndex >= words.length) return -1;
+
+        long word = words[wordIndex] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                int index = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                return index < size() ? index : -1;
+            }
+            if (++wordIndex == words.length) return -1;
+            word = words[wordIndex];
+        }
+    }
+
+    public int wordCount() {
+        return words.length;
+    }
+
+    public long word(int i) {
+        return words[i];
+    }
+
+    // Биты за пределами поля в последнем слове отбрасываются
+    public void setWord(int i, long value) {
+        int cellsInWord = Math.min(64, width * height - (i << 6));
+        words[i] = cellsInWord == 64 ? value : value & ((1L << cellsInWord) - 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Bitboard)) return false;
+        Bitboard other = (Bitboard) o;
+        return width == other.width && height == other.height && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * width + height) + Arrays.hashCode(words);
+    }
+}
@@ -1,12 +1,259 @@
 package com.battleship.common;
 
 import javax.xml.parsers.*;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.w3c.dom.*;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+// Загрузка расстановок флота из XML. Файл содержит один <fleet> или несколько внутри
+// любого корневого элемента (например, <fleets>); у <fleet> необязательные атрибуты
+// width и height, по умолчанию стандартное поле.
+//
+// Разбор потоковый (StAX): дерево документа не строится, геометрия каждого корабля
+// проверяется сразу при чтении - в пределах поля, без пересечений и касаний с
+// предыдущими кораблями того же флота. Разобранные флоты неизменяемы и кэшируются по
+// пути файла; при изменении времени модификации или размера файл читается заново.
+//
+// Правила партии задаются элементом <ruleset width="20" height="20"> с элементами
+// <ships size="4" count="2"/>; они кэшируются так же.
 public class FleetConfigParser {
-    public static List<Ship> parseFleetConfig(String xmlFile) throws Exception {
+    private static final XMLInputFactory XML_INPUT = createInputFactory();
+    private static final Map<Path, CachedConfig<List<List<Ship>>>> FLEETS = new ConcurrentHashMap<>();
+    private static final Map<Path, CachedConfig<Ruleset>> RULESETS = new ConcurrentHashMap<>();
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    private static final class CachedConfig<T> {
+        final FileTime modified;
+        final long size;
+        final T value;
+
+        CachedConfig(FileTime modified, long size, T value) {
+            this.modified = modified;
+            this.size = size;
+            this.value = value;
+        }
+    }
+
+    private interface Parser<T> {
+        T parse(InputStream in, String source) throws IOException;
+    }
+
+    /** Первый флот файла; результат кэшируется и неизменяем */
+    public static List<Ship> parseFleetConfig(String xmlFile) throws IOException {
+        List<List<Ship>> fleets = loadFleets(Paths.get(xmlFile));
+        if (fleets.isEmpty()) {
+            throw new IOException(xmlFile + ": нет ни одного элемента <fleet>");
+        }
+        return fleets.get(0);
+    }
+
+    /**
+     * Все флоты файла. Повторный вызов для неизмененного файла возвращает закэшированный
+     * результат, а измененный файл читается заново.
+     */
+    public static List<List<Ship>> loadFleets(Path file) throws IOException {
+        return load(file, FLEETS, FleetConfigParser::parseFleets);
+    }
+
+    /** Правила партии из файла с элементом <ruleset>; кэшируются так же, как флоты */
+    public static Ruleset loadRuleset(Path file) throws IOException {
+        return load(file, RULESETS, FleetConfigParser::parseRuleset);
+    }
+
+    private static <T> T load(Path file, Map<Path, CachedConfig<T>> cache, Parser<T> parser) throws IOException {
+        Path key = file.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        CachedConfig<T> cached = cache.get(key);
+        if (cached != null && cached.modified.equals(attributes.lastModifiedTime())
+                && cached.size == attributes.size()) {
+            return cached.value;
+        }
+
+        T value;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(key))) {
+            value = parser.parse(in, key.toString());
+        }
+        // Время и размер берутся до чтения: если файл меняли во время разбора,
+        // следующий вызов увидит расхождение и перечитает его
+        cache.put(key, new CachedConfig<>(attributes.lastModifiedTime(), attributes.size(), value));
+        return value;
+    }
+
+    // Забыть закэшированный файл (или все, если file == null)
+    public static void invalidate(Path file) {
+        if (file == null) {
+            FLEETS.clear();
+            RULESETS.clear();
+        } else {
+            Path key = file.toAbsolutePath().normalize();
+            FLEETS.remove(key);
+            RULESETS.remove(key);
+        }
+    }
+
+    /** Потоковый разбор первого <ruleset> без кэша */
+    public static Ruleset parseRuleset(InputStream in, String source) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT.createXMLStreamReader(in);
+            int width = 0;
+            int height = 0;
+            int[] sizes = null;
+            int ships = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if ("ruleset".equals(name)) {
+                        if (sizes != null) {
+                            throw error(reader, source, "вложенный <ruleset>");
+                        }
+                        width = intAttribute(reader, source, "width", FleetRules.STANDARD_GRID_SIZE);
+                        height = intAttribute(reader, source, "height", FleetRules.STANDARD_GRID_SIZE);
+                        sizes = new int[Ruleset.MAX_SHIPS];
+                    } else if ("ships".equals(name)) {
+                        if (sizes == null) {
+                            throw error(reader, source, "<ships> вне <ruleset>");
+                        }
+                        int size = intAttribute(reader, source, "size", -1);
+                        int count = intAttribute(reader, source, "count", 1);
+                        if (count <= 0) {
+                            throw error(reader, source, "недопустимое число кораблей " + count);
+                        }
+                        if (count > sizes.length - ships) {
+                            throw error(reader, source, "во флоте больше " + Ruleset.MAX_SHIPS + " кораблей");
+                        }
+                        Arrays.fill(sizes, ships, ships + count, size);
+                        ships += count;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "ruleset".equals(reader.getLocalName())) {
+                    try {
+                        Ruleset rules = new Ruleset(width, height, Arrays.copyOf(sizes, ships));
+                        rules.checkPlaceable();
+                        return rules;
+                    } catch (IllegalArgumentException e) {
+                        throw error(reader, source, e.getMessage());
+                    }
+                }
+            }
+            throw new IOException(source + ": нет элемента <ruleset>");
+        } catch (XMLStreamException e) {
+            throw new IOException(source + ": " + e.getMessage(), e);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /** Потоковый разбор без кэша; source - имя источника для сообщений об ошибках */
+    public static List<List<Ship>> parseFleets(InputStream in, String source) throws IOException {
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT.createXMLStreamReader(in);
+            List<List<Ship>> fleets = new ArrayList<>();
+            List<Ship> fleet = null;
+            Bitboard occupied = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if ("fleet".equals(name)) {
+                        if (fleet != null) {
+                            throw error(reader, source, "вложенный <fleet>");
+                        }
+                        int width = intAttribute(reader, source, "width", FleetRules.STANDARD_GRID_SIZE);
+                        int height = intAttribute(reader, source, "height", FleetRules.STANDARD_GRID_SIZE);
+                        // Та же граница, что у правил: поле из файла не должно выделять гигабайты
+                        if (width <= 0 || height <= 0 || width > Ruleset.MAX_SIDE || height > Ruleset.MAX_SIDE) {
+                            throw error(reader, source, "недопустимые размеры поля " + width + "x" + height);
+                        }
+                        fleet = new ArrayList<>();
+                        occupied = new Bitboard(width, height);
+                    } else if ("ship".equals(name)) {
+                        if (fleet == null) {
+                            throw error(reader, source, "<ship> вне <fleet>");
+                        }
+                        fleet.add(readShip(reader, source, occupied));
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "fleet".equals(reader.getLocalName())) {
+                    fleets.add(List.copyOf(fleet));
+                    fleet = null;
+                    occupied = null;
+                }
+            }
+            return List.copyOf(fleets);
+        } catch (XMLStreamException e) {
+            throw new IOException(source + ": " + e.getMessage(), e);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    private static void closeQuietly(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // Поток закроет вызывающий
+            }
+        }
+    }
+
+    private static Ship readShip(XMLStreamReader reader, String source, Bitboard occupied) throws IOException {
+        int type = intAttribute(reader, source, "type", -1);
+        int x = intAttribute(reader, source, "x", -1);
+        int y = intAttribute(reader, source, "y", -1);
+        String orientation = reader.getAttributeValue(null, "orientation");
+        if (type <= 0) {
+            throw error(reader, source, "недопустимый размер корабля " + type);
+        }
+        Ship ship = new Ship(type, x, y, orientation == null ? "" : orientation);
+        if (!FleetRules.canPlaceShip(occupied, x, y, type, ship.isHorizontal())) {
+            throw error(reader, source, "корабль " + type + " в (" + x + ", " + y + ", " + ship.getOrientation()
+                    + ") выходит за поле или касается другого корабля");
+        }
+        for (int i = 0; i < type; i++) {
+            occupied.set(ship.getCellX(i), ship.getCellY(i));
+        }
+        return ship;
+    }
+
+    private static int intAttribute(XMLStreamReader reader, String source, String name, int defaultValue)
+            throws IOException {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) {
+            if (defaultValue >= 0) return defaultValue;
+            throw error(reader, source, "нет атрибута " + name);
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw error(reader, source, "атрибут " + name + " не число: " + value);
+        }
+    }
+
+    private static IOException error(XMLStreamReader reader, String source, String message) {
+        return new IOException(source + ", строка " + reader.getLocation().getLineNumber() + ": " + message);
+    }
+
+    /** Прежний разбор через DOM: без проверок и кэша, оставлен для сравнения в бенчмарках */
+    public static List<Ship> parseFleetConfigDom(String xmlFile) throws Exception {
         List<Ship> fleet = new ArrayList<>();
         DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
         DocumentBuilder builder = factory.newDocumentBuilder();
@@ -23,4 +270,3 @@ public class FleetConfigParser {
         return fleet;
     }
 }
-
@@ -0,0 +1,357 @@
+package com.battleship.common;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+// Генератор случайных допустимых расстановок флота (без пересечений и касаний).
+//
+// Для каждого размера корабля заранее посчитаны все положения: маска палуб и маска
+// палуб с окрестностью. Положение допустимо, если его окрестность не задевает палубы
+// остальных кораблей - это AND по двум long, без обхода клеток. Случайное допустимое
+// положение выбирается пробами случайных положений, а если несколько проб подряд
+// неудачны - перебором всех; в обоих случаях выбор равновероятен среди допустимых.
+//
+// Последовательная расстановка (mixingSteps = 0) самая быстрая, но заметно смещена:
+// положения, оставляющие другим кораблям мало места, выпадают реже. Поэтому по
+// умолчанию генератор ведет цепь Гиббса: каждый шаг переставляет случайный корабль в
+// равновероятное допустимое положение при неподвижных остальных. Равномерное
+// распределение по всем расстановкам для такой цепи стационарно; очередной флот
+// выдается через mixingSteps шагов. Точная выборка отбрасыванием целых флотов здесь
+// непригодна: допустимым оказывается меньше одного флота на миллион попыток.
+// Соседние флоты цепи зависимы, пока шагов между ними мало: при 10 шагах два подряд
+// делят в среднем 9.9 из 20 палуб против 4.15 у независимых (10x10, стандартный флот),
+// и оценки по выборке флотов (SelfPlaySimulator) выходят слишком уверенными. Связь
+// пропадает к ~100 шагам. По умолчанию шагов 10: боту и нагрузочным клиентам нужны
+// просто разные флоты, и быстро. Тем, кто усредняет по выборке флотов, нужны
+// независимые - INDEPENDENT_MIXING_STEPS, вдвое больше порога.
+//
+// На полях до 128 клеток (10x10 - два long) допустимые положения считаются сразу все:
+// занятые клетки расширяются на соседей сдвигами, свободные начала корабля - AND
+// сдвинутых копий свободных клеток, выбор - k-й установленный бит.
+public final class FleetGenerator {
+    public static final int DEFAULT_MIXING_STEPS = 10;
+    public static final int INDEPENDENT_MIXING_STEPS = 200;
+    private static final int BURN_IN_SWEEPS = 64; // Проходов по всем кораблям перед первым флотом цепи
+    private static final int PROBES = 32;
+    private static final int MAX_RESTARTS = 100_000; // Тупиковых расстановок подряд до отказа
+
+    private final int width;
+    private final int height;
+    private final int[] shipSizes; // По убыванию
+    private final RandomGenerator random;
+    private final int mixingSteps;
+    private final int words;
+
+    // По размеру корабля: маски палуб и маски палуб вместе с окрестностью
+    private final long[][][] shipMasks;
+    private final long[][][] haloMasks;
+
+    private final int[] placement; // Текущее положение каждого корабля
+    private final int[] candidates;
+    private final long[] occupied;
+    private final long[] others;
+    private boolean chainStarted;
+
+    // Быстрый путь для полей до 128 клеток: клетки в паре (lo, hi)
+    private final boolean wide; // Поле больше 128 клеток или сдвиги не помещаются в long
+    private final long boardHi; // Клетки поля в старшем слове
+    private final long notLeftLo, notLeftHi; // Клетки не в первом столбце
+    private final long notRightLo, notRightHi; // Клетки не в последнем столбце
+    // По размеру: начала горизонтальных и вертикальных положений, помещающихся в поле
+    private final long[][] startLo;
+    private final long[][] startHi;
+    // По ориентации (0 - горизонтально) и клетке начала - индекс положения в масках
+    private final int[][][] placementAt;
+
+    public FleetGenerator(int width, int height, int[] fleetSizes, RandomGenerator random) {
+        this(width, height, fleetSizes, random, DEFAULT_MIXING_STEPS);
+    }
+
+    public FleetGenerator(int width, int height, int[] fleetSizes, RandomGenerator random, int mixingSteps) {
+        this.width = width;
+        this.height = height;
+        this.random = random;
+        this.mixingSteps = Math.max(0, mixingSteps);
+        this.words = (width * height + 63) >>> 6;
+
+        shipSizes = fleetSizes.clone();
+        Arrays.sort(shipSizes);
+        for (int i = 0; i < shipSizes.length / 2; i++) {
+            int tmp = shipSizes[i];
+            shipSizes[i] = shipSizes[shipSizes.length - 1 - i];
+            shipSizes[shipSizes.length - 1 - i] = tmp;
+        }
+        if (shipSizes.length > 0 && shipSizes[shipSizes.length - 1] <= 0) {
+            throw new IllegalArgumentException("Недопустимый размер корабля: " + shipSizes[shipSizes.length - 1]);
+        }
+
+        int maxSize = shipSizes.length > 0 ? shipSizes[0] : 0;
+        shipMasks = new long[maxSize + 1][][];
+        haloMasks = new long[maxSize + 1][][];
+        int maxPlacements = 0;
+        for (int size : shipSizes) {
+            if (shipMasks[size] == null) {
+                buildMasks(size);
+                if (shipMasks[size].length == 0) {
+                    throw new IllegalArgumentException("Корабль размера " + size + " не помещается на поле");
+                }
+                maxPlacements = Math.max(maxPlacements, shipMasks[size].length);
+            }
+        }
+
+        placement = new int[shipSizes.length];
+        candidates = new int[maxPlacements];
+        occupied = new long[words];
+        others = new long[words];
+
+        wide = width * height > 128 || width * (maxSize - 1) >= 64 || width >= 64;
+        int cells = width * height;
+        boardHi = cells > 64 ? (cells >= 128 ? -1L : (1L << (cells - 64)) - 1) : 0;
+        long[] notLeft = new long[2];
+        long[] notRight = new long[2];
+        startLo = new long[maxSize + 1][2];
+        startHi = new long[maxSize + 1][2];
+        placementAt = new int[maxSize + 1][2][cells];
+        if (!wide) {
+            for (int cell = 0; cell < cells; cell++) {
+                int x = cell % width;
+                int y = cell / width;
+                if (x != 0) notLeft[cell >>> 6] |= 1L << cell;
+                if (x != width - 1) notRight[cell >>> 6] |= 1L << cell;
+                for (int size = 1; size <= maxSize; size++) {
+                    if (x + size <= width) {
+                        if (cell < 64) startLo[size][0] |= 1L << cell; else startHi[size][0] |= 1L << cell;
+                    }
+                    if (y + size <= height && size > 1) {
+                        if (cell < 64) startLo[size][1] |= 1L << cell; else startHi[size][1] |= 1L << cell;
+                    }
+                }
+            }
+            for (int size = 1; size <= maxSize; size++) {
+                if (shipMasks[size] == null) continue;
+                for (int p = 0; p < shipMasks[size].length; p++) {
+                    int first = firstCell(shipMasks[size][p]);
+                    boolean vertical = size > 1 && first + width < cells
+                            && (shipMasks[size][p][(first + width) >>> 6] & (1L << (first + width))) != 0;
+                    placementAt[size][vertical ? 1 : 0][first] = p;
+                }
+            }
+        }
+        notLeftLo = notLeft[0];
+        notLeftHi = notLeft[1];
+        notRightLo = notRight[0];
+        notRightHi = notRight[1];
+    }
+
+    // Примерный объем масок положений в байтах: для каждого размера корабля по два массива
+    // на положение. На больших полях с разнообразным флотом это сотни мегабайт (64x64 с
+    // кораблями от 1 до 20), тогда лучше обойтись FleetRules.randomFleet
+    public static long maskBytes(int width, int height, int[] fleetSizes) {
+        long cells = (long) width * height;
+        long perPlacement = 2 * (16 + 8 * ((cells + 63) >>> 6)) + 2 * 4; // Маски и ссылки на них
+        int[] sizes = fleetSizes.clone();
+        Arrays.sort(sizes);
+        long bytes = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            if (i > 0 && sizes[i] == sizes[i - 1]) continue;
+            bytes += (sizes[i] == 1 ? 1 : 2) * cells * perPlacement;
+        }
+        return bytes;
+    }
+
+    private int firstCell(long[] mask) {
+        for (int w = 0; w < mask.length; w++) {
+            if (mask[w] != 0) return (w << 6) + Long.numberOfTrailingZeros(mask[w]);
+        }
+        return -1;
+    }
+
+    private void buildMasks(int size) {
+        int capacity = width * height * 2;
+        long[][] ships = new long[capacity][];
+        long[][] halos = new long[capacity][];
+        int count = 0;
+        // Однопалубный корабль в двух ориентациях совпадает, считаем его один раз
+        int orientations = size == 1 ? 1 : 2;
+        for (int o = 0; o < orientations; o++) {
+            boolean horizontal = o == 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int endX = horizontal ? x + size - 1 : x;
+                    int endY = horizontal ? y : y + size - 1;
+                    if (endX >= width || endY >= height) continue;
+
+                    long[] ship = new long[words];
+                    long[] halo = new long[words];
+                    for (int cy = Math.max(0, y - 1); cy <= Math.min(height - 1, endY + 1); cy++) {
+                        for (int cx = Math.max(0, x - 1); cx <= Math.min(width - 1, endX + 1); cx++) {
+                            int cell = cy * width + cx;
+                            halo[cell >>> 6] |= 1L << cell;
+                            if (cx >= x && cx <= endX && cy >= y && cy <= endY) {
+                                ship[cell >>> 6] |= 1L << cell;
+                            }
+                        }
+                    }
+                    ships[count] = ship;
+                    halos[count] = halo;
+                    count++;
+                }
+            }
+        }
+        shipMasks[size] = Arrays.copyOf(ships, count);
+        haloMasks[size] = Arrays.copyOf(halos, count);
+    }
+
+    // Новая случайная расстановка
+    public Bitboard next() {
+        Bitboard fleet = new Bitboard(width, height);
+        next(fleet);
+        return fleet;
+    }
+
+    // Записывает новую расстановку в target без выделения памяти
+    public void next(Bitboard target) {
+        if (target.getWidth() != width || target.getHeight() != height) {
+            throw new IllegalArgumentException("Размеры поля не совпадают");
+        }
+        if (mixingSteps == 0 || !chainStarted) {
+            int attempts = 0;
+            while (!placeSequentially()) {
+                // Тупик: оставшимся кораблям не нашлось места, начинаем заново
+                if (++attempts == MAX_RESTARTS) {
+                    throw new IllegalStateException("Не удалось расставить флот " + Arrays.toString(shipSizes)
+                            + " на поле " + width + "x" + height);
+                }
+            }
+            if (mixingSteps > 0) {
+                for (int step = 0; step < BURN_IN_SWEEPS * shipSizes.length; step++) {
+                    resample(random.nextInt(shipSizes.length));
+                }
+                chainStarted = true;
+            }
+        } else {
+            for (int step = 0; step < mixingSteps; step++) {
+                resample(random.nextInt(shipSizes.length));
+            }
+        }
+        for (int w = 0; w < words; w++) {
+            target.setWord(w, occupied[w]);
+        }
+    }
+
+    private boolean placeSequentially() {
+        Arrays.fill(occupied, 0);
+        for (int ship = 0; ship < shipSizes.length; ship++) {
+            int size = shipSizes[ship];
+            int chosen = pickLegal(size, occupied);
+            if (chosen < 0) return false;
+            placement[ship] = chosen;
+            long[] mask = shipMasks[size][chosen];
+            for (int w = 0; w < words; w++) {
+                occupied[w] |= mask[w];
+            }
+        }
+        return true;
+    }
+
+    // Шаг Гиббса: корабль снимается с поля и ставится в равновероятное допустимое
+    // положение (текущее положение тоже допустимо, так что место найдется всегда)
+    private void resample(int ship) {
+        int size = shipSizes[ship];
+        long[] current = shipMasks[size][placement[ship]];
+        for (int w = 0; w < words; w++) {
+            others[w] = occupied[w] ^ current[w];
+        }
+        int chosen = pickLegal(size, others);
+        long[] mask = shipMasks[size][chosen];
+        for (int w = 0; w < words; w++) {
+            occupied[w] = others[w] | mask[w];
+        }
+        placement[ship] = chosen;
+    }
+
+    // Равновероятное положение корабля, окрестность которого не задевает ships, или -1
+    private int pickLegal(int size, long[] ships) {
+        if (!wide) {
+            return pickLegalNarrow(size, ships[0], words > 1 ? ships[1] : 0);
+        }
+        long[][] halos = haloMasks[size];
+        for (int probe = 0; probe < PROBES; probe++) {
+            int p = random.nextInt(halos.length);
+            if (!intersects(halos[p], ships)) return p;
+        }
+        int count = 0;
+        for (int p = 0; p < halos.length; p++) {
+            if (!intersects(halos[p], ships)) {
+                candidates[count++] = p;
+            }
+        }
+        return count == 0 ? -1 : candidates[random.nextInt(count)];
+    }
+
+    private int pickLegalNarrow(int size, long shipsLo, long shipsHi) {
+        // Запретные клетки: палубы и их соседи, сначала по строке, затем по столбцу
+        long rowLo = shipsLo | ((shipsLo << 1) & notLeftLo) | ((shipsLo >>> 1 | shipsHi << 63) & notRightLo);
+        long rowHi = shipsHi | ((shipsHi << 1 | shipsLo >>> 63) & notLeftHi) | ((shipsHi >>> 1) & notRightHi);
+        long deniedLo = rowLo | (rowLo << width) | (rowLo >>> width | rowHi << (64 - width));
+        long deniedHi = rowHi | (rowHi << width | rowLo >>> (64 - width)) | (rowHi >>> width);
+        long freeLo = ~deniedLo;
+        long freeHi = ~deniedHi & boardHi;
+
+        // Начало допустимо, если свободны все size клеток от него вправо (вниз)
+        long horizontalLo = freeLo;
+        long horizontalHi = freeHi;
+        long verticalLo = freeLo;
+        long verticalHi = freeHi;
+        long rightLo = freeLo;
+        long rightHi = freeHi;
+        long downLo = freeLo;
+        long downHi = freeHi;
+        for (int i = 1; i < size; i++) {
+            rightLo = rightLo >>> 1 | rightHi << 63;
+            rightHi = rightHi >>> 1;
+            horizontalLo &= rightLo;
+            horizontalHi &= rightHi;
+            downLo = downLo >>> width | downHi << (64 - width);
+            downHi = downHi >>> width;
+            verticalLo &= downLo;
+            verticalHi &= downHi;
+        }
+        horizontalLo &= startLo[size][0];
+        horizontalHi &= startHi[size][0];
+        verticalLo &= startLo[size][1];
+        verticalHi &= startHi[size][1];
+
+        int horizontalLoCount = Long.bitCount(horizontalLo);
+        int horizontalCount = horizontalLoCount + Long.bitCount(horizontalHi);
+        int verticalLoCount = Long.bitCount(verticalLo);
+        int total = horizontalCount + verticalLoCount + Long.bitCount(verticalHi);
+        if (total == 0) return -1;
+
+        int k = random.nextInt(total);
+        if (k < horizontalCount) {
+            int cell = k < horizontalLoCount
+                    ? selectBit(horizontalLo, k)
+                    : 64 + selectBit(horizontalHi, k - horizontalLoCount);
+            return placementAt[size][0][cell];
+        }
+        k -= horizontalCount;
+        int cell = k < verticalLoCount
+                ? selectBit(verticalLo, k)
+                : 64 + selectBit(verticalHi, k - verticalLoCount);
+        return placementAt[size][1][cell];
+    }
+
+    // Номер k-го (с нуля) установленного бита: expand переносит бит k на место k-го
+    // установленного бита маски (на x86 с BMI2 это одна инструкция PDEP)
+    private static int selectBit(long bits, int k) {
+        return Long.numberOfTrailingZeros(Long.expand(1L << k, bits));
+    }
+
+    private boolean intersects(long[] mask, long[] other) {
+        for (int w = 0; w < words; w++) {
+            if ((mask[w] & other[w]) != 0) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,138 @@
+package com.battleship.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+// Правила расстановки флота: прямые корабли, не касающиеся друг друга даже углами.
+public final class FleetRules {
+    public static final int STANDARD_GRID_SIZE = 10;
+    public static final int[] STANDARD_FLEET = {4, 3, 3, 2, 2, 2, 1, 1, 1, 1};
+
+    private static final int MAX_FLEET_ATTEMPTS = 100_000;
+    private static final int CHECK_ATTEMPTS = 100;
+    private static final long CHECK_SEED = 0x5EA_B477L;
+
+    private FleetRules() {
+    }
+
+    // Можно ли поставить корабль, не пересекаясь и не соприкасаясь с occupied
+    public static boolean canPlaceShip(Bitboard occupied, int startX, int startY, int shipSize, boolean horizontal) {
+        int endX = horizontal ? startX + shipSize - 1 : startX;
+        int endY = horizontal ? startY : startY + shipSize - 1;
+        if (!occupied.inBounds(startX, startY) || !occupied.inBounds(endX, endY)) {
+            return false;
+        }
+
+        for (int y = Math.max(0, startY - 1); y <= Math.min(occupied.getHeight() - 1, endY + 1); y++) {
+            for (int x = Math.max(0, startX - 1); x <= Math.min(occupied.getWidth() - 1, endX + 1); x++) {
+                if (occupied.get(x, y)) return false;
+            }
+        }
+        return true;
+    }
+
+    // Случайная допустимая расстановка: корабли по очереди ставятся в случайные позиции,
+    // тупиковая расстановка начинается заново. Бросает IllegalStateException, если
+    // расставить флот не удалось за MAX_FLEET_ATTEMPTS попыток
+    public static Bitboard randomFleet(int width, int height, int[] fleetSizes, RandomGenerator random) {
+        for (int attempt = 0; attempt < MAX_FLEET_ATTEMPTS; attempt++) {
+            Bitboard occupied = new Bitboard(width, height);
+            if (tryPlaceFleet(occupied, fleetSizes, random)) {
+                return occupied;
+            }
+        }
+        throw new IllegalStateException("Не удалось расставить флот " + Arrays.toString(fleetSizes)
+                + " на поле " + width + "x" + height);
+    }
+
+    // Находит ли randomFleet расстановку: несколько попыток с постоянным зерном, так что
+    // ответ для одних и тех же правил всегда один. Флот, который так не расставить,
+    // считается невозможным - бот и подсказка расстановки на нем все равно застряли бы
+    public static boolean canPlaceFleet(int width, int height, int[] fleetSizes) {
+        RandomGenerator random = new SplittableRandom(CHECK_SEED);
+        for (int attempt = 0; attempt < CHECK_ATTEMPTS; attempt++) {
+            if (tryPlaceFleet(new Bitboard(width, height), fleetSizes, random)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean tryPlaceFleet(Bitboard occupied, int[] fleetSizes, RandomGenerator random) {
+        for (int size : fleetSizes) {
+            boolean placed = false;
+            for (int attempt = 0; attempt < 200 && !placed; attempt++) {
+                int x = random.nextInt(occupied.getWidth());
+                int y = random.nextInt(occupied.getHeight());
+                boolean horizontal = random.nextBoolean();
+                if (canPlaceShip(occupied, x, y, size, horizontal)) {
+                    for (int i = 0; i < size; i++) {
+                        occupied.set(horizontal ? x + i : x, horizontal ? y : y + i);
+                    }
+                    placed = true;
+                }
+            }
+            if (!placed) return false;
+        }
+        return true;
+    }
+
+    // Разбивает клетки флота на отдельные корабли и проверяет расстановку.
+    // Бросает IllegalArgumentException, если корабли изогнуты, касаются друг друга
+    // или их размеры не совпадают с fleetSizes.
+    public static List<Bitboard> splitShips(Bitboard occupied, int[] fleetSizes) {
+        int width = occupied.getWidth();
+        int height = occupied.getHeight();
+        Bitboard visited = new Bitboard(width, height);
+        List<Bitboard> ships = new ArrayList<>();
+
+        for (int cell = occupied.nextSetBit(0); cell >= 0; cell = occupied.nextSetBit(cell + 1)) {
+            if (visited.get(cell)) continue;
+
+            int x = cell % width;
+            int y = cell / width;
+            // Поиск идет по возрастанию индекса, значит это левая или верхняя клетка корабля
+            boolean horizontal = x + 1 < width && occupied.get(x + 1, y);
+            Bitboard ship = new Bitboard(width, height);
+            while (occupied.inBounds(x, y) && occupied.get(x, y)) {
+                ship.set(x, y);
+                visited.set(x, y);
+                if (horizontal) x++; else y++;
+            }
+            ships.add(ship);
+        }
+
+        // Соседние по диагонали или сбоку занятые клетки, не входящие в тот же корабль,
+        // означают изогнутый корабль или соприкосновение разных кораблей
+        for (Bitboard ship : ships) {
+            for (int cell = ship.nextSetBit(0); cell >= 0; cell = ship.nextSetBit(cell + 1)) {
+                int x = cell % width;
+                int y = cell / width;
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int dx = -1; dx <= 1; dx++) {
+                        int nx = x + dx;
+                        int ny = y + dy;
+                        if (occupied.inBounds(nx, ny) && occupied.get(nx, ny) && !ship.get(nx, ny)) {
+                            throw new IllegalArgumentException("Корабли должны быть прямыми и не касаться друг друга");
+                        }
+                    }
+                }
+            }
+        }
+
+        int[] actual = new int[ships.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = ships.get(i).cardinality();
+        }
+        int[] expected = fleetSizes.clone();
+        Arrays.sort(actual);
+        Arrays.sort(expected);
+        if (!Arrays.equals(actual, expected)) {
+            throw new IllegalArgumentException("Состав флота не соответствует правилам");
+        }
+        return ships;
+    }
+}
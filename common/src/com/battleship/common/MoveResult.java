@@ -4,7 +4,7 @@ package com.battleship.common;
 import java.io.Serializable;
 
 public class MoveResult implements Serializable {
-    public enum ResultType { HIT, MISS, ALREADY_HIT, WIN }
+    public enum ResultType { HIT, MISS, SUNK, ALREADY_HIT, WIN }
 
     private ResultType resultType;
     private int x;
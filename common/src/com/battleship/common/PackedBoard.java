@@ -0,0 +1,148 @@
+package com.battleship.common;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+// Игровое поле с упаковкой 2 бита на клетку: 32 клетки в одном long,
+// поле 10x10 - четыре long. Состояния клеток совпадают с прежними кодами int[][].
+public class PackedBoard implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int EMPTY = 0; // Пусто или неизвестно
+    public static final int SHIP = 1;
+    public static final int HIT = 2;
+    public static final int MISS = 3;
+
+    private static final int CELLS_PER_WORD = 32;
+    private static final long LOW_BITS = 0x5555555555555555L;
+
+    private final int width;
+    private final int height;
+    private final long[] words;
+
+    public PackedBoard() {
+        this(FleetRules.STANDARD_GRID_SIZE, FleetRules.STANDARD_GRID_SIZE);
+    }
+
+    public PackedBoard(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.words = new long[(width * height + CELLS_PER_WORD - 1) / CELLS_PER_WORD];
+    }
+
+    public PackedBoard(PackedBoard other) {
+        this.width = other.width;
+        this.height = other.height;
+        this.words = other.words.clone();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean inBounds(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    public int get(int x, int y) {
+        int cell = y * width + x;
+        return (int) (words[cell >>> 5] >>> ((cell & 31) << 1)) & 3;
+    }
+
+    public void set(int x, int y, int state) {
+        int cell = y * width + x;
+        int shift = (cell & 31) << 1;
+        words[cell >>> 5] = (words[cell >>> 5] & ~(3L << shift)) | ((long) (state & 3) << shift);
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) return false;
+        }
+        return true;
+    }
+
+    // Число клеток в заданном состоянии: popcount по словам без обхода клеток
+    public int count(int state) {
+        if (state == EMPTY) {
+            return width * height - count(SHIP) - count(HIT) - count(MISS);
+        }
+        int count = 0;
+        for (long word : words) {
+            long low = word & LOW_BITS;
+            long high = (word >>> 1) & LOW_BITS;
+            switch (state) {
+                case SHIP:
+                    count += Long.bitCount(low & ~high);
+                    break;
+                case HIT:
+                    count += Long.bitCount(~low & high);
+                    break;
+                default:
+                    count += Long.bitCount(low & high);
+            }
+        }
+        return count;
+    }
+
+    // Клетки в заданном состоянии в виде битовой маски
+    public Bitboard cellsWithState(int state) {
+        Bitboard cells = new Bitboard(width, height);
+        for (int cell = 0; cell < width * height; cell++) {
+            if (((words[cell >>> 5] >>> ((cell & 31) << 1)) & 3) == state) {
+                cells.set(cell);
+            }
+        }
+        return cells;
+    }
+
+    // Переводит в заданное состояние все клетки маски
+    public void setCells(Bitboard cells, int state) {
+        for (int cell = cells.nextSetBit(0); cell >= 0; cell = cells.nextSetBit(cell + 1)) {
+            set(cell % width, cell / width, state);
+        }
+    }
+
+    public void copyFrom(PackedBoard other) {
+        if (other.width != width || other.height != height) {
+            throw new IllegalArgumentException("Размеры полей не совпадают");
+        }
+        System.arraycopy(other.words, 0, words, 0, words.length);
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0);
+    }
+
+    // Прямой доступ к упакованным словам для кодеков
+    public int wordCount() {
+        return words.length;
+    }
+
+    public long word(int i) {
+        return words[i];
+    }
+
+    // Биты за пределами поля в последнем слове отбрасываются
+    public void setWord(int i, long value) {
+        int cellsInWord = Math.min(CELLS_PER_WORD, width * height - i * CELLS_PER_WORD);
+        words[i] = cellsInWord == CELLS_PER_WORD ? value : value & ((1L << (cellsInWord << 1)) - 1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PackedBoard)) return false;
+        PackedBoard other = (PackedBoard) o;
+        return width == other.width && height == other.height && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * width + height) + Arrays.hashCode(words);
+    }
+}
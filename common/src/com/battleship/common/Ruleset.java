@@ -0,0 +1,132 @@
+package com.battleship.common;
+
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.Arrays;
+
+// Правила партии: размеры поля и состав флота. Неизменяемы; сервер выбирает правила
+// для каждой сессии и сообщает их игрокам в GAME_STARTED.
+public final class Ruleset implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int MAX_SIDE = 64;
+    public static final int MAX_SHIPS = 127; // Номер корабля по клетке хранится в byte
+
+    public static final Ruleset STANDARD = new Ruleset(
+            FleetRules.STANDARD_GRID_SIZE, FleetRules.STANDARD_GRID_SIZE, FleetRules.STANDARD_FLEET);
+
+    private final int width;
+    private final int height;
+    private final int[] fleet; // Размеры кораблей по убыванию
+
+    // Бросает IllegalArgumentException, если поле или флот недопустимы
+    public Ruleset(int width, int height, int[] fleetSizes) {
+        if (width <= 0 || height <= 0 || width > MAX_SIDE || height > MAX_SIDE) {
+            throw new IllegalArgumentException("Недопустимые размеры поля " + width + "x" + height);
+        }
+        if (fleetSizes.length == 0 || fleetSizes.length > MAX_SHIPS) {
+            throw new IllegalArgumentException("Во флоте должно быть от 1 до " + MAX_SHIPS + " кораблей");
+        }
+        int[] sorted = fleetSizes.clone();
+        Arrays.sort(sorted);
+        // Корабль вместе с клетками справа и снизу от него занимает (size + 1) * 2 клетки
+        // поля (width + 1) x (height + 1), и у разных кораблей эти области не пересекаются.
+        // Условие необходимое, но не достаточное: с ним флот хотя бы не заведомо невозможен.
+        long area = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            int size = sorted[i];
+            if (size <= 0 || size > Math.max(width, height)) {
+                throw new IllegalArgumentException("Корабль длиной " + size + " не помещается на поле");
+            }
+            area += (size + 1) * 2L;
+        }
+        if (area > (long) (width + 1) * (height + 1)) {
+            throw new IllegalArgumentException("Флот не помещается на поле " + width + "x" + height);
+        }
+        for (int i = 0, j = sorted.length - 1; i < j; i++, j--) {
+            int size = sorted[i];
+            sorted[i] = sorted[j];
+            sorted[j] = size;
+        }
+        this.width = width;
+        this.height = height;
+        this.fleet = sorted;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getShipCount() {
+        return fleet.length;
+    }
+
+    public int getShipSize(int i) {
+        return fleet[i];
+    }
+
+    // Копия: правила неизменяемы
+    public int[] getFleet() {
+        return fleet.clone();
+    }
+
+    // Сколько клеток занимает весь флот
+    public int getFleetCells() {
+        int cells = 0;
+        for (int size : fleet) {
+            cells += size;
+        }
+        return cells;
+    }
+
+    public boolean isStandard() {
+        return equals(STANDARD);
+    }
+
+    // Площадь в конструкторе - только отсев заведомо невозможного; флот, который не удается
+    // расставить на деле (по убыванию, как его ставит бот), повесил бы расстановку бота.
+    // Проверка - пробные расстановки, на больших полях это десятки миллисекунд, поэтому
+    // ее делает сервер при загрузке правил, а не конструктор: правила из кадров и
+    // сериализации разбираются в потоках ввода-вывода.
+    public void checkPlaceable() {
+        if (!FleetRules.canPlaceFleet(width, height, fleet)) {
+            throw new IllegalArgumentException("Флот " + Arrays.toString(fleet)
+                    + " не удается расставить на поле " + width + "x" + height);
+        }
+    }
+
+    public PackedBoard newBoard() {
+        return new PackedBoard(width, height);
+    }
+
+    // Правила из сериализации Java проходят ту же проверку, что и в конструкторе
+    private Object readResolve() throws InvalidObjectException {
+        try {
+            return new Ruleset(width, height, fleet);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new InvalidObjectException("Недопустимые правила: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Ruleset)) return false;
+        Ruleset other = (Ruleset) o;
+        return width == other.width && height == other.height && Arrays.equals(fleet, other.fleet);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * width + height) + Arrays.hashCode(fleet);
+    }
+
+    @Override
+    public String toString() {
+        return width + "x" + height + " " + Arrays.toString(fleet);
+    }
+}
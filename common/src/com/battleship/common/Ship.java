@@ -5,11 +5,45 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class Ship implements Serializable {
+    // 2 - ориентация хранится как Orientation, а не строкой; старые и новые версии
+    // не читают друг друга и должны отказать явно, а не по вычисленному UID
+    private static final long serialVersionUID = 2L;
+
+    public enum Orientation {
+        HORIZONTAL("horizontal", 1, 0),
+        VERTICAL("vertical", 0, 1);
+
+        private final String name;
+        private final int dx, dy; // Шаг от палубы к палубе
+
+        Orientation(String name, int dx, int dy) {
+            this.name = name;
+            this.dx = dx;
+            this.dy = dy;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Как и раньше: все, что не "horizontal" (без учета регистра), считается вертикалью
+        public static Orientation parse(String value) {
+            return HORIZONTAL.name.equalsIgnoreCase(value) ? HORIZONTAL : VERTICAL;
+        }
+    }
+
     private final int type; // Длина корабля (например, 1 - подлодка, 4 - линкор)
     private final int x, y; // Начальная координата корабля (левый верхний угол)
-    private final String orientation; // "horizontal" или "vertical"
+    private final Orientation orientation;
+
+    // Маска палуб, посчитанная один раз для размеров поля последнего запроса
+    private transient volatile Bitboard mask;
 
     public Ship(int type, int x, int y, String orientation) {
+        this(type, x, y, Orientation.parse(orientation));
+    }
+
+    public Ship(int type, int x, int y, Orientation orientation) {
         this.type = type;
         this.x = x;
         this.y = y;
@@ -28,19 +62,67 @@ public class Ship implements Serializable {
         return y;
     }
 
+    /** "horizontal" или "vertical" */
     public String getOrientation() {
+        return orientation.getName();
+    }
+
+    public Orientation getOrientationType() {
         return orientation;
     }
 
+    public boolean isHorizontal() {
+        return orientation == Orientation.HORIZONTAL;
+    }
+
+    // Координаты палубы i (0 <= i < type)
+    public int getCellX(int i) {
+        return x + i * orientation.dx;
+    }
+
+    public int getCellY(int i) {
+        return y + i * orientation.dy;
+    }
+
+    // Индекс палубы i на поле ширины width, как в Bitboard.index. Обход без выделения памяти:
+    // for (int i = 0; i < ship.getType(); i++) { int cell = ship.getCellIndex(i, width); ... }
+    public int getCellIndex(int i, int width) {
+        return getCellY(i) * width + getCellX(i);
+    }
+
+    // Стоит ли корабль на клетке (x, y) - без обхода палуб
+    public boolean occupies(int cellX, int cellY) {
+        int along = isHorizontal() ? cellX - x : cellY - y;
+        int across = isHorizontal() ? cellY - y : cellX - x;
+        return across == 0 && along >= 0 && along < type;
+    }
+
+    /**
+     * Маска палуб на поле width x height. Считается при первом запросе и дальше
+     * переиспользуется; возвращаемый Bitboard общий, изменять его нельзя.
+     */
+    public Bitboard occupancyMask(int width, int height) {
+        Bitboard current = mask;
+        if (current == null || current.getWidth() != width || current.getHeight() != height) {
+            current = new Bitboard(width, height);
+            for (int i = 0; i < type; i++) {
+                current.set(getCellX(i), getCellY(i));
+            }
+            mask = current;
+        }
+        return current;
+    }
+
+    // Потоплен ли корабль: все палубы есть среди выстрелов
+    public boolean isSunk(Bitboard shots) {
+        return shots.containsAll(occupancyMask(shots.getWidth(), shots.getHeight()));
+    }
+
     /** Возвращает список клеток, занимаемых кораблем */
     public List<Cell> getCells() {
-        List<Cell> cells = new ArrayList<>();
+        List<Cell> cells = new ArrayList<>(type);
         for (int i = 0; i < type; i++) {
-            if (orientation.equalsIgnoreCase("horizontal")) {
-                cells.add(new Cell(x + i, y)); // Горизонтальное размещение
-            } else {
-                cells.add(new Cell(x, y + i)); // Вертикальное размещение
-            }
+            cells.add(new Cell(getCellX(i), getCellY(i)));
         }
         return cells;
     }
@@ -0,0 +1,319 @@
+package com.battleship.common;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.random.RandomGenerator;
+
+// Выбор выстрела по карте плотности вероятности: для каждой клетки считается, сколько
+// допустимых расстановок оставшихся кораблей ее накрывают, и стреляем в самую
+// "плотную". Пока нет недобитых попаданий - режим поиска по всем расстановкам,
+// иначе режим добивания: учитываются только расстановки через попавшие клетки.
+//
+// Все расстановки каждого размера посчитаны заранее как битовые маски. После каждого
+// результата из списка живых расстановок выбрасываются те, что задели заведомо пустые
+// клетки (промахи, окрестности потопленных кораблей, диагонали попаданий), поэтому
+// выбор хода стоит O(живых расстановок) и не выделяет память. Таблицы расстановок
+// общие для всех планировщиков с теми же размерами поля, reset() готовит новую партию.
+public final class ShotPlanner implements ShotStrategy {
+    private static final int TARGET_WEIGHT = 64; // Вес расстановки за каждое накрытое попадание
+    private static final Map<Long, Placements> PLACEMENTS = new ConcurrentHashMap<>();
+
+    private final int width;
+    private final int height;
+    private final RandomGenerator random;
+    private final int[] fleetCounts; // Число кораблей каждого размера во флоте
+
+    // По размеру корабля: маски расстановок (слова Bitboard) и их клетки
+    private final long[][][] placementMasks;
+    private final int[][][] placementCells;
+    // Индексы еще возможных расстановок, живые лежат в начале массива
+    private final int[][] alive;
+    private final int[] aliveCount;
+    private final int[] remaining; // Сколько кораблей каждого размера еще не потоплено
+
+    private final Bitboard shot;
+    private final Bitboard hits; // Попадания в еще не потопленные корабли
+    private final Bitboard blocked; // Клетки, где кораблей точно нет
+    private final int[] density;
+    private boolean pruneNeeded;
+
+    public ShotPlanner(int width, int height, int[] fleetSizes) {
+        this(width, height, fleetSizes, new SplittableRandom());
+    }
+
+    public ShotPlanner(int width, int height, int[] fleetSizes, RandomGenerator random) {
+        this.width = width;
+        this.height = height;
+        this.random = random;
+
+        int maxSize = 0;
+        for (int size : fleetSizes) {
+            if (size <= 0) throw new IllegalArgumentException("Недопустимый размер корабля: " + size);
+            maxSize = Math.max(maxSize, size);
+        }
+        fleetCounts = new int[maxSize + 1];
+        for (int size : fleetSizes) {
+            fleetCounts[size]++;
+        }
+        remaining = new int[maxSize + 1];
+
+        placementMasks = new long[maxSize + 1][][];
+        placementCells = new int[maxSize + 1][][];
+        alive = new int[maxSize + 1][];
+        aliveCount = new int[maxSize + 1];
+        for (int size = 1; size <= maxSize; size++) {
+            if (fleetCounts[size] > 0) {
+                int shipSize = size;
+                Placements placements = PLACEMENTS.computeIfAbsent(
+                        ((long) width << 40) | ((long) height << 20) | size,
+                        key -> buildPlacements(width, height, shipSize));
+                placementMasks[size] = placements.masks;
+                placementCells[size] = placements.cells;
+                alive[size] = new int[placements.masks.length];
+            }
+        }
+
+        shot = new Bitboard(width, height);
+        hits = new Bitboard(width, height);
+        blocked = new Bitboard(width, height);
+        density = new int[width * height];
+        reset();
+    }
+
+    // Новая партия с тем же флотом, без выделения памяти
+    @Override
+    public void reset() {
+        for (int size = 1; size < fleetCounts.length; size++) {
+            remaining[size] = fleetCounts[size];
+            if (alive[size] == null) continue;
+            for (int i = 0; i < alive[size].length; i++) {
+                alive[size][i] = i;
+            }
+            aliveCount[size] = alive[size].length;
+        }
+        shot.clearAll();
+        hits.clearAll();
+        blocked.clearAll();
+        pruneNeeded = false;
+    }
+
+    // Все расстановки корабля размера size: маски и списки клеток
+    private static final class Placements {
+        final long[][] masks;
+        final int[][] cells;
+
+        Placements(long[][] masks, int[][] cells) {
+            this.masks = masks;
+            this.cells = cells;
+        }
+    }
+
+    private static Placements buildPlacements(int width, int height, int size) {
+        int capacity = width * height * 2;
+        long[][] masks = new long[capacity][];
+        int[][] cells = new int[capacity][];
+        int count = 0;
+        // Однопалубный корабль в двух ориентациях совпадает, считаем его один раз
+        int orientations = size == 1 ? 1 : 2;
+        for (int o = 0; o < orientations; o++) {
+            boolean horizontal = o == 0;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int endX = horizontal ? x + size - 1 : x;
+                    int endY = horizontal ? y : y + size - 1;
+                    if (endX >= width || endY >= height) continue;
+
+                    Bitboard mask = new Bitboard(width, height);
+                    int[] shipCells = new int[size];
+                    for (int i = 0; i < size; i++) {
+                        int index = horizontal ? mask.index(x + i, y) : mask.index(x, y + i);
+                        mask.set(index);
+                        shipCells[i] = index;
+                    }
+                    long[] words = new long[mask.wordCount()];
+                    for (int w = 0; w < words.length; w++) {
+                        words[w] = mask.word(w);
+                    }
+                    masks[count] = words;
+                    cells[count] = shipCells;
+                    count++;
+                }
+            }
+        }
+        return new Placements(Arrays.copyOf(masks, count), Arrays.copyOf(cells, count));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Все корабли потоплены
+    @Override
+    public boolean isFinished() {
+        for (int count : remaining) {
+            if (count > 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int nextShot() {
+        if (pruneNeeded) {
+            prune();
+        }
+
+        Arrays.fill(density, 0);
+        boolean targeting = !hits.isEmpty();
+        for (int size = 1; size < remaining.length; size++) {
+            if (remaining[size] == 0) continue;
+            long[][] masks = placementMasks[size];
+            int[][] cells = placementCells[size];
+            int[] ids = alive[size];
+            for (int i = 0; i < aliveCount[size]; i++) {
+                int id = ids[i];
+                int weight = remaining[size];
+                if (targeting) {
+                    int covered = countHits(masks[id]);
+                    if (covered == 0) continue;
+                    weight *= TARGET_WEIGHT * covered;
+                }
+                for (int cell : cells[id]) {
+                    density[cell] += weight;
+                }
+            }
+        }
+
+        // Максимум по еще не обстрелянным клеткам, равные варианты выбираются случайно
+        int best = -1;
+        int bestDensity = -1;
+        int ties = 0;
+        for (int cell = 0; cell < density.length; cell++) {
+            if (shot.get(cell)) continue;
+            int value = density[cell];
+            if (value > bestDensity) {
+                best = cell;
+                bestDensity = value;
+                ties = 1;
+            } else if (value == bestDensity && random.nextInt(++ties) == 0) {
+                best = cell;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void record(int x, int y, MoveResult.ResultType result) {
+        int cell = shot.index(x, y);
+        switch (result) {
+            case MISS:
+                shot.set(cell);
+                block(cell);
+                break;
+            case HIT:
+                markHit(x, y);
+                break;
+            case SUNK:
+            case WIN:
+                markHit(x, y);
+                sink(x, y);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void markHit(int x, int y) {
+        int cell = shot.index(x, y);
+        if (shot.get(cell) && !hits.get(cell)) return; // Уже учтено
+        shot.set(cell);
+        hits.set(cell);
+        // Корабли прямые и не касаются углами: диагональные соседи попадания пусты
+        for (int dy = -1; dy <= 1; dy += 2) {
+            for (int dx = -1; dx <= 1; dx += 2) {
+                if (shot.inBounds(x + dx, y + dy)) {
+                    block(shot.index(x + dx, y + dy));
+                }
+            }
+        }
+    }
+
+    // Потопленный корабль - непрерывная линия попаданий через (x, y)
+    private void sink(int x, int y) {
+        boolean horizontal = inHits(x - 1, y) || inHits(x + 1, y);
+        int dx = horizontal ? 1 : 0;
+        int dy = horizontal ? 0 : 1;
+        int startX = x;
+        int startY = y;
+        while (inHits(startX - dx, startY - dy)) {
+            startX -= dx;
+            startY -= dy;
+        }
+
+        int size = 0;
+        for (int cx = startX, cy = startY; inHits(cx, cy); cx += dx, cy += dy) {
+            hits.clear(hits.index(cx, cy));
+            // Сам корабль и вся его окрестность больше не могут содержать других кораблей
+            for (int ny = cy - 1; ny <= cy + 1; ny++) {
+                for (int nx = cx - 1; nx <= cx + 1; nx++) {
+                    if (blocked.inBounds(nx, ny)) {
+                        block(blocked.index(nx, ny));
+                    }
+                }
+            }
+            size++;
+        }
+        if (size < remaining.length && remaining[size] > 0) {
+            remaining[size]--;
+        }
+    }
+
+    private boolean inHits(int x, int y) {
+        return hits.inBounds(x, y) && hits.get(x, y);
+    }
+
+    private void block(int cell) {
+        if (!blocked.get(cell)) {
+            blocked.set(cell);
+            pruneNeeded = true;
+        }
+    }
+
+    // Выбрасывает расстановки, задевающие заведомо пустые клетки
+    private void prune() {
+        int words = blocked.wordCount();
+        for (int size = 1; size < remaining.length; size++) {
+            if (alive[size] == null) continue;
+            long[][] masks = placementMasks[size];
+            int[] ids = alive[size];
+            int count = aliveCount[size];
+            for (int i = 0; i < count; ) {
+                long[] mask = masks[ids[i]];
+                boolean dead = false;
+                for (int w = 0; w < words && !dead; w++) {
+                    dead = (mask[w] & blocked.word(w)) != 0;
+                }
+                if (dead) {
+                    ids[i] = ids[--count];
+                } else {
+                    i++;
+                }
+            }
+            aliveCount[size] = count;
+        }
+        pruneNeeded = false;
+    }
+
+    private int countHits(long[] mask) {
+        int covered = 0;
+        for (int w = 0; w < mask.length; w++) {
+            covered += Long.bitCount(mask[w] & hits.word(w));
+        }
+        return covered;
+    }
+}
@@ -0,0 +1,17 @@
+package com.battleship.common;
+
+// Стратегия выбора выстрелов для бота и симуляций. Стратегия видит только результаты
+// своих выстрелов, как и живой игрок.
+public interface ShotStrategy {
+    // Индекс клетки (y * width + x) для следующего выстрела или -1, если стрелять некуда
+    int nextShot();
+
+    // Результат выстрела в (x, y); для потопившего выстрела - SUNK или WIN
+    void record(int x, int y, MoveResult.ResultType result);
+
+    // Все корабли соперника потоплены
+    boolean isFinished();
+
+    // Подготовка к новой партии
+    void reset();
+}
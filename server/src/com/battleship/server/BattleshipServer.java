@@ -1,129 +1,486 @@
 package com.battleship.server;
 
+import com.battleship.common.Bitboard;
+import com.battleship.common.FleetConfigParser;
+import com.battleship.common.FleetGenerator;
+import com.battleship.common.FleetRules;
+import com.battleship.common.MoveResult;
+import com.battleship.common.PackedBoard;
+import com.battleship.common.Ruleset;
+import com.battleship.common.ShotPlanner;
+
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.management.ObjectName;
 
 public class BattleshipServer {
+    // Режим сетевого транспорта: поток на клиента или циклы событий на селекторах
+    public enum TransportMode {
+        BLOCKING,
+        NIO
+    }
+
+    // На каких потоках выполняются цикл приема и ClientHandler.run()
+    public enum ThreadMode {
+        PLATFORM,
+        VIRTUAL
+    }
+
     private ServerSocket serverSocket;
+    private NioTransport nioTransport;
     private ExecutorService threadPool;
     private Map<Integer, ClientHandler> clients = new ConcurrentHashMap<>();
+    private final MatchmakingQueue<ClientHandler> matchmaking;
     private volatile boolean running = false;
     private final int PORT;
-    private int nextClientId = 1;
+    private final TransportMode transportMode;
+    private final ThreadMode threadMode;
+    private final int ioThreads;
+    // Подключения принимает поток приема, а в NIO - циклы событий, по одному на селектор
+    private final AtomicInteger nextClientId = new AtomicInteger(1);
+    // Боты: один поток планирует ходы всех ботов, сами ходы занимают микросекунды
+    private final ScheduledExecutorService botExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "battleship-bots");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger nextBotId = new AtomicInteger(1);
+    private volatile long botFillDelayMillis = 10000; // Отрицательное значение отключает ботов
+    private volatile long botThinkMillis = 500;
+    // Правила новых партий: из файла, если он задан (перечитывается при изменении), иначе ruleset
+    private volatile Ruleset ruleset = Ruleset.STANDARD;
+    private volatile Path rulesetFile;
+    // Метка в ClientHandler.placedBoard: расстановку из очереди ожидания уже забрала сессия
+    private static final PackedBoard FLEET_TAKEN = new PackedBoard(1, 1);
+    // Незаконченные партии по номеру - для возврата в них по ключу из GAME_STARTED
+    private final Map<Long, GameSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextSessionId = new AtomicLong(1);
+    // Кольцо шардов SessionRouter и адрес этого шарда в нем; null - сервер без маршрутизатора
+    private volatile ConsistentHashRing<InetSocketAddress> shardRing;
+    private volatile InetSocketAddress shardAddress;
+    private final SecureRandom tokenRandom = new SecureRandom();
+    private volatile MoveJournal journal; // null - партии не переживают перезапуска
+    private volatile ReplayWriter replays; // null - законченные партии не сохраняются
+    private volatile long resumeWindowMillis = 60000;
+    // Место отключившегося игрока держится reconnectGraceMillis; удерживаемых партий не
+    // больше maxHeldSessions - при переполнении раньше срока завершаются самые старые
+    private volatile long reconnectGraceMillis = 30000;
+    private volatile int maxHeldSessions = 10000;
+    private final Queue<GameSession> heldSessions = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger heldCount = new AtomicInteger();
+    // Потоки партий: события одной партии выполняются по очереди в одном потоке
+    private final MatchExecutor matchExecutor = new MatchExecutor(Runtime.getRuntime().availableProcessors());
+    // Сколько сообщений одного клиента может ждать в очереди потока партии; дальше его
+    // соединение перестает читаться, пока партия не выполнит половину
+    private static final int MAX_PENDING_TASKS = 32;
+    // Флоты ботов дает FleetGenerator, один на поток партии: маски положений строятся раз на
+    // правила, а не на каждую партию. Соседние флоты одного потока достаются разным партиям,
+    // поэтому между ними INDEPENDENT_MIXING_STEPS шагов. Правила, маски которых больше
+    // MAX_BOT_FLEET_MASK_BYTES, расставляются FleetRules.randomFleet
+    private static final ThreadLocal<BotFleets> BOT_FLEETS = new ThreadLocal<>();
+    private static final long MAX_BOT_FLEET_MASK_BYTES = 4 << 20;
+    // Запись в блокирующие сокеты (StreamConnection) и доставка событий зрителям
+    // (SpectatorChannel). Медленный клиент держит только свой виртуальный поток-писатель,
+    // а не поток партии, подбора пар или пул клиентов
+    private final ExecutorService writerExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    // Метрики сервера, в том числе пределы очередей отправки соединений и статистика по ним
+    private final ServerMetrics metrics = new ServerMetrics();
+    private volatile int metricsPort = -1; // HTTP-метрики на локальном адресе; меньше нуля - нет
+    private MetricsEndpoint metricsEndpoint;
+    private ObjectName metricsName; // Регистрация в JMX
+    // Отпускается в shutdown(): потоки NIO и виртуальные потоки - демоны и не держат JVM
+    private final CountDownLatch stopped = new CountDownLatch(1);
 
     public  BattleshipServer(int port) {
+        this(port, TransportMode.BLOCKING, 0, ThreadMode.PLATFORM);
+    }
+
+    public BattleshipServer(int port, TransportMode transportMode, int ioThreads) {
+        this(port, transportMode, ioThreads, ThreadMode.PLATFORM);
+    }
+
+    public BattleshipServer(int port, TransportMode transportMode, int ioThreads, ThreadMode threadMode) {
         this.PORT = port;
-        this.threadPool = Executors.newCachedThreadPool();
+        this.transportMode = transportMode;
+        this.threadMode = threadMode;
+        this.ioThreads = ioThreads > 0 ? ioThreads : Runtime.getRuntime().availableProcessors();
+        // Виртуальные потоки дешевы: тысячи простаивающих в чтении клиентов
+        // не держат тысячи потоков ОС и их стеков
+        this.threadPool = threadMode == ThreadMode.VIRTUAL
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newCachedThreadPool();
+        this.matchmaking = new MatchmakingQueue<>(ClientHandler::isConnected);
+
+        // Текущие величины сервер знает и так - они читаются только при снятии метрик
+        metrics.gauge("connections_active", "Открытые соединения клиентов", clients::size);
+        metrics.gauge("players_waiting", "Игроки в очереди подбора", matchmaking::getWaitingCount);
+        metrics.gauge("sessions_active", "Незаконченные партии", sessions::size);
+        metrics.gauge("sessions_held", "Партии, ждущие возвращения игрока", heldCount::get);
+        metrics.timer("time_to_match_seconds", "Ожидание соперника в очереди подбора", matchmaking.getTimeToMatch());
     }
 
     public void start() {
+        startMetrics();
+        if (transportMode == TransportMode.NIO) {
+            startNio();
+            return;
+        }
+
         try {
             serverSocket = new ServerSocket(PORT);
             running = true;
-            System.out.println("Сервер запущен на порту: " + PORT);
-
-            // Отдельный поток для мониторинга активных соединений
-            threadPool.submit(this::monitorConnections);
+            ServerLog.info(ServerLog.Event.SERVER, "Сервер запущен на порту: " + PORT +
+                    (threadMode == ThreadMode.VIRTUAL ? " (виртуальные потоки)" : ""));
 
             // Основной цикл принятия подключений
             threadPool.submit(() -> {
                 while (running) {
                     try {
                         Socket clientSocket = serverSocket.accept();
-                        int clientId = nextClientId++;
+                        int clientId = nextClientId.getAndIncrement();
+                        metrics.connectionOpened();
                         ClientHandler handler = new ClientHandler(clientId, clientSocket);
                         clients.put(clientId, handler);
                         threadPool.submit(handler);
-                        System.out.println("Подключен новый клиент #" + clientId);
+                        ServerLog.info(ServerLog.Event.CONNECT, clientId, 0, "Подключен новый клиент");
                     } catch (IOException e) {
                         if (running) {
-                            System.err.println("Ошибка при принятии подключения: " + e.getMessage());
+                            ServerLog.error(ServerLog.Event.IO_ERROR, "Ошибка при принятии подключения", e.getMessage());
                         }
                     }
                 }
             });
         } catch (IOException e) {
-            System.err.println("Ошибка запуска сервера: " + e.getMessage());
+            ServerLog.error(ServerLog.Event.SERVER, "Ошибка запуска сервера", e.getMessage());
             shutdown();
         }
     }
 
-    private void monitorConnections() {
-        while (running) {
+    private void startNio() {
+        try {
+            nioTransport = new NioTransport(PORT, ioThreads, new NioEvents(), metrics);
+            running = true;
+            nioTransport.start();
+            ServerLog.info(ServerLog.Event.SERVER,
+                    "Сервер запущен на порту: " + PORT + " (NIO, потоков ввода-вывода: " + ioThreads + ")");
+        } catch (IOException e) {
+            ServerLog.error(ServerLog.Event.SERVER, "Ошибка запуска сервера", e.getMessage());
+            shutdown();
+        }
+    }
+
+    // Метрики в JMX всегда, по HTTP - если задан порт. Скорости пересчитываются раз в
+    // секунду в botExecutor: там же идут остальные таймеры сервера
+    private void startMetrics() {
+        try {
+            metricsName = MetricsMBean.register(metrics, PORT);
+        } catch (Exception e) {
+            ServerLog.error(ServerLog.Event.SERVER, "Не удалось зарегистрировать метрики в JMX", e.getMessage());
+        }
+        int port = metricsPort;
+        if (port >= 0) {
             try {
-                // Проверяем все соединения каждые 5 секунд
-                TimeUnit.SECONDS.sleep(5);
-
-                // Удаляем отключенных клиентов
-                Iterator<Map.Entry<Integer, ClientHandler>> it = clients.entrySet().iterator();
-                while (it.hasNext()) {
-                    Map.Entry<Integer, ClientHandler> entry = it.next();
-                    if (!entry.getValue().isConnected()) {
-                        System.out.println("Клиент #" + entry.getKey() + " отключен, удаляем из списка");
-                        it.remove();
-                    }
+                metricsEndpoint = MetricsEndpoint.start(port, metrics);
+                ServerLog.info(ServerLog.Event.SERVER,
+                        "Метрики: http://localhost:" + metricsEndpoint.getPort() + MetricsEndpoint.PATH);
+            } catch (IOException e) {
+                ServerLog.error(ServerLog.Event.SERVER, "Не удалось открыть порт метрик " + port, e.getMessage());
+            }
+        }
+        botExecutor.scheduleAtFixedRate(() -> metrics.sample(System.nanoTime()), 0, 1, TimeUnit.SECONDS);
+    }
+
+    private void stopMetrics() {
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+        }
+        if (metricsName != null) {
+            try {
+                MetricsMBean.unregister(metricsName);
+            } catch (Exception e) {
+                ServerLog.error(ServerLog.Event.SERVER, "Ошибка при снятии метрик из JMX", e.getMessage());
+            }
+        }
+    }
+
+    // Порт HTTP-метрик (GET /metrics на локальном адресе), 0 - любой свободный,
+    // меньше нуля - без HTTP. Вызывается до start()
+    public void setMetricsPort(int port) {
+        if (port > 65535) {
+            throw new IllegalArgumentException("Недопустимый порт метрик: " + port);
+        }
+        this.metricsPort = port;
+    }
+
+    // Порт, на котором открылись HTTP-метрики, или -1
+    public int getMetricsPort() {
+        MetricsEndpoint endpoint = metricsEndpoint;
+        return endpoint != null ? endpoint.getPort() : -1;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Через сколько миллисекунд ожидания игроку без пары дается бот; меньше нуля - никогда
+    public void setBotFillDelay(long millis) {
+        this.botFillDelayMillis = millis;
+    }
+
+    // Пауза перед каждым выстрелом бота, чтобы человек успевал следить за игрой
+    public void setBotThinkTime(long millis) {
+        this.botThinkMillis = Math.max(0, millis);
+    }
+
+    // Журнал ходов в каталоге directory. Вызывается до start(): незаконченные партии из
+    // журнала восстанавливаются, и игроки могут вернуться в них сообщением RESUME
+    public void setJournal(Path directory) throws IOException {
+        MoveJournal opened = MoveJournal.open(directory);
+        journal = opened;
+        int recovered = recoverSessions(opened);
+        if (recovered > 0) {
+            ServerLog.info(ServerLog.Event.JOURNAL, "Восстановлено партий из журнала: " + recovered);
+        }
+    }
+
+    // Сохранять законченные партии в файлы повторов в каталоге directory. Вызывается до
+    // start(), иначе до вызова законченные партии не сохранятся
+    public void setReplayLog(Path directory) throws IOException {
+        replays = ReplayWriter.open(directory);
+    }
+
+    // Сколько восстановленная партия ждет возвращения игроков
+    public void setResumeWindow(long millis) {
+        this.resumeWindowMillis = Math.max(0, millis);
+    }
+
+    // Сколько держать место игрока, потерявшего связь посреди партии; 0 - не держать
+    public void setReconnectGrace(long millis) {
+        this.reconnectGraceMillis = Math.max(0, millis);
+    }
+
+    // Сервер - шард за SessionRouter: shards - тот же список, что у маршрутизатора, self -
+    // адрес этого шарда в нем, записанный так же. Номера новых партий выдаются только те,
+    // что кольцо относит к self, и маршрутизатор по номеру из RESUME и SPECTATE находит
+    // этот шард. Вызывается до start()
+    public void setShard(List<InetSocketAddress> shards, InetSocketAddress self) {
+        if (!shards.contains(self)) {
+            throw new IllegalArgumentException("Адреса " + self + " нет в списке шардов");
+        }
+        ConsistentHashRing<InetSocketAddress> ring = new ConsistentHashRing<>();
+        for (InetSocketAddress shard : shards) {
+            ring.add(shard);
+        }
+        shardAddress = self;
+        shardRing = ring;
+    }
+
+    public void setMaxHeldSessions(int max) {
+        this.maxHeldSessions = Math.max(0, max);
+    }
+
+    // Партии, в которых хотя бы одно место ждет возвращения игрока
+    public int getHeldSessions() {
+        return heldCount.get();
+    }
+
+    public int getActiveSessions() {
+        return sessions.size();
+    }
+
+    // Вызывается в botExecutor. Завершение выполняется в потоке вытесняемой партии позже,
+    // поэтому партия снимается со счета сразу, как только взята из очереди удерживаемых:
+    // иначе следующий проход вытеснил бы лишние
+    private void evictHeldSessions() {
+        while (heldCount.get() > maxHeldSessions) {
+            GameSession oldest = heldSessions.poll();
+            if (oldest == null) return;
+            heldCount.decrementAndGet();
+            oldest.expireReservedSeats(true);
+        }
+    }
+
+    // Следующий номер партии; у шарда - следующий из тех, что кольцо относит к нему
+    private long newSessionId() {
+        ConsistentHashRing<InetSocketAddress> ring = shardRing;
+        long id = nextSessionId.getAndIncrement();
+        while (ring != null && !shardAddress.equals(ring.get(id))) {
+            id = nextSessionId.getAndIncrement();
+        }
+        return id;
+    }
+
+    private int recoverSessions(MoveJournal source) throws IOException {
+        long deadline = System.currentTimeMillis() + resumeWindowMillis;
+        source.replay(new MoveJournal.Listener() {
+            @Override
+            public void sessionCreated(long sessionId, Ruleset rules, long[] tokens, boolean[] bots) {
+                Player[] seats = new Player[2];
+                for (int i = 0; i < 2; i++) {
+                    seats[i] = bots[i] ? new BotPlayer(nextBotId.getAndIncrement()) : new ReservedSeat(deadline);
                 }
+                GameSession session = new GameSession(sessionId, rules, tokens, seats);
+                sessions.put(sessionId, session);
+                if (!bots[0] || !bots[1]) session.hold();
+                nextSessionId.accumulateAndGet(sessionId + 1, Math::max);
+            }
 
-                // Проверяем, нужно ли сопоставить игроков в комнаты
-                matchPlayers();
+            @Override
+            public void fleetPlaced(long sessionId, int seat, Bitboard ships) {
+                GameSession session = sessions.get(sessionId);
+                if (session != null) session.restoreFleet(seat, ships);
+            }
 
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return;
+            @Override
+            public void shot(long sessionId, int seat, int x, int y) {
+                GameSession session = sessions.get(sessionId);
+                if (session != null) session.restoreShot(seat, x, y);
+            }
+        });
+        // Партии, в которые никто не вернулся за отведенное время, завершаются
+        for (GameSession session : sessions.values()) {
+            try {
+                botExecutor.schedule(() -> session.expireReservedSeats(false), resumeWindowMillis,
+                        TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Сервер уже останавливается
             }
         }
+        return sessions.size();
     }
 
-    private void matchPlayers() {
-        // Находим клиентов, которые ожидают начала игры
-        List<ClientHandler> waitingClients = new ArrayList<>();
+    // Правила для всех следующих партий. IllegalArgumentException, если флот не удается расставить
+    public void setRuleset(Ruleset ruleset) {
+        ruleset.checkPlaceable();
+        this.ruleset = ruleset;
+        this.rulesetFile = null;
+    }
 
-        for (ClientHandler client : clients.values()) {
-            if (client.isWaitingForGame()) {
-                waitingClients.add(client);
+    // Файл с элементом <ruleset>: читается при создании каждой сессии (из кэша, пока
+    // файл не изменился), так что правила меняются без перезапуска сервера
+    public void setRulesetFile(Path file) throws IOException {
+        this.ruleset = FleetConfigParser.loadRuleset(file);
+        this.rulesetFile = file;
+    }
+
+    public Ruleset getRuleset() {
+        Path file = rulesetFile;
+        if (file != null) {
+            try {
+                ruleset = FleetConfigParser.loadRuleset(file);
+            } catch (IOException e) {
+                // Испорченный при правке файл не должен мешать играть по прежним правилам
+                ServerLog.warn(ServerLog.Event.SERVER, 0, 0, "Не удалось перечитать правила, остаются прежние",
+                        e.getMessage());
             }
         }
+        return ruleset;
+    }
 
-        // Сопоставляем игроков по парам
-        for (int i = 0; i < waitingClients.size() / 2; i++) {
-            ClientHandler player1 = waitingClients.get(i * 2);
-            ClientHandler player2 = waitingClients.get(i * 2 + 1);
+    // Вызывается очередью подбора сразу, как только набирается пара
+    private void matchPlayers(Player player1, Player player2) {
+        // Создаем игровую сессию и уведомляем игроков
+        Ruleset rules = getRuleset();
+        GameSession session = new GameSession(player1, player2, rules); // Сам назначается игрокам
 
-            // Создаем игровую сессию и уведомляем игроков
-            GameSession session = new GameSession(player1, player2);
-            player1.setGameSession(session);
-            player2.setGameSession(session);
+        // Отправляем сообщение о начале игры вместе с правилами партии
+        GameData startData1 = new GameData();
+        startData1.setGameState(GameData.GameState.GAME_STARTED);
+        startData1.setPlayerTurn(true); // Первым ходит игрок, дольше ждавший соперника
+        startData1.setRuleset(rules);
+        startData1.setSessionId(session.getId());
+        startData1.setResumeToken(session.getResumeToken(0));
 
-            // Отправляем сообщение о начале игры
-            GameData startData1 = new GameData();
-            startData1.setGameState(GameData.GameState.GAME_STARTED);
-            startData1.setPlayerTurn(true); // Первый игрок ходит первым
+        GameData startData2 = new GameData();
+        startData2.setGameState(GameData.GameState.GAME_STARTED);
+        startData2.setPlayerTurn(false);
+        startData2.setRuleset(rules);
+        startData2.setSessionId(session.getId());
+        startData2.setResumeToken(session.getResumeToken(1));
+
+        player1.sendData(startData1);
+        player2.sendData(startData2);
+        metrics.matchCreated();
+
+        ServerLog.info(ServerLog.Event.SESSION, 0, session.getId(), "Создана новая игровая сессия: "
+                + player1.getName() + " и " + player2.getName() + (rules.isStandard() ? "" : ", правила " + rules));
+    }
 
-            GameData startData2 = new GameData();
-            startData2.setGameState(GameData.GameState.GAME_STARTED);
-            startData2.setPlayerTurn(false);
+    // Номер партии для полей журнала; 0 - поля нет
+    private static long sessionIdOf(GameSession session) {
+        return session != null ? session.getId() : 0;
+    }
 
-            player1.sendData(startData1);
-            player2.sendData(startData2);
+    // Партия для зрителя, не назвавшего номер: самая смотримая, при равенстве - самая новая
+    private GameSession featuredSession() {
+        GameSession featured = null;
+        int featuredViewers = -1;
+        for (GameSession session : sessions.values()) {
+            if (!session.isActive()) continue;
+            int viewers = session.getSpectatorCount();
+            if (viewers > featuredViewers || (viewers == featuredViewers && session.getId() > featured.getId())) {
+                featured = session;
+                featuredViewers = viewers;
+            }
+        }
+        return featured;
+    }
 
-            System.out.println("Создана новая игровая сессия между клиентами #" +
-                    player1.getClientId() + " и #" + player2.getClientId());
+    // Игрок так и не дождался соперника - сводим его с ботом
+    private void fillWithBot(ClientHandler player, MatchmakingQueue.Ticket<ClientHandler> ticket) {
+        // Если билет уже забрала очередь, игрок получил живого соперника
+        if (running && matchmaking.takeOutside(ticket)) {
+            matchPlayers(player, new BotPlayer(nextBotId.getAndIncrement()));
         }
     }
 
+    // Время ожидания соперника в очереди подбора, в наносекундах
+    public LatencyHistogram getTimeToMatch() {
+        return matchmaking.getTimeToMatch();
+    }
+
+    // Очереди отправки соединений: пределы и статистика записи
+    public OutboundStats getOutboundStats() {
+        return metrics.getOutbound();
+    }
+
+    // Предел очереди отправки одного соединения; клиент, который не читает и
+    // переполнил ее, отключается и может вернуться в партию по RESUME
+    public void setOutboundLimits(int frames, int bytes) {
+        metrics.getOutbound().setLimits(frames, bytes);
+    }
+
+    public int getWaitingPlayers() {
+        return matchmaking.getWaitingCount();
+    }
+
+    // Ждать остановки сервера через shutdown()
+    public void awaitTermination() throws InterruptedException {
+        stopped.await();
+    }
+
     public void shutdown() {
         running = false;
-        System.out.println("Завершение работы сервера...");
+        ServerLog.info(ServerLog.Event.SERVER, "Завершение работы сервера...");
+        ServerLog.info(ServerLog.Event.SERVER, "Время подбора соперника: " + matchmaking.getTimeToMatch().summaryMillis());
+        ServerLog.info(ServerLog.Event.SERVER, "Отправка: " + metrics.getOutbound().summary());
+        ServerLog.info(ServerLog.Event.SERVER, "Сообщения игроков в партиях: " + metrics.getMoveLatency().summaryMillis());
 
         // Закрываем все клиентские соединения
         for (ClientHandler client : clients.values()) {
@@ -131,13 +488,40 @@ public class BattleshipServer {
         }
         clients.clear();
 
+        if (nioTransport != null) {
+            nioTransport.shutdown();
+        }
+
         // Закрываем серверный сокет
         try {
             if (serverSocket != null && !serverSocket.isClosed()) {
                 serverSocket.close();
             }
         } catch (IOException e) {
-            System.err.println("Ошибка при закрытии серверного сокета: " + e.getMessage());
+            ServerLog.error(ServerLog.Event.SERVER, "Ошибка при закрытии серверного сокета", e.getMessage());
+        }
+
+        stopMetrics();
+        botExecutor.shutdownNow();
+        matchExecutor.shutdown(1000);
+        writerExecutor.shutdownNow();
+
+        // Незаконченные партии остаются в журнале и восстановятся при следующем запуске
+        MoveJournal current = journal;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                ServerLog.error(ServerLog.Event.JOURNAL, "Ошибка при закрытии журнала ходов", e.getMessage());
+            }
+        }
+        ReplayWriter replayLog = replays;
+        if (replayLog != null) {
+            try {
+                replayLog.close();
+            } catch (IOException e) {
+                ServerLog.error(ServerLog.Event.JOURNAL, "Ошибка при закрытии файла повторов", e.getMessage());
+            }
         }
 
         // Останавливаем пул потоков
@@ -149,50 +533,119 @@ public class BattleshipServer {
         } catch (InterruptedException e) {
             threadPool.shutdownNow();
         }
+        stopped.countDown();
+
+        ServerLog.info(ServerLog.Event.SERVER, "Сервер остановлен");
+        ServerLog.flush(1000);
+    }
+
+    // События NIO-транспорта: каждому соединению соответствует свой ClientHandler
+    private class NioEvents implements NioTransport.Listener {
+        @Override
+        public void onOpen(NioTransport.NioConnection connection) {
+            int clientId = nextClientId.getAndIncrement();
+            metrics.connectionOpened();
+            ClientHandler handler = new ClientHandler(clientId, connection);
+            connection.attach(handler);
+            clients.put(clientId, handler);
+            ServerLog.info(ServerLog.Event.CONNECT, clientId, 0, "Подключен новый клиент");
+        }
+
+        @Override
+        public void onMessage(NioTransport.NioConnection connection, GameData data) {
+            ClientHandler handler = (ClientHandler) connection.attachment();
+            if (handler != null) {
+                handler.processClientData(data);
+            }
+        }
 
-        System.out.println("Сервер остановлен");
+        @Override
+        public void onClose(NioTransport.NioConnection connection) {
+            ClientHandler handler = (ClientHandler) connection.attachment();
+            if (handler != null) {
+                handler.disconnect();
+            }
+        }
+    }
+
+    // Участник игровой сессии: подключенный клиент или бот на сервере
+    private interface Player {
+        String getName();
+
+        boolean isConnected();
+
+        void sendData(GameData data);
+
+        void setGameSession(GameSession session);
+
+        // Флот, расставленный до создания сессии, если он подходит к ее правилам, иначе null
+        FleetState takePlacedFleet(Ruleset rules);
     }
 
     // Внутренний класс для обработки клиентских подключений
-    private class ClientHandler implements Runnable {
+    private class ClientHandler implements Runnable, Player, SpectatorChannel.Viewer {
         private final int clientId;
-        private final Socket clientSocket;
-        private ObjectOutputStream out;
-        private ObjectInputStream in;
+        private final Socket clientSocket; // Только для блокирующего транспорта
+        private volatile Connection connection;
         private volatile boolean connected = true;
-        private volatile boolean waitingForGame = true;
-        private GameSession gameSession = null;
+        private volatile MatchmakingQueue.Ticket<ClientHandler> ticket;
+        private volatile GameSession gameSession = null;
+        // Расстановка, присланная до начала игры; FLEET_TAKEN - ее уже забрала сессия
+        private final AtomicReference<PackedBoard> placedBoard = new AtomicReference<>();
+        private volatile GameSession watching; // Партия, которую клиент смотрит как зритель
+        // Сообщения клиента, отданные потоку партии и еще не выполненные. Клиент, который
+        // шлет быстрее, чем партия успевает их выполнять, перестает читаться, а не копит
+        // задачи в потоке, общем с другими партиями
+        private final AtomicInteger pendingTasks = new AtomicInteger();
+        private final ReentrantLock readGate = new ReentrantLock(); // Порядок pauseReads и resumeReads
+        private volatile boolean readsPaused;
 
         public ClientHandler(int clientId, Socket socket) {
             this.clientId = clientId;
             this.clientSocket = socket;
-            try {
-                // Важно создавать потоки в таком порядке
-                this.out = new ObjectOutputStream(socket.getOutputStream());
-                this.out.flush();
-                this.in = new ObjectInputStream(socket.getInputStream());
-            } catch (IOException e) {
-                System.err.println("Ошибка при инициализации потоков для клиента #" + clientId);
-                connected = false;
-            }
+        }
+
+        public ClientHandler(int clientId, Connection connection) {
+            this.clientId = clientId;
+            this.clientSocket = null;
+            this.connection = connection;
         }
 
         @Override
         public void run() {
+            // Чтение в отдельном потоке нужно только блокирующему транспорту,
+            // NIO-соединения доставляют сообщения через NioEvents
+            if (clientSocket == null) return;
+
+            // Согласование протокола читает данные клиента, поэтому выполняется
+            // здесь, а не в потоке приема подключений
+            StreamConnection stream;
+            try {
+                stream = StreamConnection.open(clientSocket, writerExecutor, metrics);
+                connection = stream;
+            } catch (IOException e) {
+                ServerLog.warn(ServerLog.Event.IO_ERROR, clientId, 0, "Ошибка при инициализации потоков клиента",
+                        e.getMessage());
+                disconnect();
+                return;
+            }
+
             try {
                 while (connected && running) {
                     try {
-                        GameData data = (GameData) in.readObject();
+                        GameData data = stream.read();
                         processClientData(data);
                     } catch (EOFException | SocketException e) {
                         // Клиент отключился
                         break;
                     } catch (ClassNotFoundException e) {
-                        System.err.println("Ошибка при десериализации объекта от клиента #" + clientId);
+                        ServerLog.warn(ServerLog.Event.PROTOCOL_ERROR, clientId, 0,
+                                "Ошибка при десериализации объекта от клиента", e.getMessage());
                     }
                 }
             } catch (IOException e) {
-                System.err.println("Ошибка при обработке данных от клиента #" + clientId + ": " + e.getMessage());
+                ServerLog.warn(ServerLog.Event.IO_ERROR, clientId, 0, "Ошибка при обработке данных от клиента",
+                        e.getMessage());
             } finally {
                 disconnect();
             }
@@ -200,99 +653,997 @@ public class BattleshipServer {
 
         private void processClientData(GameData data) {
             if (data == null) return;
+            metrics.messageReceived();
+
+            // Правила партии задает только сервер
+            if (data.getRuleset() != null) {
+                ServerLog.warn(ServerLog.Event.PROTOCOL_ERROR, clientId, 0,
+                        "Клиент прислал правила партии, соединение закрыто", null);
+                disconnect();
+                return;
+            }
+
+            GameSession session = gameSession;
+
+            // Зритель, попросивший игру или другую партию, перестает смотреть текущую
+            if (watching != null && (data.getGameState() == GameData.GameState.WAITING_FOR_OPPONENT
+                    || data.getGameState() == GameData.GameState.RESUME
+                    || data.getGameState() == GameData.GameState.SPECTATE)) {
+                stopWatching();
+            }
+
+            // Запрос новой игры, возврат в другую или просмотр чужой после окончания предыдущей
+            if (session != null && !session.isActive()
+                    && (data.getGameState() == GameData.GameState.WAITING_FOR_OPPONENT
+                        || data.getGameState() == GameData.GameState.RESUME
+                        || data.getGameState() == GameData.GameState.SPECTATE)) {
+                gameSession = null;
+                session = null;
+                placedBoard.set(null); // Флот прошлой партии забран, новую расстановку ждет следующая
+            }
 
             // Обработка данных в зависимости от состояния игры
-            if (gameSession != null) {
-                gameSession.handlePlayerMove(this, data);
+            if (session != null) {
+                session.handlePlayerMove(this, data);
             } else {
                 // Обработка данных от клиента, который еще не в игре
                 if (data.getGameState() == GameData.GameState.WAITING_FOR_OPPONENT) {
-                    waitingForGame = true;
+                    enqueueForMatch();
+                } else if (data.getGameState() == GameData.GameState.RESUME) {
+                    resume(data.getSessionId(), data.getResumeToken(), data.getMoveCount());
+                } else if (data.getGameState() == GameData.GameState.SPECTATE) {
+                    spectate(data.getSessionId());
+                } else if (data.getGameState() == GameData.GameState.PLACING_SHIPS) {
+                    // Игрок расставил корабли, пока ждал соперника - сессия заберет флот при создании.
+                    // Проверяем по текущим правилам, чтобы сразу сообщить об ошибке; сессия
+                    // проверит расстановку еще раз по своим правилам.
+                    try {
+                        FleetState.fromBoard(data.getPlayerBoard(), getRuleset());
+                    } catch (IllegalArgumentException e) {
+                        sendError(this, e.getMessage());
+                        return;
+                    }
+                    PackedBoard previous = placedBoard.get();
+                    while (previous != FLEET_TAKEN && !placedBoard.compareAndSet(previous, data.getPlayerBoard())) {
+                        previous = placedBoard.get();
+                    }
+                    if (previous == FLEET_TAKEN) {
+                        // Сессия создана, пока сообщение шло сюда, и уже назначена игроку
+                        gameSession.handlePlayerMove(this, data);
+                    }
                 }
             }
         }
 
-        public boolean isConnected() {
-            return connected && !clientSocket.isClosed();
+        // Ключ проверяет поток партии; ответ - снимок или ERROR - придет оттуда же
+        private void resume(long sessionId, long token, int seenMoves) {
+            GameSession session = sessions.get(sessionId);
+            if (session == null) {
+                sendError(this, "Партия не найдена или уже закончилась");
+                return;
+            }
+            session.resume(this, token, seenMoves);
+        }
+
+        // Вызывается там, откуда пришло сообщение, до постановки его в очередь партии
+        void taskQueued() {
+            if (pendingTasks.incrementAndGet() < MAX_PENDING_TASKS) return;
+            readGate.lock();
+            try {
+                if (readsPaused) return;
+                // Флаг ставится до проверки счетчика: поток партии, выполнивший задачи
+                // после нее, увидит флаг и возобновит чтение
+                readsPaused = true;
+                Connection current = connection;
+                if (pendingTasks.get() >= MAX_PENDING_TASKS && current != null) {
+                    current.pauseReads();
+                } else {
+                    readsPaused = false;
+                }
+            } finally {
+                readGate.unlock();
+            }
+        }
+
+        // Вызывается в потоке партии после выполнения сообщения
+        void taskDone() {
+            if (pendingTasks.decrementAndGet() > MAX_PENDING_TASKS / 2 || !readsPaused) return;
+            readGate.lock();
+            try {
+                if (readsPaused && pendingTasks.get() <= MAX_PENDING_TASKS / 2) {
+                    readsPaused = false;
+                    connection.resumeReads();
+                }
+            } finally {
+                readGate.unlock();
+            }
         }
 
-        public boolean isWaitingForGame() {
-            return waitingForGame && isConnected();
+        // Вызывается в потоке партии, принявшей игрока обратно
+        private void resumed() {
+            matchmaking.cancel(ticket);
+            placedBoard.set(null);
         }
 
+        // Зритель не ждет соперника: очередь подбора прислала бы ему GAME_STARTED посреди чужой партии.
+        // watching меняется здесь же, в потоке чтения, а подписка и отписка идут в потоке
+        // партии по очереди, так что передумавший зритель не останется подписанным
+        private void spectate(long sessionId) {
+            GameSession session = sessionId != 0 ? sessions.get(sessionId) : featuredSession();
+            if (session == null || !session.isActive()) {
+                sendError(this, "Партия не найдена или уже закончилась");
+                return;
+            }
+            matchmaking.cancel(ticket);
+            watching = session;
+            session.watch(this);
+        }
+
+        private void stopWatching() {
+            GameSession session = watching;
+            watching = null;
+            if (session != null) session.unwatch(this);
+        }
+
+        @Override
+        public FleetState takePlacedFleet(Ruleset rules) {
+            PackedBoard board = placedBoard.getAndSet(FLEET_TAKEN);
+            if (board == null || board == FLEET_TAKEN) return null;
+            try {
+                return FleetState.fromBoard(board, rules);
+            } catch (IllegalArgumentException e) {
+                // Правила сменились, пока игрок ждал: он расставит корабли заново по GAME_STARTED
+                return null;
+            }
+        }
+
+        private void enqueueForMatch() {
+            MatchmakingQueue.Ticket<ClientHandler> current = ticket;
+            if (current != null && current.isWaiting()) return; // Уже в очереди
+
+            // Если соперник уже ждет, сессия создается прямо внутри enqueue
+            MatchmakingQueue.Ticket<ClientHandler> waiting = matchmaking.enqueue(this, BattleshipServer.this::matchPlayers);
+            ticket = waiting;
+            long fillDelay = botFillDelayMillis;
+            if (waiting != null && fillDelay >= 0) {
+                botExecutor.schedule(() -> fillWithBot(this, waiting), fillDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public boolean isConnected() {
+            Connection current = connection;
+            if (current == null) {
+                // Блокирующее соединение, еще не завершившее согласование протокола
+                return connected && clientSocket != null && !clientSocket.isClosed();
+            }
+            return connected && current.isOpen();
+        }
+
+        @Override
         public void setGameSession(GameSession session) {
             this.gameSession = session;
-            this.waitingForGame = false;
         }
 
         public int getClientId() {
             return clientId;
         }
 
+        @Override
+        public String getName() {
+            return "клиент #" + clientId;
+        }
+
+        @Override
         public void sendData(GameData data) {
-            if (!isConnected()) return;
+            Connection current = connection;
+            if (current == null || !isConnected()) return;
 
             try {
-                out.writeObject(data);
-                out.flush();
-                out.reset(); // Сбрасываем кеш объектов
+                current.send(data);
             } catch (IOException e) {
-                System.err.println("Ошибка при отправке данных клиенту #" + clientId);
+                ServerLog.warn(ServerLog.Event.IO_ERROR, clientId, sessionIdOf(gameSession),
+                        "Ошибка при отправке данных клиенту", e.getMessage());
                 disconnect();
             }
         }
 
+        @Override
+        public void sendFrame(SharedFrame frame) throws IOException {
+            Connection current = connection;
+            if (current == null || !isConnected()) return;
+            current.send(frame);
+        }
+
+        @Override
+        public int getBacklog() {
+            Connection current = connection;
+            return current != null ? current.getBacklog() : 0;
+        }
+
+        // Зритель отстал от партии или запись ему не удалась
+        @Override
+        public void drop() {
+            ServerLog.info(ServerLog.Event.SPECTATOR, clientId, sessionIdOf(watching),
+                    "Зритель отключен: отстал от партии или обрыв связи");
+            disconnect();
+        }
+
         public void disconnect() {
+            boolean wasConnected = connected;
             connected = false;
             try {
-                if (in != null) in.close();
-                if (out != null) out.close();
-                if (clientSocket != null) clientSocket.close();
+                Connection current = connection;
+                if (current != null) {
+                    current.close();
+                } else if (clientSocket != null) {
+                    clientSocket.close();
+                }
             } catch (IOException e) {
-                System.err.println("Ошибка при закрытии соединения с клиентом #" + clientId);
+                ServerLog.warn(ServerLog.Event.IO_ERROR, clientId, 0, "Ошибка при закрытии соединения с клиентом",
+                        e.getMessage());
+            }
+            // Очистка по событию закрытия соединения, без периодического обхода
+            matchmaking.cancel(ticket);
+            clients.remove(clientId, this);
+            stopWatching();
+            GameSession session = gameSession;
+            if (session != null) {
+                session.playerLeft(this);
+            }
+
+            // Повторные вызовы (из цикла чтения и из shutdown) не дублируют сообщение
+            if (wasConnected) {
+                ServerLog.info(ServerLog.Event.DISCONNECT, clientId, sessionIdOf(session), "Клиент отключен");
+            }
+        }
+    }
+
+    // Генератор флотов ботов потока партии для одних правил; generator == null - маски
+    // для этих правил слишком велики
+    private static final class BotFleets {
+        final Ruleset rules;
+        final FleetGenerator generator;
+
+        private BotFleets(Ruleset rules, FleetGenerator generator) {
+            this.rules = rules;
+            this.generator = generator;
+        }
+
+        static BotFleets forCurrentThread(Ruleset rules) {
+            BotFleets cached = BOT_FLEETS.get();
+            if (cached == null || !cached.rules.equals(rules)) {
+                FleetGenerator generator = null;
+                if (FleetGenerator.maskBytes(rules.getWidth(), rules.getHeight(), rules.getFleet())
+                        <= MAX_BOT_FLEET_MASK_BYTES) {
+                    generator = new FleetGenerator(rules.getWidth(), rules.getHeight(), rules.getFleet(),
+                            ThreadLocalRandom.current(), FleetGenerator.INDEPENDENT_MIXING_STEPS);
+                }
+                cached = new BotFleets(rules, generator);
+                BOT_FLEETS.set(cached);
+            }
+            return cached;
+        }
+    }
+
+    // Бот на сервере: случайная допустимая расстановка и выстрелы по карте плотности.
+    // Сообщения сессии и сами ходы (GameSession.playBotTurn) выполняются в потоке партии,
+    // botExecutor только выдерживает паузу перед ходом, так что планировщик трогает один поток.
+    private class BotPlayer implements Player {
+        private final int botId;
+        private volatile ShotPlanner planner; // Создается вместе с флотом по правилам сессии
+        private volatile GameSession gameSession;
+
+        BotPlayer(int botId) {
+            this.botId = botId;
+        }
+
+        @Override
+        public String getName() {
+            return "бот #" + botId;
+        }
+
+        @Override
+        public boolean isConnected() {
+            return running;
+        }
+
+        @Override
+        public void setGameSession(GameSession session) {
+            this.gameSession = session;
+        }
+
+        // Бот расставляет корабли под правила сессии в момент ее создания, в потоке партии
+        @Override
+        public FleetState takePlacedFleet(Ruleset rules) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int width = rules.getWidth();
+            int height = rules.getHeight();
+            planner = new ShotPlanner(width, height, rules.getFleet(), random);
+            FleetGenerator generator = BotFleets.forCurrentThread(rules).generator;
+            Bitboard ships = generator != null
+                    ? generator.next()
+                    : FleetRules.randomFleet(width, height, rules.getFleet(), random);
+            return FleetState.fromShips(ships, rules);
+        }
+
+        @Override
+        public void sendData(GameData data) {
+            switch (data.getGameState()) {
+                case GAME_STARTED:
+                    if (data.isPlayerTurn()) scheduleShot(botThinkMillis);
+                    break;
+                case HIT:
+                    if (data.isPlayerTurn()) {
+                        planner.record(data.getX(), data.getY(), MoveResult.ResultType.HIT);
+                        // Попадание оставляет ход за нами; SHIP_SUNK, если он будет,
+                        // придет раньше, чем ход выполнится в потоке партии
+                        scheduleShot(botThinkMillis);
+                    }
+                    break;
+                case MISS:
+                    if (data.isPlayerTurn()) {
+                        planner.record(data.getX(), data.getY(), MoveResult.ResultType.MISS);
+                    } else {
+                        scheduleShot(botThinkMillis);
+                    }
+                    break;
+                case SHIP_SUNK:
+                    if (data.isPlayerTurn()) {
+                        planner.record(data.getX(), data.getY(), MoveResult.ResultType.SUNK);
+                    }
+                    break;
+                case ERROR:
+                    // Обычно соперник еще расставляет корабли - пробуем позже
+                    scheduleShot(Math.max(botThinkMillis, 1000));
+                    break;
+                case GAME_OVER:
+                case OPPONENT_DISCONNECTED:
+                    gameSession = null;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // Восстановление из журнала: флот придет отдельной записью, а планировщик
+        // заново узнает результаты прежних выстрелов через replayShot
+        void restorePlanner(Ruleset rules) {
+            planner = new ShotPlanner(rules.getWidth(), rules.getHeight(), rules.getFleet(),
+                    ThreadLocalRandom.current());
+        }
+
+        void replayShot(int x, int y, MoveResult.ResultType result) {
+            if (result == MoveResult.ResultType.MISS) {
+                planner.record(x, y, MoveResult.ResultType.MISS);
+                return;
+            }
+            planner.record(x, y, MoveResult.ResultType.HIT);
+            if (result != MoveResult.ResultType.HIT) {
+                planner.record(x, y, MoveResult.ResultType.SUNK);
+            }
+        }
+
+        private void scheduleShot(long delayMillis) {
+            try {
+                botExecutor.schedule(() -> {
+                    GameSession session = gameSession;
+                    if (session != null) {
+                        session.playBotTurn(this);
+                    }
+                }, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Сервер останавливается
             }
-            System.out.println("Клиент #" + clientId + " отключен");
         }
+
+        // Вызывается в потоке партии
+        GameData nextMove() {
+            int cell = planner.nextShot();
+            if (cell < 0) return null;
+            GameData shot = new GameData();
+            shot.setGameState(GameData.GameState.PLAYER_TURN);
+            shot.setX(cell % planner.getWidth());
+            shot.setY(cell / planner.getWidth());
+            return shot;
+        }
+    }
+
+    // Место игрока, потерявшего связь, или игрока восстановленной партии до его возвращения.
+    // До истечения срока считается подключенным, чтобы ходы соперника не завершали партию;
+    // сообщения не копятся - вернувшийся игрок получит снимок и список пропущенных выстрелов.
+    private static class ReservedSeat implements Player {
+        private final long deadline;
+
+        ReservedSeat(long deadline) {
+            this.deadline = deadline;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= deadline;
+        }
+
+        @Override
+        public String getName() {
+            return "ожидаемый игрок";
+        }
+
+        @Override
+        public boolean isConnected() {
+            return System.currentTimeMillis() < deadline;
+        }
+
+        @Override
+        public void sendData(GameData data) {
+        }
+
+        @Override
+        public void setGameSession(GameSession session) {
+        }
+
+        @Override
+        public FleetState takePlacedFleet(Ruleset rules) {
+            return null;
+        }
+    }
+
+    private static void sendError(Player player, String message) {
+        GameData error = new GameData();
+        error.setGameState(GameData.GameState.ERROR);
+        error.setErrorMessage(message);
+        player.sendData(error);
     }
 
-    // Класс для управления игровой сессией между двумя игроками
+    // Класс для управления игровой сессией между двумя игроками.
+    // Сервер хранит оба флота и сам определяет исход каждого выстрела.
+    // Все события партии - ходы игроков и бота, обрыв связи, возвращение, зрители -
+    // выполняются по очереди в ее потоке (MatchExecutor), так что состояние партии не
+    // требует блокировок. Если включен журнал ходов, создание партии, флоты и каждый
+    // принятый выстрел записываются в него в том же потоке и в том же порядке, в котором
+    // применяются.
     private class GameSession {
-        private final ClientHandler player1;
-        private final ClientHandler player2;
-        private boolean gameActive = true;
+        private final long id;
+        private final long[] resumeTokens = new long[2];
+        private final Player[] players = new Player[2]; // Место меняется, когда игрок возвращается в партию
+        private final Ruleset rules;
+        private final FleetState[] fleets = new FleetState[2];
+        private int turn = 0; // Индекс стреляющего игрока, первым ходит player1
+        private volatile boolean gameActive = true; // Читается и потоками чтения клиентов
+        // Принятые выстрелы (GameData.packMove, признак "свой" - выстрел player2) для тех,
+        // кто вернется в партию. Клетку обстреливают не больше раза с каждой стороны,
+        // поэтому выстрелов не больше двух площадей поля
+        private int[] moveLog = new int[16];
+        private int moveCount;
+        private boolean held; // Место хотя бы одного игрока ждет его возвращения
+        private volatile SpectatorChannel spectators; // Создается с первым зрителем
+
+        public GameSession(Player player1, Player player2, Ruleset rules) {
+            this.id = newSessionId();
+            this.players[0] = player1;
+            this.players[1] = player2;
+            this.rules = rules;
+            for (int i = 0; i < 2; i++) {
+                long token;
+                do {
+                    token = tokenRandom.nextLong();
+                } while (token == 0);
+                this.resumeTokens[i] = token;
+            }
+            sessions.put(id, this);
+
+            MoveJournal current = journal;
+            if (current != null) {
+                current.sessionCreated(id, rules, resumeTokens.clone(),
+                        new boolean[] {player1 instanceof BotPlayer, player2 instanceof BotPlayer});
+            }
+
+            // Корабли могли быть расставлены еще в очереди ожидания. Сессия назначается игрокам
+            // до того, как забрать их флот: расстановка, пришедшая после этого, уйдет в партию
+            // обычным ходом, и забирается флот первой задачей в потоке партии, раньше этого хода
+            player1.setGameSession(this);
+            player2.setGameSession(this);
+            submit(null, () -> {
+                for (int i = 0; i < 2; i++) {
+                    FleetState fleet = players[i].takePlacedFleet(rules);
+                    if (fleet == null) continue;
+                    fleets[i] = fleet;
+                    MoveJournal log = journal;
+                    if (log != null) log.fleetPlaced(id, i, fleet.getShips());
+                }
+            });
+        }
+
+        // Партия из журнала: флоты и выстрелы доигрываются через restoreFleet и restoreShot
+        GameSession(long id, Ruleset rules, long[] tokens, Player[] seats) {
+            this.id = id;
+            this.rules = rules;
+            System.arraycopy(tokens, 0, resumeTokens, 0, 2);
+            System.arraycopy(seats, 0, players, 0, 2);
+            for (int i = 0; i < 2; i++) {
+                players[i].setGameSession(this);
+                if (players[i] instanceof BotPlayer) {
+                    ((BotPlayer) players[i]).restorePlanner(rules);
+                }
+            }
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getResumeToken(int index) {
+            return resumeTokens[index];
+        }
+
+        // Ходы двух игроков приходят из разных потоков чтения, а таймеры и боты - из
+        // botExecutor; все они становятся в очередь потока партии. source - клиент, чье
+        // сообщение выполняет задача: его задачи в очереди считаются (ClientHandler.taskQueued)
+        private void submit(ClientHandler source, Runnable task) {
+            if (source != null) source.taskQueued();
+            try {
+                matchExecutor.execute(id, () -> {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        ServerLog.error(ServerLog.Event.SESSION_ERROR, 0, id, "Ошибка в партии", e.toString());
+                    } finally {
+                        if (source != null) source.taskDone();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Сервер останавливается
+                if (source != null) source.taskDone();
+            }
+        }
+
+        private int indexOf(Player player) {
+            return player == players[0] ? 0 : player == players[1] ? 1 : -1;
+        }
+
+        // Конец партии: больше не принимает ходов, уходит из журнала и, если оба флота
+        // были расставлены, сохраняется в повторах
+        private void finish() {
+            gameActive = false;
+            release();
+            closeSpectators();
+            sessions.remove(id, this);
+            MoveJournal current = journal;
+            if (current != null) current.sessionEnded(id);
+            ReplayWriter replayLog = replays;
+            if (replayLog != null && fleets[0] != null && fleets[1] != null) {
+                replayLog.append(id, rules, new Bitboard[] {fleets[0].getShips(), fleets[1].getShips()},
+                        new boolean[] {players[0] instanceof BotPlayer, players[1] instanceof BotPlayer},
+                        moveLog, moveCount);
+            }
+        }
+
+        // Зрители получают события глазами первого игрока: его поле - playerBoard,
+        // поле второго - opponentBoard. Корабли видны только подбитые, как самим игрокам
+        void watch(ClientHandler viewer) {
+            submit(viewer, () -> {
+                if (viewer.watching != this) return; // Зритель уже попросил другое
+                if (!gameActive) {
+                    sendError(viewer, "Партия не найдена или уже закончилась");
+                    return;
+                }
+                SpectatorChannel channel = spectators;
+                if (channel == null) {
+                    channel = new SpectatorChannel(writerExecutor, SpectatorChannel.DEFAULT_CAPACITY,
+                            this::spectatorSnapshot);
+                    spectators = channel;
+                }
+                channel.subscribe(viewer);
+            });
+        }
+
+        // После watch того же зрителя в очереди партии, поэтому не разминется с подпиской
+        void unwatch(ClientHandler viewer) {
+            submit(viewer, () -> {
+                SpectatorChannel channel = spectators;
+                if (channel != null) channel.unsubscribe(viewer);
+            });
+        }
+
+        int getSpectatorCount() {
+            SpectatorChannel channel = spectators;
+            return channel != null ? channel.size() : 0;
+        }
+
+        // Вызывается каналом зрителей в потоке партии - новому или отставшему зрителю
+        private GameData spectatorSnapshot() {
+            GameData data = new GameData();
+            data.setGameState(GameData.GameState.SPECTATE);
+            data.setSessionId(id);
+            data.setRuleset(rules);
+            data.setPlayerTurn(turn == 0);
+            data.setMoveCount(moveCount);
+            if (fleets[0] != null) data.setPlayerBoard(fleets[0].shooterView());
+            if (fleets[1] != null) data.setOpponentBoard(fleets[1].shooterView());
+            if (fleets[0] != null && fleets[1] != null) setScores(data, 0);
+            return data;
+        }
+
+        // Событие выстрела кодируется один раз на всех зрителей. Канал без зрителей
+        // только сбрасывает сохраненный снимок, партии, которую не смотрели, он не нужен
+        private void publishShot(GameData.GameState state, int shooterIndex, int x, int y) {
+            SpectatorChannel channel = spectators;
+            if (channel == null) return;
+            GameData data = new GameData();
+            data.setGameState(state);
+            data.setX(x);
+            data.setY(y);
+            data.setPlayerTurn(shooterIndex == 0);
+            setScores(data, 0);
+            channel.publish(data);
+        }
+
+        // Последнее событие для зрителей: победа одного из игроков или прерванная партия
+        private void closeSpectators() {
+            SpectatorChannel channel = spectators;
+            if (channel == null) return;
+            int viewers = channel.size();
+            GameData data = new GameData();
+            int shipCount = rules.getShipCount();
+            boolean firstWon = fleets[1] != null && fleets[1].getShipsSunk() == shipCount;
+            boolean secondWon = fleets[0] != null && fleets[0].getShipsSunk() == shipCount;
+            if (firstWon || secondWon) {
+                data.setGameState(GameData.GameState.GAME_OVER);
+                data.setWinner(firstWon);
+                setScores(data, 0);
+            } else {
+                data.setGameState(GameData.GameState.OPPONENT_DISCONNECTED);
+            }
+            channel.close(data);
+            ServerLog.info(ServerLog.Event.SPECTATOR, 0, id, "Партию досмотрели зрителей: " + viewers
+                    + ", снимков отставшим: " + channel.getResyncs() + ", отключено: " + channel.getDropped());
+        }
+
+        // Вызываются в потоке партии (или до ее публикации при восстановлении)
+        private void hold() {
+            if (held) return;
+            held = true;
+            heldSessions.add(this);
+            if (heldCount.incrementAndGet() > maxHeldSessions) {
+                try {
+                    botExecutor.execute(BattleshipServer.this::evictHeldSessions);
+                } catch (RejectedExecutionException e) {
+                    // Сервер останавливается
+                }
+            }
+        }
+
+        // Вытесненную партию evictHeldSessions уже снял со счета
+        private void release() {
+            if (!held) return;
+            held = false;
+            if (heldSessions.remove(this)) heldCount.decrementAndGet();
+        }
+
+        private void logMove(int index, int x, int y, MoveResult.ResultType result) {
+            if (moveCount == moveLog.length) {
+                moveLog = Arrays.copyOf(moveLog, moveLog.length * 2);
+            }
+            moveLog[moveCount++] = GameData.packMove(x, y, index == 1, result != MoveResult.ResultType.MISS,
+                    result == MoveResult.ResultType.SUNK || result == MoveResult.ResultType.WIN);
+        }
+
+        // Выстрелы с номера from глазами игрока index
+        private int[] movesSince(int from, int index) {
+            int[] moves = Arrays.copyOfRange(moveLog, from, moveCount);
+            if (index == 0) {
+                for (int i = 0; i < moves.length; i++) {
+                    moves[i] ^= GameData.packMove(0, 0, true, false, false);
+                }
+            }
+            return moves;
+        }
 
-        public GameSession(ClientHandler player1, ClientHandler player2) {
-            this.player1 = player1;
-            this.player2 = player2;
+        void restoreFleet(int index, Bitboard ships) {
+            try {
+                fleets[index] = FleetState.fromShips(ships, rules);
+            } catch (IllegalArgumentException e) {
+                ServerLog.warn(ServerLog.Event.JOURNAL, 0, id, "Флот из журнала не подходит к правилам", e.getMessage());
+            }
         }
 
+        void restoreShot(int index, int x, int y) {
+            FleetState target = fleets[1 - index];
+            if (!gameActive || fleets[index] == null || target == null || !target.inBounds(x, y)) return;
+            MoveResult.ResultType result = target.fire(x, y);
+            if (result == MoveResult.ResultType.ALREADY_HIT) return;
+            if (result == MoveResult.ResultType.MISS) {
+                turn = 1 - index;
+            }
+            logMove(index, x, y, result);
+            if (players[index] instanceof BotPlayer) {
+                ((BotPlayer) players[index]).replayShot(x, y, result);
+            }
+            if (result == MoveResult.ResultType.WIN) {
+                // Сервер упал между победным выстрелом и записью о конце партии
+                finish();
+            }
+        }
+
+        // Игрок вернулся по ключу из GAME_STARTED: занимает свое место и получает снимок
+        // партии и выстрелы, сделанные после seenMoves. Прежнее соединение того же игрока,
+        // если сервер еще считает его живым, закрывается - ключ у него тот же.
+        // Выполняется в потоке партии и не задерживает остальные; неверный ключ или
+        // законченная партия - ERROR
+        void resume(ClientHandler handler, long token, int seenMoves) {
+            submit(handler, () -> {
+                int index = token == 0 ? -1 : token == resumeTokens[0] ? 0 : token == resumeTokens[1] ? 1 : -1;
+                if (!gameActive || index < 0) {
+                    sendError(handler, "Партия не найдена или уже закончилась");
+                    return;
+                }
+                if (!handler.isConnected()) return; // Ушел, не дождавшись снимка: место остается за ним
+                Player previous = players[index];
+                players[index] = handler;
+                handler.setGameSession(this);
+                if (previous != handler && previous instanceof ClientHandler) {
+                    ClientHandler stale = (ClientHandler) previous;
+                    stale.setGameSession(null);
+                    stale.disconnect();
+                }
+                if (!(players[1 - index] instanceof ReservedSeat)) {
+                    release();
+                }
+
+                GameData data = snapshot(index);
+                if (seenMoves >= 0 && seenMoves <= moveCount) {
+                    data.setMissedMoves(movesSince(seenMoves, index));
+                }
+                handler.sendData(data);
+                ServerLog.info(ServerLog.Event.RESUME, handler.getClientId(), id,
+                        "Игрок вернулся в партию, пропущено выстрелов: " + data.getMissedMoves().length);
+
+                Player opponent = players[1 - index];
+                if (opponent instanceof BotPlayer) {
+                    // Бот ходит, когда игрок на месте; если флот игрока еще не расставлен, бот получит ERROR и повторит
+                    if (turn == 1 - index) ((BotPlayer) opponent).scheduleShot(botThinkMillis);
+                } else {
+                    // Соперник узнает, что ждать больше не нужно, и чей сейчас ход
+                    GameData turnData = new GameData();
+                    turnData.setGameState(turn == index ? GameData.GameState.OPPONENT_TURN : GameData.GameState.PLAYER_TURN);
+                    opponent.sendData(turnData);
+                }
+                handler.resumed();
+            });
+        }
+
+        // Снимок для игрока index: свое поле с выстрелами соперника, поле соперника
+        // с результатами своих выстрелов, очередь хода, счет и число выстрелов
+        private GameData snapshot(int index) {
+            GameData data = new GameData();
+            data.setGameState(GameData.GameState.RESUME);
+            data.setSessionId(id);
+            data.setResumeToken(resumeTokens[index]);
+            data.setRuleset(rules);
+            data.setPlayerTurn(turn == index);
+            data.setMoveCount(moveCount);
+            if (fleets[index] != null) data.setPlayerBoard(fleets[index].ownerView());
+            if (fleets[1 - index] != null) data.setOpponentBoard(fleets[1 - index].shooterView());
+            if (fleets[0] != null && fleets[1] != null) setScores(data, index);
+            return data;
+        }
+
+        // Соединение игрока закрылось посреди партии: его место держится reconnectGraceMillis,
+        // соперник тем временем может доходить свою серию. При остановке сервера партия
+        // остается как есть - в журнале
+        void playerLeft(Player player) {
+            submit(null, () -> {
+                int index = indexOf(player);
+                if (index >= 0) leave(index);
+            });
+        }
+
+        private void leave(int index) {
+            if (!gameActive || !running) return;
+            Player opponent = players[1 - index];
+            long grace = reconnectGraceMillis;
+            if (grace <= 0) {
+                // Без удержания партию завершит следующий ход соперника, а без соперника - сразу
+                if (opponent instanceof BotPlayer || !opponent.isConnected()) finish();
+                return;
+            }
+            players[index] = new ReservedSeat(System.currentTimeMillis() + grace);
+            hold();
+            try {
+                botExecutor.schedule(() -> expireReservedSeats(false), grace, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Сервер останавливается
+            }
+            if (opponent instanceof ClientHandler) {
+                sendError(opponent, "Соперник потерял связь, ждем его возвращения");
+            }
+        }
+
+        // Срок удержания места истек (или удерживаемых партий слишком много - force):
+        // партия завершается, оставшийся игрок получает OPPONENT_DISCONNECTED
+        void expireReservedSeats(boolean force) {
+            submit(null, () -> {
+                if (!gameActive) return;
+                for (int i = 0; i < 2; i++) {
+                    if (players[i] instanceof ReservedSeat && (force || ((ReservedSeat) players[i]).isExpired())) {
+                        GameData gameOverData = new GameData();
+                        gameOverData.setGameState(GameData.GameState.OPPONENT_DISCONNECTED);
+                        players[1 - i].sendData(gameOverData);
+                        finish();
+                        ServerLog.info(ServerLog.Event.SESSION, 0, id, "Партия завершена: игрок не вернулся");
+                        return;
+                    }
+                }
+            });
+        }
+
+        public boolean isActive() {
+            return gameActive;
+        }
+
+        // Ход бота: выстрел выбирается в том же потоке партии, в котором бот получает результаты
+        public void playBotTurn(BotPlayer bot) {
+            submit(null, () -> {
+                if (!gameActive) return;
+                // Бот не стреляет по пустому месту: ход повторится, когда игрок вернется
+                int index = indexOf(bot);
+                if (index < 0 || players[1 - index] instanceof ReservedSeat) return;
+                GameData shot = bot.nextMove();
+                if (shot != null) {
+                    applyMove(bot, shot);
+                }
+            });
+        }
+
+        // Сообщения одного игрока приходят из одного потока чтения и выполняются в том же порядке.
+        // Время хода в метриках - вместе с ожиданием в очереди потока партии
         public void handlePlayerMove(ClientHandler player, GameData moveData) {
+            long received = System.nanoTime();
+            submit(player, () -> {
+                applyMove(player, moveData);
+                metrics.moveHandled(System.nanoTime() - received);
+            });
+        }
+
+        private void applyMove(Player player, GameData moveData) {
             if (!gameActive) return;
 
-            // Определяем второго игрока
-            ClientHandler opponent = (player == player1) ? player2 : player1;
+            // Определяем второго игрока; прежнее соединение вернувшегося игрока не в счет
+            int index = indexOf(player);
+            if (index < 0) return;
+            Player opponent = players[1 - index];
+
+            // Соперник уже отключился, а его playerLeft еще ждет в очереди партии: место
+            // держится так же, как если бы playerLeft выполнился раньше этого хода
+            if (opponent instanceof ClientHandler && !opponent.isConnected()) {
+                leave(1 - index);
+                if (!gameActive) return;
+                opponent = players[1 - index];
+            }
 
             // Проверяем, подключен ли противник
             if (!opponent.isConnected()) {
                 GameData gameOverData = new GameData();
                 gameOverData.setGameState(GameData.GameState.OPPONENT_DISCONNECTED);
                 player.sendData(gameOverData);
-                gameActive = false;
+                finish();
                 return;
             }
 
-            // Передаем ход противнику
-            opponent.sendData(moveData);
+            switch (moveData.getGameState()) {
+                case PLACING_SHIPS:
+                    placeFleet(player, index, moveData);
+                    break;
+                case PLAYER_TURN:
+                    fire(player, index, opponent, moveData.getX(), moveData.getY());
+                    break;
+                default:
+                    // Остальные сообщения клиента не влияют на ход игры
+                    break;
+            }
+        }
 
-            // Проверяем конец игры
-            if (moveData.getGameState() == GameData.GameState.GAME_OVER) {
-                gameActive = false;
+        private void placeFleet(Player player, int index, GameData data) {
+            if (fleets[index] != null) {
+                sendError(player, "Корабли уже расставлены");
+                return;
             }
+            try {
+                fleets[index] = FleetState.fromBoard(data.getPlayerBoard(), rules);
+            } catch (IllegalArgumentException e) {
+                sendError(player, e.getMessage());
+                return;
+            }
+            MoveJournal current = journal;
+            if (current != null) current.fleetPlaced(id, index, fleets[index].getShips());
+        }
+
+        private void fire(Player player, int index, Player opponent, int x, int y) {
+            if (fleets[index] == null) {
+                sendError(player, "Сначала расставьте свои корабли");
+                return;
+            }
+            if (fleets[1 - index] == null) {
+                sendError(player, "Противник еще расставляет корабли");
+                return;
+            }
+            if (turn != index) {
+                sendError(player, "Сейчас ход противника");
+                return;
+            }
+
+            FleetState target = fleets[1 - index];
+            if (!target.inBounds(x, y)) {
+                sendError(player, "Выстрел за пределы поля");
+                return;
+            }
+
+            MoveResult.ResultType result = target.fire(x, y);
+            if (result == MoveResult.ResultType.ALREADY_HIT) {
+                sendError(player, "В эту клетку уже стреляли");
+                return;
+            }
+            // В журнал до рассылки результата: сообщенный игрокам ход восстановится
+            MoveJournal current = journal;
+            if (current != null) current.shot(id, index, x, y);
+            logMove(index, x, y, result);
+
+            // После промаха ход переходит к противнику, после попадания остается у стрелявшего
+            if (result == MoveResult.ResultType.MISS) {
+                turn = 1 - index;
+            }
+            GameData.GameState shotState = result == MoveResult.ResultType.MISS
+                    ? GameData.GameState.MISS
+                    : GameData.GameState.HIT;
+            sendResult(player, index, shotState, x, y, true);
+            sendResult(opponent, 1 - index, shotState, x, y, false);
+            publishShot(shotState, index, x, y);
+
+            if (result == MoveResult.ResultType.SUNK || result == MoveResult.ResultType.WIN) {
+                sendResult(player, index, GameData.GameState.SHIP_SUNK, x, y, true);
+                sendResult(opponent, 1 - index, GameData.GameState.SHIP_SUNK, x, y, false);
+                publishShot(GameData.GameState.SHIP_SUNK, index, x, y);
+            }
+
+            if (result == MoveResult.ResultType.WIN) {
+                finish();
+                sendGameOver(player, index, true);
+                sendGameOver(opponent, 1 - index, false);
+            }
+        }
+
+        // playerTurn в результате выстрела означает "это ваш выстрел"
+        private void sendResult(Player recipient, int recipientIndex, GameData.GameState state,
+                                int x, int y, boolean ownShot) {
+            GameData data = new GameData();
+            data.setGameState(state);
+            data.setX(x);
+            data.setY(y);
+            data.setPlayerTurn(ownShot);
+            setScores(data, recipientIndex);
+            recipient.sendData(data);
+        }
+
+        private void sendGameOver(Player recipient, int recipientIndex, boolean winner) {
+            GameData data = new GameData();
+            data.setGameState(GameData.GameState.GAME_OVER);
+            data.setWinner(winner);
+            setScores(data, recipientIndex);
+            recipient.sendData(data);
+        }
+
+        // Счет - число потопленных кораблей соперника
+        private void setScores(GameData data, int recipientIndex) {
+            data.setPlayerScore(fleets[1 - recipientIndex].getShipsSunk());
+            data.setOpponentScore(fleets[recipientIndex].getShipsSunk());
         }
     }
 
     public static void main(String[] args) {
         int port = 1234; // По умолчанию
+        TransportMode transportMode = TransportMode.BLOCKING;
+        ThreadMode threadMode = ThreadMode.PLATFORM;
+        int ioThreads = 0; // 0 - по числу процессоров
+        boolean bots = true;
 
         if (args.length > 0) {
             try {
@@ -302,10 +1653,143 @@ public class BattleshipServer {
             }
         }
 
-        BattleshipServer server = new  BattleshipServer(port);
+        // Остальные аргументы в любом порядке: blocking | nio, platform | virtual,
+        // nobots - не давать ботов игрокам без пары, rules=файл.xml - правила партий,
+        // journal=каталог - журнал ходов для восстановления партий после падения,
+        // replays=каталог - сохранять законченные партии в файлы повторов,
+        // grace=мс - сколько держать место игрока, потерявшего связь (0 - не держать),
+        // outq=кадров - предел очереди отправки соединения, переполнивший ее клиент отключается,
+        // metrics=порт - метрики по HTTP на локальном адресе (GET /metrics),
+        // log=уровень - наименьший уровень событий журнала: debug, info, warn или error,
+        // shards=host:port,... и shard=host:port - сервер работает шардом за SessionRouter
+        // с этим списком шардов и своим адресом в нем,
+        // число - количество потоков ввода-вывода для NIO
+        Path rules = null;
+        Path journalDirectory = null;
+        Path replayDirectory = null;
+        long grace = -1;
+        int outboundFrames = 0;
+        int metricsPort = -1;
+        String shardList = null;
+        String shardSelf = null;
+        for (int i = 1; i < args.length; i++) {
+            String option = args[i].toUpperCase();
+            if (option.startsWith("RULES=")) {
+                rules = Paths.get(args[i].substring("rules=".length()));
+            } else if (option.startsWith("JOURNAL=")) {
+                journalDirectory = Paths.get(args[i].substring("journal=".length()));
+            } else if (option.startsWith("REPLAYS=")) {
+                replayDirectory = Paths.get(args[i].substring("replays=".length()));
+            } else if (option.startsWith("GRACE=")) {
+                try {
+                    grace = Long.parseLong(args[i].substring("grace=".length()));
+                } catch (NumberFormatException e) {
+                    System.err.println("Неверный формат времени удержания места, используется значение по умолчанию: "
+                            + args[i]);
+                }
+            } else if (option.startsWith("OUTQ=")) {
+                try {
+                    outboundFrames = Integer.parseInt(args[i].substring("outq=".length()));
+                } catch (NumberFormatException e) {
+                    outboundFrames = 0;
+                }
+                if (outboundFrames < 1) {
+                    System.err.println("Предел очереди отправки должен быть целым числом не меньше 1, "
+                            + "используется значение по умолчанию: " + args[i]);
+                    outboundFrames = 0;
+                }
+            } else if (option.startsWith("METRICS=")) {
+                try {
+                    metricsPort = Integer.parseInt(args[i].substring("metrics=".length()));
+                } catch (NumberFormatException e) {
+                    metricsPort = -1;
+                }
+                if (metricsPort < 0 || metricsPort > 65535) {
+                    System.err.println("Порт метрик должен быть числом от 0 до 65535, метрики по HTTP отключены: "
+                            + args[i]);
+                    metricsPort = -1;
+                }
+            } else if (option.startsWith("LOG=")) {
+                try {
+                    ServerLog.setLevel(ServerLog.Level.valueOf(option.substring("LOG=".length())));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Неизвестный уровень журнала: " + args[i]);
+                }
+            } else if (option.startsWith("SHARDS=")) {
+                shardList = args[i].substring("shards=".length());
+            } else if (option.startsWith("SHARD=")) {
+                shardSelf = args[i].substring("shard=".length());
+            } else if (option.equals("NIO") || option.equals("BLOCKING")) {
+                transportMode = TransportMode.valueOf(option);
+            } else if (option.equals("VIRTUAL") || option.equals("PLATFORM")) {
+                threadMode = ThreadMode.valueOf(option);
+            } else if (option.equals("NOBOTS")) {
+                bots = false;
+            } else {
+                try {
+                    ioThreads = Integer.parseInt(args[i]);
+                } catch (NumberFormatException e) {
+                    System.err.println("Неизвестный параметр запуска: " + args[i]);
+                }
+            }
+        }
+
+        BattleshipServer server = new  BattleshipServer(port, transportMode, ioThreads, threadMode);
+        if (!bots) {
+            server.setBotFillDelay(-1);
+        }
+        if (grace >= 0) {
+            server.setReconnectGrace(grace);
+        }
+        if (outboundFrames > 0) {
+            server.setOutboundLimits(outboundFrames, OutboundStats.DEFAULT_MAX_BYTES);
+        }
+        if (metricsPort >= 0) {
+            server.setMetricsPort(metricsPort);
+        }
+        if (shardList != null || shardSelf != null) {
+            try {
+                if (shardList == null || shardSelf == null) {
+                    throw new IllegalArgumentException("нужны оба параметра, shards= и shard=");
+                }
+                server.setShard(SessionRouter.parseAddresses(shardList), SessionRouter.parseAddress(shardSelf));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Не удалось настроить шард, номера партий не согласованы с маршрутизатором: "
+                        + e.getMessage());
+            }
+        }
+        if (rules != null) {
+            try {
+                server.setRulesetFile(rules);
+                System.out.println("Правила партий: " + server.getRuleset());
+            } catch (IOException e) {
+                System.err.println("Не удалось загрузить правила, используются стандартные: " + e.getMessage());
+            }
+        }
+        if (replayDirectory != null) {
+            try {
+                server.setReplayLog(replayDirectory);
+            } catch (IOException e) {
+                System.err.println("Не удалось открыть файлы повторов, партии не будут сохраняться: "
+                        + e.getMessage());
+            }
+        }
+        if (journalDirectory != null) {
+            try {
+                server.setJournal(journalDirectory);
+            } catch (IOException e) {
+                System.err.println("Не удалось открыть журнал ходов, партии не будут восстанавливаться: "
+                        + e.getMessage());
+            }
+        }
         server.start();
 
         // Обработка сигнала остановки сервера
         Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown));
+        try {
+            server.awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,402 @@
+package com.battleship.server;
+
+import com.battleship.common.PackedBoard;
+import com.battleship.common.Ruleset;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Компактный двоичный формат GameData (версия 1).
+//
+//   тип сообщения   1 байт  - порядковый номер GameState, старший бит - есть расширения
+//   флаги           1 байт  - см. константы FLAG_*
+//   [расширения]    varint - см. константы EXT_*       если старший бит типа
+//     [размер полей]  varint ширина, varint высота     если EXT_BOARD_SIZE
+//     [правила]       varint ширина, высота, число кораблей, размеры  если EXT_RULESET
+//     [партия]        varint номер партии, 8 байт ключ возврата        если EXT_SESSION
+//     [выстрелы]      varint счетчик выстрелов, varint число пропущенных,
+//                     по каждому varint x, varint y, байт признаков    если EXT_MOVES
+//   x, y            varint
+//   [счет]          varint, varint             если FLAG_SCORES
+//   [время]         varint                     если FLAG_TIMESTAMP
+//   [ошибка]        varint длина + UTF-8       если FLAG_ERROR_MESSAGE
+//   [поле игрока]   2 бита на клетку (25 байт для 10x10)  если FLAG_PLAYER_BOARD
+//   [поле соперника] столько же                           если FLAG_OPPONENT_BOARD
+//
+// Поля передаются, только если они есть в сообщении (пустое поле тоже передается: по нему
+// клиент отличает нерасставленный флот), поэтому выстрел занимает около десятка байт. Кадры со
+// стандартным полем 10x10 и без правил побайтно совпадают с прежним форматом; размер
+// полей передается, только если он отличается от стандартного.
+class BinaryCodec implements WireCodec {
+    private static final int FLAG_PLAYER_TURN = 1;
+    private static final int FLAG_ERROR = 1 << 1;
+    private static final int FLAG_WINNER = 1 << 2;
+    private static final int FLAG_SCORES = 1 << 3;
+    private static final int FLAG_TIMESTAMP = 1 << 4;
+    private static final int FLAG_ERROR_MESSAGE = 1 << 5;
+    private static final int FLAG_PLAYER_BOARD = 1 << 6;
+    private static final int FLAG_OPPONENT_BOARD = 1 << 7;
+
+    private static final int TYPE_EXTENDED = 0x80;
+    private static final int EXT_BOARD_SIZE = 1;
+    private static final int EXT_RULESET = 1 << 1;
+    private static final int EXT_SESSION = 1 << 2;
+    private static final int EXT_MOVES = 1 << 3;
+    private static final int MAX_MISSED_MOVES = 2 * Ruleset.MAX_SIDE * Ruleset.MAX_SIDE;
+
+    private static final int STANDARD_SIZE = Ruleset.STANDARD.getWidth();
+    private static final GameData.GameState[] STATES = GameData.GameState.values();
+
+    @Override
+    public byte id() {
+        return WireCodecs.BINARY_V1_ID;
+    }
+
+    @Override
+    public String name() {
+        return "binary-v1";
+    }
+
+    @Override
+    public byte[] encode(GameData data) throws IOException {
+        byte[] errorMessage = data.getErrorMessage() != null
+                ? data.getErrorMessage().getBytes(StandardCharsets.UTF_8)
+                : null;
+        boolean scores = data.getPlayerScore() != 0 || data.getOpponentScore() != 0;
+        boolean playerBoard = data.hasPlayerBoard();
+        boolean opponentBoard = data.hasOpponentBoard();
+        PackedBoard sizeSource = playerBoard ? data.getPlayerBoard() : opponentBoard ? data.getOpponentBoard() : null;
+        if (playerBoard && opponentBoard && !sameSize(data.getPlayerBoard(), data.getOpponentBoard())) {
+            throw new StreamCorruptedException("Поля одного сообщения должны быть одного размера");
+        }
+        Ruleset ruleset = data.getRuleset();
+
+        int extensions = 0;
+        if (sizeSource != null && (sizeSource.getWidth() != STANDARD_SIZE || sizeSource.getHeight() != STANDARD_SIZE)) {
+            extensions |= EXT_BOARD_SIZE;
+        }
+        if (ruleset != null) extensions |= EXT_RULESET;
+        if (data.getSessionId() != 0) extensions |= EXT_SESSION;
+        int[] missedMoves = data.getMissedMoves();
+        if (data.getMoveCount() != 0 || missedMoves.length != 0) extensions |= EXT_MOVES;
+        int boardBytes = sizeSource != null ? packedBytes(sizeSource) : 0;
+
+        int flags = 0;
+        if (data.isPlayerTurn()) flags |= FLAG_PLAYER_TURN;
+        if (data.isError()) flags |= FLAG_ERROR;
+        if (data.isWinner()) flags |= FLAG_WINNER;
+        if (scores) flags |= FLAG_SCORES;
+        if (data.getTimestamp() > 0) flags |= FLAG_TIMESTAMP;
+        if (errorMessage != null) flags |= FLAG_ERROR_MESSAGE;
+        if (playerBoard) flags |= FLAG_PLAYER_BOARD;
+        if (opponentBoard) flags |= FLAG_OPPONENT_BOARD;
+
+        Writer out = new Writer(16 + (errorMessage != null ? errorMessage.length : 0)
+                + (ruleset != null ? 3 + ruleset.getShipCount() : 0) + (data.getSessionId() != 0 ? 18 : 0)
+                + 3 * missedMoves.length
+                + (playerBoard ? boardBytes : 0) + (opponentBoard ? boardBytes : 0));
+        out.writeByte(data.getGameState().ordinal() | (extensions != 0 ? TYPE_EXTENDED : 0));
+        out.writeByte(flags);
+        if (extensions != 0) {
+            out.writeVarInt(extensions);
+            if ((extensions & EXT_BOARD_SIZE) != 0) {
+                out.writeVarInt(sizeSource.getWidth());
+                out.writeVarInt(sizeSource.getHeight());
+            }
+            if (ruleset != null) {
+                out.writeVarInt(ruleset.getWidth());
+                out.writeVarInt(ruleset.getHeight());
+                out.writeVarInt(ruleset.getShipCount());
+                for (int i = 0; i < ruleset.getShipCount(); i++) {
+                    out.writeVarInt(ruleset.getShipSize(i));
+                }
+            }
+            if ((extensions & EXT_SESSION) != 0) {
+                out.writeVarLong(data.getSessionId());
+                out.writeLong(data.getResumeToken());
+            }
+            if ((extensions & EXT_MOVES) != 0) {
+                out.writeVarInt(data.getMoveCount());
+                out.writeVarInt(missedMoves.length);
+                for (int move : missedMoves) {
+                    out.writeVarInt(GameData.moveX(move));
+                    out.writeVarInt(GameData.moveY(move));
+                    out.writeByte(move >>> 16);
+                }
+            }
+        }
+        out.writeVarInt(data.getX());
+        out.writeVarInt(data.getY());
+        if (scores) {
+            out.writeVarInt(data.getPlayerScore());
+            out.writeVarInt(data.getOpponentScore());
+        }
+        if (data.getTimestamp() > 0) {
+            out.writeVarLong(data.getTimestamp());
+        }
+        if (errorMessage != null) {
+            out.writeVarInt(errorMessage.length);
+            out.writeBytes(errorMessage);
+        }
+        if (playerBoard) {
+            out.writeBoard(data.getPlayerBoard());
+        }
+        if (opponentBoard) {
+            out.writeBoard(data.getOpponentBoard());
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public GameData decode(byte[] buffer, int offset, int length) throws IOException {
+        Reader in = new Reader(buffer, offset, length);
+
+        int type = in.readByte();
+        int stateIndex = type & ~TYPE_EXTENDED;
+        if (stateIndex >= STATES.length) {
+            throw new StreamCorruptedException("Неизвестный тип сообщения: " + stateIndex);
+        }
+        int flags = in.readByte();
+
+        GameData data = new GameData();
+        int boardWidth = STANDARD_SIZE;
+        int boardHeight = STANDARD_SIZE;
+        if ((type & TYPE_EXTENDED) != 0) {
+            int extensions = in.readVarInt();
+            if ((extensions & ~(EXT_BOARD_SIZE | EXT_RULESET | EXT_SESSION | EXT_MOVES)) != 0) {
+                throw new StreamCorruptedException("Неизвестные расширения: " + extensions);
+            }
+            if ((extensions & EXT_BOARD_SIZE) != 0) {
+                boardWidth = in.readSide();
+                boardHeight = in.readSide();
+            }
+            if ((extensions & EXT_RULESET) != 0) {
+                data.setRuleset(in.readRuleset());
+            }
+            if ((extensions & EXT_SESSION) != 0) {
+                data.setSessionId(in.readVarLong());
+                data.setResumeToken(in.readLong());
+            }
+            if ((extensions & EXT_MOVES) != 0) {
+                data.setMoveCount(in.readVarInt());
+                data.setMissedMoves(in.readMoves());
+            }
+        }
+        data.setX(in.readVarInt());
+        data.setY(in.readVarInt());
+        if ((flags & FLAG_SCORES) != 0) {
+            data.setPlayerScore(in.readVarInt());
+            data.setOpponentScore(in.readVarInt());
+        }
+        if ((flags & FLAG_TIMESTAMP) != 0) {
+            data.setTimestamp(in.readVarLong());
+        }
+        if ((flags & FLAG_ERROR_MESSAGE) != 0) {
+            int messageLength = in.readVarInt();
+            data.setErrorMessage(new String(in.readBytes(messageLength), StandardCharsets.UTF_8));
+        }
+        if ((flags & FLAG_PLAYER_BOARD) != 0) {
+            data.attachPlayerBoard(in.readBoard(boardWidth, boardHeight));
+        }
+        if ((flags & FLAG_OPPONENT_BOARD) != 0) {
+            data.attachOpponentBoard(in.readBoard(boardWidth, boardHeight));
+        }
+        if (in.remaining() != 0) {
+            throw new StreamCorruptedException("Лишние байты в кадре: " + in.remaining());
+        }
+
+        // setWinner меняет состояние, поэтому состояние выставляем последним
+        data.setWinner((flags & FLAG_WINNER) != 0);
+        data.setError((flags & FLAG_ERROR) != 0);
+        data.setPlayerTurn((flags & FLAG_PLAYER_TURN) != 0);
+        data.setGameState(STATES[stateIndex]);
+        return data;
+    }
+
+    private static boolean sameSize(PackedBoard a, PackedBoard b) {
+        return a.getWidth() == b.getWidth() && a.getHeight() == b.getHeight();
+    }
+
+    // Четыре клетки на байт
+    private static int packedBytes(PackedBoard board) {
+        return (board.getWidth() * board.getHeight() + 3) / 4;
+    }
+
+    private static final class Writer {
+        private byte[] bytes;
+        private int size;
+
+        Writer(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void writeBytes(byte[] value) {
+            if (size + value.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + value.length));
+            }
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+        }
+
+        void writeVarInt(int value) throws IOException {
+            if (value < 0) {
+                throw new StreamCorruptedException("Отрицательное значение не кодируется: " + value);
+            }
+            writeVarLong(value);
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeLong(long value) {
+            for (int shift = 0; shift < 64; shift += 8) {
+                writeByte((int) (value >>> shift));
+            }
+        }
+
+        // Четыре клетки на байт - это младшие байты упакованных слов PackedBoard
+        void writeBoard(PackedBoard board) {
+            int bytes = packedBytes(board);
+            for (int i = 0; i < bytes; i++) {
+                writeByte((int) (board.word(i >>> 3) >>> ((i & 7) << 3)));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        Reader(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        int remaining() {
+            return end - position;
+        }
+
+        int readByte() throws IOException {
+            if (position >= end) {
+                throw new StreamCorruptedException("Неожиданный конец кадра");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            if (length > remaining()) {
+                throw new StreamCorruptedException("Неожиданный конец кадра");
+            }
+            byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return value;
+        }
+
+        int readVarInt() throws IOException {
+            long value = readVarLong();
+            if (value > Integer.MAX_VALUE) {
+                throw new StreamCorruptedException("Слишком большое значение: " + value);
+            }
+            return (int) value;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 63; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Слишком длинное число varint");
+        }
+
+        long readLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 8) {
+                value |= (long) readByte() << shift;
+            }
+            return value;
+        }
+
+        PackedBoard readBoard(int width, int height) throws IOException {
+            PackedBoard board = new PackedBoard(width, height);
+            int bytes = packedBytes(board);
+            long word = 0;
+            for (int i = 0; i < bytes; i++) {
+                word |= (long) readByte() << ((i & 7) << 3);
+                if ((i & 7) == 7 || i == bytes - 1) {
+                    board.setWord(i >>> 3, word);
+                    word = 0;
+                }
+            }
+            return board;
+        }
+
+        int[] readMoves() throws IOException {
+            int count = readVarInt();
+            if (count > MAX_MISSED_MOVES) {
+                throw new StreamCorruptedException("Слишком много выстрелов: " + count);
+            }
+            int[] moves = new int[count];
+            for (int i = 0; i < count; i++) {
+                int x = readVarInt();
+                int y = readVarInt();
+                int flags = readByte();
+                if (x >= Ruleset.MAX_SIDE || y >= Ruleset.MAX_SIDE || (flags & ~7) != 0) {
+                    throw new StreamCorruptedException("Недопустимый выстрел: " + x + ", " + y);
+                }
+                moves[i] = x | y << 8 | flags << 16;
+            }
+            return moves;
+        }
+
+        // Размер стороны ограничен, чтобы кадр не заставил выделить огромное поле
+        int readSide() throws IOException {
+            int side = readVarInt();
+            if (side <= 0 || side > Ruleset.MAX_SIDE) {
+                throw new StreamCorruptedException("Недопустимый размер поля: " + side);
+            }
+            return side;
+        }
+
+        Ruleset readRuleset() throws IOException {
+            int width = readSide();
+            int height = readSide();
+            int ships = readVarInt();
+            if (ships > Ruleset.MAX_SHIPS) {
+                throw new StreamCorruptedException("Слишком много кораблей: " + ships);
+            }
+            int[] fleet = new int[ships];
+            for (int i = 0; i < ships; i++) {
+                fleet[i] = readVarInt();
+            }
+            try {
+                return new Ruleset(width, height, fleet);
+            } catch (IllegalArgumentException e) {
+                throw new StreamCorruptedException("Недопустимые правила: " + e.getMessage());
+            }
+        }
+    }
+}
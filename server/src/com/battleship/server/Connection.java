@@ -0,0 +1,25 @@
+package com.battleship.server;
+
+import java.io.IOException;
+
+// Транспортный уровень одного клиента: ClientHandler работает через него
+// и не знает, блокирующий это сокет или канал NIO-селектора.
+interface Connection {
+    void send(GameData data) throws IOException;
+
+    // Сообщение, закодированное один раз для многих соединений (см. SharedFrame)
+    void send(SharedFrame frame) throws IOException;
+
+    // Сколько кадров принято send, но еще не записано в сокет
+    int getBacklog();
+
+    // Приостановить и возобновить прием сообщений клиента, пока партия не выполнит
+    // уже принятые. Непрочитанное копится в буфере сокета, и TCP притормаживает клиента
+    void pauseReads();
+
+    void resumeReads();
+
+    boolean isOpen();
+
+    void close() throws IOException;
+}
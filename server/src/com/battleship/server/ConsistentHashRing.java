@@ -0,0 +1,95 @@
+package com.battleship.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Кольцо согласованного хеширования: у каждого узла несколько виртуальных точек на
+// кольце, ключ достается первому узлу по часовой стрелке от своего хеша. При добавлении
+// или удалении узла переезжает только доля ключей этого узла, а не все.
+// Не потокобезопасно: кольцо собирается при запуске и дальше только читается.
+public class ConsistentHashRing<T> {
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final NavigableMap<Long, T> ring = new TreeMap<>();
+    private final List<T> nodes = new ArrayList<>();
+    private final int virtualNodes;
+
+    public ConsistentHashRing() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Число виртуальных узлов должно быть положительным");
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    // Точки узла считаются по его строковому представлению, поэтому у одинаково
+    // названных узлов на разных маршрутизаторах раскладка совпадает
+    public void add(T node) {
+        if (nodes.contains(node)) return;
+        nodes.add(node);
+        for (int i = 0; i < virtualNodes; i++) {
+            ring.putIfAbsent(hash(node + "#" + i), node);
+        }
+    }
+
+    public void remove(T node) {
+        if (!nodes.remove(node)) return;
+        ring.values().removeIf(node::equals);
+    }
+
+    public List<T> getNodes() {
+        return List.copyOf(nodes);
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    // Узел для ключа или null, если кольцо пусто
+    public T get(long key) {
+        Map.Entry<Long, T> entry = ring.ceilingEntry(mix(key));
+        if (entry == null) entry = ring.firstEntry();
+        return entry != null ? entry.getValue() : null;
+    }
+
+    // Различные узлы в порядке обхода кольца от ключа: первый - тот же, что get(key),
+    // следующие - запасные на случай его недоступности
+    public List<T> preferenceList(long key, int count) {
+        List<T> result = new ArrayList<>(Math.min(count, nodes.size()));
+        if (nodes.isEmpty()) return result;
+        long point = mix(key);
+        for (T node : ring.tailMap(point, true).values()) {
+            if (result.size() >= count || result.size() == nodes.size()) return result;
+            if (!result.contains(node)) result.add(node);
+        }
+        for (T node : ring.values()) {
+            if (result.size() >= count || result.size() == nodes.size()) return result;
+            if (!result.contains(node)) result.add(node);
+        }
+        return result;
+    }
+
+    // FNV-1a по байтам строки с перемешиванием результата
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // Финальное перемешивание из SplittableRandom: соседние ключи расходятся по всему кольцу
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,111 @@
+package com.battleship.server;
+
+import com.battleship.common.Bitboard;
+import com.battleship.common.FleetRules;
+import com.battleship.common.MoveResult;
+import com.battleship.common.PackedBoard;
+import com.battleship.common.Ruleset;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Флот одного игрока на стороне сервера. Клетки кораблей, попадания и выстрелы
+// хранятся битовыми масками, номер корабля по клетке - в массиве байтов,
+// поэтому выстрел разрешается за O(1) без выделения памяти.
+class FleetState {
+    private static final byte NO_SHIP = -1;
+
+    private final Bitboard ships;
+    private final Bitboard shots;
+    private final byte[] shipByCell;
+    private final int[] remainingCells; // Сколько клеток корабля еще не подбито
+    private int shipsAfloat;
+
+    private FleetState(Bitboard ships, List<Bitboard> shipMasks) {
+        this.ships = ships;
+        this.shots = new Bitboard(ships.getWidth(), ships.getHeight());
+        this.shipByCell = new byte[ships.size()];
+        this.remainingCells = new int[shipMasks.size()];
+        this.shipsAfloat = shipMasks.size();
+
+        Arrays.fill(shipByCell, NO_SHIP);
+        for (int i = 0; i < shipMasks.size(); i++) {
+            Bitboard mask = shipMasks.get(i);
+            remainingCells[i] = mask.cardinality();
+            for (int cell = mask.nextSetBit(0); cell >= 0; cell = mask.nextSetBit(cell + 1)) {
+                shipByCell[cell] = (byte) i;
+            }
+        }
+    }
+
+    // Строит флот по полю из сообщения PLACING_SHIPS.
+    // Бросает IllegalArgumentException при нарушении правил расстановки.
+    static FleetState fromBoard(PackedBoard board, Ruleset ruleset) {
+        if (board.getWidth() != ruleset.getWidth() || board.getHeight() != ruleset.getHeight()) {
+            throw new IllegalArgumentException("Неверный размер поля: нужно "
+                    + ruleset.getWidth() + "x" + ruleset.getHeight());
+        }
+        return fromShips(board.cellsWithState(PackedBoard.SHIP), ruleset);
+    }
+
+    // То же по маске клеток кораблей, например из журнала ходов
+    static FleetState fromShips(Bitboard ships, Ruleset ruleset) {
+        if (ships.getWidth() != ruleset.getWidth() || ships.getHeight() != ruleset.getHeight()) {
+            throw new IllegalArgumentException("Неверный размер поля: нужно "
+                    + ruleset.getWidth() + "x" + ruleset.getHeight());
+        }
+        return new FleetState(new Bitboard(ships), FleetRules.splitShips(ships, ruleset.getFleet()));
+    }
+
+    // Копия маски клеток кораблей
+    Bitboard getShips() {
+        return new Bitboard(ships);
+    }
+
+    boolean inBounds(int x, int y) {
+        return ships.inBounds(x, y);
+    }
+
+    MoveResult.ResultType fire(int x, int y) {
+        int cell = ships.index(x, y);
+        if (shots.get(cell)) {
+            return MoveResult.ResultType.ALREADY_HIT;
+        }
+        shots.set(cell);
+
+        int ship = shipByCell[cell];
+        if (ship == NO_SHIP) {
+            return MoveResult.ResultType.MISS;
+        }
+        if (--remainingCells[ship] > 0) {
+            return MoveResult.ResultType.HIT;
+        }
+        return --shipsAfloat == 0 ? MoveResult.ResultType.WIN : MoveResult.ResultType.SUNK;
+    }
+
+    int getShipsSunk() {
+        return remainingCells.length - shipsAfloat;
+    }
+
+    // Поле владельца флота: корабли, попадания и промахи соперника
+    PackedBoard ownerView() {
+        PackedBoard board = new PackedBoard(ships.getWidth(), ships.getHeight());
+        board.setCells(ships, PackedBoard.SHIP);
+        markShots(board);
+        return board;
+    }
+
+    // Поле глазами стрелявшего: только попадания и промахи
+    PackedBoard shooterView() {
+        PackedBoard board = new PackedBoard(ships.getWidth(), ships.getHeight());
+        markShots(board);
+        return board;
+    }
+
+    private void markShots(PackedBoard board) {
+        int width = ships.getWidth();
+        for (int cell = shots.nextSetBit(0); cell >= 0; cell = shots.nextSetBit(cell + 1)) {
+            board.set(cell % width, cell / width, ships.get(cell) ? PackedBoard.HIT : PackedBoard.MISS);
+        }
+    }
+}
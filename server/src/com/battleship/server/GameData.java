@@ -1,12 +1,12 @@
 package com.battleship.server;
 
-import com.battleship.common.Cell;
+import com.battleship.common.PackedBoard;
+import com.battleship.common.Ruleset;
 
 import java.io.Serializable;
-import java.util.Arrays;
 
 public class GameData implements Serializable {
-    private static final long serialVersionUID = 1L; // Версионирование для безопасной сериализации
+    private static final long serialVersionUID = 2L; // Версионирование для безопасной сериализации
 
     // Перечисление возможных состояний игры
     public enum GameState {
@@ -20,13 +20,19 @@ public class GameData implements Serializable {
         SHIP_SUNK,
         GAME_OVER,
         OPPONENT_DISCONNECTED,
-        ERROR
+        ERROR,
+        RESUME, // Клиент: вернуться в партию по sessionId и resumeToken; сервер: снимок партии
+        // Клиент: смотреть партию sessionId (0 - самую смотримую); сервер: снимок партии для зрителя.
+        // Дальше зритель получает HIT, MISS и SHIP_SUNK (playerTurn - стрелял первый игрок)
+        // и в конце GAME_OVER (winner - победил первый игрок) или OPPONENT_DISCONNECTED
+        SPECTATE
     }
 
     private GameState gameState;
     private boolean playerTurn;
-    private int[][] playerBoard; // 0 - пусто, 1 - корабль, 2 - попадание, 3 - промах
-    private int[][] opponentBoard; // 0 - неизвестно, 2 - попадание, 3 - промах
+    // Поля создаются только при необходимости: сообщению о выстреле они не нужны
+    private PackedBoard playerBoard; // пусто, корабль, попадание, промах
+    private PackedBoard opponentBoard; // неизвестно, попадание, промах
     private int x; // Координаты последнего хода
     private int y;
     private boolean isError;
@@ -35,11 +41,15 @@ public class GameData implements Serializable {
     private int playerScore;
     private int opponentScore;
     private long timestamp; // Временная метка для отслеживания порядка сообщений
+    private Ruleset ruleset; // Правила партии, передаются в GAME_STARTED
+    private long sessionId; // Номер партии и ключ игрока для возврата в нее, 0 - нет
+    private long resumeToken;
+    // RESUME: от клиента - сколько выстрелов партии он видел, от сервера - сколько их всего
+    private int moveCount;
+    private int[] missedMoves; // RESUME от сервера: выстрелы, пропущенные клиентом, см. packMove
 
     public GameData() {
         this.gameState = GameState.WAITING_FOR_OPPONENT;
-        this.playerBoard = new int[10][10];
-        this.opponentBoard = new int[10][10];
         this.isError = false;
         this.timestamp = System.currentTimeMillis();
     }
@@ -49,11 +59,8 @@ public class GameData implements Serializable {
         GameData copy = new GameData();
         copy.gameState = this.gameState;
         copy.playerTurn = this.playerTurn;
-
-        for(int i = 0; i < 10; i++) {
-            copy.playerBoard[i] = Arrays.copyOf(this.playerBoard[i], 10);
-            copy.opponentBoard[i] = Arrays.copyOf(this.opponentBoard[i], 10);
-        }
+        copy.playerBoard = this.playerBoard != null ? new PackedBoard(this.playerBoard) : null;
+        copy.opponentBoard = this.opponentBoard != null ? new PackedBoard(this.opponentBoard) : null;
 
         copy.x = this.x;
         copy.y = this.y;
@@ -62,6 +69,11 @@ public class GameData implements Serializable {
         copy.winner = this.winner;
         copy.playerScore = this.playerScore;
         copy.opponentScore = this.opponentScore;
+        copy.ruleset = this.ruleset; // Неизменяемы, копия не нужна
+        copy.sessionId = this.sessionId;
+        copy.resumeToken = this.resumeToken;
+        copy.moveCount = this.moveCount;
+        copy.missedMoves = this.missedMoves != null ? this.missedMoves.clone() : null;
         copy.timestamp = System.currentTimeMillis(); // Обновляем timestamp при копировании
 
         return copy;
@@ -84,33 +96,54 @@ public class GameData implements Serializable {
         this.playerTurn = playerTurn;
     }
 
-    public int[][] getPlayerBoard() {
-        return playerBoard;
+    public boolean hasPlayerBoard() {
+        return playerBoard != null;
     }
 
-    public void setPlayerBoard(int[][] playerBoard) {
-        for(int i = 0; i < 10; i++) {
-            this.playerBoard[i] = Arrays.copyOf(playerBoard[i], 10);
+    // Пустое поле создается при первом обращении, размером по правилам партии, если они есть
+    public PackedBoard getPlayerBoard() {
+        if (playerBoard == null) {
+            playerBoard = newBoard();
         }
+        return playerBoard;
     }
 
-    public int[][] getOpponentBoard() {
-        return opponentBoard;
+    public void setPlayerBoard(PackedBoard playerBoard) {
+        this.playerBoard = playerBoard != null ? new PackedBoard(playerBoard) : null;
+    }
+
+    // Нужны кодекам: поле уже собрано при декодировании, копировать его незачем
+    void attachPlayerBoard(PackedBoard board) {
+        this.playerBoard = board;
     }
 
-    public void setOpponentBoard(int[][] opponentBoard) {
-        for(int i = 0; i < 10; i++) {
-            this.opponentBoard[i] = Arrays.copyOf(opponentBoard[i], 10);
+    void attachOpponentBoard(PackedBoard board) {
+        this.opponentBoard = board;
+    }
+
+    public boolean hasOpponentBoard() {
+        return opponentBoard != null;
+    }
+
+    public PackedBoard getOpponentBoard() {
+        if (opponentBoard == null) {
+            opponentBoard = newBoard();
         }
+        return opponentBoard;
+    }
+
+    public void setOpponentBoard(PackedBoard opponentBoard) {
+        this.opponentBoard = opponentBoard != null ? new PackedBoard(opponentBoard) : null;
+    }
+
+    private PackedBoard newBoard() {
+        return ruleset != null ? ruleset.newBoard() : new PackedBoard();
     }
 
     public void updateCell(int x, int y, int value, boolean isPlayerBoard) {
-        if (x >= 0 && x < 10 && y >= 0 && y < 10) {
-            if (isPlayerBoard) {
-                playerBoard[y][x] = value;
-            } else {
-                opponentBoard[y][x] = value;
-            }
+        PackedBoard board = isPlayerBoard ? getPlayerBoard() : getOpponentBoard();
+        if (board.inBounds(x, y)) {
+            board.set(x, y, value);
         }
     }
 
@@ -176,7 +209,81 @@ public class GameData implements Serializable {
         this.opponentScore = opponentScore;
     }
 
+    public Ruleset getRuleset() {
+        return ruleset;
+    }
+
+    public void setRuleset(Ruleset ruleset) {
+        this.ruleset = ruleset;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public long getResumeToken() {
+        return resumeToken;
+    }
+
+    public void setResumeToken(long resumeToken) {
+        this.resumeToken = resumeToken;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public void setMoveCount(int moveCount) {
+        this.moveCount = moveCount;
+    }
+
+    public boolean hasMissedMoves() {
+        return missedMoves != null && missedMoves.length > 0;
+    }
+
+    public int[] getMissedMoves() {
+        return missedMoves != null ? missedMoves : new int[0];
+    }
+
+    public void setMissedMoves(int[] missedMoves) {
+        this.missedMoves = missedMoves;
+    }
+
+    // Выстрел в одном int: x, y, свой ли он для получателя, попадание и потопление
+    public static int packMove(int x, int y, boolean ownShot, boolean hit, boolean sunk) {
+        return x | y << 8 | (ownShot ? 1 << 16 : 0) | (hit ? 1 << 17 : 0) | (sunk ? 1 << 18 : 0);
+    }
+
+    public static int moveX(int move) {
+        return move & 0xFF;
+    }
+
+    public static int moveY(int move) {
+        return (move >>> 8) & 0xFF;
+    }
+
+    public static boolean isOwnShot(int move) {
+        return (move & 1 << 16) != 0;
+    }
+
+    public static boolean isHit(int move) {
+        return (move & 1 << 17) != 0;
+    }
+
+    public static boolean isSunk(int move) {
+        return (move & 1 << 18) != 0;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
+
+    // Нужен кодекам, которые восстанавливают сообщение без сериализации Java
+    void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
 }
\ No newline at end of file
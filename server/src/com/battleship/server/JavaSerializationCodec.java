@@ -0,0 +1,39 @@
+package com.battleship.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+
+// Запасной кодек: самостоятельный поток сериализации Java с одним GameData на кадр
+class JavaSerializationCodec implements WireCodec {
+    @Override
+    public byte id() {
+        return WireCodecs.JAVA_SERIALIZATION_ID;
+    }
+
+    @Override
+    public String name() {
+        return "java-serialization";
+    }
+
+    @Override
+    public byte[] encode(GameData data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public GameData decode(byte[] buffer, int offset, int length) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(buffer, offset, length))) {
+            return (GameData) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new StreamCorruptedException("Некорректное тело кадра: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.battleship.server;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Потоки партий. Партия закреплена за одной из полос - однопоточных исполнителей - по
+// своему номеру, и все ее события (ходы игроков и ботов, обрывы связи, возвращения,
+// зрители) выполняются в потоке этой полосы строго в порядке поступления. Состояние
+// партии трогает только ее поток, поэтому блокировки не нужны, а партии разных полос
+// идут параллельно на всех ядрах. Задачи партий короткие и не ждут сокетов: отправка
+// только кладет кадр в очередь соединения (OutboundQueue), журнал ходов - в память.
+final class MatchExecutor {
+    private final ExecutorService[] stripes;
+
+    MatchExecutor(int threads) {
+        stripes = new ExecutorService[Math.max(1, threads)];
+        for (int i = 0; i < stripes.length; i++) {
+            String name = "battleship-match-" + i;
+            stripes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // Номера партий идут подряд, поэтому остаток от деления раскладывает их по полосам поровну.
+    // RejectedExecutionException - сервер останавливается
+    void execute(long sessionId, Runnable task) {
+        stripes[(int) Math.floorMod(sessionId, (long) stripes.length)].execute(task);
+    }
+
+    int getThreads() {
+        return stripes.length;
+    }
+
+    // Уже принятые события доигрываются: их ответы уходят в закрытые соединения
+    void shutdown(long timeoutMillis) {
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try {
+            for (ExecutorService stripe : stripes) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0 || !stripe.awaitTermination(left, TimeUnit.MILLISECONDS)) {
+                    stripe.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (ExecutorService stripe : stripes) {
+                stripe.shutdownNow();
+            }
+        }
+    }
+}
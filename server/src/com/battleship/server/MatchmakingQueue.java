@@ -0,0 +1,114 @@
+package com.battleship.server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+// Очередь подбора соперников. Игрок встает в очередь, когда присылает
+// WAITING_FOR_OPPONENT, и сразу получает пару, если кто-то уже ждет - без опроса
+// по таймеру и без обхода всех подключенных клиентов. Каждая пара стоит O(1).
+// Отключившиеся игроки отменяют свой билет; отмененные и неактивные билеты
+// выбрасываются при извлечении из головы очереди.
+public class MatchmakingQueue<P> {
+    private final ArrayDeque<Ticket<P>> waiting = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private final Predicate<P> available;
+    private final LatencyHistogram timeToMatch = new LatencyHistogram();
+
+    // available - можно ли еще сводить игрока (например, не отключился ли он)
+    public MatchmakingQueue(Predicate<P> available) {
+        this.available = available;
+    }
+
+    // Возвращает билет ожидания или null, если соперник нашелся сразу. onMatch
+    // вызывается вне блокировки, первым передается игрок, ждавший дольше
+    public Ticket<P> enqueue(P player, BiConsumer<P, P> onMatch) {
+        long now = System.nanoTime();
+        Ticket<P> opponent;
+        Ticket<P> ticket = null;
+
+        lock.lock();
+        try {
+            opponent = pollAvailable();
+            if (opponent == null) {
+                ticket = new Ticket<>(player, now);
+                waiting.addLast(ticket);
+                waitingCount.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (opponent != null) {
+            // Пришедший вторым пару не ждал: его нули утянули бы вниз и медиану, и хвосты
+            timeToMatch.record(now - opponent.enqueuedAt);
+            onMatch.accept(opponent.player, player);
+        }
+        return ticket;
+    }
+
+    // true, если билет снят именно этим вызовом: игрок не достался никому другому
+    public boolean cancel(Ticket<P> ticket) {
+        if (ticket != null && ticket.state.compareAndSet(Ticket.WAITING, Ticket.CANCELLED)) {
+            waitingCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    // Снимает билет, чтобы свести игрока не через очередь (например, с ботом), и учитывает
+    // его ожидание в timeToMatch. true - билет снят этим вызовом и игрок еще доступен
+    public boolean takeOutside(Ticket<P> ticket) {
+        if (!cancel(ticket) || !available.test(ticket.player)) {
+            return false;
+        }
+        timeToMatch.record(System.nanoTime() - ticket.enqueuedAt);
+        return true;
+    }
+
+    public int getWaitingCount() {
+        return waitingCount.get();
+    }
+
+    // Время от постановки в очередь до получения пары, в наносекундах; одна запись на
+    // пару - ожидание того, кто стоял в очереди
+    public LatencyHistogram getTimeToMatch() {
+        return timeToMatch;
+    }
+
+    private Ticket<P> pollAvailable() {
+        Ticket<P> head;
+        while ((head = waiting.pollFirst()) != null) {
+            if (!head.state.compareAndSet(Ticket.WAITING, Ticket.MATCHED)) {
+                continue; // Билет отменен
+            }
+            waitingCount.decrementAndGet();
+            if (available.test(head.player)) {
+                return head;
+            }
+        }
+        return null;
+    }
+
+    public static final class Ticket<P> {
+        private static final int WAITING = 0;
+        private static final int MATCHED = 1;
+        private static final int CANCELLED = 2;
+
+        private final P player;
+        private final long enqueuedAt;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        private Ticket(P player, long enqueuedAt) {
+            this.player = player;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        public boolean isWaiting() {
+            return state.get() == WAITING;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.battleship.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+
+// Кадрированный формат сообщений: [длина int32][тело].
+// Тело кодируется согласованным при подключении WireCodec, поэтому каждый
+// кадр можно разобрать независимо от предыдущих (нужно для NIO-транспорта).
+public final class MessageFrames {
+    public static final int HEADER_SIZE = 4;
+    public static final int MAX_FRAME_SIZE = 64 * 1024;
+
+    private MessageFrames() {
+    }
+
+    // Готовый к записи в канал кадр: заголовок с длиной и тело
+    public static ByteBuffer encodeFrame(GameData data, WireCodec codec) throws IOException {
+        byte[] payload = codec.encode(data);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        frame.putInt(payload.length).put(payload).flip();
+        return frame;
+    }
+
+    public static void writeFrame(DataOutputStream out, GameData data, WireCodec codec) throws IOException {
+        byte[] payload = codec.encode(data);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.flush();
+    }
+
+    public static GameData readFrame(DataInputStream in, WireCodec codec) throws IOException {
+        int length = in.readInt();
+        checkLength(length);
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return codec.decode(payload, 0, length);
+    }
+
+    static void checkLength(int length) throws IOException {
+        if (length <= 0 || length > MAX_FRAME_SIZE) {
+            throw new StreamCorruptedException("Недопустимая длина кадра: " + length);
+        }
+    }
+}
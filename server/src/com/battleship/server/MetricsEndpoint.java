@@ -0,0 +1,53 @@
+package com.battleship.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+// Метрики сервера по HTTP: GET /metrics отдает ServerMetrics.render() в текстовом формате
+// Prometheus. Слушает только локальный адрес - наружу метрики выставляет сборщик или
+// прокси. Запросы обслуживает один поток HttpServer: снятие метрик редкое и короткое.
+final class MetricsEndpoint {
+    static final String PATH = "/metrics";
+
+    private final HttpServer server;
+
+    private MetricsEndpoint(HttpServer server) {
+        this.server = server;
+    }
+
+    static MetricsEndpoint start(int port, ServerMetrics metrics) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(PATH, exchange -> respond(exchange, metrics));
+        server.start();
+        return new MetricsEndpoint(server);
+    }
+
+    private static void respond(HttpExchange exchange, ServerMetrics metrics) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = metrics.render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+    }
+}
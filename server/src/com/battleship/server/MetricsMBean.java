@@ -0,0 +1,103 @@
+package com.battleship.server;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+// Метрики сервера в JMX (jconsole, VisualVM): по атрибуту только для чтения на каждое
+// значение ServerMetrics, у гистограмм - квантили и максимум в секундах и число записей.
+// Набор атрибутов берется при регистрации, значения читаются при каждом запросе.
+final class MetricsMBean implements DynamicMBean {
+    private final ServerMetrics metrics;
+    private final MBeanInfo info;
+
+    private MetricsMBean(ServerMetrics metrics) {
+        this.metrics = metrics;
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (ServerMetrics.Value value : metrics.values()) {
+            attributes.add(new MBeanAttributeInfo(value.name,
+                    value.integral != null ? Long.class.getName() : Double.class.getName(),
+                    value.help, true, false, false));
+        }
+        for (ServerMetrics.Timer timer : metrics.timers()) {
+            for (String name : ServerMetrics.timerAttributes(timer)) {
+                attributes.add(new MBeanAttributeInfo(name,
+                        name.endsWith("_count") ? Long.class.getName() : Double.class.getName(),
+                        timer.help, true, false, false));
+            }
+        }
+        this.info = new MBeanInfo(MetricsMBean.class.getName(), "Метрики сервера морского боя",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+    }
+
+    // Имя вида com.battleship:type=Server,port=1234 - несколько серверов в одной JVM не мешают друг другу
+    static ObjectName register(ServerMetrics metrics, int port) throws Exception {
+        ObjectName name = new ObjectName("com.battleship:type=Server,port=" + port);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(metrics), name);
+        return name;
+    }
+
+    static void unregister(ObjectName name) throws Exception {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        for (ServerMetrics.Value value : metrics.values()) {
+            if (value.name.equals(attribute)) return value.read();
+        }
+        for (ServerMetrics.Timer timer : metrics.timers()) {
+            if (!attribute.startsWith(timer.name + "_")) continue;
+            LatencyHistogram histogram = timer.histogram;
+            if (attribute.equals(timer.name + "_count")) return histogram.getCount();
+            if (attribute.equals(timer.name + "_max")) return histogram.getMax() / 1e9;
+            for (int i = 0; i < ServerMetrics.Timer.PERCENTILES.length; i++) {
+                if (attribute.equals(timer.name + ServerMetrics.Timer.SUFFIXES[i])) {
+                    return histogram.getPercentile(ServerMetrics.Timer.PERCENTILES[i]) / 1e9;
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // По правилам JMX неизвестные атрибуты просто пропускаются
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Метрики только для чтения: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException("Операций нет: " + actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return info;
+    }
+}
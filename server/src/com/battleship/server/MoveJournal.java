@@ -0,0 +1,401 @@
+package com.battleship.server;
+
+import com.battleship.common.Bitboard;
+import com.battleship.common.Ruleset;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+// Журнал ходов (write-ahead log) для восстановления партий после падения сервера.
+//
+// Записи - создание партии, расстановка флота, выстрел и конец партии - дописываются
+// в сегмент, отображенный в память, так что запись - это копирование пары десятков
+// байт под короткой блокировкой, без системных вызовов. Страницы отображенного файла
+// принадлежат ядру и переживают падение процесса сразу после записи. От падения самой
+// ОС защищает групповая фиксация: поток journal-commit раз в commitInterval сбрасывает
+// на диск (force) все, что накопилось с прошлого раза, одним вызовом на всю пачку ходов.
+// Ответ на ход этого сброса не ждет.
+//
+// Формат сегмента journal-<номер>.wal:
+//   заголовок  int MAGIC, int состояние (0 - пишется снимок, 1 - готов)
+//   записи     int длина, int CRC32C, тело; нулевая длина - конец записей
+// Новый сегмент начинается со снимка: записей всех незаконченных партий. Старые
+// сегменты удаляются, когда снимок в новом помечен готовым, поэтому при восстановлении
+// достаточно прочитать последний готовый сегмент. Запись с неверной суммой (оборванная
+// падением) и все после нее отбрасываются.
+class MoveJournal implements Closeable {
+    static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+    static final long DEFAULT_COMMIT_INTERVAL_MICROS = 2000;
+
+    private static final int MAGIC = 0x42535731; // "BSW1"
+    private static final int SEGMENT_HEADER = 8;
+    private static final int RECORD_HEADER = 8;
+    private static final int STATE_READY = 1;
+
+    private static final byte CREATED = 1;
+    private static final byte FLEET = 2;
+    private static final byte SHOT = 3;
+    private static final byte ENDED = 4;
+
+    // Содержимое журнала при восстановлении, по партиям в порядке записи
+    interface Listener {
+        void sessionCreated(long sessionId, Ruleset rules, long[] tokens, boolean[] bots);
+
+        void fleetPlaced(long sessionId, int seat, Bitboard ships);
+
+        void shot(long sessionId, int seat, int x, int y);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long commitIntervalNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Записи незаконченных партий: из них собирается снимок в начале нового сегмента
+    private final Map<Long, List<byte[]>> live = new LinkedHashMap<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private int position;
+    private int forcedPosition;
+    private volatile boolean open = true;
+    private final Thread committer;
+
+    private MoveJournal(Path directory, int segmentSize, long commitIntervalMicros) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.commitIntervalNanos = TimeUnit.MICROSECONDS.toNanos(commitIntervalMicros);
+        this.committer = new Thread(this::commitLoop, "journal-commit");
+        this.committer.setDaemon(true);
+    }
+
+    static MoveJournal open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_COMMIT_INTERVAL_MICROS);
+    }
+
+    // Читает последний готовый сегмент и сразу начинает новый со снимком незаконченных партий
+    static MoveJournal open(Path directory, int segmentSize, long commitIntervalMicros) throws IOException {
+        if (segmentSize < 4096) {
+            throw new IllegalArgumentException("Слишком маленький сегмент: " + segmentSize);
+        }
+        Files.createDirectories(directory);
+        MoveJournal journal = new MoveJournal(directory, segmentSize, commitIntervalMicros);
+        List<Long> segments = journal.listSegments();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (journal.readSegment(segments.get(i))) {
+                break;
+            }
+        }
+        long next = segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1;
+        journal.lock.lock();
+        try {
+            journal.startSegment(next);
+        } finally {
+            journal.lock.unlock();
+        }
+        journal.committer.start();
+        return journal;
+    }
+
+    int getLiveSessions() {
+        lock.lock();
+        try {
+            return live.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Незаконченные партии в порядке создания
+    void replay(Listener listener) throws IOException {
+        List<List<byte[]>> sessions;
+        lock.lock();
+        try {
+            sessions = new ArrayList<>(live.size());
+            for (List<byte[]> records : live.values()) {
+                sessions.add(new ArrayList<>(records));
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (List<byte[]> records : sessions) {
+            Ruleset rules = null;
+            for (byte[] record : records) {
+                ByteBuffer body = ByteBuffer.wrap(record, RECORD_HEADER, record.length - RECORD_HEADER);
+                byte type = body.get();
+                long sessionId = body.getLong();
+                switch (type) {
+                    case CREATED:
+                        long[] tokens = {body.getLong(), body.getLong()};
+                        int botMask = body.get();
+                        int width = body.get();
+                        int height = body.get();
+                        int[] fleet = new int[body.get()];
+                        for (int i = 0; i < fleet.length; i++) {
+                            fleet[i] = body.get();
+                        }
+                        try {
+                            rules = new Ruleset(width, height, fleet);
+                        } catch (IllegalArgumentException e) {
+                            throw new StreamCorruptedException("Партия #" + sessionId + ": " + e.getMessage());
+                        }
+                        listener.sessionCreated(sessionId, rules, tokens,
+                                new boolean[] {(botMask & 1) != 0, (botMask & 2) != 0});
+                        break;
+                    case FLEET:
+                        int seat = body.get();
+                        Bitboard ships = new Bitboard(rules.getWidth(), rules.getHeight());
+                        for (int i = 0; i < ships.wordCount(); i++) {
+                            ships.setWord(i, body.getLong());
+                        }
+                        listener.fleetPlaced(sessionId, seat, ships);
+                        break;
+                    case SHOT:
+                        listener.shot(sessionId, body.get(), body.get(), body.get());
+                        break;
+                    default:
+                        throw new StreamCorruptedException("Неизвестная запись журнала: " + type);
+                }
+            }
+        }
+    }
+
+    void sessionCreated(long sessionId, Ruleset rules, long[] tokens, boolean[] bots) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 8 + 16 + 4 + rules.getShipCount());
+        body.put(CREATED).putLong(sessionId).putLong(tokens[0]).putLong(tokens[1]);
+        body.put((byte) ((bots[0] ? 1 : 0) | (bots[1] ? 2 : 0)));
+        body.put((byte) rules.getWidth()).put((byte) rules.getHeight()).put((byte) rules.getShipCount());
+        for (int i = 0; i < rules.getShipCount(); i++) {
+            body.put((byte) rules.getShipSize(i));
+        }
+        append(sessionId, CREATED, body);
+    }
+
+    void fleetPlaced(long sessionId, int seat, Bitboard ships) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 8 + 1 + 8 * ships.wordCount());
+        body.put(FLEET).putLong(sessionId).put((byte) seat);
+        for (int i = 0; i < ships.wordCount(); i++) {
+            body.putLong(ships.word(i));
+        }
+        append(sessionId, FLEET, body);
+    }
+
+    void shot(long sessionId, int seat, int x, int y) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 8 + 3);
+        body.put(SHOT).putLong(sessionId).put((byte) seat).put((byte) x).put((byte) y);
+        append(sessionId, SHOT, body);
+    }
+
+    void sessionEnded(long sessionId) {
+        ByteBuffer body = ByteBuffer.allocate(1 + 8);
+        body.put(ENDED).putLong(sessionId);
+        append(sessionId, ENDED, body);
+    }
+
+    private void append(long sessionId, byte type, ByteBuffer body) {
+        byte[] record = frame(body.array());
+        lock.lock();
+        try {
+            if (!open) return; // Сервер останавливается, незаписанное восстановится из снимка
+            if (type == CREATED) {
+                List<byte[]> records = new ArrayList<>();
+                records.add(record);
+                live.put(sessionId, records);
+            } else {
+                // Партии, созданные до включения журнала, не записываются
+                List<byte[]> records = type == ENDED ? live.remove(sessionId) : live.get(sessionId);
+                if (records == null) return;
+                if (type != ENDED) records.add(record);
+            }
+            if (position + record.length > segment.limit()) {
+                // Новый сегмент начинается со снимка, в который эта запись уже попала
+                startSegment(segmentIndex + 1);
+                return;
+            }
+            segment.put(position, record);
+            position += record.length;
+        } catch (IOException e) {
+            // Журнал не должен останавливать игру: партия просто не переживет падения
+            ServerLog.error(ServerLog.Event.JOURNAL, "Ошибка записи журнала ходов", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static byte[] frame(byte[] body) {
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        byte[] record = new byte[RECORD_HEADER + body.length];
+        ByteBuffer.wrap(record).putInt(body.length).putInt((int) crc.getValue()).put(body);
+        return record;
+    }
+
+    // Вызывается под блокировкой. Новый сегмент: снимок незаконченных партий, сброс на
+    // диск, отметка о готовности, и только после этого удаление прежних сегментов
+    private void startSegment(long index) throws IOException {
+        int snapshotSize = SEGMENT_HEADER;
+        for (List<byte[]> records : live.values()) {
+            for (byte[] record : records) {
+                snapshotSize += record.length;
+            }
+        }
+        int size = Math.max(segmentSize, snapshotSize * 2);
+        MappedByteBuffer previous = segment;
+        FileChannel previousChannel = channel;
+        if (previous != null) {
+            previous.force();
+        }
+
+        Path file = segmentPath(index);
+        FileChannel next = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = next.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.putInt(0, MAGIC);
+        int offset = SEGMENT_HEADER;
+        for (List<byte[]> records : live.values()) {
+            for (byte[] record : records) {
+                buffer.put(offset, record);
+                offset += record.length;
+            }
+        }
+        buffer.force();
+        buffer.putInt(4, STATE_READY);
+        buffer.force(4, 4);
+
+        channel = next;
+        segment = buffer;
+        segmentIndex = index;
+        position = offset;
+        forcedPosition = offset;
+        if (previousChannel != null) {
+            previousChannel.close();
+        }
+        for (long old : listSegments()) {
+            if (old < index) {
+                Files.deleteIfExists(segmentPath(old));
+            }
+        }
+    }
+
+    // Возвращает false, если сегмент не готов или испорчен в заголовке
+    private boolean readSegment(long index) throws IOException {
+        try (FileChannel file = FileChannel.open(segmentPath(index), StandardOpenOption.READ)) {
+            if (file.size() < SEGMENT_HEADER) return false;
+            MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != STATE_READY) return false;
+
+            int offset = SEGMENT_HEADER;
+            CRC32C crc = new CRC32C();
+            while (offset + RECORD_HEADER <= buffer.limit()) {
+                int length = buffer.getInt(offset);
+                if (length <= 0 || length > buffer.limit() - offset - RECORD_HEADER) break;
+                byte[] record = new byte[RECORD_HEADER + length];
+                buffer.get(offset, record);
+                crc.reset();
+                crc.update(record, RECORD_HEADER, length);
+                if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                    ServerLog.warn(ServerLog.Event.JOURNAL, 0, 0, "Журнал " + segmentPath(index)
+                            + ": оборванная запись на смещении " + offset + ", остаток отброшен", null);
+                    break;
+                }
+                long sessionId = ByteBuffer.wrap(record, RECORD_HEADER + 1, 8).getLong();
+                byte type = record[RECORD_HEADER];
+                if (type == CREATED) {
+                    live.put(sessionId, new ArrayList<>(List.of(record)));
+                } else if (type == ENDED) {
+                    live.remove(sessionId);
+                } else if (live.containsKey(sessionId)) {
+                    live.get(sessionId).add(record);
+                }
+                offset += record.length;
+            }
+            return true;
+        }
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.wal")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.add(Long.parseLong(name.substring("journal-".length(), name.length() - ".wal".length())));
+                } catch (NumberFormatException e) {
+                    // Чужой файл с похожим именем
+                }
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("journal-%08d.wal", index));
+    }
+
+    // Групповая фиксация: один force на все записи, накопившиеся за интервал
+    private void commitLoop() {
+        while (open) {
+            LockSupport.parkNanos(commitIntervalNanos);
+            try {
+                sync();
+            } catch (RuntimeException e) {
+                ServerLog.error(ServerLog.Event.JOURNAL, "Ошибка сброса журнала ходов", e.getMessage());
+            }
+        }
+    }
+
+    // Сбросить на диск все записанное к этому моменту
+    void sync() {
+        MappedByteBuffer buffer;
+        int from;
+        int to;
+        lock.lock();
+        try {
+            if (segment == null || position == forcedPosition) return;
+            buffer = segment;
+            from = forcedPosition;
+            to = position;
+            forcedPosition = position;
+        } finally {
+            lock.unlock();
+        }
+        // Сам сброс - вне блокировки, записи тем временем продолжаются дальше по буферу
+        buffer.force(from, to - from);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (!open) return;
+            open = false;
+        } finally {
+            lock.unlock();
+        }
+        committer.interrupt();
+        LockSupport.unpark(committer);
+        if (segment != null) {
+            segment.force();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.battleship.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.io.StreamCorruptedException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Неблокирующий транспорт на селекторах: небольшой фиксированный набор потоков
+// событий обслуживает все соединения. Сообщения передаются кадрами MessageFrames,
+// кодек выбирается по приветствию клиента (см. WireCodecs). Старый непрерывный
+// поток сериализации Java здесь не поддерживается - только кадры.
+class NioTransport {
+    private static final int INITIAL_READ_BUFFER = 4096;
+
+    interface Listener {
+        void onOpen(NioConnection connection);
+
+        void onMessage(NioConnection connection, GameData data);
+
+        void onClose(NioConnection connection);
+    }
+
+    private final int port;
+    private final Listener listener;
+    private final ServerMetrics metrics;
+    private final OutboundStats outboundStats;
+    private final EventLoop[] loops;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running = false;
+    private int nextLoop = 0;
+
+    NioTransport(int port, int ioThreads, Listener listener, ServerMetrics metrics) {
+        this.port = port;
+        this.listener = listener;
+        this.metrics = metrics;
+        this.outboundStats = metrics.getOutbound();
+        this.loops = new EventLoop[Math.max(1, ioThreads)];
+    }
+
+    void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        running = true;
+
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(Selector.open());
+        }
+        // Первый цикл событий дополнительно принимает новые подключения
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+
+        for (int i = 0; i < loops.length; i++) {
+            Thread thread = new Thread(loops[i], "nio-loop-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        try {
+            if (serverChannel != null) serverChannel.close();
+        } catch (IOException e) {
+            ServerLog.error(ServerLog.Event.IO_ERROR, "Ошибка при закрытии серверного канала", e.getMessage());
+        }
+        for (EventLoop loop : loops) {
+            if (loop != null) loop.selector.wakeup();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            // Распределяем соединения по циклам событий по кругу
+            EventLoop loop = loops[nextLoop];
+            nextLoop = (nextLoop + 1) % loops.length;
+
+            NioConnection connection = new NioConnection(channel, loop);
+            loop.execute(connection::register);
+        }
+    }
+
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    runTasks();
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        handleKey(key);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    ServerLog.error(ServerLog.Event.IO_ERROR, "Ошибка цикла событий NIO", e.getMessage());
+                }
+            } finally {
+                closeAll();
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    ServerLog.error(ServerLog.Event.IO_ERROR, "Ошибка в задаче цикла событий NIO", e.toString());
+                }
+            }
+        }
+
+        private void handleKey(SelectionKey key) {
+            if (!key.isValid()) return;
+
+            if (key.isAcceptable()) {
+                try {
+                    accept();
+                } catch (IOException e) {
+                    if (running) {
+                        ServerLog.error(ServerLog.Event.IO_ERROR, "Ошибка при принятии подключения", e.getMessage());
+                    }
+                }
+                return;
+            }
+
+            NioConnection connection = (NioConnection) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    connection.onReadable();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flushWrites();
+                }
+            } catch (IOException e) {
+                connection.closeNow();
+            } catch (RuntimeException e) {
+                // onMessage выполняется прямо в потоке цикла: исключение из обработки сообщения
+                // закрывает только это соединение, а не все соединения цикла
+                ServerLog.error(ServerLog.Event.PROTOCOL_ERROR, "Ошибка обработки сообщения, соединение закрыто",
+                        e.toString());
+                connection.closeNow();
+            }
+        }
+
+        private void closeAll() {
+            runTasks();
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof NioConnection connection) {
+                    connection.closeNow();
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Селектор больше не нужен
+            }
+        }
+    }
+
+    // Соединение, обслуживаемое одним циклом событий. Все операции с каналом
+    // выполняются только в потоке этого цикла, send() лишь ставит кадр в ограниченную
+    // очередь (OutboundQueue). Накопившиеся кадры уходят одной gathering-записью.
+    class NioConnection implements Connection {
+        private final SocketChannel channel;
+        private final EventLoop loop;
+        private final OutboundQueue outbound = new OutboundQueue(outboundStats);
+        private final ByteBuffer[] batch = new ByteBuffer[OutboundQueue.MAX_BATCH]; // Только поток цикла
+        private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+        // Прием приостановлен: кадры остаются в readBuffer, OP_READ снят. Ставится из onMessage
+        // в потоке цикла, снимается задачей цикла
+        private volatile boolean readsPaused;
+        private SelectionKey key;
+        private volatile WireCodec codec; // null до согласования протокола
+        private volatile Object attachment;
+
+        NioConnection(SocketChannel channel, EventLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+        }
+
+        Object attachment() {
+            return attachment;
+        }
+
+        void attach(Object attachment) {
+            this.attachment = attachment;
+        }
+
+        private void register() {
+            try {
+                key = channel.register(loop.selector, SelectionKey.OP_READ, this);
+            } catch (IOException e) {
+                closeNow();
+            }
+        }
+
+        @Override
+        public void send(GameData data) throws IOException {
+            if (closed.get()) return;
+
+            WireCodec current = codec;
+            if (current == null) {
+                throw new IOException("Протокол соединения еще не согласован");
+            }
+            // Сериализация выполняется в вызывающем потоке, цикл событий только пишет байты
+            long start = metrics.startSerialization();
+            ByteBuffer frame = MessageFrames.encodeFrame(data, current);
+            metrics.encoded(start);
+            enqueue(frame);
+        }
+
+        @Override
+        public void send(SharedFrame frame) throws IOException {
+            if (closed.get()) return;
+
+            WireCodec current = codec;
+            if (current == null) {
+                throw new IOException("Протокол соединения еще не согласован");
+            }
+            // Своя обертка с позицией записи, байты кадра общие
+            enqueue(ByteBuffer.wrap(frame.bytes(current)));
+        }
+
+        @Override
+        public int getBacklog() {
+            return outbound.size();
+        }
+
+        @Override
+        public void pauseReads() {
+            readsPaused = true;
+            loop.execute(() -> {
+                if (readsPaused && key != null && key.isValid()) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+            });
+        }
+
+        @Override
+        public void resumeReads() {
+            loop.execute(() -> {
+                if (!readsPaused || key == null || !key.isValid()) return;
+                readsPaused = false;
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                // Кадры, прочитанные до приостановки, ждут в буфере
+                readBuffer.flip();
+                try {
+                    deliverFrames();
+                } catch (IOException e) {
+                    closeNow();
+                }
+            });
+        }
+
+        private void enqueue(ByteBuffer bytes) throws IOException {
+            if (!outbound.offer(bytes)) {
+                close();
+                throw new IOException("Клиент не успевает читать: очередь отправки переполнена");
+            }
+            if (flushScheduled.compareAndSet(false, true)) {
+                loop.execute(this::scheduledFlush);
+            }
+        }
+
+        private void scheduledFlush() {
+            flushScheduled.set(false);
+            try {
+                flushWrites();
+            } catch (IOException e) {
+                closeNow();
+            }
+        }
+
+        private void flushWrites() throws IOException {
+            if (key == null || !key.isValid()) return;
+
+            int count;
+            while ((count = outbound.peekBatch(batch)) > 0) {
+                long written = channel.write(batch, 0, count);
+                boolean full = batch[count - 1].hasRemaining();
+                Arrays.fill(batch, 0, count, null);
+                outboundStats.written(outbound.removeWritten(), written);
+                if (full) {
+                    // Буфер отправки сокета заполнен, дописываем по готовности канала
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+
+        private void onReadable() throws IOException {
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                closeNow();
+                return;
+            }
+            metrics.bytesRead(read);
+
+            readBuffer.flip();
+            if (codec == null) {
+                if (!negotiate()) {
+                    readBuffer.compact();
+                    return;
+                }
+                // Обработчик создается только для соединения с согласованным протоколом
+                listener.onOpen(this);
+            }
+            deliverFrames();
+        }
+
+        // Разбирает целые кадры из readBuffer (в режиме чтения), пока прием не приостановлен;
+        // остаток переносится в начало буфера
+        private void deliverFrames() throws IOException {
+            while (!readsPaused && readBuffer.remaining() >= MessageFrames.HEADER_SIZE) {
+                int length = readBuffer.getInt(readBuffer.position());
+                MessageFrames.checkLength(length);
+
+                int frameSize = MessageFrames.HEADER_SIZE + length;
+                if (readBuffer.remaining() < frameSize) {
+                    if (readBuffer.capacity() < frameSize) {
+                        // Кадр не помещается в буфер - расширяем его под размер кадра
+                        ByteBuffer larger = ByteBuffer.allocate(frameSize);
+                        larger.put(readBuffer);
+                        readBuffer = larger;
+                        return;
+                    }
+                    break;
+                }
+
+                int offset = readBuffer.arrayOffset() + readBuffer.position() + MessageFrames.HEADER_SIZE;
+                long start = metrics.startSerialization();
+                GameData data = codec.decode(readBuffer.array(), offset, length);
+                metrics.decoded(start);
+                readBuffer.position(readBuffer.position() + frameSize);
+                listener.onMessage(this, data);
+                if (closed.get()) return;
+            }
+            readBuffer.compact();
+        }
+
+        // Разбирает начало потока клиента, false - если данных пока недостаточно.
+        // 'B' - приветствие с выбором кодека, 0x00 - кадры сериализации Java без приветствия
+        private boolean negotiate() throws IOException {
+            int first = readBuffer.get(readBuffer.position());
+            if (first == 0) {
+                codec = WireCodecs.JAVA_SERIALIZATION;
+                return true;
+            }
+            if (first != WireCodecs.MAGIC_0) {
+                throw new StreamCorruptedException("Неизвестный протокол клиента");
+            }
+            if (readBuffer.remaining() < 4) return false;
+
+            int start = readBuffer.position();
+            int count = readBuffer.get(start + 3) & 0xFF;
+            if (readBuffer.get(start + 1) != WireCodecs.MAGIC_1 || count > WireCodecs.MAX_OFFERED_CODECS) {
+                throw new StreamCorruptedException("Некорректное приветствие клиента");
+            }
+            if (readBuffer.remaining() < 4 + count) return false;
+
+            WireCodec selected = WireCodecs.select(readBuffer.array(), readBuffer.arrayOffset() + start + 4, count);
+            readBuffer.position(start + 4 + count);
+            if (selected == null) {
+                // Отказ пишется сразу: после исключения closeNow очистит очередь отправки раньше,
+                // чем до нее дойдет запись. Ответ в несколько байт - первое, что пишется в
+                // новый сокет, так что в буфер отправки он помещается целиком
+                channel.write(ByteBuffer.wrap(WireCodecs.reply(null)));
+                throw new StreamCorruptedException("Клиент не предложил поддерживаемый кодек");
+            }
+            enqueue(ByteBuffer.wrap(WireCodecs.reply(selected)));
+            codec = selected;
+            return true;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return !closed.get() && channel.isOpen();
+        }
+
+        @Override
+        public void close() {
+            if (!closed.get()) {
+                loop.execute(this::closeNow);
+            }
+        }
+
+        private void closeNow() {
+            if (!closed.compareAndSet(false, true)) return;
+
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Канал закрывается в любом случае
+            }
+            outbound.clear();
+            listener.onClose(this);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.battleship.server;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Очередь отправки одного соединения: готовые кадры (с нулевой позицией), которые
+// кладут потоки игры, а забирает и пишет в сокет один писатель соединения - задача
+// StreamConnection или цикл событий NIO. Очередь ограничена числом кадров и байт
+// (OutboundStats); кадр сверх предела не принимается, и соединение закрывается:
+// клиент, который не читает, не держит память сервера и потоки игры. Игрок вернется
+// в партию по RESUME и получит снимок с пропущенными выстрелами.
+final class OutboundQueue {
+    // Сколько кадров писатель уносит одной записью, прежде чем сбросить их в сокет
+    static final int MAX_BATCH = 64;
+
+    private final Queue<ByteBuffer> frames = new ConcurrentLinkedQueue<>();
+    // Размер очереди отдельно: size() у ConcurrentLinkedQueue - обход
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong bytes = new AtomicLong();
+    private final OutboundStats stats;
+
+    OutboundQueue(OutboundStats stats) {
+        this.stats = stats;
+    }
+
+    // false - очередь переполнена, кадр не принят
+    boolean offer(ByteBuffer frame) {
+        int length = frame.limit();
+        int depth = size.incrementAndGet();
+        long total = bytes.addAndGet(length);
+        if (depth > stats.getMaxFrames() || total > stats.getMaxBytes()) {
+            size.decrementAndGet();
+            bytes.addAndGet(-length);
+            stats.overflowed();
+            return false;
+        }
+        frames.add(frame);
+        stats.queued(depth);
+        return true;
+    }
+
+    // Дальше - только писатель соединения
+
+    ByteBuffer poll() {
+        ByteBuffer frame = frames.poll();
+        if (frame != null) removed(frame);
+        return frame;
+    }
+
+    // Кадры с головы очереди для одной gathering-записи; из очереди не удаляются
+    int peekBatch(ByteBuffer[] batch) {
+        int count = 0;
+        for (Iterator<ByteBuffer> it = frames.iterator(); it.hasNext() && count < batch.length; ) {
+            batch[count++] = it.next();
+        }
+        return count;
+    }
+
+    // Удаляет записанные целиком кадры с головы очереди, возвращает их число
+    int removeWritten() {
+        int count = 0;
+        ByteBuffer head;
+        while ((head = frames.peek()) != null && !head.hasRemaining()) {
+            frames.poll();
+            removed(head);
+            count++;
+        }
+        return count;
+    }
+
+    private void removed(ByteBuffer frame) {
+        size.decrementAndGet();
+        bytes.addAndGet(-frame.limit());
+    }
+
+    boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    void clear() {
+        while (poll() != null) {
+            // Соединение закрыто, кадры больше некому писать
+        }
+    }
+}
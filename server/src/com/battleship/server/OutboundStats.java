@@ -0,0 +1,91 @@
+package com.battleship.server;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Пределы очередей отправки соединений сервера (см. OutboundQueue) и общая статистика
+// по ним: сколько кадров принято и записано, сколько кадров в среднем уходит одной
+// записью в сокет, наибольшая глубина очереди и число соединений, закрытых за
+// переполнение. Счетчики - LongAdder: их обновляют все потоки, отправляющие сообщения.
+public final class OutboundStats {
+    // Очередь зрителя (SpectatorChannel) отстает раньше, чем переполнится очередь соединения
+    public static final int DEFAULT_MAX_FRAMES = 1024;
+    public static final int DEFAULT_MAX_BYTES = 1 << 20;
+
+    private volatile int maxFrames = DEFAULT_MAX_FRAMES;
+    private volatile int maxBytes = DEFAULT_MAX_BYTES;
+
+    private final LongAdder queuedFrames = new LongAdder();
+    private final LongAdder writtenFrames = new LongAdder();
+    private final LongAdder writtenBytes = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+    public void setLimits(int frames, int bytes) {
+        if (frames < 1 || bytes < MessageFrames.HEADER_SIZE + MessageFrames.MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Слишком маленькая очередь отправки: " + frames + " кадров, " + bytes + " байт");
+        }
+        maxFrames = frames;
+        maxBytes = bytes;
+    }
+
+    public int getMaxFrames() {
+        return maxFrames;
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    void queued(int depth) {
+        queuedFrames.increment();
+        maxDepth.accumulate(depth);
+    }
+
+    // Одна запись в сокет: frames кадров целиком, bytes байт
+    void written(int frames, long bytes) {
+        writes.increment();
+        writtenFrames.add(frames);
+        writtenBytes.add(bytes);
+    }
+
+    void overflowed() {
+        overflows.increment();
+    }
+
+    public long getQueuedFrames() {
+        return queuedFrames.sum();
+    }
+
+    public long getWrittenFrames() {
+        return writtenFrames.sum();
+    }
+
+    public long getWrittenBytes() {
+        return writtenBytes.sum();
+    }
+
+    // Записей в сокет (сброс буфера или gathering write), каждая уносит один кадр или больше
+    public long getWrites() {
+        return writes.sum();
+    }
+
+    // Соединений, закрытых из-за переполнения очереди
+    public long getOverflows() {
+        return overflows.sum();
+    }
+
+    public long getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    public String summary() {
+        long frames = getWrittenFrames();
+        long count = getWrites();
+        return String.format("кадров %d, записей в сокет %d (%.2f кадра на запись), %d КБ, "
+                        + "наибольшая очередь %d, закрыто за переполнение %d",
+                frames, count, count == 0 ? 0.0 : (double) frames / count, getWrittenBytes() >> 10,
+                getMaxDepth(), getOverflows());
+    }
+}
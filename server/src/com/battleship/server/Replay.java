@@ -0,0 +1,261 @@
+package com.battleship.server;
+
+import com.battleship.common.Bitboard;
+import com.battleship.common.Ruleset;
+
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+
+// Повтор законченной партии: правила, оба флота и все выстрелы по порядку.
+//
+// Тело записи в файле повторов (см. ReplayWriter):
+//   varlong   номер партии
+//   varlong   время окончания, секунды эпохи
+//   byte      флаги: 1 - стандартные правила, 2 и 4 - за первым/вторым местом бот
+//   [byte ширина, byte высота, byte число кораблей, byte размер...] - если правила не стандартные
+//   2 x ceil(ширина * высота / 8) байт - клетки кораблей первого и второго игрока, бит на клетку
+//   varint    число выстрелов
+//   varint    на выстрел: zigzag-разность номера клетки с прошлым выстрелом того же игрока,
+//             по модулю площади поля
+// Кто стрелял и попал ли, не хранится: первым ходит первый игрок, попадание видно по флоту
+// соперника, а после промаха ход переходит к другому. Поэтому выстрел занимает байт
+// на полях до 128 клеток, а добивание корабля (соседние клетки) - байт на любом поле.
+//
+// Объект изменяемый: ReplayReader.next заполняет один и тот же экземпляр, и пакетный
+// разбор миллионов партий не выделяет память на каждую.
+public final class Replay {
+    static final int FLAG_STANDARD_RULES = 1;
+    static final int FLAG_BOT_FIRST = 2;
+    static final int FLAG_BOT_SECOND = 4;
+
+    public static final int NO_WINNER = -1; // Партия прервана: соперник ушел или не вернулся
+
+    private static final int SEAT_BIT = 1 << 16; // Совпадают с разбором в decode
+    private static final int HIT_BIT = 1 << 17;
+
+    private long sessionId;
+    private long finishedAt;
+    private int flags;
+    private Ruleset rules = Ruleset.STANDARD;
+    private final Bitboard[] fleets = {
+            new Bitboard(rules.getWidth(), rules.getHeight()), new Bitboard(rules.getWidth(), rules.getHeight())};
+    private int[] moves = new int[200]; // Клетка | место стрелявшего << 16 | попадание << 17
+    private int moveCount;
+    private int winner = NO_WINNER;
+
+    // Разбор тела записи
+    private final int[] lastCell = new int[2]; // Прошлый выстрел каждого игрока
+    private final int[] hitCount = new int[2];
+    private byte[] bytes;
+    private int position;
+    private int end;
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public Ruleset getRuleset() {
+        return rules;
+    }
+
+    public boolean isBot(int seat) {
+        return (flags & (seat == 0 ? FLAG_BOT_FIRST : FLAG_BOT_SECOND)) != 0;
+    }
+
+    // Клетки кораблей игрока seat. Маска принадлежит повтору и перезаписывается следующим next
+    public Bitboard getFleet(int seat) {
+        return fleets[seat];
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public int getMoveX(int i) {
+        return (moves[i] & 0xFFFF) % rules.getWidth();
+    }
+
+    public int getMoveY(int i) {
+        return (moves[i] & 0xFFFF) / rules.getWidth();
+    }
+
+    public int getMoveSeat(int i) {
+        return (moves[i] & SEAT_BIT) != 0 ? 1 : 0;
+    }
+
+    public boolean isHit(int i) {
+        return (moves[i] & HIT_BIT) != 0;
+    }
+
+    // Место победителя или NO_WINNER
+    public int getWinner() {
+        return winner;
+    }
+
+    // Кодирование для ReplayWriter; moves - выстрелы в формате GameData.packMove,
+    // признак "свой" - выстрел второго игрока
+    static byte[] encode(long sessionId, long finishedAt, Ruleset rules, Bitboard[] fleets, boolean[] bots,
+                         int[] moves, int moveCount) {
+        int size = rules.getWidth() * rules.getHeight();
+        int boardBytes = (size + 7) >>> 3;
+        byte[] bytes = new byte[10 + 10 + 1 + 3 + rules.getShipCount() + 2 * boardBytes + 5 + 3 * moveCount];
+        int p = putVarLong(bytes, 0, sessionId);
+        p = putVarLong(bytes, p, finishedAt);
+        int flagsByte = (rules.isStandard() ? FLAG_STANDARD_RULES : 0)
+                | (bots[0] ? FLAG_BOT_FIRST : 0) | (bots[1] ? FLAG_BOT_SECOND : 0);
+        bytes[p++] = (byte) flagsByte;
+        if (!rules.isStandard()) {
+            bytes[p++] = (byte) rules.getWidth();
+            bytes[p++] = (byte) rules.getHeight();
+            bytes[p++] = (byte) rules.getShipCount();
+            for (int i = 0; i < rules.getShipCount(); i++) {
+                bytes[p++] = (byte) rules.getShipSize(i);
+            }
+        }
+        for (Bitboard fleet : fleets) {
+            for (int i = 0; i < boardBytes; i++) {
+                bytes[p++] = (byte) (fleet.word(i >>> 3) >>> ((i & 7) << 3));
+            }
+        }
+        p = putVarLong(bytes, p, moveCount);
+        int[] previous = new int[2];
+        for (int i = 0; i < moveCount; i++) {
+            int move = moves[i];
+            int seat = GameData.isOwnShot(move) ? 1 : 0;
+            int cell = GameData.moveY(move) * rules.getWidth() + GameData.moveX(move);
+            int delta = Math.floorMod(cell - previous[seat], size);
+            if (delta > size / 2) delta -= size;
+            previous[seat] = cell;
+            p = putVarLong(bytes, p, (delta << 1) ^ (delta >> 31));
+        }
+        return Arrays.copyOf(bytes, p);
+    }
+
+    private static int putVarLong(byte[] bytes, int p, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[p++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[p++] = (byte) value;
+        return p;
+    }
+
+    // Разбор тела записи; ReplayReader копирует его из отображения одним вызовом
+    void decode(byte[] source, int offset, int length) throws StreamCorruptedException {
+        bytes = source;
+        position = offset;
+        end = offset + length;
+
+        sessionId = readVarLong();
+        finishedAt = readVarLong();
+        flags = readByte();
+        if ((flags & FLAG_STANDARD_RULES) != 0) {
+            setRules(Ruleset.STANDARD);
+        } else {
+            int width = readByte();
+            int height = readByte();
+            int[] fleet = new int[readByte()];
+            for (int i = 0; i < fleet.length; i++) {
+                fleet[i] = readByte();
+            }
+            try {
+                setRules(new Ruleset(width, height, fleet));
+            } catch (IllegalArgumentException e) {
+                throw new StreamCorruptedException("Партия #" + sessionId + ": " + e.getMessage());
+            }
+        }
+
+        int size = rules.getWidth() * rules.getHeight();
+        int boardBytes = (size + 7) >>> 3;
+        for (Bitboard fleet : fleets) {
+            for (int word = 0; word < fleet.wordCount(); word++) {
+                long value = 0;
+                for (int i = word << 3, last = Math.min(boardBytes, i + 8); i < last; i++) {
+                    value |= (long) readByte() << ((i & 7) << 3);
+                }
+                fleet.setWord(word, value);
+            }
+        }
+
+        moveCount = readVarInt();
+        if (moveCount > 2 * size) {
+            throw new StreamCorruptedException("Партия #" + sessionId + ": выстрелов больше, чем клеток");
+        }
+        if (moves.length < moveCount) {
+            moves = new int[2 * size];
+        }
+        int fleetCells = rules.getFleetCells();
+        int[] previous = lastCell;
+        int[] hits = hitCount;
+        previous[0] = previous[1] = hits[0] = hits[1] = 0;
+        int seat = 0;
+        byte[] data = bytes;
+        int p = position;
+        int limit = end;
+        // Без ветвлений по данным: попадание и перенос через край поля случайны и
+        // предсказатель переходов на них ошибается. Позиция - в локальной переменной,
+        // чтобы запись в moves не заставляла перечитывать поля объекта.
+        for (int i = 0; i < moveCount; i++) {
+            int zigzag;
+            if (p < limit && data[p] >= 0) {
+                zigzag = data[p++];
+            } else {
+                position = p;
+                zigzag = readVarInt();
+                p = position;
+            }
+            int cell = previous[seat] + ((zigzag >>> 1) ^ -(zigzag & 1));
+            cell += size & (cell >> 31);
+            cell -= size & ((size - 1 - cell) >> 31);
+            if ((cell | (size - 1 - cell)) < 0) {
+                throw new StreamCorruptedException("Партия #" + sessionId + ": выстрел за пределы поля");
+            }
+            previous[seat] = cell;
+            int hit = (int) (fleets[1 - seat].word(cell >>> 6) >>> cell) & 1;
+            hits[seat] += hit;
+            moves[i] = cell | seat << 16 | hit << 17;
+            seat ^= hit ^ 1; // После промаха ход переходит к другому
+        }
+        position = p;
+        winner = hits[0] >= fleetCells ? 0 : hits[1] >= fleetCells ? 1 : NO_WINNER;
+        bytes = null;
+    }
+
+    private void setRules(Ruleset next) {
+        if (next.equals(rules)) return;
+        rules = next;
+        fleets[0] = new Bitboard(next.getWidth(), next.getHeight());
+        fleets[1] = new Bitboard(next.getWidth(), next.getHeight());
+    }
+
+    private int readByte() throws StreamCorruptedException {
+        if (position >= end) {
+            throw new StreamCorruptedException("Неожиданный конец записи повтора");
+        }
+        return bytes[position++] & 0xFF;
+    }
+
+    private int readVarInt() throws StreamCorruptedException {
+        long value = readVarLong();
+        if (value > Integer.MAX_VALUE) {
+            throw new StreamCorruptedException("Слишком большое значение: " + value);
+        }
+        return (int) value;
+    }
+
+    private long readVarLong() throws StreamCorruptedException {
+        long value = 0;
+        for (int shift = 0; shift < 63; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Слишком длинное число varint");
+    }
+}
@@ -0,0 +1,150 @@
+package com.battleship.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+// Чтение сегмента повторов, записанного ReplayWriter. Файл отображается в память целиком;
+// тело записи копируется из отображения в один переиспользуемый массив (доступ к массиву
+// дешевле побайтового чтения отображения) и разбирается в один и тот же объект Replay -
+// без выделения памяти на партию. Запись с неверной суммой (оборванная падением)
+// завершает чтение сегмента.
+//
+// Пакетная обработка каталога:
+//   for (Path file : ReplayReader.listSegments(dir)) {
+//       try (ReplayReader reader = ReplayReader.open(file)) {
+//           while (reader.next(replay)) { ... }
+//       }
+//   }
+public class ReplayReader implements Closeable {
+    private final Path file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final CRC32C crc = new CRC32C();
+    private byte[] record = new byte[1024]; // Тело текущей записи
+    private final boolean verify;
+    private int position = ReplayWriter.SEGMENT_HEADER;
+    private boolean broken;
+
+    private ReplayReader(Path file, FileChannel channel, ByteBuffer buffer, boolean verify) {
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.verify = verify;
+    }
+
+    public static ReplayReader open(Path file) throws IOException {
+        return open(file, true);
+    }
+
+    // verify = false пропускает проверку CRC32C: для повторного прохода по уже проверенным файлам
+    public static ReplayReader open(Path file, boolean verify) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Слишком большой сегмент повторов: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < ReplayWriter.SEGMENT_HEADER || buffer.getInt(0) != ReplayWriter.MAGIC) {
+                throw new StreamCorruptedException("Не файл повторов: " + file);
+            }
+            if (buffer.getInt(4) != ReplayWriter.VERSION) {
+                throw new StreamCorruptedException("Неизвестная версия файла повторов " + buffer.getInt(4) + ": " + file);
+            }
+            return new ReplayReader(file, channel, buffer, verify);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // Следующая партия в replay; false - записи кончились
+    public boolean next(Replay replay) throws StreamCorruptedException {
+        if (broken || !hasRecord(buffer, position)) return false;
+        int length = buffer.getInt(position);
+        int body = position + ReplayWriter.RECORD_HEADER;
+        if (record.length < length) {
+            record = new byte[Math.max(length, record.length * 2)];
+        }
+        buffer.get(body, record, 0, length);
+        if (verify) {
+            crc.reset();
+            crc.update(record, 0, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                ServerLog.warn(ServerLog.Event.JOURNAL, 0, 0, "Повторы " + file
+                        + ": оборванная запись на смещении " + position + ", остаток отброшен", null);
+                broken = true;
+                return false;
+            }
+        }
+        replay.decode(record, 0, length);
+        position = body + length;
+        return true;
+    }
+
+    // Байт записей (с их заголовками) прочитано из сегмента
+    public long getBytesRead() {
+        return Math.max(0, position - ReplayWriter.SEGMENT_HEADER);
+    }
+
+    private static boolean hasRecord(ByteBuffer buffer, int position) {
+        if (position + ReplayWriter.RECORD_HEADER > buffer.limit()) return false;
+        int length = buffer.getInt(position);
+        return length > 0 && length <= buffer.limit() - position - ReplayWriter.RECORD_HEADER;
+    }
+
+    // Смещение за последней целой записью сегмента - с него ReplayWriter продолжает запись
+    static int endOfRecords(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        int position = ReplayWriter.SEGMENT_HEADER;
+        while (hasRecord(buffer, position)) {
+            int length = buffer.getInt(position);
+            int body = position + ReplayWriter.RECORD_HEADER;
+            crc.reset();
+            crc.update(buffer.slice(body, length));
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) break;
+            position = body + length;
+        }
+        return position;
+    }
+
+    // Сегменты каталога в порядке записи
+    public static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return segments;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "replays-*.rpl")) {
+            for (Path file : files) {
+                if (segmentIndex(file) >= 0) segments.add(file);
+            }
+        }
+        segments.sort(Comparator.comparingLong(ReplayReader::segmentIndex));
+        return segments;
+    }
+
+    // Номер сегмента по имени файла или -1 для чужого файла с похожим именем
+    static long segmentIndex(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring("replays-".length(), name.length() - ".rpl".length()));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,178 @@
+package com.battleship.server;
+
+import com.battleship.common.Bitboard;
+import com.battleship.common.Ruleset;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+// Запись законченных партий в файлы повторов для аналитики и проверки на нечестную игру.
+//
+// Формат сегмента replays-<номер>.rpl:
+//   заголовок  int MAGIC, int версия формата
+//   записи     int длина, int CRC32C, тело (см. Replay); нулевая длина - конец записей
+// Сегменты только дописываются и не удаляются: их забирают и чистят пакетные задачи.
+// Запись - копирование пары сотен байт в отображенный в память сегмент под короткой
+// блокировкой. В отличие от журнала ходов, повторы не сбрасываются на диск после каждой
+// пачки: страницы уходят на диск сами, force - только при переходе на новый сегмент и
+// при закрытии. Падение ОС может стоить последних партий, падение процесса - нет.
+// При открытии запись продолжается в последний сегмент, после его последней целой записи.
+public class ReplayWriter implements Closeable {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+    static final int MAGIC = 0x42535231; // "BSR1"
+    static final int VERSION = 1;
+    static final int SEGMENT_HEADER = 8;
+    static final int RECORD_HEADER = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final CRC32C crc = new CRC32C(); // Под блокировкой
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private int position;
+    private long written;
+    private boolean open = true;
+
+    private ReplayWriter(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    public static ReplayWriter open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public static ReplayWriter open(Path directory, int segmentSize) throws IOException {
+        if (segmentSize < 4096) {
+            throw new IllegalArgumentException("Слишком маленький сегмент: " + segmentSize);
+        }
+        Files.createDirectories(directory);
+        ReplayWriter writer = new ReplayWriter(directory, segmentSize);
+        List<Path> segments = ReplayReader.listSegments(directory);
+        writer.lock.lock();
+        try {
+            if (segments.isEmpty()) {
+                writer.startSegment(1);
+            } else {
+                writer.continueSegment(segments.get(segments.size() - 1));
+            }
+        } finally {
+            writer.lock.unlock();
+        }
+        return writer;
+    }
+
+    // Сколько партий записано с момента открытия
+    public long getWritten() {
+        lock.lock();
+        try {
+            return written;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Партия в формате Replay; moves - выстрелы в формате GameData.packMove, признак
+    // "свой" - выстрел второго игрока. Ошибка записи не останавливает игру: она
+    // печатается, а партия теряется.
+    public void append(long sessionId, Ruleset rules, Bitboard[] fleets, boolean[] bots, int[] moves, int moveCount) {
+        byte[] body = Replay.encode(sessionId, System.currentTimeMillis() / 1000, rules, fleets, bots,
+                moves, moveCount);
+        lock.lock();
+        try {
+            if (!open) return;
+            int length = RECORD_HEADER + body.length;
+            if (position + length + 4 > segment.limit()) {
+                startSegment(segmentIndex + 1);
+            }
+            crc.reset();
+            crc.update(body);
+            segment.putInt(position, body.length);
+            segment.putInt(position + 4, (int) crc.getValue());
+            segment.put(position + RECORD_HEADER, body);
+            position += length;
+            // Явный конец записей: за ним может остаться хвост записи, оборванной при падении
+            segment.putInt(position, 0);
+            written++;
+        } catch (IOException e) {
+            ServerLog.error(ServerLog.Event.JOURNAL, 0, sessionId, "Ошибка записи повтора партии", e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Вызывается под блокировкой
+    private void startSegment(long index) throws IOException {
+        closeSegment();
+        FileChannel next = FileChannel.open(segmentPath(index), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = next.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        channel = next;
+        segment = buffer;
+        segmentIndex = index;
+        position = SEGMENT_HEADER;
+    }
+
+    // Вызывается под блокировкой: продолжает последний сегмент после его последней целой записи
+    private void continueSegment(Path file) throws IOException {
+        long index = ReplayReader.segmentIndex(file);
+        FileChannel existing = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = existing.size();
+        if (size < SEGMENT_HEADER + 4 || size > Integer.MAX_VALUE) {
+            existing.close();
+            startSegment(index + 1);
+            return;
+        }
+        MappedByteBuffer buffer = existing.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            existing.close();
+            startSegment(index + 1);
+            return;
+        }
+        channel = existing;
+        segment = buffer;
+        segmentIndex = index;
+        position = ReplayReader.endOfRecords(buffer);
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            segment.force();
+            segment = null;
+        }
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("replays-%08d.rpl", index));
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (!open) return;
+            open = false;
+            closeSegment();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
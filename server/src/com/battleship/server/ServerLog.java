@@ -0,0 +1,287 @@
+package com.battleship.server;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Журнал событий сервера. System.out.println синхронизируется на потоке вывода и ждет
+// консоль, поэтому под нагрузкой (шквал подключений, массовый обрыв связи) потоки приема,
+// чтения и партий стояли бы в очереди к консоли. Здесь поток, записывающий событие,
+// только кладет его поля в кольцевой буфер, а форматирует и печатает их один фоновый
+// поток пачками. Буфер ограничен: если вывод не успевает, новые события отбрасываются и
+// считаются, записывающий поток не ждет никогда.
+//
+// Событие структурное: уровень, тип (Event), номер клиента, номер партии, сообщение и
+// подробность (обычно текст исключения). Строка вывода - ключи и значения (logfmt):
+//   2026-01-01T12:00:00.123Z INFO connect client=12 msg="Подключен новый клиент"
+// Сообщение лучше передавать постоянной строкой, а изменчивое - полями: тогда запись
+// события не склеивает строк. WARN и ERROR одного типа пропускаются не чаще
+// errorsPerSecond раз в секунду; сколько пропущено, сообщит следующее событие этого типа.
+public final class ServerLog {
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    // Тип события - первое поле строки и ключ ограничения частоты
+    public enum Event {
+        SERVER,         // Запуск, остановка, настройки
+        CONNECT,
+        DISCONNECT,
+        SESSION,        // Партия создана или завершена
+        RESUME,         // Возвращение в партию
+        SPECTATOR,
+        IO_ERROR,       // Ошибки сокетов и каналов
+        PROTOCOL_ERROR, // Клиент прислал то, что нельзя разобрать
+        SESSION_ERROR,  // Исключение в потоке партии
+        JOURNAL,        // Журнал ходов и файлы повторов
+        ROUTER;
+
+        final String key = name().toLowerCase();
+    }
+
+    private static final int CAPACITY = 8192; // Степень двойки
+    private static final int MAX_BATCH = 256; // Строк за один вывод
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private static final Entry[] ring = new Entry[CAPACITY];
+    private static final AtomicLong tail = new AtomicLong(); // Следующая свободная позиция
+    private static volatile long head; // Следующая позиция для вывода; пишет только поток вывода
+    private static final LongAdder dropped = new LongAdder();
+    private static final Thread drainer;
+
+    private static volatile Level level = Level.INFO;
+    private static volatile boolean synchronous;
+    private static volatile PrintStream output; // null - INFO и ниже в System.out, остальное в System.err
+
+    // Ограничение частоты WARN и ERROR по типу события: секунда, событий в ней, пропущено
+    private static volatile int errorsPerSecond = 20;
+    private static final AtomicLongArray windows = new AtomicLongArray(Event.values().length);
+    private static final AtomicIntegerArray windowCounts = new AtomicIntegerArray(Event.values().length);
+    private static final AtomicLongArray suppressed = new AtomicLongArray(Event.values().length);
+
+    // Ячейка буфера. sequence == позиция + 1 - ячейка заполнена для этой позиции;
+    // == позиция - свободна для записи на этой позиции (алгоритм Вьюкова)
+    private static final class Entry {
+        volatile long sequence;
+        long time;
+        Level level;
+        Event event;
+        int clientId;
+        long sessionId;
+        String message;
+        String detail;
+        long suppressed;
+    }
+
+    static {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new Entry();
+            ring[i].sequence = i;
+        }
+        drainer = new Thread(ServerLog::drainLoop, "battleship-log");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    private ServerLog() {
+    }
+
+    public static void setLevel(Level minimum) {
+        level = minimum;
+    }
+
+    public static boolean isEnabled(Level candidate) {
+        return candidate.ordinal() >= level.ordinal();
+    }
+
+    // Писать в вызывающем потоке, как System.out.println, - для сравнения и отладки
+    public static void setSynchronous(boolean value) {
+        flush(1000);
+        synchronous = value;
+    }
+
+    // Куда выводить все уровни; null - System.out и System.err
+    public static void setOutput(PrintStream stream) {
+        flush(1000);
+        output = stream;
+    }
+
+    public static void setErrorRateLimit(int perSecond) {
+        errorsPerSecond = Math.max(1, perSecond);
+    }
+
+    // Событий, отброшенных из-за переполнения буфера
+    public static long getDropped() {
+        return dropped.sum();
+    }
+
+    public static void info(Event event, String message) {
+        log(Level.INFO, event, 0, 0, message, null);
+    }
+
+    public static void info(Event event, int clientId, long sessionId, String message) {
+        log(Level.INFO, event, clientId, sessionId, message, null);
+    }
+
+    public static void warn(Event event, int clientId, long sessionId, String message, String detail) {
+        log(Level.WARN, event, clientId, sessionId, message, detail);
+    }
+
+    public static void error(Event event, String message, String detail) {
+        log(Level.ERROR, event, 0, 0, message, detail);
+    }
+
+    public static void error(Event event, int clientId, long sessionId, String message, String detail) {
+        log(Level.ERROR, event, clientId, sessionId, message, detail);
+    }
+
+    // clientId и sessionId 0 - поля нет
+    public static void log(Level eventLevel, Event event, int clientId, long sessionId, String message, String detail) {
+        if (eventLevel.ordinal() < level.ordinal()) return;
+        long now = System.currentTimeMillis();
+        long skipped = 0;
+        if (eventLevel.ordinal() >= Level.WARN.ordinal()) {
+            skipped = admit(event.ordinal(), now / 1000);
+            if (skipped < 0) return;
+        }
+
+        if (synchronous) {
+            PrintStream stream = streamFor(eventLevel);
+            StringBuilder line = new StringBuilder(128);
+            format(line, now, eventLevel, event, clientId, sessionId, message, detail, skipped);
+            stream.print(line);
+            stream.flush();
+            return;
+        }
+
+        long position = tail.get();
+        Entry entry;
+        while (true) {
+            entry = ring[(int) position & (CAPACITY - 1)];
+            long difference = entry.sequence - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) break;
+                position = tail.get();
+            } else if (difference < 0) {
+                // Ячейку еще не вывели с прошлого круга - буфер полон
+                dropped.increment();
+                return;
+            } else {
+                position = tail.get();
+            }
+        }
+        entry.time = now;
+        entry.level = eventLevel;
+        entry.event = event;
+        entry.clientId = clientId;
+        entry.sessionId = sessionId;
+        entry.message = message;
+        entry.detail = detail;
+        entry.suppressed = skipped;
+        entry.sequence = position + 1; // Публикует поля потоку вывода
+    }
+
+    // -1 - событие пропускается, иначе сколько событий этого типа пропущено до него
+    private static long admit(int event, long second) {
+        long window = windows.get(event);
+        if (window != second && windows.compareAndSet(event, window, second)) {
+            windowCounts.set(event, 0);
+        }
+        if (windowCounts.incrementAndGet(event) > errorsPerSecond) {
+            suppressed.incrementAndGet(event);
+            return -1;
+        }
+        return suppressed.getAndSet(event, 0);
+    }
+
+    // Ждет, пока поток вывода напечатает все, что записано до вызова
+    public static void flush(long timeoutMillis) {
+        long target = tail.get();
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        while (head < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(drainer);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    private static void drainLoop() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        StringBuilder err = new StringBuilder(4 * 1024);
+        long reportedDrops = 0;
+        while (true) {
+            int count = 0;
+            long position = head;
+            while (count < MAX_BATCH) {
+                Entry entry = ring[(int) position & (CAPACITY - 1)];
+                if (entry.sequence != position + 1) break;
+                format(entry.level.ordinal() >= Level.WARN.ordinal() && output == null ? err : out,
+                        entry.time, entry.level, entry.event, entry.clientId, entry.sessionId,
+                        entry.message, entry.detail, entry.suppressed);
+                entry.message = null;
+                entry.detail = null;
+                entry.sequence = position + CAPACITY; // Свободна для следующего круга
+                position++;
+                count++;
+            }
+
+            long drops = dropped.sum();
+            if (drops != reportedDrops) {
+                format(output == null ? err : out, System.currentTimeMillis(), Level.WARN,
+                        Event.SERVER, 0, 0, "Журнал не успевает, событий отброшено", Long.toString(drops - reportedDrops), 0);
+                reportedDrops = drops;
+            }
+            write(out, streamFor(Level.INFO));
+            write(err, streamFor(Level.ERROR));
+            head = position;
+            if (count == 0) LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private static void write(StringBuilder text, PrintStream stream) {
+        if (text.length() == 0) return;
+        stream.print(text);
+        stream.flush();
+        text.setLength(0);
+    }
+
+    private static PrintStream streamFor(Level eventLevel) {
+        PrintStream stream = output;
+        if (stream != null) return stream;
+        return eventLevel.ordinal() >= Level.WARN.ordinal() ? System.err : System.out;
+    }
+
+    private static void format(StringBuilder line, long time, Level eventLevel, Event event, int clientId,
+                               long sessionId, String message, String detail, long skipped) {
+        line.append(Instant.ofEpochMilli(time)).append(' ').append(eventLevel).append(' ').append(event.key);
+        if (clientId != 0) line.append(" client=").append(clientId);
+        if (sessionId != 0) line.append(" session=").append(sessionId);
+        line.append(" msg=");
+        quote(line, message);
+        if (detail != null) {
+            line.append(" detail=");
+            quote(line, detail);
+        }
+        if (skipped > 0) line.append(" suppressed=").append(skipped);
+        line.append('\n');
+    }
+
+    private static void quote(StringBuilder line, String value) {
+        if (value == null) value = ""; // getMessage() бывает null
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c == '\n') {
+                line.append("\\n");
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,230 @@
+package com.battleship.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+// Метрики сервера. Счетчики горячего пути (сообщения и байты, созданные партии,
+// подключения) - LongAdder, времена - LatencyHistogram: обновление без блокировок и без
+// выделения памяти. Остальное - значения, которые сервер и так знает (число соединений,
+// ждущих игроков, партий), - регистрируется как gauge и читается только при снятии.
+// Кодирование и разбор сообщения занимают доли микросекунды, а System.nanoTime() стоит
+// десятки наносекунд, поэтому их время измеряется у каждого SERIALIZATION_SAMPLE-го
+// сообщения (выбор случайный); время хода - у каждого.
+// Скорости "в секунду" считает sample(), который сервер вызывает раз в секунду.
+// Все метрики видны в текстовом формате Prometheus (MetricsEndpoint) и через JMX
+// (MetricsMBean) с одинаковыми именами.
+public final class ServerMetrics {
+    static final String PREFIX = "battleship_";
+    public static final int SERIALIZATION_SAMPLE = 16;
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder matchesCreated = new LongAdder();
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LatencyHistogram encodeNanos = new LatencyHistogram();
+    private final LatencyHistogram decodeNanos = new LatencyHistogram();
+    private final LatencyHistogram moveNanos = new LatencyHistogram();
+    // Очереди отправки: принятые и записанные кадры - это исходящие сообщения и байты
+    private final OutboundStats outbound = new OutboundStats();
+
+    private final List<Value> values = new CopyOnWriteArrayList<>();
+    private final List<Timer> timers = new CopyOnWriteArrayList<>();
+
+    // Скорости за последнюю секунду; пишет только sample()
+    private volatile double matchesPerSecond;
+    private volatile double messagesInPerSecond;
+    private volatile double messagesOutPerSecond;
+    private long lastSample;
+    private long lastMatches;
+    private long lastMessagesIn;
+    private long lastMessagesOut;
+
+    // Одно значение: счетчик, растущий с запуска (counter), или текущая величина (gauge)
+    static final class Value {
+        final String name;
+        final String help;
+        final boolean counter;
+        final LongSupplier integral; // null - значение дробное
+        final DoubleSupplier fractional;
+
+        Value(String name, String help, boolean counter, LongSupplier integral, DoubleSupplier fractional) {
+            this.name = name;
+            this.help = help;
+            this.counter = counter;
+            this.integral = integral;
+            this.fractional = fractional;
+        }
+
+        Number read() {
+            return integral != null ? (Number) integral.getAsLong() : (Number) fractional.getAsDouble();
+        }
+    }
+
+    // Гистограмма времен в наносекундах; наружу - в секундах, квантилями
+    static final class Timer {
+        static final double[] PERCENTILES = {50, 90, 99, 99.9};
+        static final String[] QUANTILES = {"0.5", "0.9", "0.99", "0.999"}; // Метки Prometheus
+        static final String[] SUFFIXES = {"_p50", "_p90", "_p99", "_p99_9"}; // Атрибуты JMX
+
+        final String name;
+        final String help;
+        final LatencyHistogram histogram;
+
+        Timer(String name, String help, LatencyHistogram histogram) {
+            this.name = name;
+            this.help = help;
+            this.histogram = histogram;
+        }
+    }
+
+    public ServerMetrics() {
+        counter("connections_opened_total", "Принято подключений с запуска", connectionsOpened::sum);
+        counter("matches_created_total", "Создано партий с запуска, с ботами тоже", matchesCreated::sum);
+        counter("messages_in_total", "Сообщений от клиентов", messagesIn::sum);
+        counter("messages_out_total", "Сообщений, записанных в сокеты клиентов", outbound::getWrittenFrames);
+        counter("bytes_in_total", "Байт, прочитанных из сокетов клиентов", bytesIn::sum);
+        counter("bytes_out_total", "Байт, записанных в сокеты клиентов", outbound::getWrittenBytes);
+        counter("socket_writes_total", "Записей в сокеты, каждая уносит один кадр или больше", outbound::getWrites);
+        counter("outbound_overflows_total", "Соединений, закрытых за переполнение очереди отправки",
+                outbound::getOverflows);
+        gauge("outbound_max_depth", "Наибольшая глубина очереди отправки", outbound::getMaxDepth);
+        rate("matches_per_second", "Партий в секунду", () -> matchesPerSecond);
+        rate("messages_in_per_second", "Сообщений от клиентов в секунду", () -> messagesInPerSecond);
+        rate("messages_out_per_second", "Сообщений клиентам в секунду", () -> messagesOutPerSecond);
+        timer("encode_seconds", "Кодирование сообщения клиенту, выборка", encodeNanos);
+        timer("decode_seconds", "Разбор кадра от клиента, выборка", decodeNanos);
+        timer("move_seconds", "Сообщение игрока в партии: от приема до выполнения в потоке партии", moveNanos);
+    }
+
+    public void counter(String name, String help, LongSupplier value) {
+        values.add(new Value(PREFIX + name, help, true, value, null));
+    }
+
+    public void gauge(String name, String help, LongSupplier value) {
+        values.add(new Value(PREFIX + name, help, false, value, null));
+    }
+
+    public void rate(String name, String help, DoubleSupplier value) {
+        values.add(new Value(PREFIX + name, help, false, null, value));
+    }
+
+    public void timer(String name, String help, LatencyHistogram histogram) {
+        timers.add(new Timer(PREFIX + name, help, histogram));
+    }
+
+    // Горячий путь: вызывают транспорт и потоки партий
+
+    public void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    public void matchCreated() {
+        matchesCreated.increment();
+    }
+
+    public void messageReceived() {
+        messagesIn.increment();
+    }
+
+    public void bytesRead(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    // Начало измеряемого кодирования или разбора; результат передается в encoded или decoded
+    public long startSerialization() {
+        return (ThreadLocalRandom.current().nextInt() & (SERIALIZATION_SAMPLE - 1)) == 0
+                ? System.nanoTime() : NOT_SAMPLED;
+    }
+
+    public void encoded(long start) {
+        if (start != NOT_SAMPLED) encodeNanos.record(System.nanoTime() - start);
+    }
+
+    public void decoded(long start) {
+        if (start != NOT_SAMPLED) decodeNanos.record(System.nanoTime() - start);
+    }
+
+    public void moveHandled(long nanos) {
+        moveNanos.record(nanos);
+    }
+
+    public OutboundStats getOutbound() {
+        return outbound;
+    }
+
+    public LatencyHistogram getMoveLatency() {
+        return moveNanos;
+    }
+
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+
+    // Скорости с прошлого вызова; вызывается из одного потока
+    public synchronized void sample(long nowNanos) {
+        long matches = matchesCreated.sum();
+        long in = messagesIn.sum();
+        long out = outbound.getWrittenFrames();
+        if (lastSample != 0 && nowNanos > lastSample) {
+            double seconds = (nowNanos - lastSample) / 1e9;
+            matchesPerSecond = (matches - lastMatches) / seconds;
+            messagesInPerSecond = (in - lastMessagesIn) / seconds;
+            messagesOutPerSecond = (out - lastMessagesOut) / seconds;
+        }
+        lastSample = nowNanos;
+        lastMatches = matches;
+        lastMessagesIn = in;
+        lastMessagesOut = out;
+    }
+
+    List<Value> values() {
+        return values;
+    }
+
+    List<Timer> timers() {
+        return timers;
+    }
+
+    // Текстовый формат Prometheus (version 0.0.4)
+    public String render() {
+        StringBuilder text = new StringBuilder(4096);
+        for (Value value : values) {
+            header(text, value.name, value.help, value.counter ? "counter" : "gauge");
+            text.append(value.name).append(' ').append(value.read()).append('\n');
+        }
+        for (Timer timer : timers) {
+            header(text, timer.name, timer.help, "summary");
+            LatencyHistogram histogram = timer.histogram;
+            for (int i = 0; i < Timer.PERCENTILES.length; i++) {
+                text.append(timer.name).append("{quantile=\"").append(Timer.QUANTILES[i]).append("\"} ")
+                        .append(histogram.getPercentile(Timer.PERCENTILES[i]) / 1e9).append('\n');
+            }
+            long count = histogram.getCount();
+            text.append(timer.name).append("_sum ").append(histogram.getMean() * count / 1e9).append('\n');
+            text.append(timer.name).append("_count ").append(count).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void header(StringBuilder text, String name, String help, String type) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    // Имена атрибутов JMX для гистограммы: квантили и максимум в секундах, число записей
+    static List<String> timerAttributes(Timer timer) {
+        List<String> names = new ArrayList<>();
+        for (String suffix : Timer.SUFFIXES) {
+            names.add(timer.name + suffix);
+        }
+        names.add(timer.name + "_max");
+        names.add(timer.name + "_count");
+        return names;
+    }
+}
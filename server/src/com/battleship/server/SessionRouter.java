@@ -0,0 +1,395 @@
+package com.battleship.server;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Маршрутизатор перед несколькими экземплярами BattleshipServer (шардами).
+//
+// Маршрутизатор сам отвечает на приветствие клиента (WireCodecs) и читает его первое
+// сообщение, дальше только пересылает байты. RESUME и SPECTATE с номером партии уходят
+// на шард, которому согласованный хеш отдает этот номер: шарды, запущенные с тем же
+// списком (BattleshipServer shards=... shard=...), выдают только "свои" номера, поэтому
+// вернувшийся игрок и зритель попадают туда, где идет партия, в том числе после
+// перезапуска шарда с журналом. SPECTATE без номера уходит на запасной шард.
+//
+// Остальные подключения собираются в пары по порядку прихода, и оба клиента пары
+// уходят на шард, выбранный по хешу номера пары. Оба игрока попадают в одну очередь
+// подбора, и шард сводит их между собой; повторные партии по тому же соединению
+// остаются на том же шарде. Подключение, не дождавшееся пары за pairWaitMillis, уходит на
+// общий "запасной" шард, чтобы одиночки при малой нагрузке встречались там, а не ждали
+// на разных шардах. Клиенты без приветствия (старая сериализация) идут только в пары.
+// Недоступный шард пропускается: подключение уходит на следующий по кольцу.
+//
+// Шард получает приветствие клиента и первое сообщение в том виде, в каком их прислал
+// клиент, и должен выбрать тот же кодек, что маршрутизатор.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.server.SessionRouter 1234 localhost:1301,localhost:1302
+public class SessionRouter {
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final long LONE_KEY = 0; // Ключ запасного шарда для подключений без пары
+
+    private final int port;
+    private final ConsistentHashRing<InetSocketAddress> ring = new ConsistentHashRing<>();
+    private final long pairWaitMillis;
+    private final Map<InetSocketAddress, LongAdder> pairsPerShard = new LinkedHashMap<>();
+    private final Map<Socket, Boolean> open = new ConcurrentHashMap<>();
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "router-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final LongAdder lonePlayers = new LongAdder();
+    private final LongAdder sessionClients = new LongAdder();
+    private final CountDownLatch stopped = new CountDownLatch(1); // Виртуальные потоки не держат JVM
+
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+    // Подключение, ждущее пару, и номер его будущей пары; под блокировкой this
+    private Arrival waiting;
+    private long nextPairId = 1;
+
+    public SessionRouter(int port, List<InetSocketAddress> shards, long pairWaitMillis) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("Нужен хотя бы один шард");
+        }
+        this.port = port;
+        this.pairWaitMillis = pairWaitMillis;
+        for (InetSocketAddress shard : shards) {
+            ring.add(shard);
+            pairsPerShard.put(shard, new LongAdder());
+        }
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        running = true;
+        threads.execute(this::acceptLoop);
+        ServerLog.info(ServerLog.Event.ROUTER, "Маршрутизатор запущен на порту " + port + ", шардов: " + ring.getNodes().size());
+    }
+
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : port;
+    }
+
+    // Сколько пар ушло на каждый шард
+    public Map<InetSocketAddress, Long> getPairsPerShard() {
+        Map<InetSocketAddress, Long> result = new LinkedHashMap<>();
+        pairsPerShard.forEach((shard, count) -> result.put(shard, count.sum()));
+        return result;
+    }
+
+    public long getLonePlayers() {
+        return lonePlayers.sum();
+    }
+
+    // Сколько подключений ушло на шард по номеру партии из RESUME или SPECTATE
+    public long getSessionClients() {
+        return sessionClients.sum();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket client = serverSocket.accept();
+                client.setTcpNoDelay(true);
+                open.put(client, Boolean.TRUE);
+                try {
+                    threads.execute(() -> admit(client));
+                } catch (RejectedExecutionException e) {
+                    close(client);
+                }
+            } catch (IOException e) {
+                if (running) {
+                    ServerLog.error(ServerLog.Event.IO_ERROR, "Ошибка при принятии подключения", e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Куда вести подключение, решает первое сообщение клиента
+    private void admit(Socket client) {
+        Arrival arrival;
+        try {
+            arrival = readArrival(client);
+        } catch (IOException e) {
+            // Клиент ушел до первого сообщения или прислал не то
+            close(client);
+            return;
+        }
+        GameData.GameState state = arrival.first != null ? arrival.first.getGameState() : null;
+        if (state == GameData.GameState.RESUME
+                || (state == GameData.GameState.SPECTATE && arrival.first.getSessionId() != 0)) {
+            sessionClients.increment();
+            route(arrival.first.getSessionId(), arrival);
+        } else if (state == GameData.GameState.SPECTATE) {
+            route(LONE_KEY, arrival); // Зрителю любой партии пара не нужна
+        } else {
+            pair(arrival);
+        }
+    }
+
+    // Приветствие и первый кадр клиента. Поток сокета читается без буфера: все, что после
+    // первого кадра, остается в сокете и уходит на шард через pump
+    private static Arrival readArrival(Socket client) throws IOException {
+        DataInputStream in = new DataInputStream(client.getInputStream());
+        int first = in.read();
+        if (first < 0) {
+            throw new EOFException();
+        }
+        if (first != WireCodecs.MAGIC_0) {
+            // Клиент без приветствия: разбирать его поток маршрутизатор не берется
+            return new Arrival(client, null, WireCodecs.NO_CODEC, new byte[] {(byte) first}, null);
+        }
+
+        byte[] header = new byte[4];
+        header[0] = (byte) first;
+        in.readFully(header, 1, header.length - 1);
+        int count = header[3] & 0xFF;
+        if (header[1] != WireCodecs.MAGIC_1 || count > WireCodecs.MAX_OFFERED_CODECS) {
+            throw new StreamCorruptedException("Некорректное приветствие клиента");
+        }
+        byte[] hello = Arrays.copyOf(header, header.length + count);
+        in.readFully(hello, header.length, count);
+        WireCodec codec = WireCodecs.select(hello, header.length, count);
+        OutputStream out = client.getOutputStream();
+        out.write(WireCodecs.reply(codec));
+        out.flush();
+        if (codec == null) {
+            throw new StreamCorruptedException("Клиент не предложил поддерживаемый кодек");
+        }
+
+        int length = in.readInt();
+        MessageFrames.checkLength(length);
+        byte[] frame = new byte[MessageFrames.HEADER_SIZE + length];
+        ByteBuffer.wrap(frame).putInt(length);
+        in.readFully(frame, MessageFrames.HEADER_SIZE, length);
+        GameData message = codec.decode(frame, MessageFrames.HEADER_SIZE, length);
+        return new Arrival(client, hello, codec.id(), frame, message);
+    }
+
+    private void pair(Arrival arrival) {
+        Arrival partner;
+        long pairId;
+        synchronized (this) {
+            if (waiting == null || waiting.socket.isClosed()) {
+                waiting = arrival;
+                try {
+                    timer.schedule(() -> routeAlone(arrival), pairWaitMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    // Маршрутизатор останавливается
+                }
+                return;
+            }
+            partner = waiting;
+            waiting = null;
+            pairId = nextPairId++;
+        }
+        route(pairId, partner, arrival);
+    }
+
+    // Пара так и не набралась - одиночка уходит на запасной шард
+    private void routeAlone(Arrival arrival) {
+        synchronized (this) {
+            if (waiting != arrival) return;
+            waiting = null;
+        }
+        lonePlayers.increment();
+        try {
+            threads.execute(() -> route(LONE_KEY, arrival));
+        } catch (RejectedExecutionException e) {
+            close(arrival.socket);
+        }
+    }
+
+    private void route(long key, Arrival... arrivals) {
+        for (InetSocketAddress shard : ring.preferenceList(key, Integer.MAX_VALUE)) {
+            List<Socket> backends = new ArrayList<>(arrivals.length);
+            try {
+                for (Arrival arrival : arrivals) {
+                    Socket backend = new Socket();
+                    backends.add(backend);
+                    backend.connect(shard, CONNECT_TIMEOUT);
+                    backend.setTcpNoDelay(true);
+                    replay(arrival, backend);
+                }
+            } catch (IOException e) {
+                ServerLog.warn(ServerLog.Event.ROUTER, 0, 0, "Шард " + shard + " недоступен", e.getMessage());
+                backends.forEach(SessionRouter::closeQuietly);
+                continue;
+            }
+            if (arrivals.length == 2) {
+                pairsPerShard.get(shard).increment();
+            }
+            for (int i = 0; i < arrivals.length; i++) {
+                proxy(arrivals[i].socket, backends.get(i));
+            }
+            return;
+        }
+        ServerLog.error(ServerLog.Event.ROUTER, "Нет доступных шардов, подключения закрыты", null);
+        for (Arrival arrival : arrivals) {
+            close(arrival.socket);
+        }
+    }
+
+    // Шард получает прочитанное маршрутизатором как есть. Его ответ на приветствие клиенту
+    // уже отправлен маршрутизатором, поэтому здесь он только проверяется
+    private static void replay(Arrival arrival, Socket backend) throws IOException {
+        OutputStream out = backend.getOutputStream();
+        if (arrival.hello != null) {
+            out.write(arrival.hello);
+            out.flush();
+            byte[] reply = new byte[WireCodecs.REPLY_SIZE];
+            backend.setSoTimeout(CONNECT_TIMEOUT);
+            new DataInputStream(backend.getInputStream()).readFully(reply);
+            backend.setSoTimeout(0);
+            if (reply[0] != WireCodecs.MAGIC_0 || reply[1] != WireCodecs.MAGIC_1 || reply[3] != arrival.codec) {
+                throw new StreamCorruptedException("Шард выбрал другой кодек");
+            }
+        }
+        out.write(arrival.consumed);
+        out.flush();
+    }
+
+    // Пересылка байтов в обе стороны; закрытие любой стороны закрывает обе
+    private void proxy(Socket client, Socket backend) {
+        open.put(backend, Boolean.TRUE);
+        try {
+            threads.execute(() -> pump(client, backend));
+            threads.execute(() -> pump(backend, client));
+        } catch (RejectedExecutionException e) {
+            close(client);
+            close(backend);
+        }
+    }
+
+    private void pump(Socket from, Socket to) {
+        try (InputStream in = from.getInputStream(); OutputStream out = to.getOutputStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            // Одна из сторон закрыла соединение
+        } finally {
+            close(from);
+            close(to);
+        }
+    }
+
+    private void close(Socket socket) {
+        open.remove(socket);
+        closeQuietly(socket);
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Уже закрыт
+        }
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        stopped.await();
+    }
+
+    public void shutdown() {
+        running = false;
+        try {
+            if (serverSocket != null) serverSocket.close();
+        } catch (IOException e) {
+            ServerLog.error(ServerLog.Event.ROUTER, "Ошибка при закрытии серверного сокета", e.getMessage());
+        }
+        timer.shutdownNow();
+        for (Socket socket : open.keySet()) {
+            close(socket);
+        }
+        threads.shutdown();
+        try {
+            threads.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stopped.countDown();
+        ServerLog.info(ServerLog.Event.ROUTER, "Маршрутизатор остановлен. Пар по шардам: " + getPairsPerShard()
+                + ", одиночек: " + getLonePlayers() + ", по номеру партии: " + getSessionClients());
+        ServerLog.flush(1000);
+    }
+
+    // Подключение клиента и то, что маршрутизатор уже прочитал из него
+    private static final class Arrival {
+        final Socket socket;
+        final byte[] hello;    // Приветствие клиента; null - клиент начал без приветствия
+        final byte codec;      // Кодек, выбранный для клиента маршрутизатором
+        final byte[] consumed; // Прочитанное после приветствия: первый кадр или первый байт
+        final GameData first;  // Первое сообщение; null - не разобрано
+
+        Arrival(Socket socket, byte[] hello, byte codec, byte[] consumed, GameData first) {
+            this.socket = socket;
+            this.hello = hello;
+            this.codec = codec;
+            this.consumed = consumed;
+            this.first = first;
+        }
+    }
+
+    // Список шардов "host:port,host:port,..." - так же его принимает BattleshipServer
+    public static List<InetSocketAddress> parseAddresses(String list) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String address : list.split(",")) {
+            addresses.add(parseAddress(address));
+        }
+        return addresses;
+    }
+
+    public static InetSocketAddress parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("Адрес должен быть в виде host:port: " + address);
+        }
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Использование: SessionRouter <порт> <host:port,host:port,...> [ожидание пары, мс]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        List<InetSocketAddress> shards = parseAddresses(args[1]);
+        long pairWait = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+
+        SessionRouter router = new SessionRouter(port, shards, pairWait);
+        router.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(router::shutdown));
+        try {
+            router.awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
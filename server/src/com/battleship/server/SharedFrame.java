@@ -0,0 +1,44 @@
+package com.battleship.server;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Сообщение, которое уходит многим получателям (рассылка зрителям партии). Кадр
+// MessageFrames кодируется не для каждого соединения, а один раз на кодек - при первой
+// отправке через соединение с этим кодеком - и дальше отдается всем как есть.
+// Ни сообщение, ни готовые кадры после создания не меняются.
+public final class SharedFrame {
+    private final GameData data;
+    private static final int CACHED_CODECS = 8; // Идентификаторы известных кодеков меньше
+
+    // Готовые кадры по идентификатору кодека
+    private final AtomicReferenceArray<byte[]> frames = new AtomicReferenceArray<>(CACHED_CODECS);
+
+    public SharedFrame(GameData data) {
+        this.data = data;
+    }
+
+    // Сообщение для соединений без кадров (старый поток сериализации Java); не изменять
+    public GameData getData() {
+        return data;
+    }
+
+    // Кадр целиком, заголовок с длиной и тело. Массив общий для всех получателей:
+    // его можно только читать
+    public byte[] bytes(WireCodec codec) throws IOException {
+        int slot = codec.id() & 0xFF;
+        byte[] frame = slot < CACHED_CODECS ? frames.get(slot) : null;
+        if (frame != null) return frame;
+
+        byte[] payload = codec.encode(data);
+        frame = new byte[MessageFrames.HEADER_SIZE + payload.length];
+        frame[0] = (byte) (payload.length >>> 24);
+        frame[1] = (byte) (payload.length >>> 16);
+        frame[2] = (byte) (payload.length >>> 8);
+        frame[3] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, MessageFrames.HEADER_SIZE, payload.length);
+        if (slot >= CACHED_CODECS) return frame;
+        // Два потока могли закодировать кадр одновременно - все получат один и тот же
+        return frames.compareAndSet(slot, null, frame) ? frame : frames.get(slot);
+    }
+}
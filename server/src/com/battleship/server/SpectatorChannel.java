@@ -0,0 +1,215 @@
+package com.battleship.server;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Рассылка событий одной партии ее зрителям. Каждое событие кодируется один раз
+// (SharedFrame) и раскладывается по ограниченным очередям зрителей; пишут в сокеты
+// задачи доставки на executor, по одной на зрителя, поэтому поток партии никогда не
+// ждет медленного зрителя. Цена лишнего зрителя для публикующего потока - короткая
+// блокировка его очереди и, если доставка не идет, постановка задачи в executor.
+//
+// Зритель, у которого в очереди и в буфере соединения набралось capacity кадров,
+// отстал: его очередь заменяется снимком партии - он сразу догоняет ее, не получая
+// старых событий. Снимок строится не чаще раза на событие и один на всех отставших.
+// Кто отстает больше MAX_RESYNCS раз подряд, так и не догнав партию между снимками
+// (очередь не опустела, в буфере соединения больше половины capacity), отключается:
+// снимки ему уже не помогут, а держать для него память незачем.
+//
+// publish, subscribe и close вызываются в потоке партии (MatchExecutor), и снимок
+// строится в нем же - поэтому он всегда включает ровно те события, что были до него.
+public final class SpectatorChannel {
+    public static final int DEFAULT_CAPACITY = 64;
+    static final int MAX_RESYNCS = 2;
+
+    // Получатель событий. sendFrame вызывается только из задачи доставки этого зрителя
+    // и может блокироваться; drop - из потока партии, не должен
+    public interface Viewer {
+        void sendFrame(SharedFrame frame) throws IOException;
+
+        // Кадры, уже отданные соединению, но еще не записанные в сокет
+        int getBacklog();
+
+        // Зритель отключается за отставание или ошибку записи
+        void drop();
+    }
+
+    private final Executor delivery;
+    private final int capacity;
+    private final Supplier<GameData> snapshots;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private SharedFrame snapshot; // В потоке партии; сбрасывается каждым событием
+    private volatile boolean closed;
+    private final AtomicLong resyncs = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public SpectatorChannel(Executor delivery, int capacity, Supplier<GameData> snapshots) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Слишком маленькая очередь зрителя: " + capacity);
+        }
+        this.delivery = delivery;
+        this.capacity = capacity;
+        this.snapshots = snapshots;
+    }
+
+    // Новый зритель сначала получает снимок партии; false - партия уже закончилась
+    public boolean subscribe(Viewer viewer) {
+        if (closed) return false;
+        Subscriber subscriber = new Subscriber(viewer);
+        subscribers.add(subscriber);
+        subscriber.offer(currentSnapshot(), true);
+        return true;
+    }
+
+    public void unsubscribe(Viewer viewer) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.viewer == viewer) {
+                subscriber.cancel();
+                subscribers.remove(subscriber);
+                return;
+            }
+        }
+    }
+
+    public void publish(GameData event) {
+        if (closed) return;
+        snapshot = null;
+        if (subscribers.isEmpty()) return;
+        SharedFrame frame = new SharedFrame(event);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(frame, false);
+        }
+    }
+
+    // Последнее событие партии; после него зрители отпускаются, когда дочитают очередь
+    public void close(GameData last) {
+        publish(last);
+        closed = true;
+        subscribers.clear();
+    }
+
+    public int size() {
+        return subscribers.size();
+    }
+
+    // Сколько раз отставшим зрителям очередь заменялась снимком
+    public long getResyncs() {
+        return resyncs.get();
+    }
+
+    // Сколько зрителей отключено за отставание или ошибку записи
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private SharedFrame currentSnapshot() {
+        SharedFrame current = snapshot;
+        if (current == null) {
+            current = new SharedFrame(snapshots.get());
+            snapshot = current;
+        }
+        return current;
+    }
+
+    private void drop(Subscriber subscriber) {
+        subscriber.cancel();
+        if (subscribers.remove(subscriber)) {
+            dropped.incrementAndGet();
+            subscriber.viewer.drop();
+        }
+    }
+
+    // Очередь одного зрителя и задача ее доставки
+    private final class Subscriber implements Runnable {
+        private final Viewer viewer;
+        private final ReentrantLock lock = new ReentrantLock(); // Не держится во время записи
+        private final ArrayDeque<SharedFrame> queue = new ArrayDeque<>();
+        private boolean scheduled; // Задача доставки поставлена или выполняется
+        private boolean cancelled;
+        private int lagging; // Снимков подряд из-за отставания, сбрасывается доставкой
+
+        Subscriber(Viewer viewer) {
+            this.viewer = viewer;
+        }
+
+        // Вызывается в потоке партии
+        void offer(SharedFrame frame, boolean initial) {
+            boolean schedule = false;
+            boolean lost = false;
+            lock.lock();
+            try {
+                if (cancelled) return;
+                int pending = queue.size() + viewer.getBacklog();
+                if (!initial && pending >= capacity) {
+                    if (++lagging > MAX_RESYNCS) {
+                        lost = true;
+                    } else {
+                        // Снимок строится после события и уже включает его
+                        queue.clear();
+                        queue.add(currentSnapshot());
+                        resyncs.incrementAndGet();
+                        schedule = !scheduled;
+                    }
+                } else {
+                    queue.add(frame);
+                    schedule = !scheduled;
+                }
+                if (schedule) scheduled = true;
+            } finally {
+                lock.unlock();
+            }
+            if (lost) {
+                drop(this);
+            } else if (schedule) {
+                try {
+                    delivery.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Сервер останавливается
+                    drop(this);
+                }
+            }
+        }
+
+        void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                queue.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Доставка: пишет кадры по одному, пока очередь не опустеет
+        @Override
+        public void run() {
+            while (true) {
+                SharedFrame frame;
+                lock.lock();
+                try {
+                    frame = queue.poll();
+                    if (frame == null) {
+                        scheduled = false;
+                        if (viewer.getBacklog() < capacity / 2) lagging = 0; // Догнал
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    viewer.sendFrame(frame);
+                } catch (IOException e) {
+                    drop(this);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package com.battleship.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Блокирующее соединение поверх сокета. Чтение выполняется в отдельном потоке ClientHandler.
+// send не пишет в сокет: кадр кодируется в вызывающем потоке и кладется в ограниченную
+// очередь (OutboundQueue), а пишет задача-писатель на executor writers. Поэтому поток
+// игры, отправляющий сообщение медленному клиенту, не ждет его сокета. Писатель
+// забирает из очереди все, что накопилось (до MAX_BATCH кадров), в буфер потока и
+// сбрасывает его одной записью.
+abstract class StreamConnection implements Connection {
+    private static final int STREAM_MAGIC_FIRST_BYTE = 0xAC;
+
+    protected final Socket socket;
+    private final OutputStream out; // Буферизованный поток сокета, в него пишет только писатель
+    private final OutboundQueue outbound;
+    private final OutboundStats stats;
+    protected final ServerMetrics metrics;
+    private final Executor writers;
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+    private final Runnable writeTask = this::writeQueued;
+    // Приостановка чтения: поток ClientHandler ждет перед следующим сообщением
+    private final ReentrantLock readGate = new ReentrantLock();
+    private final Condition readable = readGate.newCondition();
+    private boolean readsPaused; // Под readGate
+
+    protected StreamConnection(Socket socket, OutputStream out, Executor writers, ServerMetrics metrics) {
+        this.socket = socket;
+        this.out = out;
+        this.writers = writers;
+        this.metrics = metrics;
+        this.stats = metrics.getOutbound();
+        this.outbound = new OutboundQueue(stats);
+    }
+
+    // Определяет протокол по первому байту от клиента:
+    // 0xAC - старый поток сериализации Java, 'B' - приветствие с выбором кодека,
+    // 0x00 - кадры сериализации Java без приветствия
+    static StreamConnection open(Socket socket, Executor writers, ServerMetrics metrics) throws IOException {
+        try {
+            InputStream in = new BufferedInputStream(new CountingInputStream(socket.getInputStream(), metrics));
+            in.mark(1);
+            int first = in.read();
+            in.reset();
+
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            if (first == STREAM_MAGIC_FIRST_BYTE) {
+                return new ObjectStreamConnection(socket, in, out, writers, metrics);
+            }
+            if (first == WireCodecs.MAGIC_0) {
+                DataInputStream dataIn = new DataInputStream(in);
+                WireCodec codec = negotiate(dataIn, new DataOutputStream(out));
+                return new FramedConnection(socket, dataIn, out, codec, writers, metrics);
+            }
+            if (first == 0) {
+                return new FramedConnection(socket, new DataInputStream(in), out,
+                        WireCodecs.JAVA_SERIALIZATION, writers, metrics);
+            }
+            throw new StreamCorruptedException("Неизвестный протокол клиента");
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static WireCodec negotiate(DataInputStream in, DataOutputStream out) throws IOException {
+        byte[] header = new byte[4];
+        in.readFully(header);
+        int count = header[3] & 0xFF;
+        if (header[1] != WireCodecs.MAGIC_1 || count > WireCodecs.MAX_OFFERED_CODECS) {
+            throw new StreamCorruptedException("Некорректное приветствие клиента");
+        }
+        byte[] offered = new byte[count];
+        in.readFully(offered);
+
+        WireCodec codec = WireCodecs.select(offered, 0, count);
+        out.write(WireCodecs.reply(codec));
+        out.flush();
+        if (codec == null) {
+            throw new StreamCorruptedException("Клиент не предложил поддерживаемый кодек");
+        }
+        return codec;
+    }
+
+    // Следующее сообщение клиента; пока чтение приостановлено, ждет
+    GameData read() throws IOException, ClassNotFoundException {
+        readGate.lock();
+        try {
+            while (readsPaused && !socket.isClosed()) {
+                readable.awaitUninterruptibly();
+            }
+        } finally {
+            readGate.unlock();
+        }
+        return readMessage();
+    }
+
+    protected abstract GameData readMessage() throws IOException, ClassNotFoundException;
+
+    // Байты сообщения в том виде, в каком они уйдут в сокет
+    protected abstract ByteBuffer encode(GameData data) throws IOException;
+
+    protected abstract ByteBuffer encode(SharedFrame frame) throws IOException;
+
+    @Override
+    public void send(GameData data) throws IOException {
+        // Отправлять могут одновременно поток соперника, поток подбора пар и доставка зрителям
+        long start = metrics.startSerialization();
+        ByteBuffer frame = encode(data);
+        metrics.encoded(start);
+        enqueue(frame);
+    }
+
+    @Override
+    public void send(SharedFrame frame) throws IOException {
+        enqueue(encode(frame));
+    }
+
+    private void enqueue(ByteBuffer frame) throws IOException {
+        if (socket.isClosed()) return;
+        if (!outbound.offer(frame)) {
+            close();
+            throw new IOException("Клиент не успевает читать: очередь отправки переполнена");
+        }
+        if (writeScheduled.compareAndSet(false, true)) {
+            try {
+                writers.execute(writeTask);
+            } catch (RejectedExecutionException e) {
+                // Сервер останавливается
+                close();
+            }
+        }
+    }
+
+    // Писатель: одна задача на соединение в каждый момент времени
+    private void writeQueued() {
+        try {
+            while (true) {
+                int frames = 0;
+                long bytes = 0;
+                ByteBuffer frame;
+                while ((frame = outbound.poll()) != null) {
+                    out.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+                    bytes += frame.remaining();
+                    if (++frames == OutboundQueue.MAX_BATCH) {
+                        out.flush();
+                        stats.written(frames, bytes);
+                        frames = 0;
+                        bytes = 0;
+                    }
+                }
+                if (frames > 0) {
+                    out.flush();
+                    stats.written(frames, bytes);
+                }
+                writeScheduled.set(false);
+                // Кадр мог прийти между последним poll и сбросом флага - тогда его запишем мы
+                if (outbound.isEmpty() || !writeScheduled.compareAndSet(false, true)) return;
+            }
+        } catch (IOException e) {
+            // Поток чтения ClientHandler увидит закрытый сокет и отключит клиента
+            try {
+                close();
+            } catch (IOException ignored) {
+                // Сокет закрывается в любом случае
+            }
+        }
+    }
+
+    @Override
+    public int getBacklog() {
+        return outbound.size();
+    }
+
+    @Override
+    public void pauseReads() {
+        setReadsPaused(true);
+    }
+
+    @Override
+    public void resumeReads() {
+        setReadsPaused(false);
+    }
+
+    private void setReadsPaused(boolean paused) {
+        readGate.lock();
+        try {
+            readsPaused = paused;
+            readable.signalAll();
+        } finally {
+            readGate.unlock();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !socket.isClosed();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        outbound.clear();
+        setReadsPaused(false); // Поток чтения увидит закрытый сокет
+    }
+
+    // Старый протокол: непрерывный поток объектов
+    // Объекты сериализуются в вызывающем потоке в общий буфер; после каждого reset(),
+    // поэтому кусок потока одного сообщения не ссылается на предыдущие
+    private static class ObjectStreamConnection extends StreamConnection {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+        private final ObjectOutputStream objects;
+        private final ReentrantLock encodeLock = new ReentrantLock();
+        private final ObjectInputStream in;
+
+        ObjectStreamConnection(Socket socket, InputStream input, OutputStream output,
+                               Executor writers, ServerMetrics metrics) throws IOException {
+            super(socket, output, writers, metrics);
+            // Важно создавать потоки в таком порядке: клиент ждет заголовок потока,
+            // прежде чем прислать свой
+            this.objects = new ObjectOutputStream(buffer);
+            this.objects.flush();
+            output.write(buffer.toByteArray());
+            output.flush();
+            buffer.reset();
+            this.in = new ObjectInputStream(input);
+        }
+
+        // Разбор потока объектов не отделить от ожидания сокета, поэтому его время не измеряется
+        @Override
+        protected GameData readMessage() throws IOException, ClassNotFoundException {
+            return (GameData) in.readObject();
+        }
+
+        @Override
+        protected ByteBuffer encode(GameData data) throws IOException {
+            encodeLock.lock();
+            try {
+                objects.writeObject(data);
+                objects.reset(); // Сбрасываем кеш объектов
+                objects.flush();
+                ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+                buffer.reset();
+                return bytes;
+            } finally {
+                encodeLock.unlock();
+            }
+        }
+
+        @Override
+        protected ByteBuffer encode(SharedFrame frame) throws IOException {
+            // Поток объектов не делится на кадры - общее сообщение сериализуется заново
+            return encode(frame.getData());
+        }
+    }
+
+    // Кадры MessageFrames с согласованным кодеком
+    private static class FramedConnection extends StreamConnection {
+        private final DataInputStream in;
+        private final WireCodec codec;
+
+        FramedConnection(Socket socket, DataInputStream in, OutputStream out, WireCodec codec,
+                         Executor writers, ServerMetrics metrics) {
+            super(socket, out, writers, metrics);
+            this.in = in;
+            this.codec = codec;
+        }
+
+        // Время разбора - без ожидания байт кадра из сокета
+        @Override
+        protected GameData readMessage() throws IOException {
+            int length = in.readInt();
+            MessageFrames.checkLength(length);
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            long start = metrics.startSerialization();
+            GameData data = codec.decode(payload, 0, length);
+            metrics.decoded(start);
+            return data;
+        }
+
+        @Override
+        protected ByteBuffer encode(GameData data) throws IOException {
+            return MessageFrames.encodeFrame(data, codec);
+        }
+
+        @Override
+        protected ByteBuffer encode(SharedFrame frame) throws IOException {
+            return ByteBuffer.wrap(frame.bytes(codec));
+        }
+    }
+
+    // Считает байты, прочитанные из сокета: одно сложение на чтение из сокета, а не на сообщение
+    private static class CountingInputStream extends FilterInputStream {
+        private final ServerMetrics metrics;
+
+        CountingInputStream(InputStream in, ServerMetrics metrics) {
+            super(in);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) metrics.bytesRead(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) metrics.bytesRead(read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) metrics.bytesRead(skipped);
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.battleship.server;
+
+import java.io.IOException;
+
+// Кодек тела кадра. Идентификатор передается при согласовании протокола,
+// поэтому у каждого формата (и каждой его версии) он свой и не меняется.
+public interface WireCodec {
+    byte id();
+
+    String name();
+
+    byte[] encode(GameData data) throws IOException;
+
+    GameData decode(byte[] buffer, int offset, int length) throws IOException;
+}
@@ -0,0 +1,62 @@
+package com.battleship.server;
+
+// Известные кодеки и согласование протокола при подключении.
+//
+// Приветствие клиента: 'B' 'S' версия число_кодеков id... (в порядке предпочтения)
+// Ответ сервера:       'B' 'S' версия id_выбранного (0 - ни один не подошел)
+// Дальше обе стороны обмениваются кадрами MessageFrames выбранного кодека.
+public final class WireCodecs {
+    public static final byte JAVA_SERIALIZATION_ID = 1;
+    public static final byte BINARY_V1_ID = 2;
+
+    public static final WireCodec JAVA_SERIALIZATION = new JavaSerializationCodec();
+    public static final WireCodec BINARY = new BinaryCodec();
+
+    public static final byte MAGIC_0 = 'B';
+    public static final byte MAGIC_1 = 'S';
+    public static final byte PROTOCOL_VERSION = 1;
+    public static final byte NO_CODEC = 0;
+    public static final int REPLY_SIZE = 4;
+    public static final int MAX_OFFERED_CODECS = 16;
+
+    private WireCodecs() {
+    }
+
+    public static WireCodec forId(byte id) {
+        switch (id) {
+            case JAVA_SERIALIZATION_ID:
+                return JAVA_SERIALIZATION;
+            case BINARY_V1_ID:
+                return BINARY;
+            default:
+                return null;
+        }
+    }
+
+    public static byte[] hello(WireCodec... preferred) {
+        byte[] hello = new byte[4 + preferred.length];
+        hello[0] = MAGIC_0;
+        hello[1] = MAGIC_1;
+        hello[2] = PROTOCOL_VERSION;
+        hello[3] = (byte) preferred.length;
+        for (int i = 0; i < preferred.length; i++) {
+            hello[4 + i] = preferred[i].id();
+        }
+        return hello;
+    }
+
+    // Выбирает первый из предложенных клиентом кодеков, который знает сервер
+    public static WireCodec select(byte[] offered, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            WireCodec codec = forId(offered[offset + i]);
+            if (codec != null) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    public static byte[] reply(WireCodec selected) {
+        return new byte[]{MAGIC_0, MAGIC_1, PROTOCOL_VERSION, selected != null ? selected.id() : NO_CODEC};
+    }
+}
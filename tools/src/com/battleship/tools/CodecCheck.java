@@ -0,0 +1,224 @@
+package com.battleship.tools;
+
+import com.battleship.common.PackedBoard;
+import com.battleship.common.Ruleset;
+import com.battleship.server.GameData;
+import com.battleship.server.MessageFrames;
+import com.battleship.server.WireCodec;
+import com.battleship.server.WireCodecs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+
+// Проверка кодеков GameData без сети:
+//  1. круговое кодирование случайных сообщений во всех кодеках: с правилами партии и без,
+//     с полями нестандартного размера, пустыми и отсутствующими;
+//  2. фаззинг двоичного декодера - на испорченных кадрах допустим только IOException;
+//  3. сравнение размера типичных сообщений в байтах для каждого формата.
+//
+// Запуск: java -cp <classpath> com.battleship.tools.CodecCheck [итераций] [seed]
+public class CodecCheck {
+    private static final WireCodec[] CODECS = {WireCodecs.JAVA_SERIALIZATION, WireCodecs.BINARY};
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+        Random random = new Random(seed);
+        System.out.println("seed = " + seed);
+
+        roundTrip(random, iterations / 10);
+        fuzz(random, iterations);
+        compareSizes();
+    }
+
+    private static void roundTrip(Random random, int iterations) throws IOException {
+        for (WireCodec codec : CODECS) {
+            for (int i = 0; i < iterations; i++) {
+                GameData original = randomGameData(random);
+                byte[] encoded = codec.encode(original);
+                GameData decoded = codec.decode(encoded, 0, encoded.length);
+                if (!sameContent(original, decoded)) {
+                    throw new AssertionError(codec.name() + ": сообщение изменилось после кодирования, итерация " + i);
+                }
+            }
+            System.out.println("round-trip " + codec.name() + ": " + iterations + " сообщений OK");
+        }
+    }
+
+    private static void fuzz(Random random, int iterations) throws IOException {
+        WireCodec codec = WireCodecs.BINARY;
+        int rejected = 0;
+        for (int i = 0; i < iterations; i++) {
+            byte[] frame = codec.encode(randomGameData(random));
+            switch (random.nextInt(3)) {
+                case 0: // Переворот случайных битов
+                    for (int flips = 1 + random.nextInt(4); flips > 0; flips--) {
+                        frame[random.nextInt(frame.length)] ^= (byte) (1 << random.nextInt(8));
+                    }
+                    break;
+                case 1: // Обрезанный кадр
+                    frame = Arrays.copyOf(frame, random.nextInt(frame.length));
+                    break;
+                default: // Случайный мусор
+                    frame = new byte[random.nextInt(64)];
+                    random.nextBytes(frame);
+            }
+            try {
+                codec.decode(frame, 0, frame.length);
+            } catch (IOException e) {
+                rejected++;
+            } catch (RuntimeException e) {
+                throw new AssertionError("Декодер упал на испорченном кадре " + Arrays.toString(frame), e);
+            }
+        }
+        System.out.println("fuzz " + codec.name() + ": " + iterations + " кадров, отклонено " + rejected);
+    }
+
+    private static void compareSizes() throws IOException {
+        GameData shot = new GameData();
+        shot.setGameState(GameData.GameState.PLAYER_TURN);
+        shot.setX(3);
+        shot.setY(7);
+
+        GameData started = new GameData();
+        started.setGameState(GameData.GameState.GAME_STARTED);
+        started.setPlayerTurn(true);
+
+        GameData placement = new GameData();
+        placement.setGameState(GameData.GameState.PLACING_SHIPS);
+        PackedBoard board = new PackedBoard();
+        for (int x = 0; x < 4; x++) board.set(x, 0, PackedBoard.SHIP);
+        for (int y = 2; y < 5; y++) board.set(5, y, PackedBoard.SHIP);
+        placement.setPlayerBoard(board);
+
+        GameData error = new GameData();
+        error.setGameState(GameData.GameState.ERROR);
+        error.setErrorMessage("Сейчас не ваш ход");
+
+        System.out.printf("%-16s %14s %14s %14s%n", "сообщение", "object stream", "java frame", "binary frame");
+        printSizes("выстрел", shot);
+        printSizes("начало игры", started);
+        printSizes("расстановка", placement);
+        printSizes("ошибка", error);
+    }
+
+    private static void printSizes(String name, GameData data) throws IOException {
+        System.out.printf("%-16s %14d %14d %14d%n", name, objectStreamSize(data),
+                MessageFrames.encodeFrame(data, WireCodecs.JAVA_SERIALIZATION).remaining(),
+                MessageFrames.encodeFrame(data, WireCodecs.BINARY).remaining());
+    }
+
+    // Размер одного сообщения в старом непрерывном потоке: writeObject + reset
+    private static int objectStreamSize(GameData data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.flush();
+        int header = bytes.size();
+        out.writeObject(data);
+        out.reset();
+        out.flush();
+        return bytes.size() - header;
+    }
+
+    private static GameData randomGameData(Random random) {
+        GameData.GameState[] states = GameData.GameState.values();
+        GameData data = new GameData();
+        data.setX(random.nextInt(10));
+        data.setY(random.nextInt(10));
+        data.setPlayerTurn(random.nextBoolean());
+        if (random.nextInt(4) == 0) {
+            data.setPlayerScore(random.nextInt(1000));
+            data.setOpponentScore(random.nextInt(1000));
+        }
+        if (random.nextInt(8) == 0) {
+            data.setErrorMessage("Ошибка " + random.nextInt());
+        }
+        Ruleset ruleset = random.nextInt(4) == 0 ? randomRuleset(random) : null;
+        data.setRuleset(ruleset);
+        // Поля одного сообщения одного размера: по правилам, если они есть, иначе
+        // стандартного или случайного
+        int width = 10;
+        int height = 10;
+        if (ruleset != null) {
+            width = ruleset.getWidth();
+            height = ruleset.getHeight();
+        } else if (random.nextInt(4) == 0) {
+            width = 1 + random.nextInt(Ruleset.MAX_SIDE);
+            height = 1 + random.nextInt(Ruleset.MAX_SIDE);
+        }
+        if (random.nextInt(4) == 0) {
+            data.setPlayerBoard(randomBoard(random, width, height));
+        }
+        if (random.nextInt(4) == 0) {
+            data.setOpponentBoard(randomBoard(random, width, height));
+        }
+        if (random.nextInt(4) == 0) {
+            data.setSessionId(1 + random.nextInt(Integer.MAX_VALUE));
+            data.setResumeToken(random.nextLong());
+        }
+        if (random.nextInt(4) == 0) {
+            data.setMoveCount(random.nextInt(200));
+            int[] moves = new int[random.nextInt(20)];
+            for (int i = 0; i < moves.length; i++) {
+                moves[i] = GameData.packMove(random.nextInt(10), random.nextInt(10), random.nextBoolean(),
+                        random.nextBoolean(), random.nextBoolean());
+            }
+            data.setMissedMoves(moves);
+        }
+        data.setWinner(random.nextInt(10) == 0);
+        data.setGameState(states[random.nextInt(states.length)]);
+        return data;
+    }
+
+    // Редкий флот - один корабль и однопалубные на каждые 16 клеток: такие правила
+    // выполнимы при любом размере поля
+    private static Ruleset randomRuleset(Random random) {
+        int width = 1 + random.nextInt(Ruleset.MAX_SIDE);
+        int height = 1 + random.nextInt(Ruleset.MAX_SIDE);
+        int[] fleet = new int[1 + random.nextInt(Math.min(5, Math.max(1, width * height / 16)))];
+        fleet[0] = 1 + random.nextInt(Math.min(4, Math.max(width, height)));
+        for (int i = 1; i < fleet.length; i++) {
+            fleet[i] = 1;
+        }
+        return new Ruleset(width, height, fleet);
+    }
+
+    // Пустое поле тоже передается: оно отличается от отсутствующего
+    private static PackedBoard randomBoard(Random random, int width, int height) {
+        PackedBoard board = new PackedBoard(width, height);
+        if (random.nextInt(4) == 0) {
+            return board;
+        }
+        for (int y = 0; y < board.getHeight(); y++) {
+            for (int x = 0; x < board.getWidth(); x++) {
+                board.set(x, y, random.nextInt(4));
+            }
+        }
+        return board;
+    }
+
+    private static boolean sameContent(GameData a, GameData b) {
+        return a.getGameState() == b.getGameState()
+                && a.isPlayerTurn() == b.isPlayerTurn()
+                && a.getX() == b.getX() && a.getY() == b.getY()
+                && a.isError() == b.isError()
+                && Objects.equals(a.getErrorMessage(), b.getErrorMessage())
+                && a.isWinner() == b.isWinner()
+                && a.getPlayerScore() == b.getPlayerScore()
+                && a.getOpponentScore() == b.getOpponentScore()
+                && a.getTimestamp() == b.getTimestamp()
+                && a.getSessionId() == b.getSessionId()
+                && a.getResumeToken() == b.getResumeToken()
+                && a.getMoveCount() == b.getMoveCount()
+                && Arrays.equals(a.getMissedMoves(), b.getMissedMoves())
+                && Objects.equals(a.getRuleset(), b.getRuleset())
+                && a.hasPlayerBoard() == b.hasPlayerBoard()
+                && a.hasOpponentBoard() == b.hasOpponentBoard()
+                && (!a.hasPlayerBoard() || a.getPlayerBoard().equals(b.getPlayerBoard()))
+                && (!a.hasOpponentBoard() || a.getOpponentBoard().equals(b.getOpponentBoard()));
+    }
+}
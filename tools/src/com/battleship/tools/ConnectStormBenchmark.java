@@ -0,0 +1,160 @@
+package com.battleship.tools;
+
+import com.battleship.server.BattleshipServer;
+import com.battleship.server.LatencyHistogram;
+import com.battleship.server.ServerLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+// Шквал подключений: клиенты подключаются, согласуют кодек и сразу отключаются, каждое
+// подключение дает серверу два события журнала (подключен и отключен). Ступени идут
+// попеременно с журналом в вызывающем потоке (как прежний System.out.println) и с
+// асинхронным ServerLog; печатаются подключения в секунду, время подключения и число
+// событий, отброшенных асинхронным журналом.
+//
+// Журнал пишется в "консоль", которая принимает байты с заданной скоростью: так ведет себя
+// терминал или перенаправленный в медленный сборщик вывод, и именно это ожидание держит
+// поток приема при синхронной печати. Скорость 0 - настоящий System.out.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.tools.ConnectStormBenchmark 5000 64 nio 1000
+// Аргументы: подключений на ступень, одновременных клиентов, транспорт (nio или blocking),
+// скорость консоли в КБ/с (0 - System.out), число ступеней каждого вида, порт сервера.
+public class ConnectStormBenchmark {
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        boolean nio = args.length <= 2 || !args[2].equalsIgnoreCase("blocking");
+        int consoleKbPerSecond = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+        int port = args.length > 5 ? Integer.parseInt(args[5]) : 24650;
+
+        PrintStream report = System.out;
+        if (consoleKbPerSecond > 0) {
+            ServerLog.setOutput(new PrintStream(new ThrottledConsole(consoleKbPerSecond * 1024L), false,
+                    StandardCharsets.UTF_8));
+        }
+
+        BattleshipServer server = nio
+                ? new BattleshipServer(port, BattleshipServer.TransportMode.NIO, 0)
+                : new BattleshipServer(port, BattleshipServer.TransportMode.BLOCKING, 0,
+                        BattleshipServer.ThreadMode.VIRTUAL);
+        server.setBotFillDelay(-1);
+        server.start();
+        List<String> rows = new ArrayList<>();
+        try {
+            // Прогрев: JIT, пул потоков и буферы сокетов
+            ServerLog.setSynchronous(false);
+            storm(port, Math.min(connections, 1000), concurrency);
+            settle();
+
+            for (int round = 0; round < rounds; round++) {
+                for (boolean synchronous : new boolean[] {true, false}) {
+                    ServerLog.setSynchronous(synchronous);
+                    long droppedBefore = ServerLog.getDropped();
+                    LatencyHistogram connects = new LatencyHistogram();
+                    long start = System.nanoTime();
+                    int failed = storm(port, connections, concurrency, connects);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    settle();
+                    rows.add(String.format("%-6s %10.0f %10.2f %10.2f %10d %8d",
+                            synchronous ? "sync" : "async", connections / seconds,
+                            connects.getPercentile(50) / 1e6, connects.getPercentile(99) / 1e6,
+                            ServerLog.getDropped() - droppedBefore, failed));
+                }
+            }
+        } finally {
+            server.shutdown();
+            ServerLog.setSynchronous(false);
+        }
+
+        report.printf("%-6s %10s %10s %10s %10s %8s%n", "log", "conn/s", "p50 ms", "p99 ms", "dropped", "failed");
+        for (String row : rows) {
+            report.println(row);
+        }
+    }
+
+    private static int storm(int port, int connections, int concurrency) throws Exception {
+        return storm(port, connections, concurrency, new LatencyHistogram());
+    }
+
+    // Число неудачных подключений
+    private static int storm(int port, int connections, int concurrency, LatencyHistogram connects)
+            throws Exception {
+        AtomicInteger remaining = new AtomicInteger(connections);
+        AtomicInteger failed = new AtomicInteger();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(clients.submit(() -> {
+                    while (remaining.getAndDecrement() > 0) {
+                        long start = System.nanoTime();
+                        try {
+                            connectOnce(port);
+                            connects.record(System.nanoTime() - start);
+                        } catch (IOException e) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        }
+        return failed.get();
+    }
+
+    // Подключение с согласованием кодека: NIO-сервер создает клиента только после него
+    private static void connectOnce(int port) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", port), 10000);
+            socket.setSoTimeout(10000);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            LoadGenerator.negotiate(out, in);
+        }
+    }
+
+    // Сервер дописывает отключения, журнал выводит накопленное
+    private static void settle() throws InterruptedException {
+        Thread.sleep(500);
+        ServerLog.flush(60000);
+    }
+
+    // Вывод, который принимает не больше bytesPerSecond байт в секунду
+    private static final class ThrottledConsole extends OutputStream {
+        private final long nanosPerByte;
+
+        ThrottledConsole(long bytesPerSecond) {
+            this.nanosPerByte = Math.max(1, 1_000_000_000L / bytesPerSecond);
+        }
+
+        @Override
+        public void write(int b) {
+            LockSupport.parkNanos(nanosPerByte);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            LockSupport.parkNanos(nanosPerByte * length);
+        }
+    }
+}
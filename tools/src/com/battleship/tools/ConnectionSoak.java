@@ -0,0 +1,118 @@
+package com.battleship.tools;
+
+import com.battleship.server.BattleshipServer;
+import com.battleship.server.WireCodecs;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Нагрузочная проверка на удержание соединений: поднимает сервер в заданном режиме
+// и ступенями открывает простаивающие подключения, пока не достигнет цели или не
+// упрется в ошибку. После каждой ступени печатает потоки, кучу и RSS процесса.
+//
+// Запуск на двух ядрах:
+//   taskset -c 0,1 java -XX:ActiveProcessorCount=2 -cp <classpath> \
+//       com.battleship.tools.ConnectionSoak platform 20000 1000
+// Режимы: platform, virtual (блокирующий транспорт) и nio.
+public class ConnectionSoak {
+    private static final int PORT = 24567;
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0].toLowerCase() : "virtual";
+        int target = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        int step = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        BattleshipServer server = createServer(mode);
+        server.start();
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        boolean framed = mode.equals("nio");
+        List<Socket> sockets = new ArrayList<>(target);
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        System.out.printf("%-10s %10s %10s %12s %12s%n", "mode", "conns", "threads", "heap MB", "rss MB");
+        report(mode, 0, threads);
+
+        try {
+            while (sockets.size() < target) {
+                int stepEnd = Math.min(target, sockets.size() + step);
+                while (sockets.size() < stepEnd) {
+                    sockets.add(openIdle(framed));
+                }
+                // Даем серверу принять подключения и создать обработчики
+                TimeUnit.MILLISECONDS.sleep(500);
+                report(mode, sockets.size(), threads);
+            }
+        } catch (IOException | OutOfMemoryError e) {
+            System.out.println("Остановлено на " + sockets.size() + " соединениях: " + e);
+        } finally {
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Закрываем остальные
+                }
+            }
+            server.shutdown();
+        }
+    }
+
+    private static BattleshipServer createServer(String mode) {
+        switch (mode) {
+            case "nio":
+                return new BattleshipServer(PORT, BattleshipServer.TransportMode.NIO, 0);
+            case "platform":
+                return new BattleshipServer(PORT, BattleshipServer.TransportMode.BLOCKING, 0,
+                        BattleshipServer.ThreadMode.PLATFORM);
+            default:
+                return new BattleshipServer(PORT, BattleshipServer.TransportMode.BLOCKING, 0,
+                        BattleshipServer.ThreadMode.VIRTUAL);
+        }
+    }
+
+    private static Socket openIdle(boolean framed) throws IOException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress("localhost", PORT), 10000);
+        if (framed) {
+            // NIO-сервер создает обработчик после согласования кодека
+            socket.getOutputStream().write(WireCodecs.hello(WireCodecs.BINARY));
+        } else {
+            // Заголовок потока сериализации, без него сервер не создаст обработчик
+            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+            out.flush();
+        }
+        return socket;
+    }
+
+    private static void report(String mode, int connections, ThreadMXBean threads) {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long heapMb = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        System.out.printf("%-10s %10d %10d %12d %12d%n",
+                mode, connections, threads.getThreadCount(), heapMb, residentMemoryMb());
+    }
+
+    // Resident set size из /proc: учитывает стеки потоков ОС, которых не видно в куче
+    private static long residentMemoryMb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    String kb = line.substring("VmRSS:".length()).replace("kB", "").trim();
+                    return Long.parseLong(kb) / 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Не Linux - RSS недоступен
+        }
+        return -1;
+    }
+}
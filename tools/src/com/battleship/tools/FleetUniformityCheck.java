@@ -0,0 +1,247 @@
+package com.battleship.tools;
+
+import com.battleship.common.Bitboard;
+import com.battleship.common.FleetGenerator;
+import com.battleship.common.FleetRules;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// Проверка FleetGenerator.
+// 1. Равномерность: на маленьком поле перебором находятся все допустимые расстановки,
+//    затем частоты выпадения каждой из них сравниваются с равномерными критерием хи-квадрат.
+//    Проверяются последовательная расстановка без перемешивания и с перемешиванием.
+// 2. Поле 10x10 со стандартным флотом: частоты занятости клеток против длинной цепи
+//    Гиббса и скорость генерации.
+// 3. Независимость соседних флотов на том же поле: среднее число общих палуб у двух
+//    флотов подряд против ожидаемого у независимых (сумма квадратов частот занятости
+//    эталона). Для INDEPENDENT_MIXING_STEPS расхождение больше OVERLAP_SIGMAS
+//    стандартных ошибок - провал проверки.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.tools.FleetUniformityCheck 6 3,2,2,1 200
+// Аргументы: сторона маленького поля, флот, выборок на одну расстановку.
+public class FleetUniformityCheck {
+    private static final int THROUGHPUT_FLEETS = 2_000_000;
+    private static final int OCCUPANCY_FLEETS = 500_000;
+    private static final int REFERENCE_MIXING_STEPS = 4096;
+    private static final int OVERLAP_FLEETS = 100_000;
+    // Равномерность - свойство стационарного распределения цепи и от числа шагов между
+    // флотами не зависит, поэтому хи-квадрат идет с шагом по умолчанию. Зависимость
+    // соседних флотов проверяет третья часть
+    private static final int CHI_SQUARE_MIXING_STEPS = FleetGenerator.DEFAULT_MIXING_STEPS;
+    private static final double OVERLAP_SIGMAS = 4;
+
+    public static void main(String[] args) {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int[] fleet = args.length > 1
+                ? Arrays.stream(args[1].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[]{3, 2, 2, 1};
+        int samplesPerFleet = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        SplittableRandom random = new SplittableRandom(42);
+
+        Map<Long, Integer> fleets = enumerate(side, fleet);
+        System.out.printf("Поле %dx%d, флот %s: допустимых расстановок %d%n",
+                side, side, Arrays.toString(fleet), fleets.size());
+        chiSquare("без перемешивания", new FleetGenerator(side, side, fleet, random, 0), fleets, samplesPerFleet);
+        chiSquare("перемешивание " + CHI_SQUARE_MIXING_STEPS,
+                new FleetGenerator(side, side, fleet, random, CHI_SQUARE_MIXING_STEPS), fleets, samplesPerFleet);
+
+        int size = FleetRules.STANDARD_GRID_SIZE;
+        int[] standard = FleetRules.STANDARD_FLEET;
+        System.out.printf("%nПоле %dx%d, стандартный флот%n", size, size);
+        int referenceFleets = OCCUPANCY_FLEETS / 10;
+        double[] reference = occupancy(new FleetGenerator(size, size, standard, random, REFERENCE_MIXING_STEPS),
+                referenceFleets);
+        compareOccupancy("без перемешивания",
+                occupancy(new FleetGenerator(size, size, standard, random, 0), OCCUPANCY_FLEETS), reference);
+        compareOccupancy("перемешивание " + FleetGenerator.DEFAULT_MIXING_STEPS,
+                occupancy(new FleetGenerator(size, size, standard, random), OCCUPANCY_FLEETS), reference);
+
+        throughput("без перемешивания", new FleetGenerator(size, size, standard, random, 0), THROUGHPUT_FLEETS);
+        throughput("перемешивание " + FleetGenerator.DEFAULT_MIXING_STEPS,
+                new FleetGenerator(size, size, standard, random), THROUGHPUT_FLEETS);
+        throughput("перемешивание " + FleetGenerator.INDEPENDENT_MIXING_STEPS,
+                new FleetGenerator(size, size, standard, random, FleetGenerator.INDEPENDENT_MIXING_STEPS),
+                THROUGHPUT_FLEETS / 20);
+        throughput("FleetRules.randomFleet", null, THROUGHPUT_FLEETS);
+
+        System.out.printf("%nОбщие палубы двух флотов подряд%n");
+        overlap("перемешивание " + FleetGenerator.DEFAULT_MIXING_STEPS,
+                new FleetGenerator(size, size, standard, random), reference, referenceFleets);
+        double sigmas = overlap("перемешивание " + FleetGenerator.INDEPENDENT_MIXING_STEPS,
+                new FleetGenerator(size, size, standard, random, FleetGenerator.INDEPENDENT_MIXING_STEPS),
+                reference, referenceFleets);
+        if (Math.abs(sigmas) > OVERLAP_SIGMAS) {
+            throw new AssertionError("Соседние флоты при INDEPENDENT_MIXING_STEPS зависимы: отклонение "
+                    + String.format("%.1f", sigmas) + " ст. ош.");
+        }
+    }
+
+    // Отклонение среднего числа общих палуб двух флотов подряд от ожидаемого у независимых,
+    // в стандартных ошибках. Ожидаемое - сумма p^2 по клеткам; его ошибка берется из
+    // числа флотов эталона, ошибка среднего - из разброса выборки
+    private static double overlap(String label, FleetGenerator generator, double[] reference, int referenceFleets) {
+        double expected = 0;
+        double expectedVariance = 0;
+        for (double p : reference) {
+            expected += p * p;
+            expectedVariance += 4 * p * p * p * (1 - p) / referenceFleets;
+        }
+        Bitboard previous = generator.next();
+        Bitboard fleet = new Bitboard(previous.getWidth(), previous.getHeight());
+        long sum = 0;
+        long sumSquares = 0;
+        for (int i = 0; i < OVERLAP_FLEETS; i++) {
+            generator.next(fleet);
+            int shared = 0;
+            for (int cell = fleet.nextSetBit(0); cell >= 0; cell = fleet.nextSetBit(cell + 1)) {
+                if (previous.get(cell)) shared++;
+            }
+            sum += shared;
+            sumSquares += (long) shared * shared;
+            Bitboard swap = previous;
+            previous = fleet;
+            fleet = swap;
+        }
+        double mean = (double) sum / OVERLAP_FLEETS;
+        double variance = (double) sumSquares / OVERLAP_FLEETS - mean * mean;
+        double sigmas = (mean - expected) / Math.sqrt(variance / OVERLAP_FLEETS + expectedVariance);
+        System.out.printf("  %-22s %.3f (у независимых %.3f), отклонение %.1f ст. ош.%n", label, mean, expected, sigmas);
+        return sigmas;
+    }
+
+    // Все допустимые расстановки перебором: ключ - маска занятых клеток
+    private static Map<Long, Integer> enumerate(int side, int[] fleet) {
+        if (side * side > 64) {
+            throw new IllegalArgumentException("Перебор рассчитан на поле не больше 64 клеток");
+        }
+        Map<Long, Integer> fleets = new HashMap<>();
+        int[] sizes = fleet.clone();
+        Arrays.sort(sizes);
+        place(side, sizes, sizes.length - 1, new Bitboard(side, side), fleets);
+        return fleets;
+    }
+
+    private static void place(int side, int[] sizes, int ship, Bitboard occupied, Map<Long, Integer> fleets) {
+        if (ship < 0) {
+            fleets.putIfAbsent(occupied.word(0), fleets.size());
+            return;
+        }
+        int size = sizes[ship];
+        for (int o = 0; o < (size == 1 ? 1 : 2); o++) {
+            boolean horizontal = o == 0;
+            for (int y = 0; y < side; y++) {
+                for (int x = 0; x < side; x++) {
+                    if (!FleetRules.canPlaceShip(occupied, x, y, size, horizontal)) continue;
+                    Bitboard next = new Bitboard(occupied);
+                    for (int i = 0; i < size; i++) {
+                        next.set(horizontal ? x + i : x, horizontal ? y : y + i);
+                    }
+                    place(side, sizes, ship - 1, next, fleets);
+                }
+            }
+        }
+    }
+
+    private static void chiSquare(String label, FleetGenerator generator, Map<Long, Integer> fleets, int samplesPerFleet) {
+        int categories = fleets.size();
+        long samples = (long) categories * samplesPerFleet;
+        long[] counts = new long[categories];
+        Bitboard fleet = null;
+        for (long i = 0; i < samples; i++) {
+            if (fleet == null) fleet = generator.next();
+            else generator.next(fleet);
+            Integer index = fleets.get(fleet.word(0));
+            if (index == null) {
+                throw new IllegalStateException("Генератор выдал недопустимую расстановку");
+            }
+            counts[index]++;
+        }
+
+        double expected = (double) samples / categories;
+        double chi2 = 0;
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (long count : counts) {
+            double diff = count - expected;
+            chi2 += diff * diff / expected;
+            min = Math.min(min, count);
+            max = Math.max(max, count);
+        }
+        int df = categories - 1;
+        System.out.printf("  %-22s хи-квадрат %.1f при %d ст. св., p = %.4f; частоты от %.3f до %.3f от ожидаемой%n",
+                label, chi2, df, upperTail(chi2, df), min / expected, max / expected);
+    }
+
+    // Верхний хвост хи-квадрат через нормальное приближение Уилсона-Хилферти
+    private static double upperTail(double chi2, int df) {
+        double k = df;
+        double z = (Math.cbrt(chi2 / k) - (1 - 2 / (9 * k))) / Math.sqrt(2 / (9 * k));
+        return 0.5 * erfc(z / Math.sqrt(2));
+    }
+
+    // Дополнительная функция ошибок, приближение из Numerical Recipes (точность ~1e-7)
+    private static double erfc(double x) {
+        double z = Math.abs(x);
+        double t = 1 / (1 + 0.5 * z);
+        double r = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+                + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587
+                + t * (-0.82215223 + t * 0.17087277)))))))));
+        return x >= 0 ? r : 2 - r;
+    }
+
+    private static double[] occupancy(FleetGenerator generator, int samples) {
+        Bitboard fleet = generator.next();
+        long[] counts = new long[fleet.size()];
+        for (int i = 0; i < samples; i++) {
+            generator.next(fleet);
+            for (int cell = fleet.nextSetBit(0); cell >= 0; cell = fleet.nextSetBit(cell + 1)) {
+                counts[cell]++;
+            }
+        }
+        double[] frequencies = new double[counts.length];
+        for (int cell = 0; cell < counts.length; cell++) {
+            frequencies[cell] = (double) counts[cell] / samples;
+        }
+        return frequencies;
+    }
+
+    private static void compareOccupancy(String label, double[] frequencies, double[] reference) {
+        double worst = 0;
+        int worstCell = 0;
+        for (int cell = 0; cell < frequencies.length; cell++) {
+            double deviation = Math.abs(frequencies[cell] - reference[cell]) / reference[cell];
+            if (deviation > worst) {
+                worst = deviation;
+                worstCell = cell;
+            }
+        }
+        int side = (int) Math.round(Math.sqrt(frequencies.length));
+        System.out.printf("  %-22s угол %.4f (эталон %.4f), центр %.4f (эталон %.4f), наибольшее отклонение %.1f%% в клетке %d,%d%n",
+                label, frequencies[0], reference[0],
+                frequencies[side / 2 * side + side / 2], reference[side / 2 * side + side / 2],
+                worst * 100, worstCell % side, worstCell / side);
+    }
+
+    private static void throughput(String label, FleetGenerator generator, int fleets) {
+        int size = FleetRules.STANDARD_GRID_SIZE;
+        SplittableRandom random = new SplittableRandom(7);
+        Bitboard fleet = new Bitboard(size, size);
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < fleets; i++) {
+            if (generator != null) {
+                generator.next(fleet);
+            } else {
+                fleet = FleetRules.randomFleet(size, size, FleetRules.STANDARD_FLEET, random);
+            }
+            checksum += fleet.word(0);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("  %-22s %.2f млн флотов/с (контрольная сумма %d)%n",
+                label, fleets / seconds / 1e6, checksum & 0xFFFF);
+    }
+}
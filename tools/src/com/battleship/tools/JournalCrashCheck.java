@@ -0,0 +1,324 @@
+package com.battleship.tools;
+
+import com.battleship.common.PackedBoard;
+import com.battleship.common.Ruleset;
+import com.battleship.server.BattleshipServer;
+import com.battleship.server.GameData;
+import com.battleship.server.MessageFrames;
+import com.battleship.server.WireCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Проверка журнала ходов: сервер с журналом запускается отдельным процессом, два
+// клиента начинают партию, и через случайное число выстрелов процесс сервера убивается
+// (SIGKILL, без shutdown hook). Сервер поднимается заново на том же журнале, клиенты
+// возвращаются в партию по ключам из GAME_STARTED, и снимок из RESUME сравнивается с
+// тем, что каждый клиент видел до падения: оба поля, очередь хода и счет. Так партия
+// доигрывается до конца через несколько падений; несовпадение - ошибка и ненулевой код.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.tools.JournalCrashCheck 5 30
+// Аргументы: число партий, наибольшее число выстрелов между падениями, порт сервера.
+public class JournalCrashCheck {
+    private static final int CONNECT_TIMEOUT = 5000;
+    private static final long START_TIMEOUT_MS = 30000;
+
+    private final int port;
+    private final Path journal;
+    private final Random random;
+    private Process server;
+    private int crashes;
+
+    private JournalCrashCheck(int port, Path journal, long seed) {
+        this.port = port;
+        this.journal = journal;
+        this.random = new Random(seed);
+    }
+
+    // Клиент с тем, что он знает о партии
+    static final class Client {
+        Socket socket;
+        DataOutputStream out;
+        DataInputStream in;
+        WireCodec codec;
+        long sessionId;
+        long token;
+        Ruleset rules;
+        PackedBoard own;      // Свои корабли и выстрелы соперника
+        PackedBoard opponent; // Результаты своих выстрелов
+        boolean myTurn;
+        int playerScore;
+        int opponentScore;
+        int[] targets;
+        int nextTarget;
+
+        void connect(int port) throws IOException {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress("localhost", port), CONNECT_TIMEOUT);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(10000);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            codec = LoadGenerator.negotiate(out, in);
+        }
+
+        void send(GameData data) throws IOException {
+            MessageFrames.writeFrame(out, data, codec);
+        }
+
+        GameData read() throws IOException {
+            return MessageFrames.readFrame(in, codec);
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Сервер уже убит
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int maxShotsBetweenCrashes = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 24580;
+        long seed = System.nanoTime();
+        System.out.println("seed = " + seed);
+
+        Path journal = Files.createTempDirectory("battleship-journal");
+        JournalCrashCheck check = new JournalCrashCheck(port, journal, seed);
+        try {
+            check.startServer();
+            for (int game = 1; game <= games; game++) {
+                check.playGame(game, maxShotsBetweenCrashes);
+            }
+            System.out.println("Партий: " + games + ", падений сервера: " + check.crashes + " - состояние совпало");
+        } finally {
+            check.stopServer();
+            try (Stream<Path> files = Files.walk(journal)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    private void playGame(int game, int maxShotsBetweenCrashes) throws Exception {
+        Client[] clients = {new Client(), new Client()};
+        for (Client client : clients) {
+            client.connect(port);
+            GameData waiting = new GameData();
+            waiting.setGameState(GameData.GameState.WAITING_FOR_OPPONENT);
+            client.send(waiting);
+        }
+        for (Client client : clients) {
+            GameData started = expect(client, GameData.GameState.GAME_STARTED);
+            client.sessionId = started.getSessionId();
+            client.token = started.getResumeToken();
+            client.rules = started.getRuleset() != null ? started.getRuleset() : Ruleset.STANDARD;
+            client.myTurn = started.isPlayerTurn();
+            client.own = LoadGenerator.randomFleet(client.rules);
+            client.opponent = client.rules.newBoard();
+            client.targets = shuffledCells(random, client.rules);
+            GameData placement = new GameData();
+            placement.setGameState(GameData.GameState.PLACING_SHIPS);
+            placement.setPlayerBoard(client.own);
+            client.send(placement);
+        }
+        if (clients[0].sessionId == 0 || clients[0].sessionId != clients[1].sessionId) {
+            throw new AssertionError("Клиенты не в одной партии: " + clients[0].sessionId + " и " + clients[1].sessionId);
+        }
+
+        int shots = 0;
+        int untilCrash = 1 + random.nextInt(maxShotsBetweenCrashes);
+        while (true) {
+            Client shooter = clients[0].myTurn ? clients[0] : clients[1];
+            Client target = shooter == clients[0] ? clients[1] : clients[0];
+            if (shoot(shooter, target)) break;
+            if (++shots == untilCrash) {
+                crashAndResume(clients);
+                untilCrash = shots + 1 + random.nextInt(maxShotsBetweenCrashes);
+            }
+        }
+        for (Client client : clients) {
+            client.close();
+        }
+        System.out.println("Партия " + game + " (#" + clients[0].sessionId + "): " + shots + " выстрелов, "
+                + clients[0].playerScore + ":" + clients[0].opponentScore);
+    }
+
+    // Выстрел и его результат у обоих клиентов; true - партия окончена
+    static boolean shoot(Client shooter, Client target) throws IOException {
+        int cell = shooter.targets[shooter.nextTarget];
+        int x = cell % shooter.rules.getWidth();
+        int y = cell / shooter.rules.getWidth();
+        GameData shot = new GameData();
+        shot.setGameState(GameData.GameState.PLAYER_TURN);
+        shot.setX(x);
+        shot.setY(y);
+        shooter.send(shot);
+
+        GameData result = shooter.read();
+        if (result.getGameState() == GameData.GameState.ERROR) {
+            // Соперник еще не расставил корабли - повторим тот же выстрел
+            sleep(20);
+            return false;
+        }
+        shooter.nextTarget++;
+        boolean hit = result.getGameState() == GameData.GameState.HIT;
+        shooter.opponent.set(x, y, hit ? PackedBoard.HIT : PackedBoard.MISS);
+        shooter.myTurn = hit;
+        GameData seen = expect(target, result.getGameState());
+        target.own.set(x, y, hit ? PackedBoard.HIT : PackedBoard.MISS);
+        target.myTurn = !hit;
+
+        // Потоплен ли корабль, знает только его владелец; после потопления обоим приходит
+        // SHIP_SUNK, после последнего корабля - еще и GAME_OVER
+        boolean sunk = hit && isSunk(target.own, x, y);
+        boolean over = sunk && target.own.count(PackedBoard.SHIP) == 0;
+        for (Client client : new Client[] {shooter, target}) {
+            GameData last = client == shooter ? result : seen;
+            if (sunk) last = expect(client, GameData.GameState.SHIP_SUNK);
+            if (over) last = expect(client, GameData.GameState.GAME_OVER);
+            client.playerScore = last.getPlayerScore();
+            client.opponentScore = last.getOpponentScore();
+        }
+        return over;
+    }
+
+    // Корабль из клетки (x, y) подбит целиком: по прямой в обе стороны нет целых палуб
+    static boolean isSunk(PackedBoard board, int x, int y) {
+        int[][] directions = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        for (int[] d : directions) {
+            for (int cx = x + d[0], cy = y + d[1]; board.inBounds(cx, cy); cx += d[0], cy += d[1]) {
+                int state = board.get(cx, cy);
+                if (state == PackedBoard.SHIP) return false;
+                if (state != PackedBoard.HIT) break;
+            }
+        }
+        return true;
+    }
+
+    private void crashAndResume(Client[] clients) throws Exception {
+        server.destroyForcibly().waitFor();
+        crashes++;
+        for (Client client : clients) {
+            client.close();
+        }
+        startServer();
+        for (Client client : clients) {
+            client.connect(port);
+            GameData resume = new GameData();
+            resume.setGameState(GameData.GameState.RESUME);
+            resume.setSessionId(client.sessionId);
+            resume.setResumeToken(client.token);
+            client.send(resume);
+            GameData snapshot = expect(client, GameData.GameState.RESUME);
+            verify(client, snapshot);
+            if (!snapshot.hasPlayerBoard()) {
+                // Сервер упал, не успев принять расстановку (на нее нет ответа) - шлем ее
+                // снова, как это делает клиент игры
+                GameData placement = new GameData();
+                placement.setGameState(GameData.GameState.PLACING_SHIPS);
+                placement.setPlayerBoard(client.own);
+                client.send(placement);
+            }
+        }
+        // Вернувшийся первым узнает о возвращении соперника вместе с очередью хода
+        expect(clients[0], clients[0].myTurn ? GameData.GameState.PLAYER_TURN : GameData.GameState.OPPONENT_TURN);
+    }
+
+    static void verify(Client client, GameData snapshot) {
+        List<String> mismatches = new ArrayList<>();
+        if (snapshot.getSessionId() != client.sessionId) mismatches.add("номер партии");
+        if (!client.rules.equals(snapshot.getRuleset())) mismatches.add("правила");
+        // Поля нет, пока сервер не принял расстановку; выстрелов до этого быть не могло
+        if (snapshot.hasPlayerBoard() ? !client.own.equals(snapshot.getPlayerBoard())
+                : client.own.count(PackedBoard.HIT) + client.own.count(PackedBoard.MISS) != 0) {
+            mismatches.add("свое поле");
+        }
+        if (snapshot.hasOpponentBoard() ? !client.opponent.equals(snapshot.getOpponentBoard())
+                : !client.opponent.isEmpty()) {
+            mismatches.add("поле соперника");
+        }
+        if (snapshot.isPlayerTurn() != client.myTurn) mismatches.add("очередь хода");
+        if (snapshot.getPlayerScore() != client.playerScore || snapshot.getOpponentScore() != client.opponentScore) {
+            mismatches.add("счет " + snapshot.getPlayerScore() + ":" + snapshot.getOpponentScore()
+                    + " вместо " + client.playerScore + ":" + client.opponentScore);
+        }
+        if (!mismatches.isEmpty()) {
+            throw new AssertionError("Снимок из RESUME не совпал: " + mismatches);
+        }
+    }
+
+    static GameData expect(Client client, GameData.GameState state) throws IOException {
+        GameData data = client.read();
+        if (data.getGameState() != state) {
+            throw new AssertionError("Ожидалось " + state + ", пришло " + data.getGameState()
+                    + (data.getErrorMessage() != null ? " (" + data.getErrorMessage() + ")" : ""));
+        }
+        return data;
+    }
+
+    private void startServer() throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        server = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                BattleshipServer.class.getName(), Integer.toString(port), "nobots", "journal=" + journal)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD) // Проба порта ниже - это "клиент" без приветствия
+                .start();
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MS;
+        while (true) {
+            try (Socket probe = new Socket()) {
+                probe.connect(new InetSocketAddress("localhost", port), 1000);
+                return;
+            } catch (IOException e) {
+                if (!server.isAlive() || System.currentTimeMillis() > deadline) {
+                    throw new IOException("Сервер не запустился", e);
+                }
+                sleep(50);
+            }
+        }
+    }
+
+    private void stopServer() throws InterruptedException {
+        if (server != null) {
+            server.destroy();
+            if (!server.waitFor(10, TimeUnit.SECONDS)) {
+                server.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    static int[] shuffledCells(Random random, Ruleset rules) {
+        int[] cells = new int[rules.getWidth() * rules.getHeight()];
+        for (int i = 0; i < cells.length; i++) {
+            int j = random.nextInt(i + 1);
+            cells[i] = cells[j];
+            cells[j] = i;
+        }
+        return cells;
+    }
+
+    static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
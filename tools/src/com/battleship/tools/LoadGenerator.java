@@ -0,0 +1,364 @@
+package com.battleship.tools;
+
+import com.battleship.common.FleetGenerator;
+import com.battleship.common.FleetRules;
+import com.battleship.common.PackedBoard;
+import com.battleship.common.Ruleset;
+import com.battleship.server.BattleshipServer;
+import com.battleship.server.GameData;
+import com.battleship.server.LatencyHistogram;
+import com.battleship.server.MessageFrames;
+import com.battleship.server.WireCodec;
+import com.battleship.server.WireCodecs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Нагрузочный генератор без Swing: открывает N соединений так же, как BattleshipClient
+// (приветствие с двоичным кодеком и кадры), встает в очередь, расставляет случайный
+// допустимый флот и играет партии до конца с заданным темпом ходов. Раз в секунду
+// печатает подключения/с, партии/с и задержку ответа на выстрел, в конце - сводку.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.tools.LoadGenerator nio 2000 60 5
+// Аргументы: режим (platform | virtual | nio - сервер поднимается в этом же процессе,
+// external - подключение к уже запущенному серверу), число клиентов, длительность в
+// секундах, ходов в секунду на клиента (0 - без пауз), подключений в секунду при
+// разгоне (0 - без ограничения) и host:port для режима external.
+public class LoadGenerator {
+    private static final int PORT = 24568;
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final long RETRY_DELAY_MS = 5; // Повтор выстрела, пока соперник расставляет корабли
+    private static final long MAX_FLEET_MASK_BYTES = 16 << 20;
+    private static Ruleset fleetRules; // Правила, под которые построен fleetGenerator
+    private static FleetGenerator fleetGenerator;
+
+    private final String host;
+    private final int port;
+    private final long moveIntervalNanos;
+
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder matches = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram connectTime = new LatencyHistogram();
+    private final LatencyHistogram moveRtt = new LatencyHistogram();
+    private final LatencyHistogram intervalRtt = new LatencyHistogram();
+    private final Queue<Socket> sockets = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean running = true;
+
+    public LoadGenerator(String host, int port, int movesPerSecond) {
+        this.host = host;
+        this.port = port;
+        this.moveIntervalNanos = movesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / movesPerSecond : 0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0].toLowerCase() : "nio";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        int movesPerSecond = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int connectRate = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+        String host = "localhost";
+        int port = PORT;
+        BattleshipServer server = null;
+        if (mode.equals("external")) {
+            if (args.length > 5) {
+                String[] address = args[5].split(":");
+                host = address[0];
+                port = Integer.parseInt(address[1]);
+            }
+        } else {
+            server = createServer(mode);
+            server.start();
+            TimeUnit.MILLISECONDS.sleep(200);
+        }
+
+        LoadGenerator generator = new LoadGenerator(host, port, movesPerSecond);
+        try {
+            generator.run(clients, seconds, connectRate);
+        } finally {
+            if (server != null) server.shutdown();
+        }
+    }
+
+    // Итоги прогона для других инструментов (ShardScalingBenchmark)
+    long getMatches() {
+        return matches.sum();
+    }
+
+    long getGames() {
+        return games.sum();
+    }
+
+    long getErrors() {
+        return errors.sum() + connectFailures.sum();
+    }
+
+    private static BattleshipServer createServer(String mode) {
+        switch (mode) {
+            case "nio":
+                return new BattleshipServer(PORT, BattleshipServer.TransportMode.NIO, 0);
+            case "platform":
+                return new BattleshipServer(PORT, BattleshipServer.TransportMode.BLOCKING, 0,
+                        BattleshipServer.ThreadMode.PLATFORM);
+            default:
+                return new BattleshipServer(PORT, BattleshipServer.TransportMode.BLOCKING, 0,
+                        BattleshipServer.ThreadMode.VIRTUAL);
+        }
+    }
+
+    public void run(int clients, int seconds, int connectRate) throws InterruptedException {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+        long connectInterval = connectRate > 0 ? TimeUnit.SECONDS.toNanos(1) / connectRate : 0;
+
+        Thread reporter = Thread.ofPlatform().daemon().name("load-report").start(() -> report(start));
+
+        for (int i = 0; i < clients && System.nanoTime() < deadline; i++) {
+            executor.execute(this::runClient);
+            if (connectInterval > 0) {
+                TimeUnit.NANOSECONDS.sleep(connectInterval);
+            }
+        }
+
+        long remaining = deadline - System.nanoTime();
+        if (remaining > 0) {
+            TimeUnit.NANOSECONDS.sleep(remaining);
+        }
+
+        // Новые партии больше не начинаются, незаконченные прерываются закрытием сокетов
+        running = false;
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        reporter.interrupt();
+
+        printSummary(System.nanoTime() - start);
+    }
+
+    private void runClient() {
+        long connectStart = System.nanoTime();
+        Socket socket = new Socket();
+        sockets.add(socket);
+        boolean established = false;
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            WireCodec codec = negotiate(out, in);
+            connectTime.record(System.nanoTime() - connectStart);
+            connections.increment();
+            established = true;
+
+            while (running) {
+                GameData waiting = new GameData();
+                waiting.setGameState(GameData.GameState.WAITING_FOR_OPPONENT);
+                MessageFrames.writeFrame(out, waiting, codec);
+                playGame(out, in, codec);
+            }
+        } catch (IOException e) {
+            if (!established) {
+                connectFailures.increment();
+            } else if (running) {
+                errors.increment();
+            }
+        } finally {
+            sockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    static WireCodec negotiate(DataOutputStream out, DataInputStream in) throws IOException {
+        out.write(WireCodecs.hello(WireCodecs.BINARY));
+        out.flush();
+        byte[] reply = new byte[WireCodecs.REPLY_SIZE];
+        in.readFully(reply);
+        WireCodec codec = WireCodecs.forId(reply[3]);
+        if (reply[0] != WireCodecs.MAGIC_0 || reply[1] != WireCodecs.MAGIC_1 || codec == null) {
+            throw new StreamCorruptedException("Сервер не принял двоичный кодек");
+        }
+        return codec;
+    }
+
+    // Одна партия от GAME_STARTED до GAME_OVER. Флот отправляется после начала игры:
+    // так он всегда попадает в сессию, даже если подбор случился до расстановки.
+    private void playGame(DataOutputStream out, DataInputStream in, WireCodec codec) throws IOException {
+        Ruleset rules = Ruleset.STANDARD;
+        int[] targets = null;
+        int nextTarget = 0;
+        int hits = 0;
+        boolean myTurn = false;
+        long shotSentAt = 0;
+
+        while (true) {
+            GameData data = MessageFrames.readFrame(in, codec);
+            switch (data.getGameState()) {
+                case GAME_STARTED:
+                    if (data.isPlayerTurn()) matches.increment(); // Каждую пару считаем один раз
+                    if (data.getRuleset() != null) rules = data.getRuleset();
+                    targets = shuffledCells(rules);
+                    GameData placement = new GameData();
+                    placement.setGameState(GameData.GameState.PLACING_SHIPS);
+                    placement.setPlayerBoard(randomFleet(rules));
+                    MessageFrames.writeFrame(out, placement, codec);
+                    myTurn = data.isPlayerTurn();
+                    break;
+                case HIT:
+                case MISS:
+                    if (data.isPlayerTurn()) {
+                        // Ответ на наш выстрел
+                        long rtt = System.nanoTime() - shotSentAt;
+                        moveRtt.record(rtt);
+                        intervalRtt.record(rtt);
+                        moves.increment();
+                        nextTarget++;
+                        if (data.getGameState() == GameData.GameState.HIT) hits++;
+                        // После последнего попадания ждем GAME_OVER, а не стреляем дальше
+                        myTurn = data.getGameState() == GameData.GameState.HIT && hits < rules.getFleetCells();
+                    } else {
+                        myTurn = data.getGameState() == GameData.GameState.MISS;
+                    }
+                    break;
+                case ERROR:
+                    // Чаще всего соперник еще не расставил корабли - повторим тот же выстрел
+                    if (!myTurn) errors.increment();
+                    pause(TimeUnit.MILLISECONDS.toNanos(RETRY_DELAY_MS));
+                    break;
+                case GAME_OVER:
+                    if (data.isWinner()) games.increment();
+                    return;
+                case OPPONENT_DISCONNECTED:
+                    return;
+                default:
+                    break;
+            }
+
+            if (myTurn && data.getGameState() != GameData.GameState.SHIP_SUNK) {
+                if (targets == null || nextTarget >= targets.length) {
+                    throw new IOException("Все клетки обстреляны, а партия не закончилась");
+                }
+                pause(moveIntervalNanos);
+                GameData shot = new GameData();
+                shot.setGameState(GameData.GameState.PLAYER_TURN);
+                shot.setX(targets[nextTarget] % rules.getWidth());
+                shot.setY(targets[nextTarget] / rules.getWidth());
+                shotSentAt = System.nanoTime();
+                MessageFrames.writeFrame(out, shot, codec);
+            }
+        }
+    }
+
+    private static void pause(long nanos) throws IOException {
+        if (nanos <= 0) return;
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Клиент прерван", e);
+        }
+    }
+
+    private static int[] shuffledCells(Ruleset rules) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] cells = new int[rules.getWidth() * rules.getHeight()];
+        for (int i = 0; i < cells.length; i++) {
+            int j = random.nextInt(i + 1);
+            cells[i] = cells[j];
+            cells[j] = i;
+        }
+        return cells;
+    }
+
+    // Флоты всех клиентов дает одна цепь FleetGenerator: ее шаг много короче обмена с
+    // сервером, а маски на каждого из тысяч клиентов заняли бы сотни мегабайт. Правила с
+    // масками больше MAX_FLEET_MASK_BYTES расставляются FleetRules.randomFleet
+    static synchronized PackedBoard randomFleet(Ruleset rules) {
+        if (!rules.equals(fleetRules)) {
+            fleetRules = rules;
+            fleetGenerator = FleetGenerator.maskBytes(rules.getWidth(), rules.getHeight(), rules.getFleet())
+                    <= MAX_FLEET_MASK_BYTES
+                    ? new FleetGenerator(rules.getWidth(), rules.getHeight(), rules.getFleet(), new SplittableRandom())
+                    : null;
+        }
+        PackedBoard board = rules.newBoard();
+        board.setCells(fleetGenerator != null
+                ? fleetGenerator.next()
+                : FleetRules.randomFleet(rules.getWidth(), rules.getHeight(), rules.getFleet(),
+                        ThreadLocalRandom.current()), PackedBoard.SHIP);
+        return board;
+    }
+
+    private void report(long start) {
+        long lastConnections = 0;
+        long lastMatches = 0;
+        long lastGames = 0;
+        long lastMoves = 0;
+        System.out.printf("%6s %8s %8s %9s %8s %9s %10s %10s %8s%n",
+                "sec", "conns", "conn/s", "match/s", "games/s", "moves/s", "rtt p50", "rtt p99", "errors");
+        try {
+            while (true) {
+                TimeUnit.SECONDS.sleep(1);
+                long conns = connections.sum();
+                long matched = matches.sum();
+                long finished = games.sum();
+                long moved = moves.sum();
+                System.out.printf("%6d %8d %8d %9d %8d %9d %8.2fms %8.2fms %8d%n",
+                        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start),
+                        conns, conns - lastConnections, matched - lastMatches, finished - lastGames,
+                        moved - lastMoves, intervalRtt.getPercentile(50) / 1e6,
+                        intervalRtt.getPercentile(99) / 1e6, errors.sum());
+                intervalRtt.reset();
+                lastConnections = conns;
+                lastMatches = matched;
+                lastGames = finished;
+                lastMoves = moved;
+            }
+        } catch (InterruptedException e) {
+            // Отчет остановлен по окончании прогона
+        }
+    }
+
+    private void printSummary(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println();
+        System.out.printf("Соединений: %d (%.1f/с), ошибок подключения: %d%n",
+                connections.sum(), connections.sum() / seconds, connectFailures.sum());
+        System.out.printf("Пар: %d (%.1f/с), завершено партий: %d (%.1f/с)%n",
+                matches.sum(), matches.sum() / seconds, games.sum(), games.sum() / seconds);
+        System.out.printf("Выстрелов: %d (%.1f/с), ошибок: %d%n",
+                moves.sum(), moves.sum() / seconds, errors.sum());
+        System.out.println("Подключение и согласование: " + connectTime.summaryMillis());
+        System.out.println("Ответ на выстрел: " + moveRtt.summaryMillis());
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Сокет уже закрыт
+        }
+    }
+}
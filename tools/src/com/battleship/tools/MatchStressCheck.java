@@ -0,0 +1,212 @@
+package com.battleship.tools;
+
+import com.battleship.common.PackedBoard;
+import com.battleship.server.BattleshipServer;
+import com.battleship.server.GameData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.battleship.tools.JournalCrashCheck.Client;
+
+// Нагрузочная проверка потоков партий: много партий идут одновременно, и оба игрока
+// каждой стреляют не дожидаясь своей очереди - следующий выстрел уходит сразу после
+// ответа на предыдущий, а отказ "сейчас ход противника" тут же повторяется. Ходы двух
+// игроков одной партии все время приходят из двух потоков чтения одновременно.
+//
+// Каждый клиент записывает все выстрелы партии (свои и соперника) в том порядке, в
+// каком узнал о них. После партии проверяется:
+//   - оба игрока видели одну и ту же последовательность выстрелов;
+//   - свои выстрелы каждого идут в ней ровно в том порядке, в каком были отправлены,
+//     без пропусков и повторов;
+//   - последовательность - правильная партия: попадание только по кораблю, потопление
+//     только последней палубы, после промаха ход переходит к сопернику, после
+//     попадания остается у стрелявшего, последний выстрел топит последний корабль.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.tools.MatchStressCheck 200 nio
+// Аргументы: число одновременных партий, транспорт (nio или blocking), порт сервера.
+public class MatchStressCheck {
+    private static final long TIMEOUT_SECONDS = 300;
+
+    // Один игрок партии и то, что он увидел
+    private static final class Side {
+        final Client client;
+        final int seat; // 0 - первый игрок, ходит первым
+        final int[] moves; // GameData.packMove, признак "свой" - выстрел второго игрока
+        int moveCount;
+        long rejected; // Отказы сервера: не его ход или соперник еще расставляет корабли
+
+        Side(Client client) {
+            this.client = client;
+            this.seat = client.myTurn ? 0 : 1;
+            this.moves = new int[2 * client.rules.getWidth() * client.rules.getHeight()];
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        boolean nio = args.length <= 1 || !args[1].equalsIgnoreCase("blocking");
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 24630;
+        long seed = System.nanoTime();
+        System.out.println("seed = " + seed);
+
+        BattleshipServer server = nio
+                ? new BattleshipServer(port, BattleshipServer.TransportMode.NIO, 0)
+                : new BattleshipServer(port, BattleshipServer.TransportMode.BLOCKING, 0,
+                        BattleshipServer.ThreadMode.VIRTUAL);
+        server.setBotFillDelay(-1);
+        server.start();
+        try (ExecutorService players = Executors.newVirtualThreadPerTaskExecutor()) {
+            Random random = new Random(seed);
+            List<Side[]> matches = new ArrayList<>();
+            for (int i = 0; i < games; i++) {
+                Client[] clients = ReconnectCheck.startGame(port, random);
+                matches.add(new Side[] {new Side(clients[0]), new Side(clients[1])});
+            }
+
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<?>> results = new ArrayList<>();
+            for (Side[] match : matches) {
+                for (Side side : match) {
+                    results.add(players.submit(() -> {
+                        go.await();
+                        play(side);
+                        return null;
+                    }));
+                }
+            }
+            long start = System.nanoTime();
+            go.countDown();
+            for (Future<?> result : results) {
+                result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            long moves = 0;
+            long rejected = 0;
+            for (int i = 0; i < matches.size(); i++) {
+                Side[] match = matches.get(i);
+                verify(i + 1, match);
+                moves += match[0].moveCount;
+                rejected += match[0].rejected + match[1].rejected;
+                for (Side side : match) {
+                    side.client.close();
+                }
+            }
+            System.out.printf("Партий: %d, выстрелов: %d за %.2f с (%.0f в секунду), отказов вне очереди: %d%n",
+                    games, moves, elapsed / 1e9, moves / (elapsed / 1e9), rejected);
+            System.out.println("Ходы не потеряны и не переставлены");
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    // Стреляет по своему списку целей, пока партия не закончится
+    private static void play(Side side) throws IOException {
+        Client client = side.client;
+        int width = client.rules.getWidth();
+        boolean waiting = false; // Выстрел отправлен, ответа еще нет
+        int sentCell = -1;
+        while (true) {
+            // После последней цели остается дочитать SHIP_SUNK и GAME_OVER
+            if (!waiting && client.nextTarget < client.targets.length) {
+                sentCell = client.targets[client.nextTarget];
+                GameData shot = new GameData();
+                shot.setGameState(GameData.GameState.PLAYER_TURN);
+                shot.setX(sentCell % width);
+                shot.setY(sentCell / width);
+                client.send(shot);
+                waiting = true;
+            }
+
+            GameData data = client.read();
+            switch (data.getGameState()) {
+                case HIT:
+                case MISS: {
+                    boolean own = data.isPlayerTurn();
+                    int shooter = own ? side.seat : 1 - side.seat;
+                    side.moves[side.moveCount++] = GameData.packMove(data.getX(), data.getY(), shooter == 1,
+                            data.getGameState() == GameData.GameState.HIT, false);
+                    if (own) {
+                        if (data.getX() + data.getY() * width != sentCell) {
+                            throw new AssertionError("Ответ на выстрел не по той клетке: ("
+                                    + data.getX() + ", " + data.getY() + ")");
+                        }
+                        client.nextTarget++;
+                        waiting = false;
+                    }
+                    break;
+                }
+                case SHIP_SUNK:
+                    // Всегда сразу за попаданием, которым корабль потоплен
+                    side.moves[side.moveCount - 1] |= GameData.packMove(0, 0, false, false, true);
+                    break;
+                case ERROR:
+                    side.rejected++;
+                    waiting = false; // Тот же выстрел еще раз
+                    break;
+                case GAME_OVER:
+                    return;
+                default:
+                    throw new AssertionError("Пришло " + data.getGameState()
+                            + (data.getErrorMessage() != null ? " (" + data.getErrorMessage() + ")" : ""));
+            }
+        }
+    }
+
+    private static void verify(int game, Side[] match) {
+        Side first = match[0].seat == 0 ? match[0] : match[1];
+        Side second = first == match[0] ? match[1] : match[0];
+        int[] moves = Arrays.copyOf(first.moves, first.moveCount);
+        if (!Arrays.equals(moves, Arrays.copyOf(second.moves, second.moveCount))) {
+            throw new AssertionError("Партия " + game + ": игроки видели разные последовательности выстрелов");
+        }
+
+        Side[] seats = {first, second};
+        PackedBoard[] boards = {new PackedBoard(first.client.own), new PackedBoard(second.client.own)};
+        int[] nextTarget = new int[2];
+        int turn = 0;
+        for (int i = 0; i < moves.length; i++) {
+            int move = moves[i];
+            int shooter = GameData.isOwnShot(move) ? 1 : 0;
+            int x = GameData.moveX(move);
+            int y = GameData.moveY(move);
+            String where = "Партия " + game + ", выстрел " + (i + 1) + ": ";
+            if (shooter != turn) {
+                throw new AssertionError(where + "стрелял не тот, чей ход");
+            }
+            Side side = seats[shooter];
+            int width = side.client.rules.getWidth();
+            if (x + y * width != side.client.targets[nextTarget[shooter]++]) {
+                throw new AssertionError(where + "выстрел потерян или переставлен");
+            }
+            PackedBoard target = boards[1 - shooter];
+            boolean hit = target.get(x, y) == PackedBoard.SHIP;
+            if (hit != GameData.isHit(move)) {
+                throw new AssertionError(where + "неверный результат");
+            }
+            target.set(x, y, hit ? PackedBoard.HIT : PackedBoard.MISS);
+            boolean sunk = hit && JournalCrashCheck.isSunk(target, x, y);
+            if (sunk != GameData.isSunk(move)) {
+                throw new AssertionError(where + "неверное потопление");
+            }
+            if (!hit) turn = 1 - shooter;
+            boolean over = target.count(PackedBoard.SHIP) == 0;
+            if (over != (i == moves.length - 1)) {
+                throw new AssertionError(where + (over ? "партия не закончилась победой" : "партия закончилась раньше"));
+            }
+        }
+        if (nextTarget[0] != first.client.nextTarget || nextTarget[1] != second.client.nextTarget) {
+            throw new AssertionError("Партия " + game + ": принятых выстрелов не столько, сколько ответов");
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.battleship.tools;
+
+import com.battleship.server.BattleshipServer;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static com.battleship.tools.JournalCrashCheck.Client;
+
+// Проверка метрик сервера: несколько партий играются до конца, соединения остаются
+// открытыми, после чего метрики снимаются по HTTP и через JMX. Сообщения клиентов
+// проверка считает сама, поэтому счетчики должны совпасть точно:
+//   - принятые подключения и открытые соединения - по два на партию;
+//   - созданные партии - столько, сколько сыграно, незаконченных нет;
+//   - сообщения от клиентов - все отправленные; времен хода - все, кроме запросов игры;
+//   - HTTP и JMX показывают одно и то же.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.tools.MetricsCheck 20 nio
+// Аргументы: число партий, транспорт (nio или blocking), порт сервера.
+public class MetricsCheck {
+    private static final long SETTLE_MILLIS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        boolean nio = args.length <= 1 || !args[1].equalsIgnoreCase("blocking");
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 24640;
+        long seed = System.nanoTime();
+        System.out.println("seed = " + seed);
+
+        BattleshipServer server = nio
+                ? new BattleshipServer(port, BattleshipServer.TransportMode.NIO, 2)
+                : new BattleshipServer(port);
+        server.setBotFillDelay(-1);
+        server.setMetricsPort(0);
+        server.start();
+        Client[][] matches = new Client[games][];
+        try {
+            Random random = new Random(seed);
+            long sent = 0;
+            for (int i = 0; i < games; i++) {
+                matches[i] = ReconnectCheck.startGame(port, random);
+                sent += 4; // Запрос игры и расстановка от каждого
+                boolean over = false;
+                while (!over) {
+                    Client shooter = matches[i][0].myTurn ? matches[i][0] : matches[i][1];
+                    Client target = shooter == matches[i][0] ? matches[i][1] : matches[i][0];
+                    over = JournalCrashCheck.shoot(shooter, target);
+                    sent++;
+                }
+            }
+
+            // Время хода записывается после ответа игроку - ждем, пока запишутся все
+            long moves = sent - 2L * games;
+            Map<String, Double> scraped = scrape(server.getMetricsPort());
+            long deadline = System.currentTimeMillis() + SETTLE_MILLIS;
+            while (scraped.get("battleship_move_seconds_count") < moves && System.currentTimeMillis() < deadline) {
+                JournalCrashCheck.sleep(10);
+                scraped = scrape(server.getMetricsPort());
+            }
+
+            expect(scraped, "battleship_connections_opened_total", 2L * games);
+            expect(scraped, "battleship_connections_active", 2L * games);
+            expect(scraped, "battleship_matches_created_total", games);
+            expect(scraped, "battleship_sessions_active", 0);
+            expect(scraped, "battleship_players_waiting", 0);
+            expect(scraped, "battleship_messages_in_total", sent);
+            expect(scraped, "battleship_move_seconds_count", moves);
+            for (String name : new String[] {"battleship_bytes_in_total", "battleship_bytes_out_total",
+                    "battleship_messages_out_total", "battleship_decode_seconds_count",
+                    "battleship_encode_seconds_count"}) {
+                if (scraped.get(name) == null || scraped.get(name) <= 0) {
+                    throw new AssertionError(name + " = " + scraped.get(name));
+                }
+            }
+
+            MBeanServer beans = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.battleship:type=Server,port=" + port);
+            for (String attribute : new String[] {"battleship_matches_created_total",
+                    "battleship_messages_in_total", "battleship_move_seconds_count"}) {
+                Number value = (Number) beans.getAttribute(name, attribute);
+                if (value.doubleValue() != scraped.get(attribute)) {
+                    throw new AssertionError("JMX " + attribute + " = " + value + ", HTTP - " + scraped.get(attribute));
+                }
+            }
+
+            System.out.printf("Партий: %d, сообщений от клиентов: %d, клиентам: %.0f, байт %.0f/%.0f%n",
+                    games, sent, scraped.get("battleship_messages_out_total"),
+                    scraped.get("battleship_bytes_in_total"), scraped.get("battleship_bytes_out_total"));
+            System.out.printf("Ход p50 %.3f мс, p99 %.3f мс; кодирование p50 %.2f мкс, разбор p50 %.2f мкс%n",
+                    scraped.get("battleship_move_seconds{quantile=\"0.5\"}") * 1e3,
+                    scraped.get("battleship_move_seconds{quantile=\"0.99\"}") * 1e3,
+                    scraped.get("battleship_encode_seconds{quantile=\"0.5\"}") * 1e6,
+                    scraped.get("battleship_decode_seconds{quantile=\"0.5\"}") * 1e6);
+            System.out.println("Метрики HTTP и JMX совпали с тем, что отправили клиенты");
+        } finally {
+            for (Client[] match : matches) {
+                if (match == null) continue;
+                for (Client client : match) {
+                    client.close();
+                }
+            }
+            server.shutdown();
+        }
+    }
+
+    // Значения из текстового формата Prometheus по имени вместе с метками
+    private static Map<String, Double> scrape(int metricsPort) throws Exception {
+        HttpClient http = HttpClient.newHttpClient();
+        HttpResponse<String> response = http.send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + metricsPort + "/metrics")).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new AssertionError("GET /metrics: " + response.statusCode());
+        }
+        Map<String, Double> values = new HashMap<>();
+        for (String line : response.body().split("\n")) {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            int space = line.lastIndexOf(' ');
+            values.put(line.substring(0, space), Double.parseDouble(line.substring(space + 1)));
+        }
+        return values;
+    }
+
+    private static void expect(Map<String, Double> scraped, String name, long expected) {
+        Double value = scraped.get(name);
+        if (value == null || value != expected) {
+            throw new AssertionError(name + " = " + value + ", ожидалось " + expected);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.battleship.tools;
+
+import com.battleship.client.BattleshipClient;
+import com.battleship.server.GameData;
+import com.battleship.server.LatencyHistogram;
+import com.battleship.server.MessageFrames;
+import com.battleship.server.WireCodec;
+import com.battleship.server.WireCodecs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Сравнение задержки получения: BattleshipClient.receiveDataWithTimeout против прежнего
+// цикла available() + sleep(100). Заглушка сервера в этом же процессе отвечает на
+// приветствие и шлет кадры через случайные паузы; кадры приходят по порядку, поэтому
+// время отправки i-го кадра берется из общего массива.
+// Третья проверка - точность таймаута, когда сообщений нет.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.tools.ReceiveLatencyCheck 200
+public class ReceiveLatencyCheck {
+    private static final int MAX_PAUSE_MS = 30;
+    private static final long RECEIVE_TIMEOUT_MS = 1000;
+    private static final long IDLE_TIMEOUT_MS = 50;
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        try (ServerSocket stub = new ServerSocket(0)) {
+            int port = stub.getLocalPort();
+
+            LatencyHistogram client = new LatencyHistogram();
+            AtomicLongArray sentAt = new AtomicLongArray(messages);
+            Thread sender = startStub(stub, messages, sentAt);
+            BattleshipClient battleshipClient = new BattleshipClient("localhost", port, WireCodecs.BINARY);
+            if (!battleshipClient.connect()) {
+                throw new IOException("Заглушка не приняла подключение");
+            }
+            for (int i = 0; i < messages; i++) {
+                GameData data = battleshipClient.receiveDataWithTimeout(RECEIVE_TIMEOUT_MS);
+                if (data == null) throw new IOException("Сообщение " + i + " не получено");
+                client.record(System.nanoTime() - sentAt.get(i));
+            }
+
+            LatencyHistogram idle = new LatencyHistogram();
+            for (int i = 0; i < 20; i++) {
+                long start = System.nanoTime();
+                if (battleshipClient.receiveDataWithTimeout(IDLE_TIMEOUT_MS) != null) {
+                    throw new IOException("Неожиданное сообщение во время проверки таймаута");
+                }
+                idle.record(System.nanoTime() - start - TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MS));
+            }
+            battleshipClient.disconnect();
+            sender.join();
+
+            LatencyHistogram polling = new LatencyHistogram();
+            sender = startStub(stub, messages, sentAt);
+            receiveByPolling(port, messages, sentAt, polling);
+            sender.join();
+
+            System.out.println("receiveDataWithTimeout: " + client.summaryMillis());
+            System.out.println("available() + sleep(100): " + polling.summaryMillis());
+            System.out.println("Превышение таймаута " + IDLE_TIMEOUT_MS + " мс: " + idle.summaryMillis());
+        }
+    }
+
+    // Заглушка: согласует двоичный кодек и шлет кадры, запоминая время отправки
+    private static Thread startStub(ServerSocket stub, int messages, AtomicLongArray sentAt) {
+        return Thread.ofPlatform().name("stub-server").start(() -> {
+            try (Socket socket = stub.accept()) {
+                socket.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+                byte[] header = new byte[4];
+                in.readFully(header);
+                in.skipNBytes(header[3]);
+                WireCodec codec = WireCodecs.BINARY;
+                out.write(WireCodecs.reply(codec));
+                out.flush();
+
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < messages; i++) {
+                    TimeUnit.MILLISECONDS.sleep(random.nextInt(MAX_PAUSE_MS + 1));
+                    GameData data = new GameData();
+                    data.setGameState(GameData.GameState.OPPONENT_TURN);
+                    sentAt.set(i, System.nanoTime());
+                    MessageFrames.writeFrame(out, data, codec);
+                }
+                // Держим соединение, пока клиент проверяет таймаут и отключается
+                in.read();
+            } catch (IOException | InterruptedException e) {
+                System.err.println("Заглушка остановлена: " + e);
+            }
+        });
+    }
+
+    // Прежний BattleshipClient.receiveDataWithTimeout: опрос available() раз в 100 мс
+    private static void receiveByPolling(int port, int messages, AtomicLongArray sentAt, LatencyHistogram histogram)
+            throws IOException, InterruptedException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", port));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out.write(WireCodecs.hello(WireCodecs.BINARY));
+            out.flush();
+            in.readFully(new byte[WireCodecs.REPLY_SIZE]);
+
+            for (int i = 0; i < messages; i++) {
+                long endTime = System.currentTimeMillis() + RECEIVE_TIMEOUT_MS;
+                GameData data = null;
+                while (data == null && System.currentTimeMillis() < endTime) {
+                    if (in.available() > 0) {
+                        data = MessageFrames.readFrame(in, WireCodecs.BINARY);
+                    } else {
+                        TimeUnit.MILLISECONDS.sleep(100);
+                    }
+                }
+                if (data == null) throw new IOException("Сообщение " + i + " не получено");
+                histogram.record(System.nanoTime() - sentAt.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.battleship.tools;
+
+import com.battleship.common.PackedBoard;
+import com.battleship.common.Ruleset;
+import com.battleship.server.BattleshipServer;
+import com.battleship.server.GameData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.battleship.tools.JournalCrashCheck.Client;
+import static com.battleship.tools.JournalCrashCheck.expect;
+
+// Проверка возврата в партию после обрыва связи: сервер запускается в этом процессе,
+// два клиента играют, и время от времени один из них закрывает сокет. Оставшийся игрок
+// доигрывает свою серию выстрелов, затем ушедший подключается заново с RESUME и числом
+// увиденных выстрелов. Снимок сравнивается с тем, что клиент должен был увидеть, а
+// список пропущенных выстрелов - с выстрелами, сделанными без него. Если без него партия
+// закончилась, сервер должен отказать в возврате.
+//
+// Вторая часть проверяет сроки: место, за которым не вернулись, освобождается через
+// срок удержания (сопернику приходит OPPONENT_DISCONNECTED), а при превышении предела
+// удерживаемых партий раньше срока освобождается самая старая.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.tools.ReconnectCheck 20 15
+// Аргументы: число партий, наибольшее число выстрелов между обрывами, порт сервера.
+public class ReconnectCheck {
+    private static final long GRACE_MILLIS = 1000;
+
+    private final int port;
+    private final Random random;
+    private int drops;
+    private int missedMoves;
+
+    private ReconnectCheck(int port, long seed) {
+        this.port = port;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int maxShotsBetweenDrops = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 24590;
+        long seed = System.nanoTime();
+        System.out.println("seed = " + seed);
+
+        BattleshipServer server = new BattleshipServer(port);
+        server.setBotFillDelay(-1);
+        server.setReconnectGrace(GRACE_MILLIS);
+        server.start();
+        try {
+            ReconnectCheck check = new ReconnectCheck(port, seed);
+            for (int game = 1; game <= games; game++) {
+                check.playGame(game, maxShotsBetweenDrops);
+            }
+            System.out.println("Партий: " + games + ", обрывов: " + check.drops
+                    + ", пропущенных выстрелов: " + check.missedMoves + " - состояние совпало");
+
+            check.checkExpiry(server);
+            server.setMaxHeldSessions(1);
+            check.checkEviction(server);
+            System.out.println("Сроки удержания соблюдены");
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    // Два клиента начинают партию и расставляют корабли
+    static Client[] startGame(int port, Random random) throws IOException {
+        Client[] clients = {new Client(), new Client()};
+        for (Client client : clients) {
+            client.connect(port);
+            GameData waiting = new GameData();
+            waiting.setGameState(GameData.GameState.WAITING_FOR_OPPONENT);
+            client.send(waiting);
+        }
+        for (Client client : clients) {
+            GameData started = expect(client, GameData.GameState.GAME_STARTED);
+            client.sessionId = started.getSessionId();
+            client.token = started.getResumeToken();
+            client.rules = started.getRuleset() != null ? started.getRuleset() : Ruleset.STANDARD;
+            client.myTurn = started.isPlayerTurn();
+            client.own = LoadGenerator.randomFleet(client.rules);
+            client.opponent = client.rules.newBoard();
+            client.targets = JournalCrashCheck.shuffledCells(random, client.rules);
+            GameData placement = new GameData();
+            placement.setGameState(GameData.GameState.PLACING_SHIPS);
+            placement.setPlayerBoard(client.own);
+            client.send(placement);
+        }
+        if (clients[0].sessionId == 0 || clients[0].sessionId != clients[1].sessionId) {
+            throw new AssertionError("Клиенты не в одной партии: " + clients[0].sessionId + " и " + clients[1].sessionId);
+        }
+        return clients;
+    }
+
+    private void playGame(int game, int maxShotsBetweenDrops) throws Exception {
+        Client[] clients = startGame(port, random);
+        int shots = 0;
+        int untilDrop = 1 + random.nextInt(maxShotsBetweenDrops);
+        boolean over = false;
+        while (!over) {
+            Client shooter = clients[0].myTurn ? clients[0] : clients[1];
+            Client target = shooter == clients[0] ? clients[1] : clients[0];
+            int before = shooter.nextTarget;
+            over = JournalCrashCheck.shoot(shooter, target);
+            if (shooter.nextTarget == before) continue; // Соперник еще расставлял корабли
+            shots++;
+            if (!over && shots == untilDrop) {
+                List<Integer> missed = new ArrayList<>();
+                over = dropAndResume(clients, clients[random.nextInt(2)], shots, missed);
+                shots += missed.size();
+                untilDrop = shots + 1 + random.nextInt(maxShotsBetweenDrops);
+            }
+        }
+        for (Client client : clients) {
+            client.close();
+        }
+        System.out.println("Партия " + game + " (#" + clients[0].sessionId + "): " + shots + " выстрелов, "
+                + clients[0].playerScore + ":" + clients[0].opponentScore);
+    }
+
+    // Клиент gone закрывает сокет, соперник доигрывает свою серию (если сейчас его ход),
+    // после чего gone возвращается, видев seenMoves выстрелов. Выстрелы без него
+    // складываются в expected; true - без него партия закончилась.
+    private boolean dropAndResume(Client[] clients, Client gone, int seenMoves, List<Integer> expected)
+            throws Exception {
+        Client present = clients[0] == gone ? clients[1] : clients[0];
+        gone.close();
+        drops++;
+        expect(present, GameData.GameState.ERROR); // Соперник потерял связь
+
+        boolean over = false;
+        while (present.myTurn && !over) {
+            int before = present.nextTarget;
+            over = shootAtAbsent(present, gone, expected);
+            if (present.nextTarget == before) break; // Ушедший так и не расставил корабли
+        }
+
+        gone.connect(port);
+        GameData resume = new GameData();
+        resume.setGameState(GameData.GameState.RESUME);
+        resume.setSessionId(gone.sessionId);
+        resume.setResumeToken(gone.token);
+        resume.setMoveCount(seenMoves);
+        gone.send(resume);
+        if (over) {
+            expect(gone, GameData.GameState.ERROR); // Партия уже закончилась
+            return true;
+        }
+        GameData snapshot = expect(gone, GameData.GameState.RESUME);
+        JournalCrashCheck.verify(gone, snapshot);
+        int[] missed = snapshot.getMissedMoves();
+        missedMoves += missed.length;
+        if (missed.length != expected.size()) {
+            throw new AssertionError("Пропущено выстрелов " + missed.length + " вместо " + expected.size());
+        }
+        for (int i = 0; i < missed.length; i++) {
+            if (missed[i] != expected.get(i)) {
+                throw new AssertionError("Пропущенный выстрел " + i + " не совпал");
+            }
+        }
+        // Оставшийся узнает, чей ход, когда соперник вернулся
+        expect(present, present.myTurn ? GameData.GameState.PLAYER_TURN : GameData.GameState.OPPONENT_TURN);
+        return false;
+    }
+
+    // Выстрел по отсутствующему: результат видит только стрелявший, а то, что должен был
+    // увидеть ушедший, копится в его поле, счете и списке пропущенных выстрелов
+    private static boolean shootAtAbsent(Client shooter, Client target, List<Integer> expected) throws IOException {
+        int cell = shooter.targets[shooter.nextTarget];
+        int x = cell % shooter.rules.getWidth();
+        int y = cell / shooter.rules.getWidth();
+        GameData shot = new GameData();
+        shot.setGameState(GameData.GameState.PLAYER_TURN);
+        shot.setX(x);
+        shot.setY(y);
+        shooter.send(shot);
+
+        GameData result = shooter.read();
+        if (result.getGameState() == GameData.GameState.ERROR) {
+            return false;
+        }
+        shooter.nextTarget++;
+        boolean hit = result.getGameState() == GameData.GameState.HIT;
+        shooter.opponent.set(x, y, hit ? PackedBoard.HIT : PackedBoard.MISS);
+        shooter.myTurn = hit;
+        target.own.set(x, y, hit ? PackedBoard.HIT : PackedBoard.MISS);
+        target.myTurn = !hit;
+
+        boolean sunk = hit && JournalCrashCheck.isSunk(target.own, x, y);
+        boolean over = sunk && target.own.count(PackedBoard.SHIP) == 0;
+        GameData last = result;
+        if (sunk) last = expect(shooter, GameData.GameState.SHIP_SUNK);
+        if (over) last = expect(shooter, GameData.GameState.GAME_OVER);
+        shooter.playerScore = last.getPlayerScore();
+        shooter.opponentScore = last.getOpponentScore();
+        target.playerScore = last.getOpponentScore();
+        target.opponentScore = last.getPlayerScore();
+        expected.add(GameData.packMove(x, y, false, hit, sunk));
+        return over;
+    }
+
+    // Ушедший не вернулся: через срок удержания партия закрывается
+    private void checkExpiry(BattleshipServer server) throws Exception {
+        Client[] clients = startGame(port, random);
+        clients[0].close();
+        expect(clients[1], GameData.GameState.ERROR);
+        if (server.getHeldSessions() != 1) {
+            throw new AssertionError("Удерживаемых партий " + server.getHeldSessions() + " вместо 1");
+        }
+        long start = System.currentTimeMillis();
+        expect(clients[1], GameData.GameState.OPPONENT_DISCONNECTED);
+        long waited = System.currentTimeMillis() - start;
+        if (waited < GRACE_MILLIS / 2) {
+            throw new AssertionError("Место освобождено через " + waited + " мс, раньше срока");
+        }
+        clients[1].close();
+        awaitHeld(server, 0);
+    }
+
+    // Предел удерживаемых партий 1: вторая удерживаемая партия вытесняет первую
+    private void checkEviction(BattleshipServer server) throws Exception {
+        Client[] first = startGame(port, random);
+        Client[] second = startGame(port, random);
+        first[0].close();
+        expect(first[1], GameData.GameState.ERROR);
+        second[0].close();
+        expect(second[1], GameData.GameState.ERROR);
+        long start = System.currentTimeMillis();
+        expect(first[1], GameData.GameState.OPPONENT_DISCONNECTED);
+        if (System.currentTimeMillis() - start >= GRACE_MILLIS / 2) {
+            throw new AssertionError("Старая партия не вытеснена раньше срока");
+        }
+        awaitHeld(server, 1);
+        expect(second[1], GameData.GameState.OPPONENT_DISCONNECTED);
+        first[1].close();
+        second[1].close();
+        awaitHeld(server, 0);
+    }
+
+    private static void awaitHeld(BattleshipServer server, int expected) {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.getHeldSessions() != expected) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Удерживаемых партий " + server.getHeldSessions() + " вместо " + expected);
+            }
+            JournalCrashCheck.sleep(10);
+        }
+    }
+}
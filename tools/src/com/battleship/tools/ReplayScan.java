@@ -0,0 +1,153 @@
+package com.battleship.tools;
+
+import com.battleship.common.Bitboard;
+import com.battleship.common.FleetGenerator;
+import com.battleship.common.MoveResult;
+import com.battleship.common.Ruleset;
+import com.battleship.common.ShotPlanner;
+import com.battleship.server.GameData;
+import com.battleship.server.Replay;
+import com.battleship.server.ReplayReader;
+import com.battleship.server.ReplayWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Пакетный проход по файлам повторов: число партий, средний размер записи и число
+// выстрелов, доля побед первого хода и скорость чтения (партий/с в один поток).
+// Проход повторяется несколько раз, в итог идет лучший - первый разогревает JIT и кеш страниц.
+//
+// С аргументом generate сначала записывает в каталог партии бот против бота (ShotPlanner
+// с обеих сторон) через ReplayWriter и сверяет прочитанное с записанным: число партий,
+// выстрелов и побед каждой стороны.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.tools.ReplayScan replays
+//   java -cp <classpath> com.battleship.tools.ReplayScan /tmp/replays generate 1000000
+public class ReplayScan {
+    private static final int PASSES = 5;
+
+    private long games;
+    private long shots;
+    private long firstWins;
+    private long secondWins;
+    private long bytes;
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "replays");
+        ReplayScan expected = null;
+        if (args.length > 2 && args[1].equals("generate")) {
+            expected = generate(directory, Integer.parseInt(args[2]), args.length > 3 ? Long.parseLong(args[3]) : 42);
+        }
+
+        List<Path> segments = ReplayReader.listSegments(directory);
+        if (segments.isEmpty()) {
+            System.err.println("В каталоге " + directory + " нет файлов повторов");
+            return;
+        }
+        ReplayScan result = null;
+        double bestSeconds = Double.MAX_VALUE;
+        for (int pass = 0; pass < PASSES; pass++) {
+            ReplayScan scan = new ReplayScan();
+            long start = System.nanoTime();
+            scan.scan(segments);
+            bestSeconds = Math.min(bestSeconds, (System.nanoTime() - start) / 1e9);
+            result = scan;
+        }
+
+        System.out.printf("Сегментов: %d, партий: %d, выстрелов: %d%n", segments.size(), result.games, result.shots);
+        if (result.games > 0) {
+            System.out.printf("Запись: %.1f байт на партию (%.2f байт на выстрел), выстрелов в партии: %.1f%n",
+                    (double) result.bytes / result.games, (double) result.bytes / Math.max(1, result.shots),
+                    (double) result.shots / result.games);
+            System.out.printf("Побед первого хода: %.2f%%, второго: %.2f%%, прервано: %d%n",
+                    result.firstWins * 100.0 / result.games, result.secondWins * 100.0 / result.games,
+                    result.games - result.firstWins - result.secondWins);
+            System.out.printf("Чтение: %.3f с, %.2f млн партий/с, %.0f млн выстрелов/с%n",
+                    bestSeconds, result.games / bestSeconds / 1e6, result.shots / bestSeconds / 1e6);
+        }
+        if (expected != null) {
+            if (expected.games != result.games || expected.shots != result.shots
+                    || expected.firstWins != result.firstWins || expected.secondWins != result.secondWins) {
+                throw new AssertionError("Прочитано не то, что записано: партий " + result.games + " из " + expected.games
+                        + ", выстрелов " + result.shots + " из " + expected.shots
+                        + ", побед " + result.firstWins + "/" + result.secondWins
+                        + " вместо " + expected.firstWins + "/" + expected.secondWins);
+            }
+            System.out.println("Прочитанное совпало с записанным");
+        }
+    }
+
+    private void scan(List<Path> segments) throws IOException {
+        Replay replay = new Replay();
+        for (Path file : segments) {
+            try (ReplayReader reader = ReplayReader.open(file)) {
+                while (reader.next(replay)) {
+                    games++;
+                    shots += replay.getMoveCount();
+                    if (replay.getWinner() == 0) firstWins++;
+                    if (replay.getWinner() == 1) secondWins++;
+                }
+                bytes += reader.getBytesRead();
+            }
+        }
+    }
+
+    // Партии бот против бота; возвращает то, что должен показать проход по каталогу
+    private static ReplayScan generate(Path directory, int count, long seed) throws IOException {
+        if (!ReplayReader.listSegments(directory).isEmpty()) {
+            throw new IOException("В каталоге " + directory + " уже есть повторы - нужен пустой каталог");
+        }
+        Files.createDirectories(directory);
+        Ruleset rules = Ruleset.STANDARD;
+        int size = rules.getWidth();
+        SplittableRandom random = new SplittableRandom(seed);
+        FleetGenerator generator = new FleetGenerator(size, size, rules.getFleet(), random);
+        ShotPlanner[] planners = {new ShotPlanner(size, size, rules.getFleet(), random),
+                new ShotPlanner(size, size, rules.getFleet(), random)};
+        SelfPlaySimulator.TargetFleet[] targets = {new SelfPlaySimulator.TargetFleet(size, size),
+                new SelfPlaySimulator.TargetFleet(size, size)};
+        Bitboard[] fleets = {new Bitboard(size, size), new Bitboard(size, size)};
+        boolean[] bots = {true, true};
+        int[] moves = new int[2 * size * size];
+
+        ReplayScan expected = new ReplayScan();
+        long start = System.nanoTime();
+        try (ReplayWriter writer = ReplayWriter.open(directory)) {
+            for (int game = 0; game < count; game++) {
+                for (int seat = 0; seat < 2; seat++) {
+                    generator.next(fleets[seat]);
+                    targets[seat].reset(fleets[seat]);
+                    planners[seat].reset();
+                }
+                int moveCount = 0;
+                int shooter = 0;
+                while (true) {
+                    int cell = planners[shooter].nextShot();
+                    int x = cell % size;
+                    int y = cell / size;
+                    MoveResult.ResultType result = targets[1 - shooter].fire(cell);
+                    planners[shooter].record(x, y, result);
+                    moves[moveCount++] = GameData.packMove(x, y, shooter == 1, result != MoveResult.ResultType.MISS,
+                            result == MoveResult.ResultType.SUNK || result == MoveResult.ResultType.WIN);
+                    if (result == MoveResult.ResultType.WIN) {
+                        if (shooter == 0) expected.firstWins++;
+                        else expected.secondWins++;
+                        break;
+                    }
+                    if (result == MoveResult.ResultType.MISS) shooter = 1 - shooter;
+                }
+                writer.append(game + 1, rules, fleets, bots, moves, moveCount);
+                expected.games++;
+                expected.shots += moveCount;
+            }
+        }
+        System.out.printf("Записано партий: %d за %.2f с (вместе с симуляцией)%n",
+                count, (System.nanoTime() - start) / 1e9);
+        return expected;
+    }
+}
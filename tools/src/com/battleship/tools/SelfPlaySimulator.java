@@ -0,0 +1,395 @@
+package com.battleship.tools;
+
+import com.battleship.common.Bitboard;
+import com.battleship.common.FleetGenerator;
+import com.battleship.common.FleetRules;
+import com.battleship.common.MoveResult;
+import com.battleship.common.ShotPlanner;
+import com.battleship.common.ShotStrategy;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+// Параллельная симуляция партий бот против бота для настройки стратегий.
+// Диапазон партий делится пополам в ForkJoinPool до блоков по LEAF_GAMES; каждый блок
+// один раз создает стратегии и поля и переиспользует их, так что ход не выделяет память.
+// Генератор случайных чисел делится вместе с диапазоном (SplittableRandom.split), поэтому
+// при том же зерне результат не зависит от числа потоков и порядка их работы.
+// Стратегии по очереди ходят первыми.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.tools.SelfPlaySimulator density huntTarget 1000000 42
+// Стратегии: density (ShotPlanner), huntTarget, random. Пятый аргумент - число потоков.
+public class SelfPlaySimulator {
+    private static final int GRID_SIZE = FleetRules.STANDARD_GRID_SIZE;
+    private static final int[] FLEET = FleetRules.STANDARD_FLEET;
+    private static final int LEAF_GAMES = 512;
+    private static final double Z_95 = 1.96;
+
+    public static void main(String[] args) {
+        String nameA = args.length > 0 ? args[0] : "density";
+        String nameB = args.length > 1 ? args[1] : "huntTarget";
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        int parallelism = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        Function<SplittableRandom, ShotStrategy> strategyA = strategy(nameA);
+        Function<SplittableRandom, ShotStrategy> strategyB = strategy(nameB);
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        long start = System.nanoTime();
+        Stats stats = pool.invoke(new Simulation(strategyA, strategyB, 0, games, new SplittableRandom(seed)));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        System.out.printf("%s против %s, партий: %d, зерно: %d, потоков: %d%n",
+                nameA, nameB, games, seed, parallelism);
+        printSide(nameA, stats.winsA, stats.shotsA, stats.shotsSquaredA, games);
+        printSide(nameB, stats.winsB, stats.shotsB, stats.shotsSquaredB, games);
+        System.out.printf("Время: %.2f с, %.0f партий/с, %.0f партий/с на ядро, %.1f млн выстрелов/с%n",
+                seconds, games / seconds, games / seconds / parallelism, stats.totalShots / seconds / 1e6);
+    }
+
+    private static Function<SplittableRandom, ShotStrategy> strategy(String name) {
+        switch (name) {
+            case "density":
+                return random -> new ShotPlanner(GRID_SIZE, GRID_SIZE, FLEET, random);
+            case "huntTarget":
+                return random -> new HuntTargetStrategy(GRID_SIZE, GRID_SIZE, random);
+            case "random":
+                return random -> new RandomStrategy(GRID_SIZE, GRID_SIZE, random);
+            default:
+                throw new IllegalArgumentException("Неизвестная стратегия: " + name);
+        }
+    }
+
+    // Доля побед с интервалом Уилсона и среднее число выстрелов до победы с интервалом 95%
+    private static void printSide(String name, long wins, long shots, long shotsSquared, int games) {
+        double p = (double) wins / games;
+        double z2 = Z_95 * Z_95;
+        double center = (p + z2 / (2.0 * games)) / (1 + z2 / games);
+        double margin = Z_95 * Math.sqrt(p * (1 - p) / games + z2 / (4.0 * games * games)) / (1 + z2 / games);
+
+        double mean = wins > 0 ? (double) shots / wins : 0;
+        double variance = wins > 1 ? (shotsSquared - wins * mean * mean) / (wins - 1) : 0;
+        double meanMargin = wins > 0 ? Z_95 * Math.sqrt(variance / wins) : 0;
+
+        System.out.printf("  %-12s побед %6.2f%% [%.2f%%; %.2f%%], выстрелов до победы %.2f ± %.2f%n",
+                name, p * 100, (center - margin) * 100, (center + margin) * 100, mean, meanMargin);
+    }
+
+    private static final class Stats {
+        long winsA;
+        long winsB;
+        long shotsA;
+        long shotsB;
+        long shotsSquaredA;
+        long shotsSquaredB;
+        long totalShots;
+
+        void add(Stats other) {
+            winsA += other.winsA;
+            winsB += other.winsB;
+            shotsA += other.shotsA;
+            shotsB += other.shotsB;
+            shotsSquaredA += other.shotsSquaredA;
+            shotsSquaredB += other.shotsSquaredB;
+            totalShots += other.totalShots;
+        }
+    }
+
+    // RecursiveTask сериализуем только формально: задачи не покидают пул
+    private static final class Simulation extends RecursiveTask<Stats> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Function<SplittableRandom, ShotStrategy> strategyA;
+        private final transient Function<SplittableRandom, ShotStrategy> strategyB;
+        private final int from;
+        private final int to;
+        private final transient SplittableRandom random;
+
+        Simulation(Function<SplittableRandom, ShotStrategy> strategyA,
+                   Function<SplittableRandom, ShotStrategy> strategyB,
+                   int from, int to, SplittableRandom random) {
+            this.strategyA = strategyA;
+            this.strategyB = strategyB;
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from <= LEAF_GAMES) {
+                return playRange();
+            }
+            int middle = (from + to) >>> 1;
+            Simulation left = new Simulation(strategyA, strategyB, from, middle, random.split());
+            Simulation right = new Simulation(strategyA, strategyB, middle, to, random);
+            left.fork();
+            Stats stats = right.compute();
+            stats.add(left.join());
+            return stats;
+        }
+
+        private Stats playRange() {
+            Stats stats = new Stats();
+            ShotStrategy a = strategyA.apply(random);
+            ShotStrategy b = strategyB.apply(random);
+            TargetFleet fleetOfA = new TargetFleet(GRID_SIZE, GRID_SIZE);
+            TargetFleet fleetOfB = new TargetFleet(GRID_SIZE, GRID_SIZE);
+            FleetGenerator fleets = new FleetGenerator(GRID_SIZE, GRID_SIZE, FLEET, random,
+                    FleetGenerator.INDEPENDENT_MIXING_STEPS);
+            Bitboard fleet = new Bitboard(GRID_SIZE, GRID_SIZE);
+            int[] shots = new int[2];
+
+            for (int game = from; game < to; game++) {
+                a.reset();
+                b.reset();
+                fleets.next(fleet);
+                fleetOfA.reset(fleet);
+                fleets.next(fleet);
+                fleetOfB.reset(fleet);
+
+                boolean aFirst = (game & 1) == 0;
+                int winner = aFirst
+                        ? play(a, fleetOfB, b, fleetOfA, shots)
+                        : 1 - play(b, fleetOfA, a, fleetOfB, shots);
+                int shotsA = aFirst ? shots[0] : shots[1];
+                int shotsB = aFirst ? shots[1] : shots[0];
+                stats.totalShots += shotsA + shotsB;
+                if (winner == 0) {
+                    stats.winsA++;
+                    stats.shotsA += shotsA;
+                    stats.shotsSquaredA += (long) shotsA * shotsA;
+                } else {
+                    stats.winsB++;
+                    stats.shotsB += shotsB;
+                    stats.shotsSquaredB += (long) shotsB * shotsB;
+                }
+            }
+            return stats;
+        }
+
+        // Одна партия, первым стреляет first. Возвращает 0, если победил first
+        private static int play(ShotStrategy first, TargetFleet firstTarget,
+                                ShotStrategy second, TargetFleet secondTarget, int[] shots) {
+            shots[0] = 0;
+            shots[1] = 0;
+            int shooter = 0;
+            while (true) {
+                ShotStrategy strategy = shooter == 0 ? first : second;
+                TargetFleet target = shooter == 0 ? firstTarget : secondTarget;
+                int cell = strategy.nextShot();
+                if (cell < 0) {
+                    throw new IllegalStateException("Стратегия не нашла клетку для выстрела");
+                }
+                shots[shooter]++;
+                int x = cell % GRID_SIZE;
+                int y = cell / GRID_SIZE;
+                MoveResult.ResultType result = target.fire(cell);
+                if (result == MoveResult.ResultType.ALREADY_HIT) {
+                    throw new IllegalStateException("Стратегия повторно выстрелила в клетку " + x + "," + y);
+                }
+                strategy.record(x, y, result);
+                if (result == MoveResult.ResultType.WIN) {
+                    return shooter;
+                }
+                if (result == MoveResult.ResultType.MISS) {
+                    shooter = 1 - shooter;
+                }
+            }
+        }
+    }
+
+    // Флот под обстрелом: номер корабля в каждой клетке и счетчики оставшихся палуб,
+    // как FleetState на сервере. reset переиспользует массивы между партиями.
+    static final class TargetFleet {
+        private final byte[] shipByCell;
+        private final boolean[] shot;
+        private final int[] remainingCells;
+        private int shipsLeft;
+
+        TargetFleet(int width, int height) {
+            shipByCell = new byte[width * height];
+            shot = new boolean[width * height];
+            remainingCells = new int[FLEET.length + 1];
+        }
+
+        void reset(Bitboard occupied) {
+            Arrays.fill(shipByCell, (byte) 0);
+            Arrays.fill(shot, false);
+            List<Bitboard> ships = FleetRules.splitShips(occupied, FLEET);
+            for (int i = 0; i < ships.size(); i++) {
+                Bitboard ship = ships.get(i);
+                for (int cell = ship.nextSetBit(0); cell >= 0; cell = ship.nextSetBit(cell + 1)) {
+                    shipByCell[cell] = (byte) (i + 1);
+                }
+                remainingCells[i + 1] = ship.cardinality();
+            }
+            shipsLeft = ships.size();
+        }
+
+        MoveResult.ResultType fire(int cell) {
+            if (shot[cell]) return MoveResult.ResultType.ALREADY_HIT;
+            shot[cell] = true;
+            int ship = shipByCell[cell];
+            if (ship == 0) return MoveResult.ResultType.MISS;
+            if (--remainingCells[ship] > 0) return MoveResult.ResultType.HIT;
+            return --shipsLeft == 0 ? MoveResult.ResultType.WIN : MoveResult.ResultType.SUNK;
+        }
+    }
+
+    // Базовая стратегия: случайный поиск по шахматной раскраске, после попадания
+    // обстрел соседних клеток. Окрестность потопленного корабля пропускается.
+    static final class HuntTargetStrategy implements ShotStrategy {
+        private final int width;
+        private final int height;
+        private final SplittableRandom random;
+        private final Bitboard known; // Обстрелянные и заведомо пустые клетки
+        private final Bitboard hits; // Попадания в еще не потопленные корабли
+        private final int[] targets; // Стек клеток для добивания
+        private int targetCount;
+        private int sunkShips;
+
+        HuntTargetStrategy(int width, int height, SplittableRandom random) {
+            this.width = width;
+            this.height = height;
+            this.random = random;
+            this.known = new Bitboard(width, height);
+            this.hits = new Bitboard(width, height);
+            this.targets = new int[width * height * 4];
+        }
+
+        @Override
+        public int nextShot() {
+            while (targetCount > 0) {
+                int cell = targets[--targetCount];
+                if (!known.get(cell)) return cell;
+            }
+            int cell = randomUnknown(true);
+            return cell >= 0 ? cell : randomUnknown(false);
+        }
+
+        // Случайная неизвестная клетка, при parity - только одного цвета шахматной раскраски
+        private int randomUnknown(boolean parity) {
+            int chosen = -1;
+            int seen = 0;
+            for (int cell = 0; cell < width * height; cell++) {
+                if (known.get(cell)) continue;
+                if (parity && ((cell % width + cell / width) & 1) != 0) continue;
+                if (random.nextInt(++seen) == 0) chosen = cell;
+            }
+            return chosen;
+        }
+
+        @Override
+        public void record(int x, int y, MoveResult.ResultType result) {
+            known.set(x, y);
+            if (result == MoveResult.ResultType.MISS) return;
+
+            hits.set(x, y);
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    if ((dx == 0 && dy == 0) || !known.inBounds(x + dx, y + dy)) continue;
+                    int neighbour = known.index(x + dx, y + dy);
+                    if (dx != 0 && dy != 0) {
+                        known.set(neighbour); // По диагонали от палубы кораблей нет
+                    } else if (result == MoveResult.ResultType.HIT) {
+                        targets[targetCount++] = neighbour;
+                    }
+                }
+            }
+
+            if (result == MoveResult.ResultType.SUNK || result == MoveResult.ResultType.WIN) {
+                sink(x, y);
+                sunkShips++;
+                targetCount = 0;
+            }
+        }
+
+        private void sink(int x, int y) {
+            boolean horizontal = isHit(x - 1, y) || isHit(x + 1, y);
+            int dx = horizontal ? 1 : 0;
+            int dy = horizontal ? 0 : 1;
+            while (isHit(x - dx, y - dy)) {
+                x -= dx;
+                y -= dy;
+            }
+            for (; isHit(x, y); x += dx, y += dy) {
+                hits.clear(hits.index(x, y));
+                for (int ny = y - 1; ny <= y + 1; ny++) {
+                    for (int nx = x - 1; nx <= x + 1; nx++) {
+                        if (known.inBounds(nx, ny)) known.set(nx, ny);
+                    }
+                }
+            }
+        }
+
+        private boolean isHit(int x, int y) {
+            return hits.inBounds(x, y) && hits.get(x, y);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return sunkShips == FLEET.length;
+        }
+
+        @Override
+        public void reset() {
+            known.clearAll();
+            hits.clearAll();
+            targetCount = 0;
+            sunkShips = 0;
+        }
+    }
+
+    // Нижняя граница: случайные выстрелы по необстрелянным клеткам
+    static final class RandomStrategy implements ShotStrategy {
+        private final int width;
+        private final int cells;
+        private final SplittableRandom random;
+        private final boolean[] shot;
+        private int sunkShips;
+
+        RandomStrategy(int width, int height, SplittableRandom random) {
+            this.width = width;
+            this.cells = width * height;
+            this.random = random;
+            this.shot = new boolean[cells];
+        }
+
+        @Override
+        public int nextShot() {
+            int chosen = -1;
+            int seen = 0;
+            for (int cell = 0; cell < cells; cell++) {
+                if (!shot[cell] && random.nextInt(++seen) == 0) chosen = cell;
+            }
+            return chosen;
+        }
+
+        @Override
+        public void record(int x, int y, MoveResult.ResultType result) {
+            shot[y * width + x] = true;
+            if (result == MoveResult.ResultType.SUNK || result == MoveResult.ResultType.WIN) {
+                sunkShips++;
+            }
+        }
+
+        @Override
+        public boolean isFinished() {
+            return sunkShips == FLEET.length;
+        }
+
+        @Override
+        public void reset() {
+            Arrays.fill(shot, false);
+            sunkShips = 0;
+        }
+    }
+}
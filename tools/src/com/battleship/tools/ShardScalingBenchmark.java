@@ -0,0 +1,130 @@
+package com.battleship.tools;
+
+import com.battleship.server.BattleshipServer;
+import com.battleship.server.SessionRouter;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Масштабирование по шардам: для 1..N шардов поднимает N отдельных процессов
+// BattleshipServer на localhost, маршрутизатор SessionRouter перед ними в этом процессе
+// и прогоняет LoadGenerator через маршрутизатор. В конце печатает таблицу пар/с и
+// партий/с по числу шардов и ускорение относительно одного шарда.
+//
+// Каждый шард - отдельная JVM, поэтому смысл имеет только запуск на машине, где ядер
+// хватает на все шарды, маршрутизатор и клиентов; иначе процессы делят одни и те же ядра.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.tools.ShardScalingBenchmark 4 400 20
+// Аргументы: максимум шардов, число клиентов, длительность ступени в секундах,
+// режим шардов (nio | platform | virtual) и первый порт шардов.
+public class ShardScalingBenchmark {
+    private static final int ROUTER_PORT = 24570;
+    private static final long START_TIMEOUT_MS = 30000;
+
+    public static void main(String[] args) throws Exception {
+        int maxShards = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        String mode = args.length > 3 ? args[3].toLowerCase() : "nio";
+        int basePort = args.length > 4 ? Integer.parseInt(args[4]) : 24600;
+
+        List<double[]> results = new ArrayList<>();
+        for (int shards = 1; shards <= maxShards; shards++) {
+            System.out.println();
+            System.out.println("=== Шардов: " + shards + " ===");
+            results.add(runStep(shards, clients, seconds, mode, basePort));
+        }
+
+        System.out.println();
+        System.out.printf("%7s %10s %10s %9s %11s %8s%n", "shards", "match/s", "games/s", "speedup", "efficiency", "errors");
+        double base = results.get(0)[1];
+        for (int i = 0; i < results.size(); i++) {
+            double[] row = results.get(i);
+            double speedup = base > 0 ? row[1] / base : 0;
+            System.out.printf("%7d %10.1f %10.1f %8.2fx %10.0f%% %8d%n",
+                    i + 1, row[0], row[1], speedup, speedup * 100 / (i + 1), (long) row[2]);
+        }
+    }
+
+    // Пары/с, партии/с и ошибки одной ступени
+    private static double[] runStep(int shards, int clients, int seconds, String mode, int basePort)
+            throws Exception {
+        List<Process> processes = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        SessionRouter router = null;
+        try {
+            StringBuilder shardList = new StringBuilder();
+            for (int i = 0; i < shards; i++) {
+                int port = basePort + i;
+                addresses.add(new InetSocketAddress("localhost", port));
+                shardList.append(i > 0 ? "," : "").append("localhost:").append(port);
+            }
+            for (int i = 0; i < shards; i++) {
+                processes.add(startShard(basePort + i, mode, shardList.toString()));
+            }
+            for (InetSocketAddress address : addresses) {
+                awaitListening(address);
+            }
+
+            router = new SessionRouter(ROUTER_PORT, addresses, 2000);
+            router.start();
+
+            LoadGenerator generator = new LoadGenerator("localhost", ROUTER_PORT, 0);
+            long start = System.nanoTime();
+            generator.run(clients, seconds, 0);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.println("Пар по шардам: " + router.getPairsPerShard());
+            return new double[] {generator.getMatches() / elapsed, generator.getGames() / elapsed, generator.getErrors()};
+        } finally {
+            if (router != null) router.shutdown();
+            for (Process process : processes) {
+                process.destroy(); // SIGTERM: шард завершается через свой shutdown hook
+            }
+            for (Process process : processes) {
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly().waitFor();
+                }
+            }
+        }
+    }
+
+    private static Process startShard(int port, String mode, String shardList) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(BattleshipServer.class.getName());
+        command.add(Integer.toString(port));
+        command.add(mode.equals("nio") ? "nio" : "blocking");
+        command.add(mode.equals("virtual") ? "virtual" : "platform");
+        command.add("nobots"); // Боты сместили бы подсчет пар
+        command.add("shards=" + shardList);
+        command.add("shard=localhost:" + port);
+        return new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD) // Сервер пишет строку на каждого клиента
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+
+    private static void awaitListening(InetSocketAddress address) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MS;
+        while (true) {
+            try (Socket probe = new Socket()) {
+                probe.connect(address, 1000);
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("Шард " + address + " не запустился за " + START_TIMEOUT_MS + " мс", e);
+                }
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+        }
+    }
+}
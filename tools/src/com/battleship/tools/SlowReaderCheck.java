@@ -0,0 +1,176 @@
+package com.battleship.tools;
+
+import com.battleship.common.PackedBoard;
+import com.battleship.server.BattleshipServer;
+import com.battleship.server.GameData;
+import com.battleship.server.LatencyHistogram;
+import com.battleship.server.OutboundStats;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.battleship.tools.JournalCrashCheck.Client;
+import static com.battleship.tools.JournalCrashCheck.expect;
+
+// Проверка очередей отправки: один из игроков партии перестает читать сокет и засыпает
+// сервер ходами за пределы поля, на каждый из которых сервер отвечает ошибкой. Ответы
+// копятся сначала в буферах сокета, затем в очереди отправки его соединения. Второй
+// игрок тем временем стреляет и должен получать ответы без задержки: поток партии не
+// ждет чужой сокет. Когда очередь медленного игрока переполняется, сервер закрывает его
+// соединение и держит место; игрок возвращается по RESUME, и снимок должен совпасть с
+// тем, что он пропустил.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.tools.SlowReaderCheck nio
+// Аргументы: транспорт (nio или blocking), предел очереди в кадрах, порт сервера.
+public class SlowReaderCheck {
+    private static final long MAX_REPLY_NANOS = 2_000_000_000L;
+    private static final long TIMEOUT_MILLIS = 60_000;
+
+    public static void main(String[] args) throws Exception {
+        boolean nio = args.length == 0 || !args[0].equalsIgnoreCase("blocking");
+        int maxFrames = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 24610;
+        long seed = System.nanoTime();
+        System.out.println("seed = " + seed);
+
+        BattleshipServer server = nio
+                ? new BattleshipServer(port, BattleshipServer.TransportMode.NIO, 2)
+                : new BattleshipServer(port);
+        server.setBotFillDelay(-1);
+        server.setReconnectGrace(TIMEOUT_MILLIS);
+        server.setOutboundLimits(maxFrames, OutboundStats.DEFAULT_MAX_BYTES);
+        server.start();
+        try {
+            Client[] clients = ReconnectCheck.startGame(port, new Random(seed));
+            Client player = clients[0].myTurn ? clients[0] : clients[1];
+            Client slow = player == clients[0] ? clients[1] : clients[0];
+
+            AtomicLong flooded = new AtomicLong();
+            Thread flooder = new Thread(() -> flood(slow, flooded), "flooder");
+            flooder.setDaemon(true);
+            flooder.start();
+
+            LatencyHistogram replies = new LatencyHistogram();
+            int shots = probe(player, slow, replies);
+            System.out.println("Ходов медленного игрока до отключения: " + flooded.get()
+                    + ", выстрелов соперника: " + shots);
+            System.out.println("Ответы сопернику: " + replies.summaryMillis());
+            if (replies.getMax() > MAX_REPLY_NANOS) {
+                throw new AssertionError("Соперник медленного игрока ждал ответа " + replies.getMax() / 1_000_000 + " мс");
+            }
+            if (server.getOutboundStats().getOverflows() == 0) {
+                throw new AssertionError("Медленный игрок отключен не за переполнение очереди");
+            }
+
+            slow.close();
+            flooder.join(TIMEOUT_MILLIS);
+            resume(slow, player, shots, port);
+            System.out.println("Отправка: " + server.getOutboundStats().summary());
+            System.out.println("Медленный игрок отключен и вернулся - состояние совпало");
+            player.close();
+            slow.close();
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    // Ходы за пределы поля без чтения ответов, пока сервер не закроет соединение
+    private static void flood(Client slow, AtomicLong flooded) {
+        GameData shot = new GameData();
+        shot.setGameState(GameData.GameState.PLAYER_TURN);
+        shot.setX(slow.rules.getWidth());
+        shot.setY(0);
+        try {
+            while (true) {
+                slow.send(shot);
+                flooded.incrementAndGet();
+            }
+        } catch (IOException e) {
+            // Сервер закрыл соединение или проверка закрыла сокет сама
+        }
+    }
+
+    // Соперник стреляет, пока не узнает, что медленный игрок потерял связь; вне своей
+    // очереди стреляет все равно и получает ошибку. Возвращает число выстрелов по полю.
+    private static int probe(Client player, Client slow, LatencyHistogram replies) throws IOException {
+        int shots = 0;
+        boolean lost = false;
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!lost) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Медленный игрок не отключен за " + TIMEOUT_MILLIS + " мс");
+            }
+            int cell = player.targets[player.nextTarget];
+            int x = cell % player.rules.getWidth();
+            int y = cell / player.rules.getWidth();
+            GameData shot = new GameData();
+            shot.setGameState(GameData.GameState.PLAYER_TURN);
+            shot.setX(x);
+            shot.setY(y);
+            long sent = System.nanoTime();
+            player.send(shot);
+
+            GameData reply = player.read();
+            while (isLostNotice(reply)) {
+                lost = true;
+                reply = player.read();
+            }
+            replies.record(System.nanoTime() - sent);
+            if (reply.getGameState() == GameData.GameState.ERROR) {
+                JournalCrashCheck.sleep(5);
+                continue;
+            }
+
+            player.nextTarget++;
+            shots++;
+            boolean hit = reply.getGameState() == GameData.GameState.HIT;
+            player.opponent.set(x, y, hit ? PackedBoard.HIT : PackedBoard.MISS);
+            player.myTurn = hit;
+            slow.own.set(x, y, hit ? PackedBoard.HIT : PackedBoard.MISS);
+            slow.myTurn = !hit;
+            GameData last = reply;
+            if (hit && JournalCrashCheck.isSunk(slow.own, x, y)) {
+                if (slow.own.count(PackedBoard.SHIP) == 0) {
+                    throw new AssertionError("Партия закончилась раньше, чем переполнилась очередь");
+                }
+                last = player.read();
+                while (isLostNotice(last)) {
+                    lost = true;
+                    last = player.read();
+                }
+                if (last.getGameState() != GameData.GameState.SHIP_SUNK) {
+                    throw new AssertionError("Ожидалось SHIP_SUNK, пришло " + last.getGameState());
+                }
+            }
+            player.playerScore = last.getPlayerScore();
+            player.opponentScore = last.getOpponentScore();
+            slow.playerScore = last.getOpponentScore();
+            slow.opponentScore = last.getPlayerScore();
+        }
+        return shots;
+    }
+
+    private static boolean isLostNotice(GameData data) {
+        return data.getGameState() == GameData.GameState.ERROR
+                && data.getErrorMessage() != null && data.getErrorMessage().contains("потерял связь");
+    }
+
+    // Медленный игрок не видел ни одного выстрела: все они должны прийти пропущенными
+    private static void resume(Client slow, Client player, int shots, int port) throws IOException {
+        slow.connect(port);
+        GameData resume = new GameData();
+        resume.setGameState(GameData.GameState.RESUME);
+        resume.setSessionId(slow.sessionId);
+        resume.setResumeToken(slow.token);
+        resume.setMoveCount(0);
+        slow.send(resume);
+        GameData snapshot = expect(slow, GameData.GameState.RESUME);
+        JournalCrashCheck.verify(slow, snapshot);
+        if (snapshot.getMissedMoves().length != shots) {
+            throw new AssertionError("Пропущено выстрелов " + snapshot.getMissedMoves().length + " вместо " + shots);
+        }
+        expect(player, player.myTurn ? GameData.GameState.PLAYER_TURN : GameData.GameState.OPPONENT_TURN);
+    }
+}
@@ -0,0 +1,340 @@
+package com.battleship.tools;
+
+import com.battleship.common.PackedBoard;
+import com.battleship.common.Ruleset;
+import com.battleship.server.BattleshipServer;
+import com.battleship.server.GameData;
+import com.battleship.server.SharedFrame;
+import com.battleship.server.SpectatorChannel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.battleship.tools.JournalCrashCheck.Client;
+
+// Проверка трансляции партий зрителям. Первая часть: сервер запускается в этом процессе,
+// два клиента играют, а зрители подключаются к партии - часть до первого выстрела,
+// часть посреди партии, один - без номера партии (SPECTATE 0, самая смотримая). Каждый
+// зритель собирает оба поля из снимка и событий, и в конце они сравниваются с тем, что
+// видели сами игроки: поля, счет и победитель.
+//
+// Вторая часть проверяет SpectatorChannel с медленными зрителями: публикация не ждет
+// зрителя, чья запись зависла навсегда, и он отключается; зритель, отстающий на всплесках
+// событий, получает снимки и догоняет партию без пропусков; быстрый получает все по порядку.
+//
+// Запуск:
+//   java -cp <classpath> com.battleship.tools.SpectatorCheck 10 20 nio
+// Аргументы: число партий, зрителей на партию, транспорт (nio или blocking), порт сервера.
+public class SpectatorCheck {
+    private final int port;
+    private final Random random;
+
+    private SpectatorCheck(int port, long seed) {
+        this.port = port;
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int viewers = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        boolean nio = args.length <= 2 || !args[2].equalsIgnoreCase("blocking");
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : 24600;
+        long seed = System.nanoTime();
+        System.out.println("seed = " + seed);
+
+        BattleshipServer server = nio
+                ? new BattleshipServer(port, BattleshipServer.TransportMode.NIO, 2)
+                : new BattleshipServer(port);
+        server.setBotFillDelay(-1);
+        server.start();
+        try (ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor()) {
+            SpectatorCheck check = new SpectatorCheck(port, seed);
+            for (int game = 1; game <= games; game++) {
+                check.watchGame(game, viewers, readers);
+            }
+            System.out.println("Партий: " + games + ", зрителей на партию: " + viewers + " - трансляция совпала");
+        } finally {
+            server.shutdown();
+        }
+
+        checkSlowViewers();
+    }
+
+    // Зритель: оба поля глазами стрелявших, как их видят игроки
+    private static final class Viewer {
+        final Client client = new Client();
+        long sessionId;
+        PackedBoard first;  // Поле первого игрока с выстрелами второго
+        PackedBoard second; // Поле второго игрока с выстрелами первого
+        int firstScore;
+        int secondScore;
+        boolean firstWon;
+        GameData.GameState end;
+
+        void watch(int port, long session) throws IOException {
+            client.connect(port);
+            GameData request = new GameData();
+            request.setGameState(GameData.GameState.SPECTATE);
+            request.setSessionId(session);
+            client.send(request);
+        }
+
+        // Читает трансляцию до конца партии
+        Viewer readToEnd() throws IOException {
+            while (end == null) {
+                GameData data = client.read();
+                switch (data.getGameState()) {
+                    case SPECTATE:
+                        sessionId = data.getSessionId();
+                        Ruleset rules = data.getRuleset() != null ? data.getRuleset() : Ruleset.STANDARD;
+                        first = data.hasPlayerBoard() ? data.getPlayerBoard() : rules.newBoard();
+                        second = data.hasOpponentBoard() ? data.getOpponentBoard() : rules.newBoard();
+                        firstScore = data.getPlayerScore();
+                        secondScore = data.getOpponentScore();
+                        break;
+                    case HIT:
+                    case MISS:
+                        (data.isPlayerTurn() ? second : first).set(data.getX(), data.getY(),
+                                data.getGameState() == GameData.GameState.HIT ? PackedBoard.HIT : PackedBoard.MISS);
+                        firstScore = data.getPlayerScore();
+                        secondScore = data.getOpponentScore();
+                        break;
+                    case SHIP_SUNK:
+                        firstScore = data.getPlayerScore();
+                        secondScore = data.getOpponentScore();
+                        break;
+                    case GAME_OVER:
+                        firstWon = data.isWinner();
+                        firstScore = data.getPlayerScore();
+                        secondScore = data.getOpponentScore();
+                        end = data.getGameState();
+                        break;
+                    case OPPONENT_DISCONNECTED:
+                        end = data.getGameState();
+                        break;
+                    default:
+                        throw new AssertionError("Зрителю пришло " + data.getGameState()
+                                + (data.getErrorMessage() != null ? " (" + data.getErrorMessage() + ")" : ""));
+                }
+            }
+            client.close();
+            return this;
+        }
+    }
+
+    private void watchGame(int game, int viewerCount, ExecutorService readers) throws Exception {
+        Client[] clients = ReconnectCheck.startGame(port, random);
+        long sessionId = clients[0].sessionId;
+        // Первый игрок - тот, кто ходит первым; потоки чтения блокирующего транспорта
+        // могут поставить клиентов в очередь подбора не в том порядке, в каком они подключились
+        Client first = clients[0].myTurn ? clients[0] : clients[1];
+        Client second = first == clients[0] ? clients[1] : clients[0];
+        List<Future<Viewer>> viewers = new ArrayList<>();
+        int early = viewerCount / 2;
+        for (int i = 0; i < early; i++) {
+            viewers.add(startViewer(sessionId, readers));
+        }
+
+        int shots = 0;
+        int lateJoin = 1 + random.nextInt(30);
+        boolean over = false;
+        while (!over) {
+            Client shooter = clients[0].myTurn ? clients[0] : clients[1];
+            Client target = shooter == clients[0] ? clients[1] : clients[0];
+            int before = shooter.nextTarget;
+            over = JournalCrashCheck.shoot(shooter, target);
+            if (shooter.nextTarget == before) continue; // Соперник еще расставлял корабли
+            if (++shots == lateJoin) {
+                // Партия этих зрителей - единственная идущая, она же самая смотримая
+                viewers.add(startViewer(0, readers));
+                for (int i = early + 1; i < viewerCount; i++) {
+                    viewers.add(startViewer(sessionId, readers));
+                }
+            }
+        }
+        for (Client client : clients) {
+            client.close();
+        }
+
+        boolean firstWon = first.playerScore > first.opponentScore;
+        for (Future<Viewer> future : viewers) {
+            Viewer viewer = future.get(30, TimeUnit.SECONDS);
+            List<String> mismatches = new ArrayList<>();
+            if (viewer.sessionId != sessionId) mismatches.add("партия #" + viewer.sessionId);
+            if (viewer.end != GameData.GameState.GAME_OVER) mismatches.add("конец " + viewer.end);
+            if (!second.opponent.equals(viewer.first)) mismatches.add("поле первого игрока");
+            if (!first.opponent.equals(viewer.second)) mismatches.add("поле второго игрока");
+            if (viewer.firstScore != first.playerScore || viewer.secondScore != first.opponentScore) {
+                mismatches.add("счет " + viewer.firstScore + ":" + viewer.secondScore);
+            }
+            if (viewer.firstWon != firstWon) mismatches.add("победитель");
+            if (!mismatches.isEmpty()) {
+                throw new AssertionError("Партия " + game + ": зритель увидел не то: " + mismatches);
+            }
+        }
+        System.out.println("Партия " + game + " (#" + sessionId + "): " + shots + " выстрелов, "
+                + viewers.size() + " зрителей, " + first.playerScore + ":" + first.opponentScore);
+    }
+
+    private Future<Viewer> startViewer(long sessionId, ExecutorService readers) throws IOException {
+        Viewer viewer = new Viewer();
+        viewer.watch(port, sessionId);
+        return readers.submit(viewer::readToEnd);
+    }
+
+    // Зритель канала: проверяет, что события идут подряд, а снимок продолжает их без пропусков.
+    // Номер события - moveCount, снимок несет число опубликованных до него событий
+    private static class SequenceViewer implements SpectatorChannel.Viewer {
+        final long delayNanos;
+        volatile int last;
+        volatile int snapshots;
+        volatile boolean dropped;
+        volatile String error;
+
+        SequenceViewer(long delayNanos) {
+            this.delayNanos = delayNanos;
+        }
+
+        @Override
+        public void sendFrame(SharedFrame frame) throws IOException {
+            if (delayNanos > 0) {
+                // Медленная запись: кадр считается доставленным, когда она закончилась
+                try {
+                    TimeUnit.NANOSECONDS.sleep(delayNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            GameData data = frame.getData();
+            if (data.getGameState() == GameData.GameState.SPECTATE) {
+                if (data.getMoveCount() < last) error = "снимок " + data.getMoveCount() + " после события " + last;
+                snapshots++;
+            } else if (data.getMoveCount() != last + 1) {
+                error = "событие " + data.getMoveCount() + " после " + last;
+            }
+            last = data.getMoveCount();
+        }
+
+        @Override
+        public int getBacklog() {
+            return 0;
+        }
+
+        @Override
+        public void drop() {
+            dropped = true;
+        }
+    }
+
+    // Зритель, чья запись зависает до отключения
+    private static final class StalledViewer extends SequenceViewer {
+        final CountDownLatch released = new CountDownLatch(1);
+
+        StalledViewer() {
+            super(0);
+        }
+
+        @Override
+        public void sendFrame(SharedFrame frame) throws IOException {
+            super.sendFrame(frame);
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Соединение закрыто");
+        }
+
+        @Override
+        public void drop() {
+            super.drop();
+            released.countDown(); // Закрытие сокета прерывает зависшую запись
+        }
+    }
+
+    private static void checkSlowViewers() throws Exception {
+        final int capacity = 8;
+        final int bursts = 20;
+        final int burst = capacity + capacity / 2; // Переполняет очередь отстающего один раз
+        ReentrantLock sessionLock = new ReentrantLock();
+        int[] published = {0}; // Под sessionLock
+        try (ExecutorService delivery = Executors.newVirtualThreadPerTaskExecutor()) {
+            SpectatorChannel channel = new SpectatorChannel(delivery, capacity, () -> {
+                GameData snapshot = new GameData();
+                snapshot.setGameState(GameData.GameState.SPECTATE);
+                snapshot.setMoveCount(published[0]);
+                return snapshot;
+            });
+            SequenceViewer fast = new SequenceViewer(0);
+            SequenceViewer lagging = new SequenceViewer(TimeUnit.MILLISECONDS.toNanos(1));
+            StalledViewer stalled = new StalledViewer();
+            sessionLock.lock();
+            try {
+                channel.subscribe(fast);
+                channel.subscribe(lagging);
+                channel.subscribe(stalled);
+            } finally {
+                sessionLock.unlock();
+            }
+
+            long slowestPublish = 0;
+            for (int b = 0; b < bursts; b++) {
+                for (int i = 0; i < burst; i++) {
+                    long start = System.nanoTime();
+                    sessionLock.lock();
+                    try {
+                        GameData event = new GameData();
+                        event.setGameState(GameData.GameState.MISS);
+                        event.setMoveCount(++published[0]);
+                        channel.publish(event);
+                    } finally {
+                        sessionLock.unlock();
+                    }
+                    slowestPublish = Math.max(slowestPublish, System.nanoTime() - start);
+                    // Быстрый зритель успевает между событиями, как успевал бы на живой партии
+                    while (fast.last < published[0] && fast.error == null) {
+                        Thread.yield();
+                    }
+                }
+                // Пауза между всплесками: отстающий догоняет
+                long deadline = System.currentTimeMillis() + 5000;
+                while (lagging.last < published[0] && System.currentTimeMillis() < deadline) {
+                    TimeUnit.MILLISECONDS.sleep(5);
+                }
+            }
+
+            List<String> problems = new ArrayList<>();
+            for (SequenceViewer viewer : new SequenceViewer[] {fast, lagging, stalled}) {
+                if (viewer.error != null) problems.add(viewer.error);
+            }
+            if (fast.last != published[0] || fast.snapshots != 1 || fast.dropped) {
+                problems.add("быстрый зритель: " + fast.last + " из " + published[0] + ", снимков " + fast.snapshots);
+            }
+            if (lagging.last != published[0] || lagging.snapshots < 2 || lagging.dropped) {
+                problems.add("отстающий зритель: " + lagging.last + " из " + published[0]
+                        + ", снимков " + lagging.snapshots + (lagging.dropped ? ", отключен" : ""));
+            }
+            if (!stalled.dropped) problems.add("зависший зритель не отключен");
+            if (channel.size() != 2 || channel.getDropped() != 1) {
+                problems.add("в канале " + channel.size() + " зрителей, отключено " + channel.getDropped());
+            }
+            if (slowestPublish > TimeUnit.MILLISECONDS.toNanos(100)) {
+                problems.add("публикация заняла " + TimeUnit.NANOSECONDS.toMillis(slowestPublish) + " мс");
+            }
+            if (!problems.isEmpty()) {
+                throw new AssertionError("Медленные зрители: " + problems);
+            }
+            System.out.println("Медленные зрители: событий " + published[0] + ", снимков отстающему "
+                    + (lagging.snapshots - 1) + ", зависший отключен, самая долгая публикация "
+                    + TimeUnit.NANOSECONDS.toMicros(slowestPublish) + " мкс");
+        }
+    }
+}